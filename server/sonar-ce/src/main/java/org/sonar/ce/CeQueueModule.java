@@ -20,8 +20,11 @@
 package org.sonar.ce;
 
 import org.sonar.ce.monitoring.CEQueueStatusImpl;
+import org.sonar.ce.monitoring.CeStepsMBeanImpl;
 import org.sonar.ce.monitoring.CeTasksMBeanImpl;
+import org.sonar.ce.queue.CeMemoryAdmission;
 import org.sonar.ce.queue.CeQueueInitializer;
+import org.sonar.ce.queue.CeQueueScheduler;
 import org.sonar.ce.queue.InternalCeQueueImpl;
 import org.sonar.core.platform.Module;
 
@@ -31,10 +34,13 @@ public class CeQueueModule extends Module {
     add(
       // queue state
       InternalCeQueueImpl.class,
+      CeQueueScheduler.class,
+      CeMemoryAdmission.class,
 
       // queue monitoring
       CEQueueStatusImpl.class,
       CeTasksMBeanImpl.class,
+      CeStepsMBeanImpl.class,
 
       // init queue state and queue processing
       CeQueueInitializer.class);
@@ -23,6 +23,7 @@ import org.sonar.core.platform.Module;
 import org.sonar.db.purge.period.DefaultPeriodCleaner;
 import org.sonar.server.computation.dbcleaner.IndexPurgeListener;
 import org.sonar.server.computation.dbcleaner.ProjectCleaner;
+import org.sonar.server.computation.dbcleaner.ProjectPurgeTaskProcessor;
 
 /**
  * Globally available components in CE for tasks to use.
@@ -33,6 +34,7 @@ public class CeTaskCommonsModule extends Module {
     add(
       DefaultPeriodCleaner.class,
       ProjectCleaner.class,
+      ProjectPurgeTaskProcessor.class,
       IndexPurgeListener.class);
   }
 }
@@ -19,6 +19,8 @@
  */
 package org.sonar.ce.monitoring;
 
+import org.sonar.ce.queue.CeTaskPriorityClass;
+
 public interface CEQueueStatus {
 
   /**
@@ -61,6 +63,15 @@ public interface CEQueueStatus {
    */
   long addError(long processingTime);
 
+  /**
+   * Adds the specified time spent by a task of the specified class in the queue before being picked by a worker.
+   *
+   * @param queueWaitTime duration between submission and start of processing in ms
+   *
+   * @throws IllegalArgumentException if queueWaitTime is < 0
+   */
+  void addQueueWaitTime(CeTaskPriorityClass priorityClass, long queueWaitTime);
+
   /**
    * Count of batch reports waiting for processing since startup, including reports received before instance startup.
    */
@@ -85,4 +96,14 @@ public interface CEQueueStatus {
    * Time spent processing batch reports since startup, in milliseconds.
    */
   long getProcessingTime();
+
+  /**
+   * Average time spent in queue by the tasks of the specified class picked since startup, in milliseconds.
+   */
+  long getAverageQueueWaitTime(CeTaskPriorityClass priorityClass);
+
+  /**
+   * Maximum time spent in queue by a task of the specified class picked since startup, in milliseconds.
+   */
+  long getMaxQueueWaitTime(CeTaskPriorityClass priorityClass);
 }
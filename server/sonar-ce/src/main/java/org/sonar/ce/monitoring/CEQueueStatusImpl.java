@@ -19,7 +19,10 @@
  */
 package org.sonar.ce.monitoring;
 
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
+import org.sonar.ce.queue.CeTaskPriorityClass;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeQueueDto;
@@ -33,9 +36,13 @@ public class CEQueueStatusImpl implements CEQueueStatus {
   private final AtomicLong error = new AtomicLong(0);
   private final AtomicLong success = new AtomicLong(0);
   private final AtomicLong processingTime = new AtomicLong(0);
+  private final Map<CeTaskPriorityClass, QueueWaitTime> queueWaitTimes = new EnumMap<>(CeTaskPriorityClass.class);
 
   public CEQueueStatusImpl(DbClient dbClient) {
     this.dbClient = dbClient;
+    for (CeTaskPriorityClass priorityClass : CeTaskPriorityClass.values()) {
+      queueWaitTimes.put(priorityClass, new QueueWaitTime());
+    }
   }
 
   @Override
@@ -62,6 +69,15 @@ public class CEQueueStatusImpl implements CEQueueStatus {
     processingTime.addAndGet(ms);
   }
 
+  @Override
+  public void addQueueWaitTime(CeTaskPriorityClass priorityClass, long queueWaitTime) {
+    checkArgument(queueWaitTime >= 0, "Queue wait time can not be < 0");
+    QueueWaitTime counters = queueWaitTimes.get(priorityClass);
+    counters.count.incrementAndGet();
+    counters.total.addAndGet(queueWaitTime);
+    counters.max.accumulateAndGet(queueWaitTime, Math::max);
+  }
+
   @Override
   public long getPendingCount() {
     try (DbSession dbSession = dbClient.openSession(false)) {
@@ -88,4 +104,22 @@ public class CEQueueStatusImpl implements CEQueueStatus {
   public long getProcessingTime() {
     return processingTime.get();
   }
+
+  @Override
+  public long getAverageQueueWaitTime(CeTaskPriorityClass priorityClass) {
+    QueueWaitTime counters = queueWaitTimes.get(priorityClass);
+    long count = counters.count.get();
+    return count == 0 ? 0 : (counters.total.get() / count);
+  }
+
+  @Override
+  public long getMaxQueueWaitTime(CeTaskPriorityClass priorityClass) {
+    return queueWaitTimes.get(priorityClass).max.get();
+  }
+
+  private static class QueueWaitTime {
+    private final AtomicLong count = new AtomicLong(0);
+    private final AtomicLong total = new AtomicLong(0);
+    private final AtomicLong max = new AtomicLong(0);
+  }
 }
@@ -0,0 +1,69 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.monitoring;
+
+import org.picocontainer.Startable;
+import org.sonar.process.Jmx;
+import org.sonar.process.systeminfo.SystemInfoSection;
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
+import org.sonar.server.computation.task.step.ComputationStepHistograms;
+
+public class CeStepsMBeanImpl implements CeStepsMBean, Startable, SystemInfoSection {
+  private final ComputationStepHistograms histograms;
+
+  public CeStepsMBeanImpl(ComputationStepHistograms histograms) {
+    this.histograms = histograms;
+  }
+
+  @Override
+  public void start() {
+    Jmx.register(OBJECT_NAME, this);
+  }
+
+  /**
+   * Unregister, if needed
+   */
+  @Override
+  public void stop() {
+    Jmx.unregister(OBJECT_NAME);
+  }
+
+  @Override
+  public String[] getStepStatistics() {
+    return histograms.getSummaries().stream()
+      .map(ComputationStepHistograms.Summary::toString)
+      .toArray(String[]::new);
+  }
+
+  @Override
+  public ProtobufSystemInfo.Section toProtobuf() {
+    ProtobufSystemInfo.Section.Builder builder = ProtobufSystemInfo.Section.newBuilder();
+    builder.setName("Compute Engine Steps");
+    for (ComputationStepHistograms.Summary summary : histograms.getSummaries()) {
+      String step = summary.getStep();
+      builder.addAttributesBuilder().setKey(step + " Count").setLongValue(summary.getCount()).build();
+      builder.addAttributesBuilder().setKey(step + " P50 Duration (ms)").setLongValue(summary.getP50DurationMs()).build();
+      builder.addAttributesBuilder().setKey(step + " P95 Duration (ms)").setLongValue(summary.getP95DurationMs()).build();
+      builder.addAttributesBuilder().setKey(step + " P99 Duration (ms)").setLongValue(summary.getP99DurationMs()).build();
+      summary.getItems().forEach((item, count) -> builder.addAttributesBuilder().setKey(step + " " + item).setLongValue(count).build());
+    }
+    return builder.build();
+  }
+}
@@ -57,4 +57,59 @@ public interface CeTasksMBean {
    * Configured number of Workers.
    */
   int getWorkerCount();
+
+  /**
+   * Average time spent in queue by tasks on main branches since startup, in milliseconds.
+   */
+  long getMainBranchAverageQueueWaitTime();
+
+  /**
+   * Average time spent in queue by tasks on long-living branches since startup, in milliseconds.
+   */
+  long getLongLivingBranchAverageQueueWaitTime();
+
+  /**
+   * Average time spent in queue by tasks on short-living branches since startup, in milliseconds.
+   */
+  long getShortLivingBranchAverageQueueWaitTime();
+
+  /**
+   * Maximum time spent in queue by a task on a main branch since startup, in milliseconds.
+   */
+  long getMainBranchMaxQueueWaitTime();
+
+  /**
+   * Maximum time spent in queue by a task on a long-living branch since startup, in milliseconds.
+   */
+  long getLongLivingBranchMaxQueueWaitTime();
+
+  /**
+   * Maximum time spent in queue by a task on a short-living branch since startup, in milliseconds.
+   */
+  long getShortLivingBranchMaxQueueWaitTime();
+
+  /**
+   * Count of source lines read from the cache shared by the steps of a task, since startup.
+   */
+  long getSourceLinesCacheHitCount();
+
+  /**
+   * Count of source lines read from the analysis report because they were not cached, since startup.
+   */
+  long getSourceLinesCacheMissCount();
+
+  /**
+   * Count of line hashes read from the cache shared by the steps of a task, since startup.
+   */
+  long getLineHashesCacheHitCount();
+
+  /**
+   * Count of line hashes computed because they were not cached, since startup.
+   */
+  long getLineHashesCacheMissCount();
+
+  /**
+   * Count of files evicted from the source lines cache because of its size limit, since startup.
+   */
+  long getSourceLinesCacheEvictionCount();
 }
@@ -24,14 +24,21 @@ import org.sonar.process.Jmx;
 import org.sonar.process.systeminfo.SystemInfoSection;
 import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
 import org.sonar.ce.configuration.CeConfiguration;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
+
+import static org.sonar.ce.queue.CeTaskPriorityClass.LONG_LIVING_BRANCH;
+import static org.sonar.ce.queue.CeTaskPriorityClass.MAIN_BRANCH;
+import static org.sonar.ce.queue.CeTaskPriorityClass.SHORT_LIVING_BRANCH;
 
 public class CeTasksMBeanImpl implements CeTasksMBean, Startable, SystemInfoSection {
   private final CEQueueStatus queueStatus;
   private final CeConfiguration ceConfiguration;
+  private final SourceLinesCacheStatistics sourceLinesCacheStatistics;
 
-  public CeTasksMBeanImpl(CEQueueStatus queueStatus, CeConfiguration ceConfiguration) {
+  public CeTasksMBeanImpl(CEQueueStatus queueStatus, CeConfiguration ceConfiguration, SourceLinesCacheStatistics sourceLinesCacheStatistics) {
     this.queueStatus = queueStatus;
     this.ceConfiguration = ceConfiguration;
+    this.sourceLinesCacheStatistics = sourceLinesCacheStatistics;
   }
 
   @Override
@@ -82,6 +89,61 @@ public class CeTasksMBeanImpl implements CeTasksMBean, Startable, SystemInfoSect
     return ceConfiguration.getWorkerCount();
   }
 
+  @Override
+  public long getMainBranchAverageQueueWaitTime() {
+    return queueStatus.getAverageQueueWaitTime(MAIN_BRANCH);
+  }
+
+  @Override
+  public long getLongLivingBranchAverageQueueWaitTime() {
+    return queueStatus.getAverageQueueWaitTime(LONG_LIVING_BRANCH);
+  }
+
+  @Override
+  public long getShortLivingBranchAverageQueueWaitTime() {
+    return queueStatus.getAverageQueueWaitTime(SHORT_LIVING_BRANCH);
+  }
+
+  @Override
+  public long getMainBranchMaxQueueWaitTime() {
+    return queueStatus.getMaxQueueWaitTime(MAIN_BRANCH);
+  }
+
+  @Override
+  public long getLongLivingBranchMaxQueueWaitTime() {
+    return queueStatus.getMaxQueueWaitTime(LONG_LIVING_BRANCH);
+  }
+
+  @Override
+  public long getShortLivingBranchMaxQueueWaitTime() {
+    return queueStatus.getMaxQueueWaitTime(SHORT_LIVING_BRANCH);
+  }
+
+  @Override
+  public long getSourceLinesCacheHitCount() {
+    return sourceLinesCacheStatistics.getLineHits();
+  }
+
+  @Override
+  public long getSourceLinesCacheMissCount() {
+    return sourceLinesCacheStatistics.getLineMisses();
+  }
+
+  @Override
+  public long getLineHashesCacheHitCount() {
+    return sourceLinesCacheStatistics.getLineHashesHits();
+  }
+
+  @Override
+  public long getLineHashesCacheMissCount() {
+    return sourceLinesCacheStatistics.getLineHashesMisses();
+  }
+
+  @Override
+  public long getSourceLinesCacheEvictionCount() {
+    return sourceLinesCacheStatistics.getEvictions();
+  }
+
   @Override
   public ProtobufSystemInfo.Section toProtobuf() {
     ProtobufSystemInfo.Section.Builder builder = ProtobufSystemInfo.Section.newBuilder();
@@ -93,6 +155,17 @@ public class CeTasksMBeanImpl implements CeTasksMBean, Startable, SystemInfoSect
     builder.addAttributesBuilder().setKey("Processing Time (ms)").setLongValue(getProcessingTime()).build();
     builder.addAttributesBuilder().setKey("Worker Count").setLongValue(getWorkerCount()).build();
     builder.addAttributesBuilder().setKey("Max Worker Count").setLongValue(getWorkerMaxCount()).build();
+    builder.addAttributesBuilder().setKey("Main Branch Average Queue Wait Time (ms)").setLongValue(getMainBranchAverageQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Long-Living Branch Average Queue Wait Time (ms)").setLongValue(getLongLivingBranchAverageQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Short-Living Branch Average Queue Wait Time (ms)").setLongValue(getShortLivingBranchAverageQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Main Branch Max Queue Wait Time (ms)").setLongValue(getMainBranchMaxQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Long-Living Branch Max Queue Wait Time (ms)").setLongValue(getLongLivingBranchMaxQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Short-Living Branch Max Queue Wait Time (ms)").setLongValue(getShortLivingBranchMaxQueueWaitTime()).build();
+    builder.addAttributesBuilder().setKey("Source Lines Cache Hits").setLongValue(getSourceLinesCacheHitCount()).build();
+    builder.addAttributesBuilder().setKey("Source Lines Cache Misses").setLongValue(getSourceLinesCacheMissCount()).build();
+    builder.addAttributesBuilder().setKey("Line Hashes Cache Hits").setLongValue(getLineHashesCacheHitCount()).build();
+    builder.addAttributesBuilder().setKey("Line Hashes Cache Misses").setLongValue(getLineHashesCacheMissCount()).build();
+    builder.addAttributesBuilder().setKey("Source Lines Cache Evictions").setLongValue(getSourceLinesCacheEvictionCount()).build();
     return builder.build();
   }
 }
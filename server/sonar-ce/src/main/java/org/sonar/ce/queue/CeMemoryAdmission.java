@@ -0,0 +1,138 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.queue;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import javax.annotation.CheckForNull;
+import org.sonar.api.ce.ComputeEngineSide;
+
+/**
+ * Keeps track of the heap memory reserved by the tasks in progress on this Compute Engine node, in order to admit
+ * a new task only when the node has enough headroom to process it.
+ * <p>
+ * The memory required by a task is estimated from the size of its analysis report. Tasks which would use a large
+ * part of the heap are "heavy": at most one of them is processed at a time on the node. A task is always admitted
+ * when no other task is in progress, so that a report bigger than the budget can still be processed.
+ * </p>
+ * Reservations are made per worker: a worker processes a single task at a time.
+ */
+@ComputeEngineSide
+public class CeMemoryAdmission {
+  /**
+   * Estimated number of bytes of heap required to process one byte of (compressed) analysis report
+   */
+  static final long HEAP_BYTES_PER_REPORT_BYTE = 10L;
+  /**
+   * Percentage of the max heap which can be reserved by tasks in progress
+   */
+  static final long BUDGET_PERCENTAGE_OF_MAX_HEAP = 70L;
+  /**
+   * Percentage of the budget above which a task is heavy
+   */
+  static final long HEAVY_PERCENTAGE_OF_BUDGET = 25L;
+
+  private final LongSupplier maxHeap;
+  private final Map<String, Reservation> reservationsByWorkerUuid = new HashMap<>();
+
+  public CeMemoryAdmission() {
+    this(() -> Runtime.getRuntime().maxMemory());
+  }
+
+  @VisibleForTesting
+  CeMemoryAdmission(LongSupplier maxHeap) {
+    this.maxHeap = maxHeap;
+  }
+
+  /**
+   * @param reportSize size in bytes of the analysis report of the task, 0 if the task has no report
+   */
+  public synchronized boolean isAdmissible(long reportSize) {
+    long required = estimateHeap(reportSize);
+    if (required == 0L || reservationsByWorkerUuid.isEmpty()) {
+      return true;
+    }
+    long budget = budget();
+    if (isHeavy(required, budget) && reservationsByWorkerUuid.values().stream().anyMatch(r -> isHeavy(r.heap, budget))) {
+      return false;
+    }
+    return getReservedHeap() + required <= budget;
+  }
+
+  /**
+   * Reserves the memory required by the task claimed by the specified worker, releasing any previous reservation of the worker.
+   */
+  public synchronized void reserve(String workerUuid, String taskUuid, long reportSize) {
+    long required = estimateHeap(reportSize);
+    if (required == 0L) {
+      reservationsByWorkerUuid.remove(workerUuid);
+    } else {
+      reservationsByWorkerUuid.put(workerUuid, new Reservation(taskUuid, required));
+    }
+  }
+
+  /**
+   * Releases the memory reserved by the specified worker, if any.
+   */
+  public synchronized void releaseWorker(String workerUuid) {
+    reservationsByWorkerUuid.remove(workerUuid);
+  }
+
+  /**
+   * Releases the memory reserved for the specified task, if any.
+   */
+  public synchronized void releaseTask(String taskUuid) {
+    reservationsByWorkerUuid.values().removeIf(r -> r.taskUuid.equals(taskUuid));
+  }
+
+  public synchronized long getReservedHeap() {
+    return reservationsByWorkerUuid.values().stream().mapToLong(r -> r.heap).sum();
+  }
+
+  @CheckForNull
+  synchronized String getReservedTaskUuid(String workerUuid) {
+    Reservation reservation = reservationsByWorkerUuid.get(workerUuid);
+    return reservation == null ? null : reservation.taskUuid;
+  }
+
+  private long budget() {
+    return maxHeap.getAsLong() / 100L * BUDGET_PERCENTAGE_OF_MAX_HEAP;
+  }
+
+  private static boolean isHeavy(long heap, long budget) {
+    return heap >= budget / 100L * HEAVY_PERCENTAGE_OF_BUDGET;
+  }
+
+  private static long estimateHeap(long reportSize) {
+    return Math.max(0L, reportSize) * HEAP_BYTES_PER_REPORT_BYTE;
+  }
+
+  private static final class Reservation {
+    private final String taskUuid;
+    private final long heap;
+
+    private Reservation(String taskUuid, long heap) {
+      this.taskUuid = taskUuid;
+      this.heap = heap;
+    }
+  }
+}
@@ -0,0 +1,281 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.queue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.utils.System2;
+import org.sonar.ce.monitoring.CEQueueStatus;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskCharacteristicDto;
+import org.sonar.db.ce.CeTaskQuery;
+import org.sonar.db.ce.EligibleTaskDto;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.property.PropertyDto;
+
+import static com.google.common.collect.ImmutableSet.of;
+import static java.util.Collections.singletonList;
+import static java.util.Comparator.comparingInt;
+import static org.sonar.core.util.stream.MoreCollectors.toList;
+import static org.sonar.core.util.stream.MoreCollectors.uniqueIndex;
+
+/**
+ * Chooses the next task of the queue to be claimed by a worker.
+ * <p>
+ * By default, tasks are processed in submission order. Two global settings, reloaded from database every
+ * {@link #SETTINGS_REFRESH_INTERVAL_MS} ms so that they can be changed at runtime, alter this order:
+ * <ul>
+ *   <li>{@link #PRIORITIES_PROPERTY}: tasks on main branches are processed before tasks on long-living branches,
+ *   which are processed before tasks on short-living branches, housekeeping tasks being processed last
+ *   (see {@link CeTaskPriorityClass})</li>
+ *   <li>{@link #FAIR_SHARE_PROPERTY}: among tasks of the same class, tasks of the organizations, then of the projects,
+ *   which have the fewest tasks in progress are processed first</li>
+ * </ul>
+ * A third global setting, {@link #ADMISSION_CONTROL_PROPERTY}, defers the tasks whose analysis report is too big to be
+ * processed by this node while its other tasks are in progress (see {@link CeMemoryAdmission}).
+ * </p>
+ * Tasks are ranked by priority class in database, so only the {@link #CANDIDATES_PAGE_SIZE} first eligible tasks
+ * of the highest classes are considered by fair share and admission control.
+ */
+@ComputeEngineSide
+public class CeQueueScheduler {
+  public static final String PRIORITIES_PROPERTY = "sonar.ce.queue.priorities.enabled";
+  public static final String FAIR_SHARE_PROPERTY = "sonar.ce.queue.fairShare.enabled";
+  public static final String ADMISSION_CONTROL_PROPERTY = "sonar.ce.queue.admissionControl.enabled";
+  static final int CANDIDATES_PAGE_SIZE = 50;
+  static final long SETTINGS_REFRESH_INTERVAL_MS = 10_000L;
+  private static final int MAX_IN_PROGRESS_TASKS = 1_000;
+
+  private final DbClient dbClient;
+  private final CeMemoryAdmission memoryAdmission;
+  private final CEQueueStatus queueStatus;
+  private final System2 system2;
+  private volatile Settings settings;
+
+  public CeQueueScheduler(DbClient dbClient, CeMemoryAdmission memoryAdmission, CEQueueStatus queueStatus, System2 system2) {
+    this.dbClient = dbClient;
+    this.memoryAdmission = memoryAdmission;
+    this.queueStatus = queueStatus;
+    this.system2 = system2;
+  }
+
+  /**
+   * Claims the next task for the specified worker and records its wait time in the queue, by priority class.
+   */
+  public Optional<CeQueueDto> peek(DbSession dbSession, String workerUuid, int maxExecutionCount) {
+    // the worker is idle, the task it was processing, if any, does not use memory anymore
+    memoryAdmission.releaseWorker(workerUuid);
+
+    Settings current = loadSettings(dbSession);
+    if (!current.priorities && !current.fairShare && !current.admissionControl) {
+      return claimOldest(dbSession, workerUuid, maxExecutionCount);
+    }
+
+    List<EligibleTaskDto> candidates = dbClient.ceQueueDao().selectEligibleCandidates(dbSession, maxExecutionCount, current.priorities, CANDIDATES_PAGE_SIZE);
+    if (current.fairShare) {
+      candidates = sortByFairShare(dbSession, candidates, current.priorities);
+    }
+    if (!current.admissionControl) {
+      return claimFirst(dbSession, candidates, workerUuid);
+    }
+    return claimFirstAdmissible(dbSession, candidates, workerUuid);
+  }
+
+  /**
+   * Releases the memory reserved on this node by the specified task, if any.
+   */
+  public void release(String taskUuid) {
+    memoryAdmission.releaseTask(taskUuid);
+  }
+
+  private Settings loadSettings(DbSession dbSession) {
+    Settings current = settings;
+    long now = system2.now();
+    if (current == null || now - current.loadedAt >= SETTINGS_REFRESH_INTERVAL_MS) {
+      Map<String, String> values = dbClient.propertiesDao()
+        .selectGlobalPropertiesByKeys(dbSession, of(PRIORITIES_PROPERTY, FAIR_SHARE_PROPERTY, ADMISSION_CONTROL_PROPERTY))
+        .stream()
+        .filter(p -> p.getValue() != null)
+        .collect(uniqueIndex(PropertyDto::getKey, PropertyDto::getValue));
+      current = new Settings(values, now);
+      settings = current;
+    }
+    return current;
+  }
+
+  private Optional<CeQueueDto> claimOldest(DbSession dbSession, String workerUuid, int maxExecutionCount) {
+    Optional<EligibleTaskDto> eligible = dbClient.ceQueueDao().selectEligibleForClaim(dbSession, maxExecutionCount);
+    if (!eligible.isPresent()) {
+      return Optional.empty();
+    }
+    return claim(dbSession, eligible.get(), workerUuid);
+  }
+
+  private Optional<CeQueueDto> claimFirst(DbSession dbSession, List<EligibleTaskDto> candidates, String workerUuid) {
+    for (EligibleTaskDto candidate : candidates) {
+      Optional<CeQueueDto> claimed = claim(dbSession, candidate, workerUuid);
+      if (claimed.isPresent()) {
+        return claimed;
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Optional<CeQueueDto> claimFirstAdmissible(DbSession dbSession, List<EligibleTaskDto> candidates, String workerUuid) {
+    Map<String, Long> reportSizesByTaskUuid = loadReportSizes(dbSession, candidates.stream().map(EligibleTaskDto::getUuid).collect(toList()));
+    // admission and reservation must be atomic among the workers of this node
+    synchronized (memoryAdmission) {
+      for (EligibleTaskDto candidate : candidates) {
+        long reportSize = reportSizesByTaskUuid.getOrDefault(candidate.getUuid(), 0L);
+        if (!memoryAdmission.isAdmissible(reportSize)) {
+          continue;
+        }
+        Optional<CeQueueDto> claimed = claim(dbSession, candidate, workerUuid);
+        if (claimed.isPresent()) {
+          memoryAdmission.reserve(workerUuid, candidate.getUuid(), reportSize);
+          return claimed;
+        }
+      }
+    }
+    return Optional.empty();
+  }
+
+  private Optional<CeQueueDto> claim(DbSession dbSession, EligibleTaskDto candidate, String workerUuid) {
+    Optional<CeQueueDto> claimed = dbClient.ceQueueDao().tryToClaim(dbSession, candidate, workerUuid);
+    claimed.ifPresent(task -> {
+      Long startedAt = task.getStartedAt();
+      if (startedAt != null) {
+        queueStatus.addQueueWaitTime(priorityClassOf(candidate), Math.max(0L, startedAt - task.getCreatedAt()));
+      }
+    });
+    return claimed;
+  }
+
+  static CeTaskPriorityClass priorityClassOf(EligibleTaskDto task) {
+    return CeTaskPriorityClass.of(task.getTaskType(), task.getBranchType());
+  }
+
+  /**
+   * Candidates are already sorted by priority class, if enabled, then by submission date. List#sort is stable.
+   */
+  private List<EligibleTaskDto> sortByFairShare(DbSession dbSession, List<EligibleTaskDto> candidates, boolean priorities) {
+    if (candidates.size() <= 1) {
+      return candidates;
+    }
+
+    List<EligibleTaskDto> sorted = new ArrayList<>(candidates);
+    Comparator<EligibleTaskDto> comparator = (a, b) -> 0;
+    if (priorities) {
+      comparator = comparator.thenComparing(CeQueueScheduler::priorityClassOf);
+    }
+    sorted.sort(comparator.thenComparing(fairShareComparator(dbSession, candidates)));
+    return sorted;
+  }
+
+  private Map<String, Long> loadReportSizes(DbSession dbSession, List<String> taskUuids) {
+    Map<String, Long> res = new HashMap<>();
+    if (taskUuids.isEmpty()) {
+      return res;
+    }
+    dbClient.ceTaskCharacteristicsDao().selectByTaskUuids(dbSession, taskUuids)
+      .stream()
+      .filter(c -> CeTaskCharacteristicDto.REPORT_SIZE_KEY.equals(c.getKey()))
+      .forEach(c -> res.put(c.getTaskUuid(), parseReportSize(c.getValue())));
+    return res;
+  }
+
+  private static long parseReportSize(@Nullable String value) {
+    try {
+      return value == null ? 0L : Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return 0L;
+    }
+  }
+
+  private Comparator<EligibleTaskDto> fairShareComparator(DbSession dbSession, List<EligibleTaskDto> candidates) {
+    List<CeQueueDto> inProgress = dbClient.ceQueueDao().selectByQueryInDescOrder(dbSession,
+      new CeTaskQuery().setStatuses(singletonList(CeQueueDto.Status.IN_PROGRESS.name())), MAX_IN_PROGRESS_TASKS);
+
+    Set<String> componentUuids = new HashSet<>();
+    candidates.stream().map(EligibleTaskDto::getComponentUuid).filter(Objects::nonNull).forEach(componentUuids::add);
+    inProgress.stream().map(CeQueueDto::getComponentUuid).filter(Objects::nonNull).forEach(componentUuids::add);
+    Map<String, ComponentDto> componentsByUuid = dbClient.componentDao().selectByUuids(dbSession, componentUuids)
+      .stream()
+      .collect(uniqueIndex(ComponentDto::uuid));
+
+    Map<String, Integer> inProgressByOrganization = countBy(inProgress, componentsByUuid, ComponentDto::getOrganizationUuid);
+    Map<String, Integer> inProgressByProject = countBy(inProgress, componentsByUuid, CeQueueScheduler::mainBranchProjectUuid);
+    Function<EligibleTaskDto, ComponentDto> toComponent = t -> t.getComponentUuid() == null ? null : componentsByUuid.get(t.getComponentUuid());
+    return Comparator.<EligibleTaskDto>comparingInt(t -> count(inProgressByOrganization, toComponent.apply(t), ComponentDto::getOrganizationUuid))
+      .thenComparing(comparingInt(t -> count(inProgressByProject, toComponent.apply(t), CeQueueScheduler::mainBranchProjectUuid)));
+  }
+
+  private static Map<String, Integer> countBy(Collection<CeQueueDto> tasks, Map<String, ComponentDto> componentsByUuid, Function<ComponentDto, String> keyFunction) {
+    Map<String, Integer> res = new HashMap<>();
+    tasks.stream()
+      .map(CeQueueDto::getComponentUuid)
+      .filter(Objects::nonNull)
+      .map(componentsByUuid::get)
+      .filter(Objects::nonNull)
+      .forEach(component -> res.merge(keyFunction.apply(component), 1, Integer::sum));
+    return res;
+  }
+
+  private static int count(Map<String, Integer> counts, @Nullable ComponentDto component, Function<ComponentDto, String> keyFunction) {
+    if (component == null) {
+      return 0;
+    }
+    return counts.getOrDefault(keyFunction.apply(component), 0);
+  }
+
+  @CheckForNull
+  private static String mainBranchProjectUuid(ComponentDto component) {
+    String mainBranchProjectUuid = component.getMainBranchProjectUuid();
+    return mainBranchProjectUuid == null ? component.projectUuid() : mainBranchProjectUuid;
+  }
+
+  private static final class Settings {
+    private final boolean priorities;
+    private final boolean fairShare;
+    private final boolean admissionControl;
+    private final long loadedAt;
+
+    private Settings(Map<String, String> values, long loadedAt) {
+      this.priorities = Boolean.parseBoolean(values.get(PRIORITIES_PROPERTY));
+      this.fairShare = Boolean.parseBoolean(values.get(FAIR_SHARE_PROPERTY));
+      this.admissionControl = Boolean.parseBoolean(values.get(ADMISSION_CONTROL_PROPERTY));
+      this.loadedAt = loadedAt;
+    }
+  }
+}
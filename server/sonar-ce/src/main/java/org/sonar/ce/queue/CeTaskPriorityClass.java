@@ -0,0 +1,57 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.queue;
+
+import javax.annotation.Nullable;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.component.BranchType;
+
+/**
+ * Scheduling class of a task of the Compute Engine queue, from the highest to the lowest priority.
+ */
+public enum CeTaskPriorityClass {
+  /**
+   * Task on the main branch of a project or task not related to any branch
+   */
+  MAIN_BRANCH,
+  LONG_LIVING_BRANCH,
+  SHORT_LIVING_BRANCH,
+  /**
+   * Housekeeping task, for example the purge of the history of a project, which can wait for all the other tasks
+   */
+  BACKGROUND;
+
+  /**
+   * @param taskType type of the task, see {@link CeTaskTypes}
+   * @param branchType value of the {@link org.sonar.db.ce.CeTaskCharacteristicDto#BRANCH_TYPE_KEY} characteristic of the task, if any
+   */
+  public static CeTaskPriorityClass of(String taskType, @Nullable String branchType) {
+    if (CeTaskTypes.PROJECT_PURGE.equals(taskType)) {
+      return BACKGROUND;
+    }
+    if (BranchType.LONG.name().equals(branchType)) {
+      return LONG_LIVING_BRANCH;
+    }
+    if (BranchType.SHORT.name().equals(branchType)) {
+      return SHORT_LIVING_BRANCH;
+    }
+    return MAIN_BRANCH;
+  }
+}
@@ -58,14 +58,16 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
   private final DbClient dbClient;
   private final CEQueueStatus queueStatus;
   private final ComputeEngineStatus computeEngineStatus;
+  private final CeQueueScheduler scheduler;
 
   public InternalCeQueueImpl(System2 system2, DbClient dbClient, UuidFactory uuidFactory, CEQueueStatus queueStatus,
-    DefaultOrganizationProvider defaultOrganizationProvider, ComputeEngineStatus computeEngineStatus) {
+    DefaultOrganizationProvider defaultOrganizationProvider, ComputeEngineStatus computeEngineStatus, CeQueueScheduler scheduler) {
     super(dbClient, uuidFactory, defaultOrganizationProvider);
     this.system2 = system2;
     this.dbClient = dbClient;
     this.queueStatus = queueStatus;
     this.computeEngineStatus = computeEngineStatus;
+    this.scheduler = scheduler;
   }
 
   @Override
@@ -81,7 +83,7 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
       if (i > 0) {
         LOG.debug("{} in progress tasks reset for worker uuid {}", i, workerUuid);
       }
-      Optional<CeQueueDto> dto = ceQueueDao.peek(dbSession, workerUuid, MAX_EXECUTION_COUNT);
+      Optional<CeQueueDto> dto = scheduler.peek(dbSession, workerUuid, MAX_EXECUTION_COUNT);
       CeTask task = null;
       if (dto.isPresent()) {
         task = loadTask(dbSession, dto.get());
@@ -108,6 +110,8 @@ public class InternalCeQueueImpl extends CeQueueImpl implements InternalCeQueue
       updateTaskResult(activityDto, taskResult);
       updateError(activityDto, error);
       remove(dbSession, queueDto, activityDto);
+    } finally {
+      scheduler.release(task.getUuid());
     }
   }
 
@@ -94,14 +94,14 @@ public class ComputeEngineContainerImplTest {
           + 78 // level 4
           + 21 // content of QualityGateModule
           + 6 // content of CeConfigurationModule
-          + 4 // content of CeQueueModule
+          + 7 // content of CeQueueModule
           + 4 // content of CeHttpModule
-          + 3 // content of CeTaskCommonsModule
-          + 4 // content of ProjectAnalysisTaskModule
+          + 4 // content of CeTaskCommonsModule
+          + 10 // content of ProjectAnalysisTaskModule
           + 7 // content of CeTaskProcessorModule
           + 4 // content of ReportAnalysisFailureNotificationModule
           + 3 // CeCleaningModule + its content
-          + 4 // WebhookModule
+          + 5 // WebhookModule
           + 1 // CeDistributedInformation
     );
     assertThat(picoContainer.getParent().getComponentAdapters()).hasSize(
@@ -24,6 +24,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
+import org.sonar.ce.queue.CeTaskPriorityClass;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeQueueDto;
@@ -133,6 +134,28 @@ public class CEQueueStatusImplTest {
     assertThat(underTest.getProcessingTime()).isEqualTo(calls);
   }
 
+  @Test
+  public void addQueueWaitTime_throws_IAE_if_time_is_less_than_0() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Queue wait time can not be < 0");
+
+    underTest.addQueueWaitTime(CeTaskPriorityClass.MAIN_BRANCH, -1);
+  }
+
+  @Test
+  public void addQueueWaitTime_computes_average_and_max_per_priority_class() {
+    underTest.addQueueWaitTime(CeTaskPriorityClass.MAIN_BRANCH, 10);
+    underTest.addQueueWaitTime(CeTaskPriorityClass.MAIN_BRANCH, 30);
+    underTest.addQueueWaitTime(CeTaskPriorityClass.SHORT_LIVING_BRANCH, 1_000);
+
+    assertThat(underTest.getAverageQueueWaitTime(CeTaskPriorityClass.MAIN_BRANCH)).isEqualTo(20);
+    assertThat(underTest.getMaxQueueWaitTime(CeTaskPriorityClass.MAIN_BRANCH)).isEqualTo(30);
+    assertThat(underTest.getAverageQueueWaitTime(CeTaskPriorityClass.SHORT_LIVING_BRANCH)).isEqualTo(1_000);
+    assertThat(underTest.getMaxQueueWaitTime(CeTaskPriorityClass.SHORT_LIVING_BRANCH)).isEqualTo(1_000);
+    assertThat(underTest.getAverageQueueWaitTime(CeTaskPriorityClass.LONG_LIVING_BRANCH)).isEqualTo(0);
+    assertThat(underTest.getMaxQueueWaitTime(CeTaskPriorityClass.LONG_LIVING_BRANCH)).isEqualTo(0);
+  }
+
   @Test
   public void count_Pending_from_database() {
     when(dbClient.ceQueueDao().countByStatus(any(DbSession.class), eq(CeQueueDto.Status.PENDING))).thenReturn(42);
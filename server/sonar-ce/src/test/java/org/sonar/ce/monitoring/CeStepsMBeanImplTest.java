@@ -0,0 +1,79 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.monitoring;
+
+import java.lang.management.ManagementFactory;
+import javax.annotation.CheckForNull;
+import javax.management.InstanceNotFoundException;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+import org.junit.Test;
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
+import org.sonar.server.computation.task.step.ComputationStepHistograms;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CeStepsMBeanImplTest {
+
+  private ComputationStepHistograms histograms = new ComputationStepHistograms();
+  private CeStepsMBeanImpl underTest = new CeStepsMBeanImpl(histograms);
+
+  @Test
+  public void register_and_unregister() throws Exception {
+    assertThat(getMBean()).isNull();
+
+    underTest.start();
+    assertThat(getMBean()).isNotNull();
+
+    underTest.stop();
+    assertThat(getMBean()).isNull();
+  }
+
+  @Test
+  public void getStepStatistics_returns_summary_of_each_step() {
+    histograms.add(new ComputationStepStatistics().add("inserts", 3).stepFinished("Persist issues", 20));
+    histograms.add(new ComputationStepStatistics().stepFinished("Extract report", 10));
+
+    assertThat(underTest.getStepStatistics()).containsExactly(
+      "Persist issues | count=1 | p50=20ms | p95=20ms | p99=20ms | total=20ms | inserts=3",
+      "Extract report | count=1 | p50=10ms | p95=10ms | p99=10ms | total=10ms");
+  }
+
+  @Test
+  public void export_system_info() {
+    histograms.add(new ComputationStepStatistics().add("inserts", 3).stepFinished("Persist issues", 20));
+
+    ProtobufSystemInfo.Section section = underTest.toProtobuf();
+    assertThat(section.getName()).isEqualTo("Compute Engine Steps");
+    assertThat(section.getAttributesList()).extracting(ProtobufSystemInfo.Attribute::getKey).containsExactly(
+      "Persist issues Count", "Persist issues P50 Duration (ms)", "Persist issues P95 Duration (ms)", "Persist issues P99 Duration (ms)",
+      "Persist issues inserts");
+  }
+
+  @CheckForNull
+  private ObjectInstance getMBean() throws Exception {
+    try {
+      return ManagementFactory.getPlatformMBeanServer().getObjectInstance(new ObjectName(CeStepsMBean.OBJECT_NAME));
+    } catch (InstanceNotFoundException e) {
+      return null;
+    }
+  }
+}
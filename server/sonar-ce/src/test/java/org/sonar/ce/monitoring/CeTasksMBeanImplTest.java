@@ -26,9 +26,13 @@ import javax.management.ObjectInstance;
 import javax.management.ObjectName;
 import org.junit.Test;
 import org.sonar.ce.configuration.CeConfiguration;
+import org.sonar.ce.queue.CeTaskPriorityClass;
 import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class CeTasksMBeanImplTest {
   private static final long PENDING_COUNT = 2;
@@ -38,8 +42,10 @@ public class CeTasksMBeanImplTest {
   private static final long PROCESSING_TIME = 987;
   private static final int WORKER_MAX_COUNT = 666;
   private static final int WORKER_COUNT = 56;
+  private static final long QUEUE_WAIT_TIME = 1_000;
 
-  private CeTasksMBeanImpl underTest = new CeTasksMBeanImpl(new DumbCEQueueStatus(), new DumbCeConfiguration());
+  private SourceLinesCacheStatistics sourceLinesCacheStatistics = mock(SourceLinesCacheStatistics.class);
+  private CeTasksMBeanImpl underTest = new CeTasksMBeanImpl(new DumbCEQueueStatus(), new DumbCeConfiguration(), sourceLinesCacheStatistics);
 
   @Test
   public void register_and_unregister() throws Exception {
@@ -72,6 +78,27 @@ public class CeTasksMBeanImplTest {
     assertThat(underTest.getErrorCount()).isEqualTo(ERROR_COUNT);
     assertThat(underTest.getSuccessCount()).isEqualTo(SUCCESS_COUNT);
     assertThat(underTest.getProcessingTime()).isEqualTo(PROCESSING_TIME);
+    assertThat(underTest.getMainBranchAverageQueueWaitTime()).isEqualTo(QUEUE_WAIT_TIME);
+    assertThat(underTest.getLongLivingBranchAverageQueueWaitTime()).isEqualTo(QUEUE_WAIT_TIME + 1);
+    assertThat(underTest.getShortLivingBranchAverageQueueWaitTime()).isEqualTo(QUEUE_WAIT_TIME + 2);
+    assertThat(underTest.getMainBranchMaxQueueWaitTime()).isEqualTo(2 * QUEUE_WAIT_TIME);
+    assertThat(underTest.getLongLivingBranchMaxQueueWaitTime()).isEqualTo(2 * QUEUE_WAIT_TIME + 1);
+    assertThat(underTest.getShortLivingBranchMaxQueueWaitTime()).isEqualTo(2 * QUEUE_WAIT_TIME + 2);
+  }
+
+  @Test
+  public void source_lines_cache_counters_delegate_to_the_SourceLinesCacheStatistics_instance() {
+    when(sourceLinesCacheStatistics.getLineHits()).thenReturn(10L);
+    when(sourceLinesCacheStatistics.getLineMisses()).thenReturn(11L);
+    when(sourceLinesCacheStatistics.getLineHashesHits()).thenReturn(12L);
+    when(sourceLinesCacheStatistics.getLineHashesMisses()).thenReturn(13L);
+    when(sourceLinesCacheStatistics.getEvictions()).thenReturn(14L);
+
+    assertThat(underTest.getSourceLinesCacheHitCount()).isEqualTo(10L);
+    assertThat(underTest.getSourceLinesCacheMissCount()).isEqualTo(11L);
+    assertThat(underTest.getLineHashesCacheHitCount()).isEqualTo(12L);
+    assertThat(underTest.getLineHashesCacheMissCount()).isEqualTo(13L);
+    assertThat(underTest.getSourceLinesCacheEvictionCount()).isEqualTo(14L);
   }
 
   @Test
@@ -88,7 +115,7 @@ public class CeTasksMBeanImplTest {
   public void export_system_info() {
     ProtobufSystemInfo.Section section = underTest.toProtobuf();
     assertThat(section.getName()).isEqualTo("Compute Engine Tasks");
-    assertThat(section.getAttributesCount()).isEqualTo(7);
+    assertThat(section.getAttributesCount()).isEqualTo(18);
   }
   private static class DumbCEQueueStatus implements CEQueueStatus {
 
@@ -132,6 +159,21 @@ public class CeTasksMBeanImplTest {
     public long getProcessingTime() {
       return PROCESSING_TIME;
     }
+
+    @Override
+    public void addQueueWaitTime(CeTaskPriorityClass priorityClass, long queueWaitTime) {
+      methodNotImplemented();
+    }
+
+    @Override
+    public long getAverageQueueWaitTime(CeTaskPriorityClass priorityClass) {
+      return QUEUE_WAIT_TIME + priorityClass.ordinal();
+    }
+
+    @Override
+    public long getMaxQueueWaitTime(CeTaskPriorityClass priorityClass) {
+      return 2 * QUEUE_WAIT_TIME + priorityClass.ordinal();
+    }
     private long methodNotImplemented() {
       throw new UnsupportedOperationException("Not Implemented");
     }
@@ -0,0 +1,97 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.queue;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CeMemoryAdmissionTest {
+
+  // budget is 70_000 bytes, tasks requiring at least 17_500 bytes are heavy
+  private CeMemoryAdmission underTest = new CeMemoryAdmission(() -> 100_000L);
+
+  @Test
+  public void any_task_is_admissible_when_nothing_is_reserved() {
+    assertThat(underTest.isAdmissible(0L)).isTrue();
+    assertThat(underTest.isAdmissible(1_000L)).isTrue();
+    assertThat(underTest.isAdmissible(1_000_000L)).isTrue();
+  }
+
+  @Test
+  public void task_is_admissible_only_if_it_fits_in_remaining_budget() {
+    underTest.reserve("w1", "t1", 1_500L);
+    underTest.reserve("w2", "t2", 1_500L);
+    underTest.reserve("w3", "t3", 1_500L);
+
+    assertThat(underTest.getReservedHeap()).isEqualTo(45_000L);
+    assertThat(underTest.isAdmissible(1_500L)).isTrue();
+    underTest.reserve("w4", "t4", 1_500L);
+    assertThat(underTest.isAdmissible(1_500L)).isFalse();
+    assertThat(underTest.isAdmissible(1_000L)).isTrue();
+  }
+
+  @Test
+  public void task_without_report_is_always_admissible() {
+    underTest.reserve("w1", "t1", 10_000L);
+
+    assertThat(underTest.isAdmissible(0L)).isTrue();
+    assertThat(underTest.isAdmissible(-1L)).isTrue();
+  }
+
+  @Test
+  public void at_most_one_heavy_task_is_admitted() {
+    underTest.reserve("w1", "t1", 2_000L);
+
+    assertThat(underTest.isAdmissible(2_000L)).isFalse();
+    assertThat(underTest.isAdmissible(1_000L)).isTrue();
+  }
+
+  @Test
+  public void reservation_of_a_worker_replaces_its_previous_reservation() {
+    underTest.reserve("w1", "t1", 2_000L);
+    underTest.reserve("w1", "t2", 1_000L);
+
+    assertThat(underTest.getReservedHeap()).isEqualTo(10_000L);
+    assertThat(underTest.getReservedTaskUuid("w1")).isEqualTo("t2");
+
+    underTest.reserve("w1", "t3", 0L);
+
+    assertThat(underTest.getReservedHeap()).isZero();
+    assertThat(underTest.getReservedTaskUuid("w1")).isNull();
+  }
+
+  @Test
+  public void release_by_worker_or_by_task() {
+    underTest.reserve("w1", "t1", 1_000L);
+    underTest.reserve("w2", "t2", 1_000L);
+
+    underTest.releaseWorker("w1");
+    assertThat(underTest.getReservedTaskUuid("w1")).isNull();
+    assertThat(underTest.getReservedHeap()).isEqualTo(10_000L);
+
+    underTest.releaseTask("t2");
+    assertThat(underTest.getReservedTaskUuid("w2")).isNull();
+    assertThat(underTest.getReservedHeap()).isZero();
+
+    underTest.releaseTask("unknown");
+    underTest.releaseWorker("unknown");
+  }
+}
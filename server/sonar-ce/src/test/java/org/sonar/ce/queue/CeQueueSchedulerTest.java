@@ -0,0 +1,307 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.ce.queue;
+
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.ce.monitoring.CEQueueStatus;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskCharacteristicDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.ce.EligibleTaskDto;
+import org.sonar.db.component.BranchType;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.organization.OrganizationDto;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.sonar.db.property.PropertyTesting.newGlobalPropertyDto;
+
+public class CeQueueSchedulerTest {
+  private static final String WORKER_UUID = "worker uuid";
+  private static final int MAX_EXECUTION_COUNT = 1;
+
+  private TestSystem2 system2 = new TestSystem2().setNow(1_500_000_000_000L);
+
+  @Rule
+  public DbTester db = DbTester.create(system2);
+
+  private DbSession dbSession = db.getSession();
+  private CeMemoryAdmission memoryAdmission = new CeMemoryAdmission(() -> 100_000L);
+  private CEQueueStatus queueStatus = mock(CEQueueStatus.class);
+  private CeQueueScheduler underTest = new CeQueueScheduler(db.getDbClient(), memoryAdmission, queueStatus, system2);
+
+  @Test
+  public void peek_oldest_task_when_no_scheduling_setting_is_enabled() {
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto branch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.SHORT));
+    insertPending("u1", branch, BranchType.SHORT);
+    insertPending("u2", project, null);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+  }
+
+  @Test
+  public void peek_task_on_main_branch_before_older_tasks_on_other_branches_when_priorities_are_enabled() {
+    enable(CeQueueScheduler.PRIORITIES_PROPERTY);
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto shortBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.SHORT));
+    ComponentDto longBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.LONG));
+    ComponentDto otherProject = db.components().insertPrivateProject();
+    insertPending("u1", shortBranch, BranchType.SHORT);
+    insertPending("u2", longBranch, BranchType.LONG);
+    insertPending("u3", otherProject, null);
+
+    assertThat(peekUuid()).isEqualTo("u3");
+    assertThat(peekUuid()).isEqualTo("u2");
+    assertThat(peekUuid()).isEqualTo("u1");
+    assertThat(peekUuid()).isNull();
+  }
+
+  @Test
+  public void peek_task_of_project_with_fewest_tasks_in_progress_when_fair_share_is_enabled() {
+    enable(CeQueueScheduler.FAIR_SHARE_PROPERTY);
+    OrganizationDto organization = db.organizations().insert();
+    ComponentDto busyProject = db.components().insertPrivateProject(organization);
+    ComponentDto busyBranch1 = db.components().insertProjectBranch(busyProject, b -> b.setBranchType(BranchType.SHORT));
+    ComponentDto busyBranch2 = db.components().insertProjectBranch(busyProject, b -> b.setBranchType(BranchType.SHORT));
+    ComponentDto otherProject = db.components().insertPrivateProject(organization);
+    insertPending("u1", busyBranch1, BranchType.SHORT);
+    insertPending("u2", busyBranch2, BranchType.SHORT);
+    insertPending("u3", otherProject, null);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+    // a task of busyProject is in progress, the task of otherProject goes first
+    assertThat(peekUuid()).isEqualTo("u3");
+    assertThat(peekUuid()).isEqualTo("u2");
+  }
+
+  @Test
+  public void peek_task_of_organization_with_fewest_tasks_in_progress_when_fair_share_is_enabled() {
+    enable(CeQueueScheduler.FAIR_SHARE_PROPERTY);
+    OrganizationDto busyOrganization = db.organizations().insert();
+    ComponentDto busyProject1 = db.components().insertPrivateProject(busyOrganization);
+    ComponentDto busyProject2 = db.components().insertPrivateProject(busyOrganization);
+    ComponentDto otherProject = db.components().insertPrivateProject();
+    insertPending("u1", busyProject1, null);
+    insertPending("u2", busyProject2, null);
+    insertPending("u3", otherProject, null);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+    assertThat(peekUuid()).isEqualTo("u3");
+    assertThat(peekUuid()).isEqualTo("u2");
+  }
+
+  @Test
+  public void priorityClassOf_is_based_on_task_type_and_branch_type() {
+    assertThat(CeQueueScheduler.priorityClassOf(eligible(CeTaskTypes.REPORT, null))).isEqualTo(CeTaskPriorityClass.MAIN_BRANCH);
+    assertThat(CeQueueScheduler.priorityClassOf(eligible(CeTaskTypes.REPORT, BranchType.LONG))).isEqualTo(CeTaskPriorityClass.LONG_LIVING_BRANCH);
+    assertThat(CeQueueScheduler.priorityClassOf(eligible(CeTaskTypes.REPORT, BranchType.SHORT))).isEqualTo(CeTaskPriorityClass.SHORT_LIVING_BRANCH);
+    assertThat(CeQueueScheduler.priorityClassOf(eligible(CeTaskTypes.PROJECT_PURGE, null))).isEqualTo(CeTaskPriorityClass.BACKGROUND);
+  }
+
+  @Test
+  public void peek_records_queue_wait_time_by_priority_class_of_claimed_task() {
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto longBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.LONG));
+    insertPending("u1", longBranch, BranchType.LONG);
+    system2.setNow(system2.now() + 5_000L);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+
+    verify(queueStatus).addQueueWaitTime(CeTaskPriorityClass.LONG_LIVING_BRANCH, 5_000L);
+  }
+
+  @Test
+  public void peek_task_on_main_branch_before_tasks_beyond_first_page_of_candidates_when_priorities_are_enabled() {
+    enable(CeQueueScheduler.PRIORITIES_PROPERTY);
+    for (int i = 0; i < CeQueueScheduler.CANDIDATES_PAGE_SIZE; i++) {
+      ComponentDto project = db.components().insertPrivateProject();
+      ComponentDto shortBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.SHORT));
+      insertPending("s" + i, shortBranch, BranchType.SHORT);
+    }
+    insertPending("u1", db.components().insertPrivateProject(), null);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+  }
+
+  @Test
+  public void settings_are_reloaded_after_refresh_interval() {
+    ComponentDto project = db.components().insertPrivateProject();
+    for (int i = 1; i <= 3; i++) {
+      ComponentDto shortBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.SHORT));
+      insertPending("s" + i, shortBranch, BranchType.SHORT);
+    }
+    insertPending("u1", db.components().insertPrivateProject(), null);
+    assertThat(peekUuid()).isEqualTo("s1");
+
+    enable(CeQueueScheduler.PRIORITIES_PROPERTY);
+    // settings are not reloaded yet
+    assertThat(peekUuid()).isEqualTo("s2");
+
+    system2.setNow(system2.now() + CeQueueScheduler.SETTINGS_REFRESH_INTERVAL_MS);
+    assertThat(peekUuid()).isEqualTo("u1");
+  }
+
+  @Test
+  public void peek_purge_tasks_after_all_other_tasks_when_priorities_are_enabled() {
+    enable(CeQueueScheduler.PRIORITIES_PROPERTY);
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto shortBranch = db.components().insertProjectBranch(project, b -> b.setBranchType(BranchType.SHORT));
+    ComponentDto otherProject = db.components().insertPrivateProject();
+    insertPending("u1", otherProject, CeTaskTypes.PROJECT_PURGE, null);
+    insertPending("u2", shortBranch, BranchType.SHORT);
+    insertPending("u3", project, null);
+
+    assertThat(peekUuid()).isEqualTo("u3");
+    assertThat(peekUuid()).isEqualTo("u2");
+    assertThat(peekUuid()).isEqualTo("u1");
+  }
+
+  @Test
+  public void defer_task_with_big_report_while_other_tasks_use_memory_when_admission_control_is_enabled() {
+    enable(CeQueueScheduler.ADMISSION_CONTROL_PROPERTY);
+    ComponentDto project1 = db.components().insertPrivateProject();
+    ComponentDto project2 = db.components().insertPrivateProject();
+    ComponentDto project3 = db.components().insertPrivateProject();
+    // budget is 70_000 bytes of heap, a report of 3_000 bytes requires 30_000
+    insertPending("u1", project1, null);
+    insertReportSize("u1", 3_000L);
+    insertPending("u2", project2, null);
+    insertReportSize("u2", 5_000L);
+    insertPending("u3", project3, null);
+    insertReportSize("u3", 1_000L);
+
+    assertThat(underTest.peek(dbSession, "worker1", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u1");
+    assertThat(underTest.peek(dbSession, "worker2", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u3");
+    assertThat(underTest.peek(dbSession, "worker3", MAX_EXECUTION_COUNT)).isEmpty();
+    assertThat(memoryAdmission.getReservedHeap()).isEqualTo(40_000L);
+
+    underTest.release("u1");
+    underTest.release("u3");
+
+    assertThat(underTest.peek(dbSession, "worker3", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u2");
+  }
+
+  @Test
+  public void peek_task_with_big_report_when_no_other_task_uses_memory() {
+    enable(CeQueueScheduler.ADMISSION_CONTROL_PROPERTY);
+    ComponentDto project = db.components().insertPrivateProject();
+    insertPending("u1", project, null);
+    insertReportSize("u1", 1_000_000L);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+    assertThat(memoryAdmission.getReservedHeap()).isEqualTo(10_000_000L);
+  }
+
+  @Test
+  public void peek_task_without_report_whatever_the_memory_in_use_when_admission_control_is_enabled() {
+    enable(CeQueueScheduler.ADMISSION_CONTROL_PROPERTY);
+    ComponentDto project1 = db.components().insertPrivateProject();
+    ComponentDto project2 = db.components().insertPrivateProject();
+    insertPending("u1", project1, null);
+    insertReportSize("u1", 1_000_000L);
+    insertPending("u2", project2, null);
+
+    assertThat(underTest.peek(dbSession, "worker1", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u1");
+    assertThat(underTest.peek(dbSession, "worker2", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u2");
+  }
+
+  @Test
+  public void peek_releases_memory_reserved_by_previous_task_of_worker() {
+    enable(CeQueueScheduler.ADMISSION_CONTROL_PROPERTY);
+    ComponentDto project = db.components().insertPrivateProject();
+    insertPending("u1", project, null);
+    insertReportSize("u1", 1_000L);
+
+    assertThat(peekUuid()).isEqualTo("u1");
+    assertThat(memoryAdmission.getReservedHeap()).isEqualTo(10_000L);
+
+    assertThat(peekUuid()).isNull();
+    assertThat(memoryAdmission.getReservedHeap()).isZero();
+  }
+
+  @Test
+  public void report_size_is_ignored_when_admission_control_is_disabled() {
+    ComponentDto project1 = db.components().insertPrivateProject();
+    ComponentDto project2 = db.components().insertPrivateProject();
+    insertPending("u1", project1, null);
+    insertReportSize("u1", 6_000L);
+    insertPending("u2", project2, null);
+    insertReportSize("u2", 6_000L);
+
+    assertThat(underTest.peek(dbSession, "worker1", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u1");
+    assertThat(underTest.peek(dbSession, "worker2", MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains("u2");
+    assertThat(memoryAdmission.getReservedHeap()).isZero();
+  }
+
+  private void enable(String property) {
+    db.properties().insertProperty(newGlobalPropertyDto(property, "true"));
+  }
+
+  @Nullable
+  private String peekUuid() {
+    Optional<CeQueueDto> peek = underTest.peek(dbSession, WORKER_UUID, MAX_EXECUTION_COUNT);
+    return peek.map(CeQueueDto::getUuid).orElse(null);
+  }
+
+  private CeQueueDto insertPending(String uuid, ComponentDto component, @Nullable BranchType branchType) {
+    return insertPending(uuid, component, CeTaskTypes.REPORT, branchType);
+  }
+
+  private CeQueueDto insertPending(String uuid, ComponentDto component, String taskType, @Nullable BranchType branchType) {
+    system2.setNow(system2.now() + 1_000L);
+    CeQueueDto dto = new CeQueueDto()
+      .setUuid(uuid)
+      .setTaskType(taskType)
+      .setComponentUuid(component.uuid())
+      .setStatus(CeQueueDto.Status.PENDING);
+    db.getDbClient().ceQueueDao().insert(dbSession, dto);
+    if (branchType != null) {
+      db.getDbClient().ceTaskCharacteristicsDao().insert(dbSession, singletonList(new CeTaskCharacteristicDto()
+        .setUuid("c_" + uuid)
+        .setTaskUuid(uuid)
+        .setKey(CeTaskCharacteristicDto.BRANCH_TYPE_KEY)
+        .setValue(branchType.name())));
+    }
+    dbSession.commit();
+    return dto;
+  }
+
+  private static EligibleTaskDto eligible(String taskType, @Nullable BranchType branchType) {
+    return new EligibleTaskDto().setTaskType(taskType).setBranchType(branchType == null ? null : branchType.name());
+  }
+
+  private void insertReportSize(String taskUuid, long reportSize) {
+    db.getDbClient().ceTaskCharacteristicsDao().insert(dbSession, singletonList(new CeTaskCharacteristicDto()
+      .setUuid("s_" + taskUuid)
+      .setTaskUuid(taskUuid)
+      .setKey(CeTaskCharacteristicDto.REPORT_SIZE_KEY)
+      .setValue(String.valueOf(reportSize))));
+    dbSession.commit();
+  }
+}
@@ -73,6 +73,7 @@ import org.sonar.db.user.UserDao;
 import org.sonar.db.user.UserGroupDao;
 import org.sonar.db.user.UserTokenDao;
 import org.sonar.db.webhook.WebhookDeliveryDao;
+import org.sonar.db.webhook.WebhookQueueDao;
 
 public class DbClient {
 
@@ -124,6 +125,7 @@ public class DbClient {
   private final QProfileChangeDao qProfileChangeDao;
   private final UserPermissionDao userPermissionDao;
   private final WebhookDeliveryDao webhookDeliveryDao;
+  private final WebhookQueueDao webhookQueueDao;
   private final DefaultQProfileDao defaultQProfileDao;
   private final EsQueueDao esQueueDao;
   private final PluginDao pluginDao;
@@ -186,6 +188,7 @@ public class DbClient {
     qProfileChangeDao = getDao(map, QProfileChangeDao.class);
     userPermissionDao = getDao(map, UserPermissionDao.class);
     webhookDeliveryDao = getDao(map, WebhookDeliveryDao.class);
+    webhookQueueDao = getDao(map, WebhookQueueDao.class);
     defaultQProfileDao = getDao(map, DefaultQProfileDao.class);
     esQueueDao = getDao(map, EsQueueDao.class);
     pluginDao = getDao(map, PluginDao.class);
@@ -384,6 +387,10 @@ public class DbClient {
     return webhookDeliveryDao;
   }
 
+  public WebhookQueueDao webhookQueueDao() {
+    return webhookQueueDao;
+  }
+
   public DefaultQProfileDao defaultQProfileDao() {
     return defaultQProfileDao;
   }
@@ -19,6 +19,8 @@
  */
 package org.sonar.db.ce;
 
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
@@ -28,6 +30,8 @@ import org.sonar.api.utils.System2;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 import org.sonar.db.Pagination;
+import org.sonar.db.dialect.MsSql;
+import org.sonar.db.dialect.PostgreSql;
 
 import static java.util.Collections.emptyList;
 import static org.sonar.db.DatabaseUtils.executeLargeUpdates;
@@ -37,8 +41,11 @@ import static org.sonar.db.ce.CeQueueDto.Status.PENDING;
 public class CeQueueDao implements Dao {
 
   private static final Pagination ONE_RESULT_PAGINATION = Pagination.forPage(1).andSize(1);
+  private static final RowBounds ONE_ROW = new RowBounds(0, 1);
+  private static final int SKIP_LOCKED_MIN_POSTGRESQL_VERSION = 905;
 
   private final System2 system2;
+  private volatile Boolean claimQuerySupported;
 
   public CeQueueDao(System2 system2) {
     this.system2 = system2;
@@ -135,17 +142,54 @@ public class CeQueueDao implements Dao {
     return mapper(dbSession).countByStatusAndComponentUuid(status, componentUuid);
   }
 
+  /**
+   * Claims the oldest eligible task for the specified worker.
+   * <p>
+   * When the database supports it, the candidate row is locked while it is claimed and rows locked by concurrent
+   * workers are skipped, so that concurrent calls each claim a distinct task instead of competing for the same one.
+   * Otherwise, the claim relies only on the optimistic {@code updateIf} and an empty result is returned if another
+   * worker claimed the candidate first.
+   * </p>
+   */
   public Optional<CeQueueDto> peek(DbSession session, String workerUuid, int maxExecutionCount) {
-    List<EligibleTaskDto> eligibles = mapper(session).selectEligibleForPeek(maxExecutionCount, ONE_RESULT_PAGINATION);
-    if (eligibles.isEmpty()) {
+    Optional<EligibleTaskDto> eligible = selectEligibleForClaim(session, maxExecutionCount);
+    if (!eligible.isPresent()) {
       return Optional.empty();
     }
+    return tryToClaim(session, eligible.get(), workerUuid);
+  }
 
-    EligibleTaskDto eligible = eligibles.get(0);
-    return tryToPeek(session, eligible, workerUuid);
+  /**
+   * The oldest eligible task, to be claimed in the same transaction with {@link #tryToClaim(DbSession, EligibleTaskDto, String)}.
+   * The task is locked when the database supports it, see {@link #peek(DbSession, String, int)}.
+   */
+  public Optional<EligibleTaskDto> selectEligibleForClaim(DbSession session, int maxExecutionCount) {
+    List<EligibleTaskDto> eligibles = isClaimQuerySupported(session)
+      ? mapper(session).selectEligibleForClaim(maxExecutionCount, ONE_ROW)
+      : mapper(session).selectEligibleForPeek(maxExecutionCount, ONE_RESULT_PAGINATION);
+    return eligibles.stream().findFirst();
   }
 
-  private Optional<CeQueueDto> tryToPeek(DbSession session, EligibleTaskDto eligible, String workerUuid) {
+  /**
+   * Oldest tasks which could be claimed, limited to the oldest pending task of each component. Pending
+   * {@link CeTaskTypes#PROJECT_PURGE} tasks are ignored as long as their component has other pending tasks.
+   * Tasks are ordered by ascending creation date, and first by priority class when {@code prioritized} is {@code true}:
+   * tasks on main branches, then on long-living branches, then on short-living branches, then purge tasks.
+   * No lock is taken, candidates must be claimed with {@link #tryToClaim(DbSession, EligibleTaskDto, String)}.
+   */
+  public List<EligibleTaskDto> selectEligibleCandidates(DbSession session, int maxExecutionCount, boolean prioritized, int limit) {
+    return mapper(session).selectEligibleCandidates(maxExecutionCount, prioritized, new RowBounds(0, limit));
+  }
+
+  /**
+   * Claims the specified task for the specified worker, unless it has been claimed or updated concurrently.
+   * <p>
+   * On MsSQL, the eligibility subqueries skip the rows locked by concurrent claims ({@code READPAST}) and may return a
+   * task of a component for which another task is being claimed. Such a claim is released once committed, see
+   * {@link #releaseIfNotFirstInProgress(DbSession, CeQueueDto)}.
+   * </p>
+   */
+  public Optional<CeQueueDto> tryToClaim(DbSession session, EligibleTaskDto eligible, String workerUuid) {
     long now = system2.now();
     int touchedRows = mapper(session).updateIf(eligible.getUuid(),
       new UpdateIf.NewProperties(IN_PROGRESS, workerUuid, eligible.getExecutionCount() + 1, now, now),
@@ -156,9 +200,59 @@ public class CeQueueDao implements Dao {
 
     CeQueueDto result = mapper(session).selectByUuid(eligible.getUuid());
     session.commit();
+    if (MsSql.ID.equals(session.getConfiguration().getDatabaseId()) && releaseIfNotFirstInProgress(session, result)) {
+      return Optional.empty();
+    }
     return Optional.of(result);
   }
 
+  /**
+   * Sets back the specified claimed task to {@link CeQueueDto.Status#PENDING} if an older task of the same component
+   * is in progress. When two tasks of a component have been claimed concurrently, only the oldest one is kept.
+   *
+   * @return {@code true} if the task has been released
+   */
+  boolean releaseIfNotFirstInProgress(DbSession session, CeQueueDto claimed) {
+    String componentUuid = claimed.getComponentUuid();
+    if (componentUuid == null) {
+      return false;
+    }
+    Optional<CeQueueDto> firstInProgress = mapper(session).selectByComponentUuid(componentUuid).stream()
+      .filter(dto -> dto.getStatus() == IN_PROGRESS)
+      .findFirst();
+    if (!firstInProgress.isPresent() || firstInProgress.get().getUuid().equals(claimed.getUuid())) {
+      return false;
+    }
+
+    int touchedRows = mapper(session).updateIf(claimed.getUuid(),
+      new UpdateIf.NewProperties(PENDING, null, claimed.getExecutionCount() - 1, null, system2.now()),
+      new UpdateIf.OldProperties(IN_PROGRESS, claimed.getExecutionCount()));
+    session.commit();
+    return touchedRows == 1;
+  }
+
+  /**
+   * {@code SKIP LOCKED} is available only since PostgreSQL 9.5. On other databases, the claim query either skips
+   * locked rows ({@code SKIP LOCKED} on Oracle, {@code READPAST} on MsSQL) or is a plain select (H2, MySQL).
+   */
+  private boolean isClaimQuerySupported(DbSession session) {
+    Boolean supported = claimQuerySupported;
+    if (supported == null) {
+      supported = !PostgreSql.ID.equals(session.getConfiguration().getDatabaseId()) || isPostgreSqlVersionAtLeast(session, SKIP_LOCKED_MIN_POSTGRESQL_VERSION);
+      claimQuerySupported = supported;
+    }
+    return supported;
+  }
+
+  private static boolean isPostgreSqlVersionAtLeast(DbSession session, int minVersion) {
+    try {
+      DatabaseMetaData metaData = session.getConnection().getMetaData();
+      return metaData.getDatabaseMajorVersion() * 100 + metaData.getDatabaseMinorVersion() >= minVersion;
+    } catch (SQLException e) {
+      throw new IllegalStateException("Failed to read database version", e);
+    }
+  }
+
   private static CeQueueMapper mapper(DbSession session) {
     return session.getMapper(CeQueueMapper.class);
   }
@@ -38,6 +38,20 @@ public interface CeQueueMapper {
 
   List<EligibleTaskDto> selectEligibleForPeek(@Param("maxExecutionCount") int maxExecutionCount, @Param("pagination") Pagination pagination);
 
+  /**
+   * Select the oldest eligible task, excluding tasks which are not the oldest pending task of their component.
+   * On PostgreSQL, Oracle and MsSQL, the returned row is locked until the end of the transaction and rows already
+   * locked by other transactions are skipped ({@code FOR UPDATE SKIP LOCKED} or {@code READPAST}).
+   */
+  List<EligibleTaskDto> selectEligibleForClaim(@Param("maxExecutionCount") int maxExecutionCount, RowBounds rowBounds);
+
+  /**
+   * Same criteria as {@link #selectEligibleForClaim(int, RowBounds)} but without any lock. When {@code prioritized}
+   * is {@code true}, tasks are ordered by priority class before creation date.
+   */
+  List<EligibleTaskDto> selectEligibleCandidates(@Param("maxExecutionCount") int maxExecutionCount, @Param("prioritized") boolean prioritized,
+    RowBounds rowBounds);
+
   @CheckForNull
   CeQueueDto selectByUuid(@Param("uuid") String uuid);
 
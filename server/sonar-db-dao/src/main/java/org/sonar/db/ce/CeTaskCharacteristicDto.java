@@ -23,6 +23,15 @@ public class CeTaskCharacteristicDto {
 
   public static final String BRANCH_KEY = "branch";
   public static final String BRANCH_TYPE_KEY = "branchType";
+  /**
+   * Durations of the steps executed by the Compute Engine, in milliseconds
+   */
+  public static final String STEP_DURATIONS_KEY = "stepDurations";
+  /**
+   * Size of the analysis report, in bytes, as received by the server
+   */
+  public static final String REPORT_SIZE_KEY = "reportSize";
+  public static final int MAX_VALUE_LENGTH = 4_000;
 
   private String uuid;
   private String taskUuid;
@@ -23,6 +23,11 @@ public final class CeTaskTypes {
   
   public static final String REPORT = "REPORT";
 
+  /**
+   * Housekeeping of the history of a project, branch or view, executed after its analysis
+   */
+  public static final String PROJECT_PURGE = "PROJECT_PURGE";
+
   private CeTaskTypes() {
     // only statics
   }
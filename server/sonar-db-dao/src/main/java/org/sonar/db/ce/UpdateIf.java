@@ -39,7 +39,7 @@ final class UpdateIf {
     private final long updatedAt;
 
     NewProperties(CeQueueDto.Status status, @Nullable String workerUuid, int executionCount,
-      Long startedAt, long updatedAt) {
+      @Nullable Long startedAt, long updatedAt) {
       this.status = requireNonNull(status, "status can't be null");
       this.workerUuid = workerUuid;
       this.executionCount = executionCount;
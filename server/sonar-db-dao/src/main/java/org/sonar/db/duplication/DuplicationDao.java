@@ -22,10 +22,12 @@ package org.sonar.db.duplication;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
+import static org.sonar.db.DatabaseUtils.executeLargeInputsWithoutOutput;
 
 public class DuplicationDao implements Dao {
 
@@ -38,6 +40,34 @@ public class DuplicationDao implements Dao {
       partition -> session.getMapper(DuplicationMapper.class).selectCandidates(analysisUuid, language, partition));
   }
 
+  /**
+   * Same as {@link #selectCandidates(DbSession, String, String, Collection)} but rows are streamed to {@code handler}
+   * instead of being loaded in memory, so that the hashes of many files can be looked up at once.
+   * Hashes are expected to be unique.
+   *
+   * @param analysisUuid snapshot id of the project from the previous analysis (islast=true)
+   */
+  public void scrollCandidates(DbSession session, @Nullable String analysisUuid, String language, Collection<String> hashes,
+    ResultHandler<DuplicationUnitDto> handler) {
+    DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+    executeLargeInputsWithoutOutput(hashes, partition -> mapper.scrollCandidates(analysisUuid, language, partition, handler));
+  }
+
+  /**
+   * Streams all the blocks of the last analyses of enabled files, whatever their project or language.
+   */
+  public void scrollAllForIndexing(DbSession session, ResultHandler<IndexedDuplicationUnitDto> handler) {
+    session.getMapper(DuplicationMapper.class).scrollAllForIndexing(handler);
+  }
+
+  /**
+   * Streams the blocks of enabled files of the specified analyses, if they are the last analyses of their project or branch.
+   */
+  public void scrollForIndexing(DbSession session, Collection<String> analysisUuids, ResultHandler<IndexedDuplicationUnitDto> handler) {
+    DuplicationMapper mapper = session.getMapper(DuplicationMapper.class);
+    executeLargeInputsWithoutOutput(analysisUuids, partition -> mapper.scrollForIndexing(partition, handler));
+  }
+
   /**
    * Insert rows in the table DUPLICATIONS_INDEX.
    * Note that generated ids are not returned.
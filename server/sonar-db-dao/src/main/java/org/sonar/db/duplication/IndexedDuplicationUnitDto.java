@@ -0,0 +1,125 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.duplication;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Duplication block of the last analysis of a project, with the information on its file required to look for
+ * cross project duplications.
+ */
+public final class IndexedDuplicationUnitDto {
+
+  private String analysisUuid;
+  private String rootComponentUuid;
+  private String componentUuid;
+  private String componentKey;
+  private String language;
+  private String hash;
+  private int indexInFile;
+  private int startLine;
+  private int endLine;
+
+  public String getAnalysisUuid() {
+    return analysisUuid;
+  }
+
+  public IndexedDuplicationUnitDto setAnalysisUuid(String analysisUuid) {
+    this.analysisUuid = analysisUuid;
+    return this;
+  }
+
+  /**
+   * Uuid of the project or of the branch which has been analyzed.
+   */
+  public String getRootComponentUuid() {
+    return rootComponentUuid;
+  }
+
+  public IndexedDuplicationUnitDto setRootComponentUuid(String rootComponentUuid) {
+    this.rootComponentUuid = rootComponentUuid;
+    return this;
+  }
+
+  public String getComponentUuid() {
+    return componentUuid;
+  }
+
+  public IndexedDuplicationUnitDto setComponentUuid(String componentUuid) {
+    this.componentUuid = componentUuid;
+    return this;
+  }
+
+  public String getComponentKey() {
+    return componentKey;
+  }
+
+  public IndexedDuplicationUnitDto setComponentKey(String componentKey) {
+    this.componentKey = componentKey;
+    return this;
+  }
+
+  @CheckForNull
+  public String getLanguage() {
+    return language;
+  }
+
+  public IndexedDuplicationUnitDto setLanguage(@Nullable String language) {
+    this.language = language;
+    return this;
+  }
+
+  public String getHash() {
+    return hash;
+  }
+
+  public IndexedDuplicationUnitDto setHash(String hash) {
+    this.hash = hash;
+    return this;
+  }
+
+  public int getIndexInFile() {
+    return indexInFile;
+  }
+
+  public IndexedDuplicationUnitDto setIndexInFile(int indexInFile) {
+    this.indexInFile = indexInFile;
+    return this;
+  }
+
+  public int getStartLine() {
+    return startLine;
+  }
+
+  public IndexedDuplicationUnitDto setStartLine(int startLine) {
+    this.startLine = startLine;
+    return this;
+  }
+
+  public int getEndLine() {
+    return endLine;
+  }
+
+  public IndexedDuplicationUnitDto setEndLine(int endLine) {
+    this.endLine = endLine;
+    return this;
+  }
+}
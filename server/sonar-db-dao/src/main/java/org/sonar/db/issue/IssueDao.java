@@ -94,6 +94,20 @@ public class IssueDao implements Dao {
     return mapper(session).selectComponentUuidsOfOpenIssuesForProjectUuid(projectUuid);
   }
 
+  /**
+   * Keys of all the issues of the given components, including closed issues.
+   */
+  public List<String> selectKeysByComponentUuids(DbSession dbSession, Collection<String> componentUuids) {
+    return executeLargeInputs(componentUuids, mapper(dbSession)::selectKeysByComponentUuids);
+  }
+
+  /**
+   * Number of issues of the components of the given project or branch, including closed issues.
+   */
+  public int countByProjectUuid(DbSession dbSession, String projectUuid) {
+    return mapper(dbSession).countByProjectUuid(projectUuid);
+  }
+
   public void scrollNonClosedByComponentUuid(DbSession dbSession, String componentUuid, ResultHandler<IssueDto> handler) {
     mapper(dbSession).scrollNonClosedByComponentUuid(componentUuid, handler);
   }
@@ -111,6 +125,15 @@ public class IssueDao implements Dao {
     return mapper(dbSession).selectIssueGroupsByBaseComponent(baseComponent, leakPeriodBeginningDate);
   }
 
+  /**
+   * Aggregates the groups of non-closed issues of each of the given components, including the issues of their
+   * descendants. Each group relates to one of the requested components, whose uuid is provided by
+   * {@link IssueGroupDto#getComponentUuid()}.
+   */
+  public List<IssueGroupDto> selectIssueGroupsByComponentUuids(DbSession dbSession, Collection<String> componentUuids, long leakPeriodBeginningDate) {
+    return executeLargeInputs(componentUuids, partition -> mapper(dbSession).selectIssueGroupsByComponentUuids(partition, leakPeriodBeginningDate));
+  }
+
   public void insert(DbSession session, IssueDto dto) {
     mapper(session).insert(dto);
   }
@@ -36,6 +36,10 @@ public interface IssueMapper {
 
   List<ShortBranchIssueDto> selectOpenByComponentUuids(List<String> componentUuids);
 
+  List<String> selectKeysByComponentUuids(@Param("componentUuids") List<String> componentUuids);
+
+  int countByProjectUuid(@Param("projectUuid") String projectUuid);
+
   void insert(IssueDto issue);
 
   int update(IssueDto issue);
@@ -52,4 +56,8 @@ public interface IssueMapper {
   Collection<IssueGroupDto> selectIssueGroupsByBaseComponent(
     @Param("baseComponent") ComponentDto baseComponent,
     @Param("leakPeriodBeginningDate") long leakPeriodBeginningDate);
+
+  List<IssueGroupDto> selectIssueGroupsByComponentUuids(
+    @Param("componentUuids") Collection<String> componentUuids,
+    @Param("leakPeriodBeginningDate") long leakPeriodBeginningDate);
 }
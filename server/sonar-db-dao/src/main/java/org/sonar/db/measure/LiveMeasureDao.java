@@ -33,6 +33,7 @@ import org.sonar.db.component.ComponentDto;
 
 import static java.util.Collections.singletonList;
 import static org.sonar.db.DatabaseUtils.executeLargeInputs;
+import static org.sonar.db.DatabaseUtils.executeLargeUpdates;
 
 public class LiveMeasureDao implements Dao {
 
@@ -78,6 +79,14 @@ public class LiveMeasureDao implements Dao {
     mapper(dbSession).selectTreeByQuery(query, baseComponent.uuid(), query.getUuidPath(baseComponent), resultHandler);
   }
 
+  /**
+   * Measures of all the components of a project, ordered by component and by metric. Rows are streamed so that they
+   * are not all loaded in memory.
+   */
+  public void scrollByProjectUuid(DbSession dbSession, String projectUuid, ResultHandler<LiveMeasureDto> resultHandler) {
+    mapper(dbSession).scrollByProjectUuid(projectUuid, resultHandler);
+  }
+
   public void insert(DbSession dbSession, LiveMeasureDto dto) {
     mapper(dbSession).insert(dto, Uuids.create(), null, system2.now());
   }
@@ -90,6 +99,25 @@ public class LiveMeasureDao implements Dao {
     }
   }
 
+  /**
+   * @return the number of updated rows, 0 if the measure does not exist
+   */
+  public int update(DbSession dbSession, LiveMeasureDto dto) {
+    return mapper(dbSession).update(dto, null, system2.now());
+  }
+
+  public void deleteByComponentUuidAndMetricIds(DbSession dbSession, String componentUuid, Collection<Integer> metricIds) {
+    LiveMeasureMapper mapper = mapper(dbSession);
+    executeLargeUpdates(metricIds, partition -> mapper.deleteByComponentUuidAndMetricIds(componentUuid, partition));
+  }
+
+  /**
+   * Delete all the measures of the specified components
+   */
+  public void deleteByComponentUuids(DbSession dbSession, Collection<String> componentUuids) {
+    executeLargeUpdates(componentUuids, mapper(dbSession)::deleteByComponentUuids);
+  }
+
   /**
    * Delete the rows that do NOT have the specified marker
    */
@@ -41,6 +41,10 @@ public interface LiveMeasureMapper {
     @Param("baseUuidPath") String baseUuidPath,
     ResultHandler<LiveMeasureDto> resultHandler);
 
+  void scrollByProjectUuid(
+    @Param("projectUuid") String projectUuid,
+    ResultHandler<LiveMeasureDto> resultHandler);
+
   void insert(
     @Param("dto") LiveMeasureDto dto,
     @Param("uuid") String uuid,
@@ -52,6 +56,12 @@ public interface LiveMeasureMapper {
     @Nullable @Param("marker") String marker,
     @Param("now") long now);
 
+  void deleteByComponentUuidAndMetricIds(
+    @Param("componentUuid") String componentUuid,
+    @Param("metricIds") List<Integer> metricIds);
+
+  void deleteByComponentUuids(@Param("componentUuids") List<String> componentUuids);
+
   void deleteByProjectUuidExcludingMarker(
     @Param("projectUuid") String projectUuid,
     @Param("marker") String marker);
@@ -23,6 +23,7 @@ import com.google.common.collect.Lists;
 import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.db.Dao;
 import org.sonar.db.DbSession;
 
@@ -83,6 +84,14 @@ public class MeasureDao implements Dao {
       ids -> mapper(dbSession).selectPastMeasuresOnSingleAnalysis(componentUuid, analysisUuid, ids));
   }
 
+  /**
+   * Streams all the measures of an analysis, ordered by component uuid, so that they can be merged with the measures
+   * of another analysis without loading them in memory.
+   */
+  public void scrollPastMeasures(DbSession dbSession, String analysisUuid, ResultHandler<PastMeasureDto> handler) {
+    mapper(dbSession).scrollPastMeasuresOfAnalysis(analysisUuid, handler);
+  }
+
   /**
    * Select measures of:
    * - one component
@@ -100,6 +109,10 @@ public class MeasureDao implements Dao {
     mapper(session).insert(measureDto);
   }
 
+  /**
+   * Inserts the measures one by one. When the session is a batch session, statements are sent as a JDBC batch,
+   * which is faster than multi-row INSERT statements (see MeasureDaoBenchmarkTest).
+   */
   public void insert(DbSession session, Collection<MeasureDto> items) {
     for (MeasureDto item : items) {
       insert(session, item);
@@ -28,6 +28,8 @@ public class PastMeasureDto {
 
   private int metricId;
 
+  private String componentUuid;
+
   @CheckForNull
   private Double value;
 
@@ -53,4 +55,13 @@ public class PastMeasureDto {
     this.metricId = i;
     return this;
   }
+
+  public String getComponentUuid() {
+    return componentUuid;
+  }
+
+  PastMeasureDto setComponentUuid(String componentUuid) {
+    this.componentUuid = componentUuid;
+    return this;
+  }
 }
@@ -21,12 +21,14 @@ package org.sonar.db.purge;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.BooleanSupplier;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -59,15 +61,35 @@ public class PurgeDao implements Dao {
   }
 
   public void purge(DbSession session, PurgeConfiguration conf, PurgeListener listener, PurgeProfiler profiler) {
+    purge(session, conf, listener, profiler, () -> true);
+  }
+
+  /**
+   * Same as {@link #purge(DbSession, PurgeConfiguration, PurgeListener, PurgeProfiler)}, but {@code continuePurge} is
+   * called between the phases of the purge, once the deletions of the previous phase are committed. The purge stops
+   * as soon as it returns {@code false}.
+   *
+   * @return {@code true} if all the phases have been executed
+   */
+  public boolean purge(DbSession session, PurgeConfiguration conf, PurgeListener listener, PurgeProfiler profiler, BooleanSupplier continuePurge) {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
     String rootUuid = conf.rootProjectIdUuid().getUuid();
-    deleteAbortedAnalyses(rootUuid, commands);
-    deleteDataOfComponentsWithoutHistoricalData(session, rootUuid, conf.getScopesWithoutHistoricalData(), commands);
-    purgeAnalyses(commands, rootUuid);
-    purgeDisabledComponents(session, conf, listener);
-    deleteOldClosedIssues(conf, mapper, listener);
-    purgeStaleBranches(commands, conf, mapper, rootUuid);
+    List<Runnable> phases = Arrays.asList(
+      () -> deleteAbortedAnalyses(rootUuid, commands),
+      () -> deleteDataOfComponentsWithoutHistoricalData(session, rootUuid, conf.getScopesWithoutHistoricalData(), commands),
+      () -> purgeAnalyses(commands, rootUuid),
+      () -> purgeDisabledComponents(session, conf, listener),
+      () -> deleteOldClosedIssues(conf, mapper, listener),
+      () -> purgeStaleBranches(commands, conf, mapper, rootUuid));
+    for (int i = 0; i < phases.size(); i++) {
+      if (i > 0 && !continuePurge.getAsBoolean()) {
+        return false;
+      }
+      phases.get(i).run();
+      session.commit();
+    }
+    return true;
   }
 
   private static void purgeStaleBranches(PurgeCommands commands, PurgeConfiguration conf, PurgeMapper mapper, String rootUuid) {
@@ -142,7 +164,11 @@ public class PurgeDao implements Dao {
     purgeCommands.deleteComponentMeasures(analysisUuids, componentWithoutHistoricalDataUuids);
   }
 
-  private void purgeDisabledComponents(DbSession session, PurgeConfiguration conf, PurgeListener listener) {
+  /**
+   * Deletes the sources and resolves the issues of the components disabled by the last analysis of the root component.
+   * This is part of {@link #purge(DbSession, PurgeConfiguration, PurgeListener, PurgeProfiler)}.
+   */
+  public void purgeDisabledComponents(DbSession session, PurgeConfiguration conf, PurgeListener listener) {
     PurgeMapper mapper = mapper(session);
     executeLargeInputs(conf.getDisabledComponentUuids(),
       input -> {
@@ -44,6 +44,15 @@ public class FileSourceDao implements Dao {
     return mapper(session).select(fileUuid, Type.SOURCE);
   }
 
+  /**
+   * Same as {@link #selectSourceByFileUuid(DbSession, String)} but without the column BINARY_DATA,
+   * so that SCM data can be loaded without reading and decompressing the sources of the file.
+   */
+  @CheckForNull
+  public FileSourceDto selectScmDataByFileUuid(DbSession session, String fileUuid) {
+    return mapper(session).selectScmData(fileUuid, Type.SOURCE);
+  }
+
   @CheckForNull
   public FileSourceDto selectTest(DbSession dbSession, String fileUuid) {
     return mapper(dbSession).select(fileUuid, Type.TEST);
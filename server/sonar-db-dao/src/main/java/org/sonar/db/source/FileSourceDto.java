@@ -25,13 +25,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import net.jpountz.lz4.LZ4BlockInputStream;
 import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.sonar.db.protobuf.DbFileSources;
 
 import static java.lang.String.format;
@@ -49,6 +54,8 @@ public class FileSourceDto {
   private String lineHashes;
   private String srcHash;
   private byte[] binaryData;
+  private byte[] binaryScmData;
+  private boolean hasScmData;
   private String dataType;
   private String dataHash;
   private String revision;
@@ -140,6 +147,20 @@ public class FileSourceDto {
     }
   }
 
+  /**
+   * MD5 of the serialized protobuf message, before compression. It is the value of the column FILE_SOURCES.DATA_HASH
+   * for sources, so that unchanged sources can be detected without being compressed.
+   */
+  public static String hashSourceData(DbFileSources.Data data) {
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    try (DigestOutputStream output = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, md5)) {
+      data.writeTo(output);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to serialize source data", e);
+    }
+    return Hex.encodeHexString(md5.digest());
+  }
+
   public static List<DbFileSources.Test> decodeTestData(byte[] binaryData) {
     // stream is always closed
     return decodeTestData(new ByteArrayInputStream(binaryData));
@@ -231,6 +252,53 @@ public class FileSourceDto {
     return this;
   }
 
+  /**
+   * Serialized value of protobuf message {@link org.sonar.db.protobuf.DbFileSources.ScmData}
+   */
+  @CheckForNull
+  public byte[] getBinaryScmData() {
+    return binaryScmData;
+  }
+
+  public FileSourceDto setBinaryScmData(@Nullable byte[] binaryScmData) {
+    this.binaryScmData = binaryScmData;
+    this.hasScmData = binaryScmData != null;
+    return this;
+  }
+
+  /**
+   * SCM data of the lines, stored in column SCM_DATA. It's {@code null} on the rows which
+   * have not been updated since 7.1, in which case SCM data is read from {@link #getSourceData()}.
+   */
+  @CheckForNull
+  public DbFileSources.ScmData getScmData() {
+    if (binaryScmData == null) {
+      return null;
+    }
+    try {
+      return DbFileSources.ScmData.parseFrom(binaryScmData);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException(format("Fail to deserialize SCM data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid), e);
+    }
+  }
+
+  public FileSourceDto setScmData(DbFileSources.ScmData scmData) {
+    return setBinaryScmData(scmData.toByteArray());
+  }
+
+  /**
+   * Whether column SCM_DATA is populated. Unlike {@link #getBinaryScmData()}, it's also
+   * loaded when selecting the hashes of the files of a project.
+   */
+  public boolean hasScmData() {
+    return hasScmData;
+  }
+
+  public FileSourceDto setHasScmData(boolean hasScmData) {
+    this.hasScmData = hasScmData;
+    return this;
+  }
+
   @CheckForNull
   public String getLineHashes() {
     return lineHashes;
@@ -0,0 +1,90 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.webhook;
+
+import java.util.Collection;
+import java.util.List;
+import org.sonar.api.utils.System2;
+import org.sonar.core.util.UuidFactory;
+import org.sonar.db.Dao;
+import org.sonar.db.DbSession;
+
+import static org.sonar.db.DatabaseUtils.executeLargeUpdates;
+
+/**
+ * Webhook deliveries which are requested but not completed yet. A row is claimed by the process which delivers it,
+ * so that it is not delivered concurrently by another process. Claims must be refreshed regularly, the rows whose
+ * claim is older than a given date are considered as abandoned, for example because the process crashed.
+ */
+public class WebhookQueueDao implements Dao {
+
+  private final System2 system2;
+  private final UuidFactory uuidFactory;
+
+  public WebhookQueueDao(System2 system2, UuidFactory uuidFactory) {
+    this.system2 = system2;
+    this.uuidFactory = uuidFactory;
+  }
+
+  /**
+   * Inserts an unclaimed row. Uuid and date of creation are generated.
+   */
+  public WebhookQueueDto insert(DbSession dbSession, WebhookQueueDto dto) {
+    dto.setUuid(uuidFactory.create());
+    dto.setCreatedAt(system2.now());
+    mapper(dbSession).insert(dto);
+    return dto;
+  }
+
+  /**
+   * The oldest rows which are not claimed or whose claim is older than {@code claimedBefore}.
+   */
+  public List<WebhookQueueDto> selectUnclaimed(DbSession dbSession, long claimedBefore, int limit) {
+    return mapper(dbSession).selectUnclaimed(claimedBefore, limit);
+  }
+
+  /**
+   * Claims the row if it's not claimed or if its claim is older than {@code claimedBefore}.
+   *
+   * @return false if the row does not exist anymore or if it is claimed by another process
+   */
+  public boolean claim(DbSession dbSession, String uuid, long claimedBefore) {
+    return mapper(dbSession).claim(uuid, system2.now(), claimedBefore) == 1;
+  }
+
+  public void refreshClaims(DbSession dbSession, Collection<String> uuids) {
+    long now = system2.now();
+    WebhookQueueMapper mapper = mapper(dbSession);
+    executeLargeUpdates(uuids, partition -> mapper.updateClaims(partition, now));
+  }
+
+  public void unclaim(DbSession dbSession, Collection<String> uuids) {
+    WebhookQueueMapper mapper = mapper(dbSession);
+    executeLargeUpdates(uuids, partition -> mapper.updateClaims(partition, null));
+  }
+
+  public void delete(DbSession dbSession, String uuid) {
+    mapper(dbSession).delete(uuid);
+  }
+
+  private static WebhookQueueMapper mapper(DbSession dbSession) {
+    return dbSession.getMapper(WebhookQueueMapper.class);
+  }
+}
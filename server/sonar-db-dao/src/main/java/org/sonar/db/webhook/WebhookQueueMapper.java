@@ -0,0 +1,36 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.webhook;
+
+import java.util.List;
+import org.apache.ibatis.annotations.Param;
+
+public interface WebhookQueueMapper {
+
+  void insert(@Param("dto") WebhookQueueDto dto);
+
+  List<WebhookQueueDto> selectUnclaimed(@Param("claimedBefore") long claimedBefore, @Param("limit") int limit);
+
+  int claim(@Param("uuid") String uuid, @Param("now") long now, @Param("claimedBefore") long claimedBefore);
+
+  void updateClaims(@Param("uuids") List<String> uuids, @Param("claimedAt") Long claimedAt);
+
+  void delete(@Param("uuid") String uuid);
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.ce;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.Pagination;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.db.ce.CeQueueDto.Status.PENDING;
+
+/**
+ * Contention of the workers claiming tasks, with {@link CeQueueDao#peek(DbSession, String, int)} compared to the
+ * former peek, which selected the oldest eligible task without lock and then tried to claim it.
+ * Run with the profile "benchmarks".
+ */
+public class CeQueueClaimBenchmarkTest {
+
+  private static final Logger LOGGER = Loggers.get(CeQueueClaimBenchmarkTest.class);
+  private static final long INIT_TIME = 1_450_000_000_000L;
+  private static final int MAX_EXECUTION_COUNT = 2;
+  private static final int WORKERS = 8;
+  private static final int COMPONENTS = 200;
+  private static final int TASKS_PER_COMPONENT = 10;
+  private static final int TASKS = COMPONENTS * TASKS_PER_COMPONENT;
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  private CeQueueDao underTest = new CeQueueDao(System2.INSTANCE);
+
+  @Test
+  public void claim_with_lock_on_selected_row() throws Exception {
+    run("claim", (session, workerUuid) -> underTest.peek(session, workerUuid, MAX_EXECUTION_COUNT));
+  }
+
+  @Test
+  public void baseline_select_then_claim() throws Exception {
+    run("baseline", (session, workerUuid) -> {
+      List<EligibleTaskDto> eligibles = session.getMapper(CeQueueMapper.class)
+        .selectEligibleForPeek(MAX_EXECUTION_COUNT, Pagination.forPage(1).andSize(1));
+      if (eligibles.isEmpty()) {
+        return Optional.empty();
+      }
+      return underTest.tryToClaim(session, eligibles.get(0), workerUuid);
+    });
+  }
+
+  private void run(String name, Claimer claimer) throws Exception {
+    for (int i = 0; i < TASKS; i++) {
+      underTest.insert(db.getSession(), new CeQueueDto()
+        .setUuid("TASK_" + i)
+        .setTaskType(CeTaskTypes.REPORT)
+        .setComponentUuid("PROJECT_" + (i % COMPONENTS))
+        .setStatus(PENDING)
+        .setCreatedAt(INIT_TIME + i)
+        .setUpdatedAt(INIT_TIME + i));
+    }
+    db.commit();
+
+    Set<String> claimedUuids = ConcurrentHashMap.newKeySet();
+    AtomicInteger duplicateClaims = new AtomicInteger();
+    AtomicInteger emptyPeeks = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(WORKERS);
+    long start = System.nanoTime();
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int w = 0; w < WORKERS; w++) {
+        String workerUuid = "worker_" + w;
+        futures.add(executor.submit(() -> {
+          while (claimedUuids.size() < TASKS) {
+            try (DbSession session = db.getDbClient().openSession(false)) {
+              Optional<CeQueueDto> claimed = claimer.claim(session, workerUuid);
+              if (!claimed.isPresent()) {
+                emptyPeeks.incrementAndGet();
+                continue;
+              }
+              if (!claimedUuids.add(claimed.get().getUuid())) {
+                duplicateClaims.incrementAndGet();
+              }
+              underTest.deleteByUuid(session, claimed.get().getUuid());
+              session.commit();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(10, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    LOGGER.info("{}: {} tasks claimed by {} workers in {} ms ({} tasks/s, {} empty peeks)",
+      name, TASKS, WORKERS, durationMs, TASKS * 1_000L / Math.max(durationMs, 1L), emptyPeeks.get());
+    assertThat(claimedUuids).hasSize(TASKS);
+    assertThat(duplicateClaims.get()).isZero();
+  }
+
+  @FunctionalInterface
+  private interface Claimer {
+    Optional<CeQueueDto> claim(DbSession session, String workerUuid);
+  }
+}
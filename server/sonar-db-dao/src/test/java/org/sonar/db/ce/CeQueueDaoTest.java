@@ -22,12 +22,20 @@ package org.sonar.db.ce;
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.junit.Rule;
@@ -36,12 +44,14 @@ import org.mockito.Mockito;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.internal.AlwaysIncreasingSystem2;
 import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 
 import static com.google.common.collect.FluentIterable.from;
 import static com.google.common.collect.Lists.newArrayList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.sonar.db.ce.CeQueueDto.Status.IN_PROGRESS;
@@ -470,6 +480,199 @@ public class CeQueueDaoTest {
     }
   }
 
+  @Test
+  public void peek_skips_worn_out_task_and_returns_next_pending_task() {
+    insert("u1", CeQueueDto.Status.PENDING, MAX_EXECUTION_COUNT);
+    insert("u2", CeQueueDto.Status.PENDING, 0);
+
+    Optional<CeQueueDto> dto = underTest.peek(db.getSession(), WORKER_UUID_1, MAX_EXECUTION_COUNT);
+
+    assertThat(dto.get().getUuid()).isEqualTo("u2");
+  }
+
+  @Test
+  public void selectEligibleCandidates_returns_oldest_pending_task_of_each_component_without_task_in_progress() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 1_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_2, PENDING);
+    system2.setNow(INIT_TIME + 2_000);
+    insert(TASK_UUID_3, COMPONENT_UUID_1, PENDING);
+    system2.setNow(INIT_TIME + 3_000);
+    insert("TASK_4", "PROJECT_3", IN_PROGRESS);
+    insert("TASK_5", "PROJECT_3", PENDING);
+
+    List<EligibleTaskDto> candidates = underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 10);
+
+    assertThat(candidates).extracting(EligibleTaskDto::getUuid).containsExactly(TASK_UUID_1, TASK_UUID_2);
+    assertThat(candidates).extracting(EligibleTaskDto::getComponentUuid).containsExactly(COMPONENT_UUID_1, COMPONENT_UUID_2);
+    assertThat(candidates).extracting(EligibleTaskDto::getCreatedAt).containsExactly(INIT_TIME, INIT_TIME + 1_000);
+    assertThat(underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 1)).hasSize(1);
+  }
+
+  @Test
+  public void selectEligibleCandidates_orders_tasks_by_priority_class_when_prioritized() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, CeTaskTypes.PROJECT_PURGE, PENDING);
+    system2.setNow(INIT_TIME + 1_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_2, PENDING);
+    insertBranchType(TASK_UUID_2, "SHORT");
+    system2.setNow(INIT_TIME + 2_000);
+    insert(TASK_UUID_3, "PROJECT_3", PENDING);
+    insertBranchType(TASK_UUID_3, "LONG");
+    system2.setNow(INIT_TIME + 3_000);
+    insert("TASK_4", "PROJECT_4", PENDING);
+
+    assertThat(underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, true, 10))
+      .extracting(EligibleTaskDto::getUuid, EligibleTaskDto::getBranchType)
+      .containsExactly(tuple("TASK_4", null), tuple(TASK_UUID_3, "LONG"), tuple(TASK_UUID_2, "SHORT"), tuple(TASK_UUID_1, null));
+    assertThat(underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 10))
+      .extracting(EligibleTaskDto::getUuid)
+      .containsExactly(TASK_UUID_1, TASK_UUID_2, TASK_UUID_3, "TASK_4");
+  }
+
+  @Test
+  public void selectEligibleForClaim_returns_task_type_and_branch_type_of_oldest_eligible_task() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    insertBranchType(TASK_UUID_1, "LONG");
+
+    EligibleTaskDto eligible = underTest.selectEligibleForClaim(db.getSession(), MAX_EXECUTION_COUNT).get();
+
+    assertThat(eligible.getUuid()).isEqualTo(TASK_UUID_1);
+    assertThat(eligible.getTaskType()).isEqualTo(CeTaskTypes.REPORT);
+    assertThat(eligible.getBranchType()).isEqualTo("LONG");
+  }
+
+  @Test
+  public void pending_purge_task_does_not_hold_back_newer_tasks_of_same_component() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, CeTaskTypes.PROJECT_PURGE, PENDING);
+    system2.setNow(INIT_TIME + 1_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+
+    List<EligibleTaskDto> candidates = underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 10);
+    assertThat(candidates).extracting(EligibleTaskDto::getUuid).containsExactly(TASK_UUID_2);
+    assertThat(candidates).extracting(EligibleTaskDto::getTaskType).containsExactly(CeTaskTypes.REPORT);
+
+    assertThat(underTest.peek(db.getSession(), WORKER_UUID_1, MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains(TASK_UUID_2);
+    // purge waits for the end of the task in progress
+    assertThat(underTest.peek(db.getSession(), WORKER_UUID_1, MAX_EXECUTION_COUNT)).isEmpty();
+
+    underTest.deleteByUuid(db.getSession(), TASK_UUID_2);
+    assertThat(underTest.peek(db.getSession(), WORKER_UUID_1, MAX_EXECUTION_COUNT).map(CeQueueDto::getUuid)).contains(TASK_UUID_1);
+  }
+
+  @Test
+  public void purge_task_is_not_eligible_as_long_as_component_has_other_pending_tasks() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, CeTaskTypes.PROJECT_PURGE, PENDING);
+    system2.setNow(INIT_TIME + 1_000);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, CeTaskTypes.PROJECT_PURGE, PENDING);
+    system2.setNow(INIT_TIME + 2_000);
+    insert(TASK_UUID_3, COMPONENT_UUID_2, CeTaskTypes.PROJECT_PURGE, PENDING);
+
+    assertThat(underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 10))
+      .extracting(EligibleTaskDto::getUuid)
+      .containsExactly(TASK_UUID_1, TASK_UUID_3);
+
+    system2.setNow(INIT_TIME + 3_000);
+    insert("TASK_4", COMPONENT_UUID_2, PENDING);
+
+    assertThat(underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 10))
+      .extracting(EligibleTaskDto::getUuid)
+      .containsExactly(TASK_UUID_1, "TASK_4");
+  }
+
+  @Test
+  public void tryToClaim_fails_if_task_has_already_been_claimed() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    EligibleTaskDto candidate = underTest.selectEligibleCandidates(db.getSession(), MAX_EXECUTION_COUNT, false, 1).get(0);
+
+    Optional<CeQueueDto> claimed = underTest.tryToClaim(db.getSession(), candidate, WORKER_UUID_1);
+    assertThat(claimed.get().getWorkerUuid()).isEqualTo(WORKER_UUID_1);
+    assertThat(claimed.get().getStatus()).isEqualTo(IN_PROGRESS);
+
+    assertThat(underTest.tryToClaim(db.getSession(), candidate, WORKER_UUID_2)).isEmpty();
+  }
+
+  @Test
+  public void concurrent_workers_claim_each_task_once_and_one_task_per_component_at_a_time() throws Exception {
+    int workers = 4;
+    int components = 10;
+    int tasksPerComponent = 5;
+    for (int i = 0; i < components * tasksPerComponent; i++) {
+      system2.setNow(INIT_TIME + i);
+      insert("TASK_" + i, "PROJECT_" + (i % components), PENDING);
+    }
+
+    Set<String> claimedUuids = ConcurrentHashMap.newKeySet();
+    AtomicInteger duplicateClaims = new AtomicInteger();
+    AtomicInteger sameComponentClaims = new AtomicInteger();
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int w = 0; w < workers; w++) {
+        String workerUuid = "worker_" + w;
+        futures.add(executor.submit(() -> {
+          while (claimedUuids.size() < components * tasksPerComponent) {
+            try (DbSession session = db.getDbClient().openSession(false)) {
+              Optional<CeQueueDto> peek = underTest.peek(session, workerUuid, MAX_EXECUTION_COUNT);
+              if (!peek.isPresent()) {
+                continue;
+              }
+              CeQueueDto task = peek.get();
+              if (!claimedUuids.add(task.getUuid())) {
+                duplicateClaims.incrementAndGet();
+              }
+              if (underTest.countByStatusAndComponentUuid(session, IN_PROGRESS, task.getComponentUuid()) != 1) {
+                sameComponentClaims.incrementAndGet();
+              }
+              underTest.deleteByUuid(session, task.getUuid());
+              session.commit();
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(1, TimeUnit.MINUTES);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertThat(claimedUuids).hasSize(components * tasksPerComponent);
+    assertThat(duplicateClaims.get()).isZero();
+    assertThat(sameComponentClaims.get()).isZero();
+    assertThat(db.countRowsOfTable("ce_queue")).isZero();
+  }
+
+  @Test
+  public void releaseIfNotFirstInProgress_sets_back_to_pending_a_task_claimed_after_another_task_of_its_component() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, IN_PROGRESS);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, PENDING);
+    Optional<CeQueueDto> claimed = underTest.tryToClaim(db.getSession(), eligible(TASK_UUID_2, 0), WORKER_UUID_2);
+    assertThat(claimed).isPresent();
+
+    boolean released = underTest.releaseIfNotFirstInProgress(db.getSession(), claimed.get());
+
+    assertThat(released).isTrue();
+    CeQueueDto task = underTest.selectByUuid(db.getSession(), TASK_UUID_2).get();
+    assertThat(task.getStatus()).isEqualTo(PENDING);
+    assertThat(task.getExecutionCount()).isZero();
+    assertThat(task.getWorkerUuid()).isNull();
+    assertThat(task.getStartedAt()).isNull();
+  }
+
+  @Test
+  public void releaseIfNotFirstInProgress_keeps_the_oldest_task_in_progress_of_its_component() {
+    insert(TASK_UUID_1, COMPONENT_UUID_1, PENDING);
+    insert(TASK_UUID_2, COMPONENT_UUID_1, IN_PROGRESS);
+    insert(TASK_UUID_3, COMPONENT_UUID_2, IN_PROGRESS);
+    Optional<CeQueueDto> claimed = underTest.tryToClaim(db.getSession(), eligible(TASK_UUID_1, 0), WORKER_UUID_1);
+    assertThat(claimed).isPresent();
+
+    boolean released = underTest.releaseIfNotFirstInProgress(db.getSession(), claimed.get());
+
+    assertThat(released).isFalse();
+    assertThat(underTest.selectByUuid(db.getSession(), TASK_UUID_1).get().getStatus()).isEqualTo(IN_PROGRESS);
+  }
+
   @Test
   public void select_by_query() {
     // task status not in query
@@ -629,9 +832,13 @@ public class CeQueueDaoTest {
   }
 
   private CeQueueDto insert(String uuid, String componentUuid, CeQueueDto.Status status) {
+    return insert(uuid, componentUuid, CeTaskTypes.REPORT, status);
+  }
+
+  private CeQueueDto insert(String uuid, String componentUuid, String taskType, CeQueueDto.Status status) {
     CeQueueDto dto = new CeQueueDto();
     dto.setUuid(uuid);
-    dto.setTaskType(CeTaskTypes.REPORT);
+    dto.setTaskType(taskType);
     dto.setComponentUuid(componentUuid);
     dto.setStatus(status);
     dto.setSubmitterLogin("henri");
@@ -640,6 +847,19 @@ public class CeQueueDaoTest {
     return dto;
   }
 
+  private void insertBranchType(String taskUuid, String branchType) {
+    db.getDbClient().ceTaskCharacteristicsDao().insert(db.getSession(), singletonList(new CeTaskCharacteristicDto()
+      .setUuid("c_" + taskUuid)
+      .setTaskUuid(taskUuid)
+      .setKey(CeTaskCharacteristicDto.BRANCH_TYPE_KEY)
+      .setValue(branchType)));
+    db.commit();
+  }
+
+  private static EligibleTaskDto eligible(String uuid, int executionCount) {
+    return new EligibleTaskDto().setUuid(uuid).setExecutionCount(executionCount);
+  }
+
   private static Iterable<Map<String, Object>> upperizeKeys(List<Map<String, Object>> select) {
     return from(select).transform(new Function<Map<String, Object>, Map<String, Object>>() {
       @Nullable
@@ -19,15 +19,20 @@
  */
 package org.sonar.db.duplication;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 
+import static java.util.Arrays.asList;
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class DuplicationDaoTest {
 
@@ -59,6 +64,67 @@ public class DuplicationDaoTest {
     assertThat(blocks).hasSize(2);
   }
 
+  @Test
+  public void scroll_candidates() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<DuplicationUnitDto> blocks = new ArrayList<>();
+    dao.scrollCandidates(dbSession, "u7", "java", asList("aa", "bb"), context -> blocks.add(context.getResultObject()));
+    assertThat(blocks).extracting(DuplicationUnitDto::getComponentKey, DuplicationUnitDto::getHash).containsOnly(tuple("bar-last", "aa"));
+
+    blocks.clear();
+    dao.scrollCandidates(dbSession, null, "java", asList("aa", "bb"), context -> blocks.add(context.getResultObject()));
+    assertThat(blocks).extracting(DuplicationUnitDto::getComponentKey).containsOnly("bar-last", "foo-last");
+  }
+
+  @Test
+  public void scroll_candidates_of_more_hashes_than_the_size_of_a_partition() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+    List<String> hashes = IntStream.range(0, 2_500).mapToObj(i -> "hash" + i).collect(Collectors.toList());
+    hashes.add("aa");
+
+    List<DuplicationUnitDto> blocks = new ArrayList<>();
+    dao.scrollCandidates(dbSession, "u7", "java", hashes, context -> blocks.add(context.getResultObject()));
+
+    assertThat(blocks).extracting(DuplicationUnitDto::getComponentKey).containsExactly("bar-last");
+  }
+
+  @Test
+  public void scroll_all_for_indexing() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<IndexedDuplicationUnitDto> blocks = new ArrayList<>();
+    dao.scrollAllForIndexing(dbSession, context -> blocks.add(context.getResultObject()));
+
+    assertThat(blocks)
+      .extracting(IndexedDuplicationUnitDto::getAnalysisUuid, IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getComponentUuid,
+        IndexedDuplicationUnitDto::getComponentKey, IndexedDuplicationUnitDto::getLanguage, IndexedDuplicationUnitDto::getHash)
+      .containsOnly(
+        tuple("u3", "uuid_root_2", "uuid_2", "bar-last", "java", "aa"),
+        tuple("u7", "uuid_root_4", "uuid_4", "foo-last", "java", "aa"));
+    IndexedDuplicationUnitDto barLast = blocks.stream().filter(b -> b.getComponentKey().equals("bar-last")).findFirst().get();
+    assertThat(barLast.getIndexInFile()).isEqualTo(0);
+    assertThat(barLast.getStartLine()).isEqualTo(1);
+    assertThat(barLast.getEndLine()).isEqualTo(2);
+  }
+
+  @Test
+  public void scroll_for_indexing_the_blocks_of_last_analyses() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<IndexedDuplicationUnitDto> blocks = new ArrayList<>();
+    // u1 is not the last analysis of its project
+    dao.scrollForIndexing(dbSession, asList("u1", "u3"), context -> blocks.add(context.getResultObject()));
+
+    assertThat(blocks)
+      .extracting(IndexedDuplicationUnitDto::getAnalysisUuid, IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getComponentKey)
+      .containsOnly(tuple("u3", "uuid_root_2", "bar-last"));
+  }
+
   @Test
   public void select_component() {
     db.prepareDbUnit(getClass(), "select_component.xml");
@@ -44,7 +44,9 @@ import org.sonar.db.rule.RuleDto;
 import org.sonar.db.rule.RuleTesting;
 
 import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.sonar.db.component.ComponentTesting.newFileDto;
 import static org.sonar.db.component.ComponentTesting.newModuleDto;
 
@@ -207,6 +209,39 @@ public class IssueDaoTest {
       .containsOnly(openIssue.getKey(), reopenedIssue.getKey(), confirmedIssue.getKey(), wontfixIssue.getKey(), fpIssue.getKey());
   }
 
+  @Test
+  public void selectKeysByComponentUuids() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto file1 = db.components().insertComponent(newFileDto(project));
+    ComponentDto file2 = db.components().insertComponent(newFileDto(project));
+    ComponentDto file3 = db.components().insertComponent(newFileDto(project));
+    IssueDto openIssue = db.issues().insert(rule, project, file1, i -> i.setStatus(Issue.STATUS_OPEN).setResolution(null));
+    IssueDto closedIssue = db.issues().insert(rule, project, file1, i -> i.setStatus(Issue.STATUS_CLOSED).setResolution(Issue.RESOLUTION_FIXED));
+    IssueDto otherIssue = db.issues().insert(rule, project, file2);
+    db.issues().insert(rule, project, file3);
+
+    assertThat(underTest.selectKeysByComponentUuids(db.getSession(), asList(file1.uuid(), file2.uuid(), "unknown")))
+      .containsOnly(openIssue.getKey(), closedIssue.getKey(), otherIssue.getKey());
+    assertThat(underTest.selectKeysByComponentUuids(db.getSession(), Collections.emptyList())).isEmpty();
+  }
+
+  @Test
+  public void countByProjectUuid() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertMainBranch();
+    ComponentDto projectBranch = db.components().insertProjectBranch(project);
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    ComponentDto branchFile = db.components().insertComponent(newFileDto(projectBranch));
+    db.issues().insert(rule, project, file, i -> i.setStatus(Issue.STATUS_OPEN).setResolution(null));
+    db.issues().insert(rule, project, file, i -> i.setStatus(Issue.STATUS_CLOSED).setResolution(Issue.RESOLUTION_FIXED));
+    db.issues().insert(rule, projectBranch, branchFile);
+
+    assertThat(underTest.countByProjectUuid(db.getSession(), project.uuid())).isEqualTo(2);
+    assertThat(underTest.countByProjectUuid(db.getSession(), projectBranch.uuid())).isEqualTo(1);
+    assertThat(underTest.countByProjectUuid(db.getSession(), "unknown")).isZero();
+  }
+
   @Test
   public void selectOpenByComponentUuid_should_correctly_map_required_fields() {
     RuleDefinitionDto rule = db.rules().insert();
@@ -289,6 +324,55 @@ public class IssueDaoTest {
     assertThat(result.stream().filter(g -> !g.isInLeak()).mapToLong(IssueGroupDto::getCount).sum()).isEqualTo(3);
   }
 
+  @Test
+  public void selectIssueGroupsByComponentUuids_aggregates_issues_of_descendants() {
+    ComponentDto project = db.components().insertPublicProject();
+    ComponentDto module = db.components().insertComponent(newModuleDto(project));
+    ComponentDto file1 = db.components().insertComponent(newFileDto(module));
+    ComponentDto file2 = db.components().insertComponent(newFileDto(project));
+    ComponentDto otherProject = db.components().insertPublicProject();
+    ComponentDto otherFile = db.components().insertComponent(newFileDto(otherProject));
+    RuleDefinitionDto rule = db.rules().insert();
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setSeverity("CRITICAL").setType(RuleType.BUG).setIssueCreationTime(1_600L));
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setSeverity("CRITICAL").setType(RuleType.BUG).setIssueCreationTime(1_700L));
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setSeverity("MAJOR").setType(RuleType.BUG).setIssueCreationTime(500L));
+    db.issues().insert(rule, project, file2, i -> i.setStatus("RESOLVED").setResolution("FIXED").setSeverity("MAJOR").setType(RuleType.CODE_SMELL).setIssueCreationTime(1_500L));
+    // closed issues and issues of other projects are ignored
+    db.issues().insert(rule, project, file2, i -> i.setStatus("CLOSED").setResolution("REMOVED").setSeverity("MAJOR").setType(RuleType.BUG).setIssueCreationTime(1_500L));
+    db.issues().insert(rule, otherProject, otherFile, i -> i.setStatus("OPEN").setResolution(null).setSeverity("MAJOR").setType(RuleType.BUG).setIssueCreationTime(1_500L));
+
+    List<IssueGroupDto> groups = underTest.selectIssueGroupsByComponentUuids(db.getSession(), asList(project.uuid(), module.uuid(), file2.uuid()), 1_000L);
+
+    assertThat(groups)
+      .extracting(IssueGroupDto::getComponentUuid, IssueGroupDto::getSeverity, IssueGroupDto::getCount, IssueGroupDto::isInLeak)
+      .containsOnly(
+        tuple(project.uuid(), "CRITICAL", 2L, true),
+        tuple(project.uuid(), "MAJOR", 1L, false),
+        tuple(project.uuid(), "MAJOR", 1L, true),
+        tuple(module.uuid(), "CRITICAL", 2L, true),
+        tuple(module.uuid(), "MAJOR", 1L, false),
+        tuple(file2.uuid(), "MAJOR", 1L, true));
+  }
+
+  @Test
+  public void selectIssueGroupsByComponentUuids_escapes_underscores_of_uuids() {
+    ComponentDto project = db.components().insertPublicProject();
+    ComponentDto module = db.components().insertComponent(newModuleDto(project).setUuid("MOD_1"));
+    ComponentDto file = db.components().insertComponent(newFileDto(module));
+    // "_" must not match any character
+    ComponentDto siblingModule = db.components().insertComponent(newModuleDto(project).setUuid("MODX1"));
+    ComponentDto siblingFile = db.components().insertComponent(newFileDto(siblingModule));
+    RuleDefinitionDto rule = db.rules().insert();
+    db.issues().insert(rule, project, file, i -> i.setStatus("OPEN").setResolution(null).setSeverity("CRITICAL").setType(RuleType.BUG));
+    db.issues().insert(rule, project, siblingFile, i -> i.setStatus("OPEN").setResolution(null).setSeverity("MINOR").setType(RuleType.BUG));
+
+    List<IssueGroupDto> groups = underTest.selectIssueGroupsByComponentUuids(db.getSession(), singletonList(module.uuid()), Long.MAX_VALUE);
+
+    assertThat(groups)
+      .extracting(IssueGroupDto::getComponentUuid, IssueGroupDto::getSeverity, IssueGroupDto::getCount)
+      .containsOnly(tuple(module.uuid(), "CRITICAL", 1L));
+  }
+
   private static IssueDto newIssueDto(String key) {
     IssueDto dto = new IssueDto();
     dto.setComponent(new ComponentDto().setDbKey("struts:Action").setId(123L).setUuid("component-uuid"));
@@ -252,6 +252,78 @@ public class LiveMeasureDaoTest {
     verifyPersisted(measure5OtherProject);
   }
 
+  @Test
+  public void scrollByProjectUuid() {
+    LiveMeasureDto measure1 = newLiveMeasure().setProjectUuid("P1").setComponentUuid("C2").setMetricId(1);
+    LiveMeasureDto measure2 = newLiveMeasure().setProjectUuid("P1").setComponentUuid("C1").setMetricId(2);
+    LiveMeasureDto measure3 = newLiveMeasure().setProjectUuid("P1").setComponentUuid("C1").setMetricId(1);
+    LiveMeasureDto measureOtherProject = newLiveMeasure().setProjectUuid("P2");
+    underTest.insert(db.getSession(), measure1);
+    underTest.insert(db.getSession(), measure2);
+    underTest.insert(db.getSession(), measure3);
+    underTest.insert(db.getSession(), measureOtherProject);
+
+    List<LiveMeasureDto> result = new ArrayList<>();
+    underTest.scrollByProjectUuid(db.getSession(), "P1", context -> result.add(context.getResultObject()));
+
+    assertThat(result)
+      .extracting(LiveMeasureDto::getComponentUuid, LiveMeasureDto::getMetricId, LiveMeasureDto::getValue)
+      .containsExactly(
+        tuple("C1", 1, measure3.getValue()),
+        tuple("C1", 2, measure2.getValue()),
+        tuple("C2", 1, measure1.getValue()));
+  }
+
+  @Test
+  public void update() {
+    LiveMeasureDto dto = newLiveMeasure();
+    underTest.insert(db.getSession(), dto);
+
+    dto.setValue(dto.getValue() + 1);
+    dto.setVariation(dto.getVariation() + 10);
+    dto.setData(dto.getDataAsString() + "_new");
+    assertThat(underTest.update(db.getSession(), dto)).isEqualTo(1);
+
+    verifyPersisted(dto);
+    verifyTableSize(1);
+    assertThat(underTest.update(db.getSession(), newLiveMeasure())).isEqualTo(0);
+  }
+
+  @Test
+  public void deleteByComponentUuidAndMetricIds() {
+    LiveMeasureDto measure1 = newLiveMeasure().setComponentUuid("C1").setMetricId(1);
+    LiveMeasureDto measure2 = newLiveMeasure().setComponentUuid("C1").setMetricId(2);
+    LiveMeasureDto measure3 = newLiveMeasure().setComponentUuid("C1").setMetricId(3);
+    LiveMeasureDto measure4 = newLiveMeasure().setComponentUuid("C2").setMetricId(1);
+    underTest.insert(db.getSession(), measure1);
+    underTest.insert(db.getSession(), measure2);
+    underTest.insert(db.getSession(), measure3);
+    underTest.insert(db.getSession(), measure4);
+
+    underTest.deleteByComponentUuidAndMetricIds(db.getSession(), "C1", asList(1, 3));
+
+    verifyTableSize(2);
+    verifyPersisted(measure2);
+    verifyPersisted(measure4);
+  }
+
+  @Test
+  public void deleteByComponentUuids() {
+    LiveMeasureDto measure1 = newLiveMeasure().setComponentUuid("C1").setMetricId(1);
+    LiveMeasureDto measure2 = newLiveMeasure().setComponentUuid("C1").setMetricId(2);
+    LiveMeasureDto measure3 = newLiveMeasure().setComponentUuid("C2").setMetricId(1);
+    LiveMeasureDto measure4 = newLiveMeasure().setComponentUuid("C3").setMetricId(1);
+    underTest.insert(db.getSession(), measure1);
+    underTest.insert(db.getSession(), measure2);
+    underTest.insert(db.getSession(), measure3);
+    underTest.insert(db.getSession(), measure4);
+
+    underTest.deleteByComponentUuids(db.getSession(), asList("C1", "C3"));
+
+    verifyTableSize(1);
+    verifyPersisted(measure3);
+  }
+
   private void verifyTableSize(int expectedSize) {
     assertThat(db.countRowsOfTable(db.getSession(), "live_measures")).isEqualTo(expectedSize);
   }
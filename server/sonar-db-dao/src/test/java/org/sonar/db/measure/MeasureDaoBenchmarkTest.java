@@ -0,0 +1,130 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.measure;
+
+import com.google.common.collect.Lists;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+
+import static org.apache.commons.lang.StringUtils.repeat;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of {@link MeasureDao#insert(DbSession, java.util.Collection)}, which sends single-row INSERT statements
+ * as a JDBC batch, compared to multi-row INSERT statements. Run with the profile "benchmarks".
+ */
+public class MeasureDaoBenchmarkTest {
+
+  private static final Logger LOGGER = Loggers.get(MeasureDaoBenchmarkTest.class);
+  private static final int MEASURES = 20_000;
+  private static final int WARM_UP_MEASURES = 1_000;
+  private static final int ROWS_PER_STATEMENT = 100;
+  private static final String COLUMNS = "value, metric_id, component_uuid, analysis_uuid, text_value, alert_status, alert_text, variation_value_1, measure_data";
+  private static final int COLUMN_COUNT = 9;
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  private MeasureDao underTest = db.getDbClient().measureDao();
+
+  @Test
+  public void compare_batched_single_row_inserts_to_multi_row_inserts() throws SQLException {
+    insertWithBatchedSingleRowStatements(newMeasures(WARM_UP_MEASURES));
+    insertWithMultiRowStatements(newMeasures(WARM_UP_MEASURES));
+
+    long singleRowDuration = insertWithBatchedSingleRowStatements(newMeasures(MEASURES));
+    long multiRowDuration = insertWithMultiRowStatements(newMeasures(MEASURES));
+
+    LOGGER.info("Batched single-row inserts: {} rows/s", MEASURES * 1_000L / Math.max(1L, singleRowDuration));
+    LOGGER.info("Multi-row inserts of {} rows: {} rows/s", ROWS_PER_STATEMENT, MEASURES * 1_000L / Math.max(1L, multiRowDuration));
+    assertThat(db.countRowsOfTable("project_measures")).isEqualTo(2 * WARM_UP_MEASURES + 2 * MEASURES);
+  }
+
+  private long insertWithBatchedSingleRowStatements(List<MeasureDto> measures) {
+    long start = System.currentTimeMillis();
+    try (DbSession dbSession = db.getDbClient().openSession(true)) {
+      underTest.insert(dbSession, measures);
+      dbSession.commit();
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  private long insertWithMultiRowStatements(List<MeasureDto> measures) throws SQLException {
+    long start = System.currentTimeMillis();
+    try (DbSession dbSession = db.getDbClient().openSession(false)) {
+      Connection connection = dbSession.getConnection();
+      String sql = "insert into project_measures (" + COLUMNS + ") values " + repeat("(" + repeat("?", ", ", COLUMN_COUNT) + ")", ", ", ROWS_PER_STATEMENT);
+      try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        for (List<MeasureDto> rows : Lists.partition(measures, ROWS_PER_STATEMENT)) {
+          int index = 1;
+          for (MeasureDto row : rows) {
+            bind(stmt, index, row);
+            index += COLUMN_COUNT;
+          }
+          stmt.addBatch();
+        }
+        stmt.executeBatch();
+      }
+      connection.commit();
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  private static void bind(PreparedStatement stmt, int index, MeasureDto measure) throws SQLException {
+    stmt.setObject(index, measure.getValue(), Types.DOUBLE);
+    stmt.setInt(index + 1, measure.getMetricId());
+    stmt.setString(index + 2, measure.getComponentUuid());
+    stmt.setString(index + 3, measure.getAnalysisUuid());
+    // data of generated measures is short, so it is stored in column text_value
+    stmt.setString(index + 4, measure.getData());
+    stmt.setString(index + 5, measure.getAlertStatus());
+    stmt.setString(index + 6, measure.getAlertText());
+    stmt.setObject(index + 7, measure.getVariation(), Types.DOUBLE);
+    stmt.setNull(index + 8, Types.BINARY);
+  }
+
+  /**
+   * The number of measures must be a multiple of {@link #ROWS_PER_STATEMENT}
+   */
+  private static List<MeasureDto> newMeasures(int count) {
+    List<MeasureDto> measures = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      measures.add(new MeasureDto()
+        .setMetricId(i % 100)
+        .setComponentUuid("component-" + (i / 100))
+        .setAnalysisUuid("analysis")
+        .setValue((double) i)
+        .setData(String.valueOf(i))
+        .setAlertStatus("OK"));
+    }
+    return measures;
+  }
+}
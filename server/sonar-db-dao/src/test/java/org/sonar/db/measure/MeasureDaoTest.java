@@ -19,6 +19,7 @@
  */
 package org.sonar.db.measure;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
@@ -79,6 +80,42 @@ public class MeasureDaoTest {
     assertThat(underTest.selectLastMeasure(dbSession, "_missing_", "_missing_")).isEmpty();
   }
 
+  @Test
+  public void insert_collection_of_measures() {
+    ComponentDto project = db.components().insertPrivateProject();
+    SnapshotDto analysis = insertAnalysis(project.uuid(), true);
+    List<MeasureDto> measures = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      MeasureDto measure = MeasureTesting.newMeasure()
+        .setComponentUuid(project.uuid())
+        .setAnalysisUuid(analysis.getUuid())
+        .setMetricId(i);
+      if (i % 2 == 0) {
+        measure.setValue(null).setData(null).setAlertStatus(null).setAlertText(null).setVariation(i * 0.5);
+      }
+      measures.add(measure);
+    }
+
+    underTest.insert(db.getSession(), measures);
+    db.commit();
+
+    assertThat(db.countRowsOfTable("project_measures")).isEqualTo(250);
+    List<MeasureDto> selected = underTest.selectByQuery(db.getSession(), MeasureQuery.builder()
+      .setAnalysisUuid(analysis.getUuid())
+      .setComponentUuid(project.uuid())
+      .build());
+    assertThat(selected)
+      .usingElementComparatorOnFields("metricId", "componentUuid", "analysisUuid", "value", "variation", "textValue", "alertStatus", "alertText")
+      .containsExactlyInAnyOrder(measures.toArray(new MeasureDto[0]));
+  }
+
+  @Test
+  public void insert_empty_list_of_measures() {
+    underTest.insert(db.getSession(), emptyList());
+
+    assertThat(db.countRowsOfTable("project_measures")).isZero();
+  }
+
   @Test
   public void test_selectMeasure() {
     MetricDto metric = db.measures().insertMetric();
@@ -205,6 +242,24 @@ public class MeasureDaoTest {
     assertThat(result).hasSize(2).extracting(MeasureDto::getData).containsOnly("PROJECT_M1", "PROJECT_M2");
   }
 
+  @Test
+  public void scroll_past_measures_of_analysis_ordered_by_component() {
+    insertMeasure("M1", "A1", "uuid_b", NCLOC_METRIC_ID);
+    insertMeasure("M2", "A1", "uuid_a", NCLOC_METRIC_ID);
+    insertMeasure("M3", "A1", "uuid_b", COVERAGE_METRIC_ID);
+    insertMeasure("M4", "A1", "uuid_c", NCLOC_METRIC_ID);
+    insertMeasure("M5", "A2", "uuid_a", COMPLEXITY_METRIC_ID);
+    db.commit();
+
+    List<PastMeasureDto> result = new ArrayList<>();
+    underTest.scrollPastMeasures(db.getSession(), "A1", context -> result.add(context.getResultObject()));
+
+    assertThat(result).extracting(PastMeasureDto::getComponentUuid).containsExactly("uuid_a", "uuid_b", "uuid_b", "uuid_c");
+    assertThat(result).filteredOn(m -> m.getComponentUuid().equals("uuid_b")).extracting(PastMeasureDto::getMetricId)
+      .containsOnly(NCLOC_METRIC_ID, COVERAGE_METRIC_ID);
+    assertThat(result).allMatch(PastMeasureDto::hasValue);
+  }
+
   private void verifyMeasures(MeasureQuery.Builder query, String... expectedIds) {
     List<MeasureDto> measures = underTest.selectByQuery(db.getSession(), query.build());
     assertThat(measures).extracting(MeasureDto::getData).containsOnly(expectedIds);
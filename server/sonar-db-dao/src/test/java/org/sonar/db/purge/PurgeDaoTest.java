@@ -27,6 +27,7 @@ import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.commons.lang.math.RandomUtils;
@@ -97,6 +98,30 @@ public class PurgeDaoTest {
     dbTester.assertDbUnit(getClass(), "shouldDeleteAbortedBuilds-result.xml", "snapshots");
   }
 
+  @Test
+  public void purge_stops_between_phases_when_requested() {
+    dbTester.prepareDbUnit(getClass(), "shouldDeleteAbortedBuilds.xml");
+    AtomicInteger calls = new AtomicInteger();
+
+    boolean complete = underTest.purge(dbSession, newConfigurationWith30Days(), PurgeListener.EMPTY, new PurgeProfiler(), () -> calls.incrementAndGet() < 2);
+
+    assertThat(complete).isFalse();
+    assertThat(calls.get()).isEqualTo(2);
+    // deletions of the executed phases are committed
+    dbTester.assertDbUnit(getClass(), "shouldDeleteAbortedBuilds-result.xml", "snapshots");
+  }
+
+  @Test
+  public void purge_returns_true_when_all_phases_are_executed() {
+    dbTester.prepareDbUnit(getClass(), "shouldDeleteAbortedBuilds.xml");
+    AtomicInteger calls = new AtomicInteger();
+
+    boolean complete = underTest.purge(dbSession, newConfigurationWith30Days(), PurgeListener.EMPTY, new PurgeProfiler(), () -> calls.incrementAndGet() > 0);
+
+    assertThat(complete).isTrue();
+    assertThat(calls.get()).isEqualTo(5);
+  }
+
   @Test
   public void purge_history_of_project() {
     dbTester.prepareDbUnit(getClass(), "shouldPurgeProject.xml");
@@ -21,6 +21,7 @@ package org.sonar.db.source;
 
 import java.io.IOException;
 import java.io.Reader;
+import java.util.List;
 import java.util.function.Function;
 import javax.annotation.Nullable;
 import org.apache.commons.io.IOUtils;
@@ -29,10 +30,13 @@ import org.junit.Test;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
+import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto.Type;
 
+import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class FileSourceDaoTest {
 
@@ -59,6 +63,63 @@ public class FileSourceDaoTest {
     assertThat(fileSourceDto.getRevision()).isEqualTo("123456789");
   }
 
+  @Test
+  public void select_scm_data_without_binary_data() {
+    DbFileSources.ScmData scmData = DbFileSources.ScmData.newBuilder()
+      .addAuthor("john")
+      .addChangesetRevision("rev1")
+      .addChangesetAuthor(1)
+      .addChangesetDateDelta(1500000000000L)
+      .addAllLineChangeset(asList(1, 1, 0))
+      .build();
+    underTest.insert(session, new FileSourceDto()
+      .setProjectUuid("PRJ_UUID")
+      .setFileUuid("FILE1_UUID")
+      .setBinaryData("FILE1_BINARY_DATA".getBytes())
+      .setScmData(scmData)
+      .setSrcHash("FILE1_HASH")
+      .setDataType(Type.SOURCE));
+    session.commit();
+
+    FileSourceDto fileSourceDto = underTest.selectScmDataByFileUuid(session, "FILE1_UUID");
+
+    assertThat(fileSourceDto.getScmData()).isEqualTo(scmData);
+    assertThat(fileSourceDto.hasScmData()).isTrue();
+    assertThat(fileSourceDto.getSrcHash()).isEqualTo("FILE1_HASH");
+    assertThat(fileSourceDto.getBinaryData()).isNull();
+    assertThat(underTest.selectSourceByFileUuid(session, "FILE1_UUID").getScmData()).isEqualTo(scmData);
+    assertThat(underTest.selectScmDataByFileUuid(session, "UNKNOWN")).isNull();
+  }
+
+  @Test
+  public void scm_data_is_null_if_row_has_not_been_updated_since_scm_data_column_exists() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    FileSourceDto fileSourceDto = underTest.selectScmDataByFileUuid(session, "FILE1_UUID");
+
+    assertThat(fileSourceDto.getScmData()).isNull();
+    assertThat(fileSourceDto.hasScmData()).isFalse();
+    assertThat(fileSourceDto.getSrcHash()).isEqualTo("FILE_HASH");
+  }
+
+  @Test
+  public void select_hashes_of_project_tells_if_scm_data_is_present() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+    underTest.insert(session, new FileSourceDto()
+      .setProjectUuid("PRJ_UUID")
+      .setFileUuid("FILE2_UUID")
+      .setBinaryData("FILE2_BINARY_DATA".getBytes())
+      .setScmData(DbFileSources.ScmData.newBuilder().addLineChangeset(0).build())
+      .setDataType(Type.SOURCE));
+    session.commit();
+
+    List<FileSourceDto> hashes = session.getMapper(FileSourceMapper.class).selectHashesForProject("PRJ_UUID", Type.SOURCE);
+
+    assertThat(hashes)
+      .extracting(FileSourceDto::getFileUuid, FileSourceDto::hasScmData)
+      .containsExactlyInAnyOrder(tuple("FILE1_UUID", false), tuple("FILE2_UUID", true));
+  }
+
   @Test
   public void select_line_hashes() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
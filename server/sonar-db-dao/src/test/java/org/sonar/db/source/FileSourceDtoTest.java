@@ -21,6 +21,7 @@ package org.sonar.db.source;
 
 import java.util.Arrays;
 import java.util.List;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -80,6 +81,16 @@ public class FileSourceDtoTest {
     assertThat(data.getLinesCount()).isEqualTo(build.getLinesCount());
   }
 
+  @Test
+  public void hashSourceData_is_md5_of_serialized_data() {
+    DbFileSources.Data data = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder().setLine(1).setSource("line1"))
+      .build();
+
+    assertThat(FileSourceDto.hashSourceData(data)).isEqualTo(DigestUtils.md5Hex(data.toByteArray()));
+    assertThat(FileSourceDto.hashSourceData(data)).isNotEqualTo(DigestUtils.md5Hex(FileSourceDto.encodeSourceData(data)));
+  }
+
   private static DbFileSources.Data createOver64MBDataStructure() {
     DbFileSources.Data.Builder dataBuilder = DbFileSources.Data.newBuilder();
     DbFileSources.Line.Builder lineBuilder = DbFileSources.Line.newBuilder();
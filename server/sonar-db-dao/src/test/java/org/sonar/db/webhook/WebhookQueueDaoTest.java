@@ -0,0 +1,151 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.db.webhook;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WebhookQueueDaoTest {
+
+  private static final long NOW = 1_500_000_000_000L;
+
+  private TestSystem2 system2 = new TestSystem2().setNow(NOW);
+
+  @Rule
+  public DbTester dbTester = DbTester.create(system2).setDisableDefaultOrganization(true);
+
+  private DbSession dbSession = dbTester.getSession();
+  private WebhookQueueDao underTest = dbTester.getDbClient().webhookQueueDao();
+
+  @Test
+  public void insert_generates_uuid_and_date() {
+    WebhookQueueDto dto = underTest.insert(dbSession, newDto());
+
+    assertThat(dto.getUuid()).isNotEmpty();
+    assertThat(dto.getCreatedAt()).isEqualTo(NOW);
+    List<WebhookQueueDto> unclaimed = underTest.selectUnclaimed(dbSession, NOW, 10);
+    assertThat(unclaimed).hasSize(1);
+    WebhookQueueDto reloaded = unclaimed.get(0);
+    assertThat(reloaded.getUuid()).isEqualTo(dto.getUuid());
+    assertThat(reloaded.getComponentUuid()).isEqualTo("P1_UUID");
+    assertThat(reloaded.getCeTaskUuid()).isEqualTo("TASK_UUID");
+    assertThat(reloaded.getAnalysisUuid()).isEqualTo("ANALYSIS_UUID");
+    assertThat(reloaded.getName()).isEqualTo("First");
+    assertThat(reloaded.getUrl()).isEqualTo("http://url1");
+    assertThat(reloaded.getProjectKey()).isEqualTo("P1");
+    assertThat(reloaded.getPayload()).isEqualTo("{}");
+    assertThat(reloaded.getCreatedAt()).isEqualTo(NOW);
+  }
+
+  @Test
+  public void selectUnclaimed_returns_oldest_rows_first() {
+    WebhookQueueDto dto1 = underTest.insert(dbSession, newDto());
+    system2.setNow(NOW + 1);
+    WebhookQueueDto dto2 = underTest.insert(dbSession, newDto());
+    system2.setNow(NOW + 2);
+    WebhookQueueDto dto3 = underTest.insert(dbSession, newDto());
+
+    assertThat(underTest.selectUnclaimed(dbSession, NOW, 2))
+      .extracting(WebhookQueueDto::getUuid)
+      .containsExactly(dto1.getUuid(), dto2.getUuid());
+    assertThat(underTest.selectUnclaimed(dbSession, NOW, 10))
+      .extracting(WebhookQueueDto::getUuid)
+      .containsExactly(dto1.getUuid(), dto2.getUuid(), dto3.getUuid());
+  }
+
+  @Test
+  public void claimed_rows_are_not_selected_until_claim_expires() {
+    WebhookQueueDto dto1 = underTest.insert(dbSession, newDto());
+    WebhookQueueDto dto2 = underTest.insert(dbSession, newDto());
+
+    assertThat(underTest.claim(dbSession, dto1.getUuid(), NOW - 1_000L)).isTrue();
+    assertThat(underTest.claim(dbSession, dto1.getUuid(), NOW - 1_000L)).isFalse();
+
+    assertThat(underTest.selectUnclaimed(dbSession, NOW - 1_000L, 10))
+      .extracting(WebhookQueueDto::getUuid)
+      .containsExactly(dto2.getUuid());
+    // claim is older than the expected date
+    assertThat(underTest.selectUnclaimed(dbSession, NOW + 1, 10))
+      .extracting(WebhookQueueDto::getUuid)
+      .containsOnly(dto1.getUuid(), dto2.getUuid());
+    assertThat(underTest.claim(dbSession, dto1.getUuid(), NOW + 1)).isTrue();
+  }
+
+  @Test
+  public void claim_returns_false_if_row_does_not_exist() {
+    assertThat(underTest.claim(dbSession, "missing", NOW)).isFalse();
+  }
+
+  @Test
+  public void refreshClaims_updates_date_of_claims() {
+    WebhookQueueDto dto = underTest.insert(dbSession, newDto());
+    underTest.claim(dbSession, dto.getUuid(), NOW);
+
+    system2.setNow(NOW + 10_000L);
+    underTest.refreshClaims(dbSession, singletonList(dto.getUuid()));
+
+    assertThat(underTest.selectUnclaimed(dbSession, NOW + 5_000L, 10)).isEmpty();
+    assertThat(underTest.selectUnclaimed(dbSession, NOW + 10_001L, 10)).hasSize(1);
+  }
+
+  @Test
+  public void unclaim_releases_rows() {
+    WebhookQueueDto dto1 = underTest.insert(dbSession, newDto());
+    WebhookQueueDto dto2 = underTest.insert(dbSession, newDto());
+    underTest.claim(dbSession, dto1.getUuid(), NOW);
+    underTest.claim(dbSession, dto2.getUuid(), NOW);
+
+    underTest.unclaim(dbSession, asList(dto1.getUuid(), dto2.getUuid()));
+
+    assertThat(underTest.selectUnclaimed(dbSession, NOW - 1_000L, 10)).hasSize(2);
+  }
+
+  @Test
+  public void delete_row() {
+    WebhookQueueDto dto1 = underTest.insert(dbSession, newDto());
+    WebhookQueueDto dto2 = underTest.insert(dbSession, newDto());
+
+    underTest.delete(dbSession, dto1.getUuid());
+    underTest.delete(dbSession, "missing");
+
+    assertThat(underTest.selectUnclaimed(dbSession, NOW, 10))
+      .extracting(WebhookQueueDto::getUuid)
+      .containsExactly(dto2.getUuid());
+  }
+
+  private static WebhookQueueDto newDto() {
+    return new WebhookQueueDto()
+      .setComponentUuid("P1_UUID")
+      .setCeTaskUuid("TASK_UUID")
+      .setAnalysisUuid("ANALYSIS_UUID")
+      .setName("First")
+      .setUrl("http://url1")
+      .setProjectKey("P1")
+      .setPayload("{}");
+  }
+}
@@ -19,11 +19,14 @@
  */
 package org.sonar.ce.settings;
 
+import com.google.common.base.Optional;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.config.Settings;
 import org.sonar.api.config.internal.ConfigurationBridge;
 import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.component.ComponentDto;
 import org.sonar.server.computation.task.projectanalysis.analysis.Branch;
 import org.sonar.server.settings.ChildSettings;
 
@@ -47,6 +50,22 @@ public class ProjectConfigurationFactory {
     return new ConfigurationBridge(projectSettings);
   }
 
+  /**
+   * Configuration of a project, branch or view which is already persisted
+   */
+  public Configuration newProjectConfiguration(DbSession dbSession, ComponentDto rootComponent) {
+    Settings projectSettings = new ChildSettings(globalSettings);
+    String mainBranchProjectUuid = rootComponent.getMainBranchProjectUuid();
+    if (mainBranchProjectUuid != null) {
+      Optional<ComponentDto> mainBranch = dbClient.componentDao().selectByUuid(dbSession, mainBranchProjectUuid);
+      if (mainBranch.isPresent()) {
+        addSettings(projectSettings, mainBranch.get().getDbKey());
+      }
+    }
+    addSettings(projectSettings, rootComponent.getDbKey());
+    return new ConfigurationBridge(projectSettings);
+  }
+
   private void addSettings(Settings settings, String componentDbKey) {
     dbClient.propertiesDao()
       .selectProjectProperties(componentDbKey)
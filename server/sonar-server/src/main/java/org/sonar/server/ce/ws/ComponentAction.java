@@ -20,17 +20,20 @@
 package org.sonar.server.ce.ws;
 
 import java.util.List;
+import java.util.Optional;
 import org.sonar.api.server.ws.Change;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.api.web.UserRole;
 import org.sonar.core.util.Uuids;
+import org.sonar.core.util.stream.MoreCollectors;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeActivityDto;
 import org.sonar.db.ce.CeQueueDto;
 import org.sonar.db.ce.CeTaskQuery;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.server.component.ComponentFinder;
 import org.sonar.server.user.UserSession;
@@ -46,6 +49,12 @@ import static org.sonar.server.ce.ws.CeWsParameters.PARAM_COMPONENT_ID;
 
 public class ComponentAction implements CeWsAction {
 
+  /**
+   * Current tasks are the last executed tasks of the component, one per type of task (analysis report, purge of history...).
+   * The page is big enough to contain all of them.
+   */
+  private static final int MAX_CURRENT_TASKS = 10;
+
   private final UserSession userSession;
   private final DbClient dbClient;
   private final TaskFormatter formatter;
@@ -88,21 +97,28 @@ public class ComponentAction implements CeWsAction {
     try (DbSession dbSession = dbClient.openSession(false)) {
       ComponentDto component = loadComponent(dbSession, wsRequest);
       userSession.checkComponentPermission(UserRole.USER, component);
-      List<CeQueueDto> queueDtos = dbClient.ceQueueDao().selectByComponentUuid(dbSession, component.uuid());
+      // housekeeping tasks are reported neither in the queue nor as the current task of the component
+      List<CeQueueDto> queueDtos = dbClient.ceQueueDao().selectByComponentUuid(dbSession, component.uuid()).stream()
+        .filter(queueDto -> !isHousekeeping(queueDto.getTaskType()))
+        .collect(MoreCollectors.toList());
       CeTaskQuery activityQuery = new CeTaskQuery()
         .setComponentUuid(component.uuid())
         .setOnlyCurrents(true);
-      List<CeActivityDto> activityDtos = dbClient.ceActivityDao().selectByQuery(dbSession, activityQuery, forPage(1).andSize(1));
+      Optional<CeActivityDto> current = dbClient.ceActivityDao().selectByQuery(dbSession, activityQuery, forPage(1).andSize(MAX_CURRENT_TASKS)).stream()
+        .filter(activityDto -> !isHousekeeping(activityDto.getTaskType()))
+        .findFirst();
 
       Ce.ComponentResponse.Builder wsResponseBuilder = ComponentResponse.newBuilder();
       wsResponseBuilder.addAllQueue(formatter.formatQueue(dbSession, queueDtos));
-      if (activityDtos.size() == 1) {
-        wsResponseBuilder.setCurrent(formatter.formatActivity(dbSession, activityDtos.get(0), null));
-      }
+      current.ifPresent(activityDto -> wsResponseBuilder.setCurrent(formatter.formatActivity(dbSession, activityDto, null)));
       writeProtobuf(wsResponseBuilder.build(), wsRequest, wsResponse);
     }
   }
 
+  private static boolean isHousekeeping(String taskType) {
+    return CeTaskTypes.PROJECT_PURGE.equals(taskType);
+  }
+
   private ComponentDto loadComponent(DbSession dbSession, Request wsRequest) {
     String componentKey = wsRequest.param(PARAM_COMPONENT);
     String componentId = wsRequest.param(PARAM_COMPONENT_ID);
@@ -20,6 +20,8 @@
 package org.sonar.server.computation.dbcleaner;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.ce.ComputeEngineSide;
 import org.sonar.api.config.Configuration;
@@ -68,6 +70,38 @@ public class ProjectCleaner {
     return this;
   }
 
+  /**
+   * Same as {@link #purge(DbSession, IdUuidPair, Configuration, Collection)} without any disabled component, but
+   * {@code continuePurge} is called between the phases of the purge, which are committed one by one. The purge stops
+   * as soon as it returns {@code false}, it can be resumed later by purging the component again.
+   *
+   * @return {@code true} if the purge is complete
+   */
+  public boolean purgeInPhases(DbSession session, IdUuidPair rootId, Configuration projectConfig, BooleanSupplier continuePurge) {
+    long start = System.currentTimeMillis();
+    profiler.reset();
+
+    PurgeConfiguration configuration = newDefaultPurgeConfiguration(projectConfig, rootId, Collections.emptyList());
+
+    periodCleaner.clean(session, configuration.rootProjectIdUuid().getUuid(), projectConfig);
+    session.commit();
+    boolean complete = continuePurge.getAsBoolean() && purgeDao.purge(session, configuration, purgeListener, profiler, continuePurge);
+
+    logProfiling(start, projectConfig);
+    return complete;
+  }
+
+  /**
+   * Only purges the components disabled by the last analysis. The other housekeeping operations of
+   * {@link #purge(DbSession, IdUuidPair, Configuration, Collection)} are not executed.
+   */
+  public ProjectCleaner purgeDisabledComponents(DbSession session, IdUuidPair rootId, Configuration projectConfig, Collection<String> disabledComponentUuids) {
+    PurgeConfiguration configuration = newDefaultPurgeConfiguration(projectConfig, rootId, disabledComponentUuids);
+    purgeDao.purgeDisabledComponents(session, configuration, purgeListener);
+    session.commit();
+    return this;
+  }
+
   private void logProfiling(long start, Configuration config) {
     if (config.getBoolean(CoreProperties.PROFILING_LOG_PROPERTY).orElse(false)) {
       long duration = System.currentTimeMillis() - start;
@@ -0,0 +1,127 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.dbcleaner;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import java.util.Collections;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.ce.queue.CeQueue;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.ce.queue.CeTaskResult;
+import org.sonar.ce.settings.ProjectConfigurationFactory;
+import org.sonar.ce.taskprocessor.CeTaskProcessor;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.purge.IdUuidPair;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Purges the history of a project, branch or view. These tasks are submitted by the analyses, so that
+ * the housekeeping is not part of the processing of the analysis report. As Compute Engine never executes
+ * concurrently two tasks of the same component, a purge never overlaps an analysis of the same component.
+ * <p>
+ * The purge is executed phase by phase, with a pause between phases to spread the load on the database. If another
+ * task of the component is pending, the purge stops at the end of the current phase so that it does not delay this
+ * task, and a new purge task is submitted to resume it afterwards.
+ * </p>
+ */
+public class ProjectPurgeTaskProcessor implements CeTaskProcessor {
+
+  private static final Logger LOG = Loggers.get(ProjectPurgeTaskProcessor.class);
+  private static final Set<String> HANDLED_TYPES = Collections.singleton(CeTaskTypes.PROJECT_PURGE);
+  private static final long PAUSE_BETWEEN_PHASES_MS = 1_000L;
+
+  private final DbClient dbClient;
+  private final ProjectCleaner projectCleaner;
+  private final ProjectConfigurationFactory configurationFactory;
+  private final CeQueue ceQueue;
+  private final long pauseBetweenPhasesMs;
+
+  public ProjectPurgeTaskProcessor(DbClient dbClient, ProjectCleaner projectCleaner, ProjectConfigurationFactory configurationFactory, CeQueue ceQueue) {
+    this(dbClient, projectCleaner, configurationFactory, ceQueue, PAUSE_BETWEEN_PHASES_MS);
+  }
+
+  @VisibleForTesting
+  ProjectPurgeTaskProcessor(DbClient dbClient, ProjectCleaner projectCleaner, ProjectConfigurationFactory configurationFactory, CeQueue ceQueue,
+    long pauseBetweenPhasesMs) {
+    this.dbClient = dbClient;
+    this.projectCleaner = projectCleaner;
+    this.configurationFactory = configurationFactory;
+    this.ceQueue = ceQueue;
+    this.pauseBetweenPhasesMs = pauseBetweenPhasesMs;
+  }
+
+  @Override
+  public Set<String> getHandledCeTaskTypes() {
+    return HANDLED_TYPES;
+  }
+
+  @CheckForNull
+  @Override
+  public CeTaskResult process(CeTask task) {
+    String componentUuid = task.getComponentUuid();
+    checkArgument(componentUuid != null, "Task %s has no component", task.getUuid());
+    try (DbSession dbSession = dbClient.openSession(true)) {
+      Optional<ComponentDto> component = dbClient.componentDao().selectByUuid(dbSession, componentUuid);
+      if (!component.isPresent()) {
+        LOG.debug("Component {} does not exist anymore, purge is ignored", componentUuid);
+        return null;
+      }
+      ComponentDto root = component.get();
+      Configuration config = configurationFactory.newProjectConfiguration(dbSession, root);
+      boolean complete = projectCleaner.purgeInPhases(dbSession, new IdUuidPair(root.getId(), root.uuid()), config, () -> continuePurge(componentUuid));
+      if (!complete) {
+        LOG.info("Purge of {} is interrupted, it will be resumed after the pending tasks of the component", root.getKey());
+        ceQueue.submit(ceQueue.prepareSubmit()
+          .setType(CeTaskTypes.PROJECT_PURGE)
+          .setComponentUuid(componentUuid)
+          .build());
+      }
+    }
+    return null;
+  }
+
+  private boolean continuePurge(String componentUuid) {
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      boolean otherTaskPending = dbClient.ceQueueDao().selectByComponentUuid(dbSession, componentUuid).stream()
+        .anyMatch(task -> task.getStatus() == CeQueueDto.Status.PENDING && !CeTaskTypes.PROJECT_PURGE.equals(task.getTaskType()));
+      if (otherTaskPending) {
+        return false;
+      }
+    }
+    try {
+      Thread.sleep(pauseBetweenPhasesMs);
+      return true;
+    } catch (InterruptedException e) {
+      // Compute Engine is stopping
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -20,6 +20,7 @@
 package org.sonar.server.computation.queue;
 
 import com.google.common.base.Optional;
+import com.google.common.io.CountingInputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -172,13 +173,16 @@ public class ReportSubmitter {
   private CeTask submitReport(DbSession dbSession, InputStream reportInput, ComponentDto project, Map<String, String> characteristicsMap) {
     CeTaskSubmit.Builder submit = queue.prepareSubmit();
     List<CeTaskCharacteristicDto> characteristics = characteristicsMap.entrySet().stream()
+      // report size is computed by the server, it can't be provided by the scanner
+      .filter(e -> !CeTaskCharacteristicDto.REPORT_SIZE_KEY.equals(e.getKey()))
       .map(e -> toDto(submit.getUuid(), e.getKey(), e.getValue())).collect(Collectors.toList());
 
     // the report file must be saved before submitting the task
-    dbClient.ceTaskInputDao().insert(dbSession, submit.getUuid(), reportInput);
-    if (!characteristics.isEmpty()) {
-      dbClient.ceTaskCharacteristicsDao().insert(dbSession, characteristics);
-    }
+    CountingInputStream countingReportInput = new CountingInputStream(reportInput);
+    dbClient.ceTaskInputDao().insert(dbSession, submit.getUuid(), countingReportInput);
+    // used by the Compute Engine to estimate the memory required to process the report
+    characteristics.add(toDto(submit.getUuid(), CeTaskCharacteristicDto.REPORT_SIZE_KEY, String.valueOf(countingReportInput.getCount())));
+    dbClient.ceTaskCharacteristicsDao().insert(dbSession, characteristics);
     dbSession.commit();
 
     submit.setType(CeTaskTypes.REPORT);
@@ -22,8 +22,14 @@ package org.sonar.server.computation.task.projectanalysis;
 import org.sonar.server.computation.queue.ReportSubmitter;
 import org.sonar.core.platform.Module;
 import org.sonar.server.computation.task.projectanalysis.container.ContainerFactoryImpl;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectoriesCleaner;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
+import org.sonar.server.computation.task.projectanalysis.step.IndexAnalysisExecutorServiceImpl;
+import org.sonar.server.computation.task.projectanalysis.step.PersistFileSourcesExecutorServiceImpl;
 import org.sonar.server.computation.task.projectanalysis.taskprocessor.ReportTaskProcessor;
 import org.sonar.server.computation.task.step.ComputationStepExecutor;
+import org.sonar.server.computation.task.step.ComputationStepHistograms;
 
 public class ProjectAnalysisTaskModule extends Module {
   @Override
@@ -33,6 +39,14 @@ public class ProjectAnalysisTaskModule extends Module {
       ContainerFactoryImpl.class,
       ComputationStepExecutor.class,
       ReportTaskProcessor.class,
-      ReportSubmitter.class);
+      ReportSubmitter.class,
+      TaskWorkingDirectoriesCleaner.class,
+
+      // shared by the tasks
+      CrossProjectDuplicationIndex.class,
+      ComputationStepHistograms.class,
+      IndexAnalysisExecutorServiceImpl.class,
+      PersistFileSourcesExecutorServiceImpl.class,
+      SourceLinesCacheStatistics.class);
   }
 }
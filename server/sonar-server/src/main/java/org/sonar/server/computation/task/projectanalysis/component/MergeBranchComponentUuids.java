@@ -20,8 +20,10 @@
 package org.sonar.server.computation.task.projectanalysis.component;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.annotation.CheckForNull;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -29,18 +31,26 @@ import org.sonar.db.component.ComponentDto;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 
 import static org.sonar.db.component.ComponentDto.removeBranchFromKey;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
- * Cache a map between component keys and uuids in the merge branch
+ * Cache a map between component keys and uuids in the merge branch.
+ * <p>
+ * On short-living branches, the report contains only the changed files and their ancestors, so only the components
+ * of the merge branch having the same keys as the components of the analysed tree are loaded. Otherwise, all the
+ * components of the merge branch are loaded.
+ * </p>
  */
 public class MergeBranchComponentUuids {
   private final AnalysisMetadataHolder analysisMetadataHolder;
+  private final TreeRootHolder treeRootHolder;
   private final DbClient dbClient;
   private Map<String, String> uuidsByKey;
   private String mergeBranchName;
 
-  public MergeBranchComponentUuids(AnalysisMetadataHolder analysisMetadataHolder, DbClient dbClient) {
+  public MergeBranchComponentUuids(AnalysisMetadataHolder analysisMetadataHolder, TreeRootHolder treeRootHolder, DbClient dbClient) {
     this.analysisMetadataHolder = analysisMetadataHolder;
+    this.treeRootHolder = treeRootHolder;
     this.dbClient = dbClient;
   }
 
@@ -50,17 +60,33 @@ public class MergeBranchComponentUuids {
 
       uuidsByKey = new HashMap<>();
       try (DbSession dbSession = dbClient.openSession(false)) {
+        mergeBranchName = dbClient.branchDao().selectByUuid(dbSession, mergeBranchUuid).get().getKey();
 
-        List<ComponentDto> components = dbClient.componentDao().selectByProjectUuid(mergeBranchUuid, dbSession);
+        List<ComponentDto> components;
+        if (analysisMetadataHolder.isShortLivingBranch()) {
+          components = dbClient.componentDao().selectByKeysAndBranch(dbSession, loadKeysOfTree(), mergeBranchName);
+        } else {
+          components = dbClient.componentDao().selectByProjectUuid(mergeBranchUuid, dbSession);
+        }
         for (ComponentDto dto : components) {
           uuidsByKey.put(dto.getKey(), dto.uuid());
         }
-
-        mergeBranchName = dbClient.branchDao().selectByUuid(dbSession, mergeBranchUuid).get().getKey();
       }
     }
   }
 
+  private Set<String> loadKeysOfTree() {
+    Set<String> keys = new HashSet<>();
+    new DepthTraversalTypeAwareCrawler(
+      new TypeAwareVisitorAdapter(CrawlerDepthLimit.LEAVES, PRE_ORDER) {
+        @Override
+        public void visitAny(Component component) {
+          keys.add(removeBranchFromKey(component.getKey()));
+        }
+      }).visit(treeRootHolder.getRoot());
+    return keys;
+  }
+
   public String getMergeBranchName() {
     lazyInit();
     return mergeBranchName;
@@ -41,6 +41,7 @@ import org.sonar.server.computation.task.projectanalysis.component.DisabledCompo
 import org.sonar.server.computation.task.projectanalysis.component.MergeBranchComponentUuids;
 import org.sonar.server.computation.task.projectanalysis.component.ShortBranchComponentsWithIssues;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderImpl;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationBlocksHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolderImpl;
 import org.sonar.server.computation.task.projectanalysis.duplication.DuplicationMeasures;
 import org.sonar.server.computation.task.projectanalysis.duplication.DuplicationRepositoryImpl;
@@ -50,10 +51,12 @@ import org.sonar.server.computation.task.projectanalysis.filemove.FileSimilarity
 import org.sonar.server.computation.task.projectanalysis.filemove.MutableMovedFilesRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.filemove.SourceSimilarityImpl;
 import org.sonar.server.computation.task.projectanalysis.filesystem.ComputationTempFolderProvider;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
 import org.sonar.server.computation.task.projectanalysis.issue.BaseIssuesLoader;
 import org.sonar.server.computation.task.projectanalysis.issue.CloseIssuesOnRemovedComponentsVisitor;
 import org.sonar.server.computation.task.projectanalysis.issue.ComponentIssuesLoader;
 import org.sonar.server.computation.task.projectanalysis.issue.ComponentIssuesRepositoryImpl;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.projectanalysis.issue.ComponentsWithUnprocessedIssues;
 import org.sonar.server.computation.task.projectanalysis.issue.DebtCalculator;
 import org.sonar.server.computation.task.projectanalysis.issue.DefaultAssignee;
@@ -114,11 +117,15 @@ import org.sonar.server.computation.task.projectanalysis.scm.ScmInfoDbLoader;
 import org.sonar.server.computation.task.projectanalysis.scm.ScmInfoRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.source.LastCommitVisitor;
 import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepositoryImpl;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCache;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryImpl;
+import org.sonar.server.computation.task.projectanalysis.step.ReportComputationStepCheckpoints;
 import org.sonar.server.computation.task.projectanalysis.step.ReportComputationSteps;
 import org.sonar.server.computation.task.projectanalysis.step.SmallChangesetQualityGateSpecialCase;
 import org.sonar.server.computation.task.projectanalysis.webhook.WebhookPostTask;
 import org.sonar.server.computation.task.step.ComputationStepExecutor;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 import org.sonar.server.computation.task.step.ComputationSteps;
 import org.sonar.server.computation.taskprocessor.MutableTaskResultHolderImpl;
 import org.sonar.server.view.index.ViewIndex;
@@ -156,15 +163,19 @@ public final class ProjectAnalysisTaskContainerPopulator implements ContainerPop
     return Arrays.asList(
       PostProjectAnalysisTasksExecutor.class,
       ComputationStepExecutor.class,
+      ComputationStepStatistics.class,
+      ReportComputationStepCheckpoints.class,
 
       // File System
       new ComputationTempFolderProvider(),
+      TaskWorkingDirectory.class,
 
       MetricModule.class,
 
       // holders
       AnalysisMetadataHolderImpl.class,
       CrossProjectDuplicationStatusHolderImpl.class,
+      CrossProjectDuplicationBlocksHolder.class,
       BatchReportDirectoryHolderImpl.class,
       TreeRootHolderImpl.class,
       PeriodHolderImpl.class,
@@ -187,7 +198,9 @@ public final class ProjectAnalysisTaskContainerPopulator implements ContainerPop
       DisabledComponentsHolderImpl.class,
       QualityGateServiceImpl.class,
       EvaluationResultTextConverterImpl.class,
+      SourceLinesCache.class,
       SourceLinesRepositoryImpl.class,
+      SourceLinesHashRepositoryImpl.class,
       SourceHashRepositoryImpl.class,
       ScmInfoRepositoryImpl.class,
       ScmInfoDbLoader.class,
@@ -202,6 +215,7 @@ public final class ProjectAnalysisTaskContainerPopulator implements ContainerPop
       IssueVisitors.class,
       IssueLifecycle.class,
       ComponentsWithUnprocessedIssues.class,
+      ChangedIssueKeysHolder.class,
       ComponentIssuesRepositoryImpl.class,
       IssueFilter.class,
 
@@ -0,0 +1,59 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
+
+import static com.google.common.base.Preconditions.checkState;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Duplication blocks persisted by the analysis, which are added to {@link CrossProjectDuplicationIndex} only once the
+ * analysis is enabled.
+ */
+public class CrossProjectDuplicationBlocksHolder {
+
+  @CheckForNull
+  private String rootComponentUuid;
+  private List<IndexedDuplicationUnitDto> blocks = Collections.emptyList();
+
+  public void setBlocks(String rootComponentUuid, List<IndexedDuplicationUnitDto> blocks) {
+    checkState(this.rootComponentUuid == null, "Blocks have already been set");
+    this.rootComponentUuid = requireNonNull(rootComponentUuid, "Root component uuid can't be null");
+    this.blocks = requireNonNull(blocks, "Blocks can't be null");
+  }
+
+  public boolean hasBlocks() {
+    return rootComponentUuid != null;
+  }
+
+  public String getRootComponentUuid() {
+    checkState(rootComponentUuid != null, "Blocks have not been set");
+    return rootComponentUuid;
+  }
+
+  public List<IndexedDuplicationUnitDto> getBlocks() {
+    checkState(rootComponentUuid != null, "Blocks have not been set");
+    return blocks;
+  }
+}
@@ -0,0 +1,455 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.logs.Profiler;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.component.SnapshotQuery;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
+
+/**
+ * In-memory index of the duplication blocks of the last analyses of all projects, shared by the Compute Engine workers.
+ * Blocks are partitioned by hash, so that looking up the candidates of a block does not require any database query.
+ * <p>
+ * Table DUPLICATIONS_INDEX remains the source of truth: the index is loaded from database on first use, then kept up-to-date
+ * by {@link #replace(String, String, Collection)} when an analysis processed by this node is enabled. Every
+ * {@link #REFRESH_PERIOD_MS} ms, the last analyses of all projects and branches are compared to the ones of the index, so
+ * that blocks of analyses processed by the other Compute Engine nodes of a cluster are loaded, and blocks of deleted projects
+ * and branches are dropped. Candidates may consequently miss the blocks of analyses processed by another node during the
+ * last {@link #REFRESH_PERIOD_MS} ms, exactly like candidates of concurrent analyses are missed when they are loaded from
+ * database.
+ * <p>
+ * The index is disabled until restart of the Compute Engine as soon as it contains more than {@link #MAX_BLOCKS_PROPERTY}
+ * blocks, in which case candidates are loaded from database. By default, the maximum number of blocks is computed so that
+ * the index does not use more than {@link #DEFAULT_MAX_HEAP_RATIO} of the heap.
+ * <p>
+ * Blocks are kept on heap. Storing them off-heap or in a memory-mapped file would require a custom serialization and
+ * hash table over byte buffers, as no such library is available in the Compute Engine, while the in-heap structure
+ * already shares the attributes of files between their blocks.
+ * <p>
+ * The index is loaded or refreshed by the first worker which needs it, without blocking the other workers: they load
+ * candidates from database until the index is available.
+ */
+public class CrossProjectDuplicationIndex {
+
+  static final String MAX_BLOCKS_PROPERTY = "sonar.ce.crossProjectDuplicationIndex.maxBlocks";
+  /**
+   * Estimation of the heap used by a block, including its share of the attributes of its file
+   */
+  static final int BLOCK_SIZE_IN_BYTES = 100;
+  static final double DEFAULT_MAX_HEAP_RATIO = 0.1;
+  static final long REFRESH_PERIOD_MS = 60 * 1000L;
+
+  private static final Logger LOG = Loggers.get(CrossProjectDuplicationIndex.class);
+  private static final int PARTITIONS = 64;
+
+  private final DbClient dbClient;
+  private final System2 system2;
+  private final int maxBlocks;
+  private final AtomicBoolean loading = new AtomicBoolean(false);
+
+  @CheckForNull
+  private volatile State state;
+  /**
+   * Set once the index exceeded {@link #maxBlocks}. It is then never loaded again.
+   */
+  private volatile boolean tooLarge = false;
+  private volatile long nextLoadAt = 0L;
+  /**
+   * Blocks replaced while the index is being loaded, which are applied once the index is loaded. Guarded by {@code this}.
+   */
+  @CheckForNull
+  private Map<String, Replacement> pendingReplacements;
+
+  public CrossProjectDuplicationIndex(DbClient dbClient, System2 system2, Configuration configuration) {
+    this.dbClient = dbClient;
+    this.system2 = system2;
+    this.maxBlocks = configuration.getInt(MAX_BLOCKS_PROPERTY).orElseGet(CrossProjectDuplicationIndex::defaultMaxBlocks);
+  }
+
+  private static int defaultMaxBlocks() {
+    return (int) Math.min(Integer.MAX_VALUE, (long) (Runtime.getRuntime().maxMemory() * DEFAULT_MAX_HEAP_RATIO) / BLOCK_SIZE_IN_BYTES);
+  }
+
+  /**
+   * Loads the index from database if it has not been loaded yet, or refreshes it if it is outdated. Only one caller
+   * loads the index, the others do not wait for it.
+   *
+   * @return {@code false} if the index can't be used, in which case candidates must be loaded from database
+   */
+  public boolean isEnabled() {
+    if (maxBlocks <= 0 || tooLarge) {
+      return false;
+    }
+    if (system2.now() >= nextLoadAt && loading.compareAndSet(false, true)) {
+      try {
+        nextLoadAt = system2.now() + REFRESH_PERIOD_MS;
+        if (state == null) {
+          load();
+        } else {
+          refresh();
+        }
+      } finally {
+        loading.set(false);
+      }
+    }
+    return state != null;
+  }
+
+  private void load() {
+    synchronized (this) {
+      pendingReplacements = new HashMap<>();
+    }
+    State newState = null;
+    try {
+      newState = loadState();
+    } finally {
+      synchronized (this) {
+        if (newState != null) {
+          State loadedState = newState;
+          pendingReplacements.forEach((rootComponentUuid, replacement) -> loadedState.replace(rootComponentUuid, replacement.analysisUuid, replacement.blocks));
+          state = checkSize(loadedState);
+        }
+        pendingReplacements = null;
+      }
+    }
+  }
+
+  @CheckForNull
+  private State loadState() {
+    Profiler profiler = Profiler.create(LOG).startInfo("Load cross project duplication index");
+    State newState = new State();
+    boolean[] exceeded = {false};
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      // analyses are loaded before blocks, so that blocks of an analysis enabled in the meantime are
+      // reloaded by the next refresh
+      selectLastAnalysisUuidsByRootComponentUuid(dbSession).forEach(newState::setAnalysis);
+      dbClient.duplicationDao().scrollAllForIndexing(dbSession, context -> {
+        if (context.getResultCount() > maxBlocks) {
+          exceeded[0] = true;
+          context.stop();
+        } else {
+          newState.add(context.getResultObject());
+        }
+      });
+    }
+    if (exceeded[0]) {
+      tooLarge = true;
+      profiler.stopInfo("Cross project duplication index is disabled until restart as database contains more than {} blocks (see property {})",
+        maxBlocks, MAX_BLOCKS_PROPERTY);
+      return null;
+    }
+    profiler.stopInfo("Cross project duplication index loaded with {} blocks", newState.size);
+    return newState;
+  }
+
+  /**
+   * Loads the blocks of the projects and branches whose last analysis is not the indexed one, and drops the blocks of the
+   * projects and branches which do not have analyses anymore. Projects and branches replaced by {@link #replace(String, String, Collection)}
+   * in the meantime are not modified, as their blocks are at least as recent as the ones loaded from database.
+   */
+  private void refresh() {
+    State currentState = state;
+    if (currentState == null) {
+      return;
+    }
+    long sequence;
+    synchronized (this) {
+      sequence = currentState.sequence;
+    }
+    Map<String, String> changedAnalysisUuidsByRootComponentUuid = new HashMap<>();
+    Set<String> removedRootComponentUuids;
+    Map<String, List<IndexedDuplicationUnitDto>> blocksByRootComponentUuid = new HashMap<>();
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      Map<String, String> lastAnalysisUuids = selectLastAnalysisUuidsByRootComponentUuid(dbSession);
+      synchronized (this) {
+        lastAnalysisUuids.forEach((rootComponentUuid, analysisUuid) -> {
+          if (!analysisUuid.equals(currentState.analysisUuidsByRootComponentUuid.get(rootComponentUuid))) {
+            changedAnalysisUuidsByRootComponentUuid.put(rootComponentUuid, analysisUuid);
+          }
+        });
+        removedRootComponentUuids = new HashSet<>(currentState.analysisUuidsByRootComponentUuid.keySet());
+      }
+      removedRootComponentUuids.removeAll(lastAnalysisUuids.keySet());
+      if (changedAnalysisUuidsByRootComponentUuid.isEmpty() && removedRootComponentUuids.isEmpty()) {
+        return;
+      }
+      changedAnalysisUuidsByRootComponentUuid.keySet().forEach(rootComponentUuid -> blocksByRootComponentUuid.put(rootComponentUuid, new ArrayList<>()));
+      dbClient.duplicationDao().scrollForIndexing(dbSession, changedAnalysisUuidsByRootComponentUuid.values(), context -> {
+        IndexedDuplicationUnitDto block = context.getResultObject();
+        blocksByRootComponentUuid.get(block.getRootComponentUuid()).add(block);
+      });
+    }
+    synchronized (this) {
+      if (state != currentState) {
+        return;
+      }
+      changedAnalysisUuidsByRootComponentUuid.forEach((rootComponentUuid, analysisUuid) -> {
+        if (!currentState.isReplacedAfter(rootComponentUuid, sequence)) {
+          currentState.replace(rootComponentUuid, analysisUuid, blocksByRootComponentUuid.get(rootComponentUuid));
+        }
+      });
+      removedRootComponentUuids.forEach(rootComponentUuid -> {
+        if (!currentState.isReplacedAfter(rootComponentUuid, sequence)) {
+          currentState.removeRoot(rootComponentUuid);
+        }
+      });
+      state = checkSize(currentState);
+    }
+    LOG.debug("Cross project duplication index refreshed: {} projects or branches updated, {} removed",
+      changedAnalysisUuidsByRootComponentUuid.size(), removedRootComponentUuids.size());
+  }
+
+  private Map<String, String> selectLastAnalysisUuidsByRootComponentUuid(DbSession dbSession) {
+    Map<String, String> res = new HashMap<>();
+    dbClient.snapshotDao().selectAnalysesByQuery(dbSession, new SnapshotQuery().setIsLast(true))
+      .forEach(analysis -> res.put(analysis.getComponentUuid(), analysis.getUuid()));
+    return res;
+  }
+
+  /**
+   * Streams the blocks of files of the specified language which have one of the specified hashes, excluding the blocks of
+   * the specified project or branch. Requires {@link #isEnabled()} to return {@code true}.
+   */
+  public void selectCandidates(String excludedRootComponentUuid, @Nullable String language, Collection<String> hashes,
+    Consumer<IndexedDuplicationUnitDto> consumer) {
+    State currentState = state;
+    if (currentState == null || language == null) {
+      return;
+    }
+    for (String hash : hashes) {
+      for (IndexedDuplicationUnitDto block : currentState.get(hash)) {
+        if (language.equals(block.getLanguage()) && !block.getRootComponentUuid().equals(excludedRootComponentUuid)) {
+          consumer.accept(block);
+        }
+      }
+    }
+  }
+
+  /**
+   * Replaces the blocks of the specified project or branch by the blocks of its last analysis, which may be empty. It must be
+   * called once the analysis is enabled, so that the blocks of failed analyses are never indexed.
+   * Does nothing if the index has not been loaded.
+   */
+  public synchronized void replace(String rootComponentUuid, String analysisUuid, Collection<IndexedDuplicationUnitDto> blocks) {
+    if (pendingReplacements != null) {
+      pendingReplacements.put(rootComponentUuid, new Replacement(analysisUuid, blocks));
+      return;
+    }
+    State currentState = state;
+    if (currentState == null) {
+      return;
+    }
+    currentState.replace(rootComponentUuid, analysisUuid, blocks);
+    currentState.markReplaced(rootComponentUuid);
+    state = checkSize(currentState);
+  }
+
+  @CheckForNull
+  private State checkSize(State newState) {
+    if (newState.size > maxBlocks) {
+      tooLarge = true;
+      LOG.info("Cross project duplication index is disabled until restart as it contains more than {} blocks (see property {})",
+        maxBlocks, MAX_BLOCKS_PROPERTY);
+      return null;
+    }
+    return newState;
+  }
+
+  private static final class Replacement {
+    private final String analysisUuid;
+    private final Collection<IndexedDuplicationUnitDto> blocks;
+
+    private Replacement(String analysisUuid, Collection<IndexedDuplicationUnitDto> blocks) {
+      this.analysisUuid = analysisUuid;
+      this.blocks = blocks;
+    }
+  }
+
+  /**
+   * Blocks grouped by hash, in {@link #PARTITIONS} independent partitions so that lookups of concurrent tasks do not contend
+   * on a single lock. Modifications are serialized by {@link CrossProjectDuplicationIndex}.
+   * <p>
+   * In order to save memory, the hash of a block is only referenced as key of its partition, and the attributes of its file
+   * are shared by all the blocks of the file.
+   */
+  private static final class State {
+    private final Partition[] partitions = new Partition[PARTITIONS];
+    private final Map<String, Map<String, IndexedFile>> filesByRootComponentUuid = new HashMap<>();
+    private final Map<String, Set<String>> hashesByRootComponentUuid = new HashMap<>();
+    /**
+     * Indexed analysis of each project or branch, including the ones without blocks
+     */
+    private final Map<String, String> analysisUuidsByRootComponentUuid = new HashMap<>();
+    /**
+     * Value of {@link #sequence} when projects or branches were replaced by {@link CrossProjectDuplicationIndex#replace(String, String, Collection)}
+     */
+    private final Map<String, Long> replacementSequencesByRootComponentUuid = new HashMap<>();
+    private long sequence = 0L;
+    private int size = 0;
+
+    private State() {
+      for (int i = 0; i < PARTITIONS; i++) {
+        partitions[i] = new Partition();
+      }
+    }
+
+    private Partition partitionOf(String hash) {
+      return partitions[(hash.hashCode() & Integer.MAX_VALUE) % PARTITIONS];
+    }
+
+    private List<IndexedDuplicationUnitDto> get(String hash) {
+      return partitionOf(hash).get(hash);
+    }
+
+    private void add(IndexedDuplicationUnitDto block) {
+      IndexedFile file = filesByRootComponentUuid
+        .computeIfAbsent(block.getRootComponentUuid(), k -> new HashMap<>())
+        .computeIfAbsent(block.getComponentUuid(), k -> new IndexedFile(block));
+      partitionOf(block.getHash()).add(block.getHash(), new Block(file, block));
+      hashesByRootComponentUuid.computeIfAbsent(block.getRootComponentUuid(), k -> new HashSet<>()).add(block.getHash());
+      size++;
+    }
+
+    private void setAnalysis(String rootComponentUuid, String analysisUuid) {
+      analysisUuidsByRootComponentUuid.put(rootComponentUuid, analysisUuid);
+    }
+
+    private void replace(String rootComponentUuid, String analysisUuid, Collection<IndexedDuplicationUnitDto> blocks) {
+      removeRoot(rootComponentUuid);
+      setAnalysis(rootComponentUuid, analysisUuid);
+      blocks.forEach(this::add);
+    }
+
+    private void markReplaced(String rootComponentUuid) {
+      sequence++;
+      replacementSequencesByRootComponentUuid.put(rootComponentUuid, sequence);
+    }
+
+    private boolean isReplacedAfter(String rootComponentUuid, long sequence) {
+      Long replacementSequence = replacementSequencesByRootComponentUuid.get(rootComponentUuid);
+      return replacementSequence != null && replacementSequence > sequence;
+    }
+
+    private void removeRoot(String rootComponentUuid) {
+      analysisUuidsByRootComponentUuid.remove(rootComponentUuid);
+      filesByRootComponentUuid.remove(rootComponentUuid);
+      Set<String> hashes = hashesByRootComponentUuid.remove(rootComponentUuid);
+      if (hashes != null) {
+        hashes.forEach(hash -> size -= partitionOf(hash).remove(hash, rootComponentUuid));
+      }
+    }
+  }
+
+  private static final class Partition {
+    private final Map<String, List<Block>> blocksByHash = new HashMap<>();
+
+    private synchronized List<IndexedDuplicationUnitDto> get(String hash) {
+      List<Block> blocks = blocksByHash.get(hash);
+      if (blocks == null) {
+        return Collections.emptyList();
+      }
+      List<IndexedDuplicationUnitDto> res = new ArrayList<>(blocks.size());
+      blocks.forEach(block -> res.add(block.toDto(hash)));
+      return res;
+    }
+
+    private synchronized void add(String hash, Block block) {
+      blocksByHash.computeIfAbsent(hash, k -> new ArrayList<>(1)).add(block);
+    }
+
+    /**
+     * @return the number of removed blocks
+     */
+    private synchronized int remove(String hash, String rootComponentUuid) {
+      List<Block> blocks = blocksByHash.get(hash);
+      if (blocks == null) {
+        return 0;
+      }
+      int sizeBefore = blocks.size();
+      blocks.removeIf(block -> rootComponentUuid.equals(block.file.rootComponentUuid));
+      if (blocks.isEmpty()) {
+        blocksByHash.remove(hash);
+      }
+      return sizeBefore - blocks.size();
+    }
+  }
+
+  private static final class IndexedFile {
+    private final String analysisUuid;
+    private final String rootComponentUuid;
+    private final String componentUuid;
+    private final String componentKey;
+    @CheckForNull
+    private final String language;
+
+    private IndexedFile(IndexedDuplicationUnitDto block) {
+      this.analysisUuid = block.getAnalysisUuid();
+      this.rootComponentUuid = block.getRootComponentUuid();
+      this.componentUuid = block.getComponentUuid();
+      this.componentKey = block.getComponentKey();
+      this.language = block.getLanguage();
+    }
+  }
+
+  private static final class Block {
+    private final IndexedFile file;
+    private final int indexInFile;
+    private final int startLine;
+    private final int endLine;
+
+    private Block(IndexedFile file, IndexedDuplicationUnitDto block) {
+      this.file = file;
+      this.indexInFile = block.getIndexInFile();
+      this.startLine = block.getStartLine();
+      this.endLine = block.getEndLine();
+    }
+
+    private IndexedDuplicationUnitDto toDto(String hash) {
+      return new IndexedDuplicationUnitDto()
+        .setAnalysisUuid(file.analysisUuid)
+        .setRootComponentUuid(file.rootComponentUuid)
+        .setComponentUuid(file.componentUuid)
+        .setComponentKey(file.componentKey)
+        .setLanguage(file.language)
+        .setHash(hash)
+        .setIndexInFile(indexInFile)
+        .setStartLine(startLine)
+        .setEndLine(endLine);
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Index of files which provides, for a given file, the files which are likely to have a similar content.
+ * <p>
+ * Each file is represented by the MinHash signature of its set of line hashes. Signatures are split into
+ * {@link #BANDS} bands of {@link #ROWS_PER_BAND} values and two files are candidates as soon as they share one band
+ * (Locality Sensitive Hashing). With these values, two files which share 75% of their lines are candidates with a
+ * probability greater than 99.9%, while two files which share 10% of their lines are candidates with a probability
+ * lower than 2%.
+ * </p>
+ */
+final class FileMoveCandidatesIndex {
+  static final int BANDS = 16;
+  static final int ROWS_PER_BAND = 3;
+  private static final int SIGNATURE_SIZE = BANDS * ROWS_PER_BAND;
+
+  private final Map<String, int[]> signaturesByKey = new HashMap<>();
+  private final Map<Long, List<String>> keysByBand = new HashMap<>();
+
+  /**
+   * Files without any line are ignored as they can't be similar to any other file.
+   */
+  public void add(String key, List<String> lineHashes) {
+    if (lineHashes.isEmpty()) {
+      return;
+    }
+    int[] signature = signature(lineHashes);
+    signaturesByKey.put(key, signature);
+    for (int band = 0; band < BANDS; band++) {
+      keysByBand.computeIfAbsent(bandKey(signature, band), k -> new ArrayList<>(1)).add(key);
+    }
+  }
+
+  /**
+   * @return keys of the indexed files which are candidates to be similar to the specified line hashes, the most
+   * similar ones first, limited to {@code maxCandidates}
+   */
+  public List<String> getCandidates(List<String> lineHashes, int maxCandidates) {
+    if (lineHashes.isEmpty() || signaturesByKey.isEmpty()) {
+      return new ArrayList<>(0);
+    }
+    int[] signature = signature(lineHashes);
+    Set<String> candidates = new HashSet<>();
+    for (int band = 0; band < BANDS; band++) {
+      List<String> keys = keysByBand.get(bandKey(signature, band));
+      if (keys != null) {
+        candidates.addAll(keys);
+      }
+    }
+    List<String> res = new ArrayList<>(candidates);
+    if (res.size() > maxCandidates) {
+      Map<String, Integer> estimatedSimilarities = new HashMap<>(res.size());
+      res.forEach(key -> estimatedSimilarities.put(key, estimatedSimilarity(signature, signaturesByKey.get(key))));
+      res.sort(Comparator.<String>comparingInt(estimatedSimilarities::get).reversed().thenComparing(Comparator.naturalOrder()));
+      return new ArrayList<>(res.subList(0, maxCandidates));
+    }
+    return res;
+  }
+
+  static int[] signature(List<String> lineHashes) {
+    int[] signature = new int[SIGNATURE_SIZE];
+    Arrays.fill(signature, Integer.MAX_VALUE);
+    for (String lineHash : lineHashes) {
+      // double hashing: the i-th hash function is h1 + i * h2
+      int h1 = mix(lineHash.hashCode());
+      int h2 = mix(h1 ^ 0x9E3779B9) | 1;
+      for (int i = 0; i < SIGNATURE_SIZE; i++) {
+        int hash = mix(h1 + i * h2);
+        if (hash < signature[i]) {
+          signature[i] = hash;
+        }
+      }
+    }
+    return signature;
+  }
+
+  /**
+   * Number of equal values in both signatures, which divided by the signature size is an estimation of the
+   * Jaccard similarity of the two sets of line hashes.
+   */
+  static int estimatedSimilarity(int[] signature1, int[] signature2) {
+    int res = 0;
+    for (int i = 0; i < SIGNATURE_SIZE; i++) {
+      if (signature1[i] == signature2[i]) {
+        res++;
+      }
+    }
+    return res;
+  }
+
+  private static long bandKey(int[] signature, int band) {
+    long res = band;
+    for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+      res = 31 * res + signature[row];
+    }
+    return res;
+  }
+
+  /**
+   * Finalization mix of MurmurHash3
+   */
+  private static int mix(int value) {
+    int h = value;
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h;
+  }
+}
@@ -37,8 +37,6 @@ import javax.annotation.concurrent.Immutable;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
-import org.sonar.core.hash.SourceLinesHashesComputer;
-import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
@@ -47,12 +45,13 @@ import org.sonar.db.component.ComponentTreeQuery.Strategy;
 import org.sonar.db.source.FileSourceDto;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.ConfigurationRepository;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.filemove.FileSimilarity.File;
-import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepository;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepository;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
@@ -63,6 +62,12 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
 
 public class FileMoveDetectionStep implements ComputationStep {
   protected static final int MIN_REQUIRED_SCORE = 85;
+  /**
+   * Maximum number of added files compared to each removed file. Only the candidates which are the most likely
+   * to be similar to the removed file are compared.
+   */
+  static final String MAX_CANDIDATES_PER_FILE_PROPERTY = "sonar.filemove.maxCandidatesPerFile";
+  static final int DEFAULT_MAX_CANDIDATES_PER_FILE = 50;
   private static final Logger LOG = Loggers.get(FileMoveDetectionStep.class);
   private static final List<String> FILE_QUALIFIERS = asList(Qualifiers.FILE, Qualifiers.UNIT_TEST_FILE);
   private static final Splitter LINES_HASHES_SPLITTER = on('\n');
@@ -70,18 +75,21 @@ public class FileMoveDetectionStep implements ComputationStep {
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final TreeRootHolder rootHolder;
   private final DbClient dbClient;
-  private final SourceLinesRepository sourceLinesRepository;
+  private final SourceLinesHashRepository sourceLinesHashRepository;
   private final FileSimilarity fileSimilarity;
   private final MutableMovedFilesRepository movedFilesRepository;
+  private final ConfigurationRepository configRepository;
 
   public FileMoveDetectionStep(AnalysisMetadataHolder analysisMetadataHolder, TreeRootHolder rootHolder, DbClient dbClient,
-    SourceLinesRepository sourceLinesRepository, FileSimilarity fileSimilarity, MutableMovedFilesRepository movedFilesRepository) {
+    SourceLinesHashRepository sourceLinesHashRepository, FileSimilarity fileSimilarity, MutableMovedFilesRepository movedFilesRepository,
+    ConfigurationRepository configRepository) {
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.rootHolder = rootHolder;
     this.dbClient = dbClient;
-    this.sourceLinesRepository = sourceLinesRepository;
+    this.sourceLinesHashRepository = sourceLinesHashRepository;
     this.fileSimilarity = fileSimilarity;
     this.movedFilesRepository = movedFilesRepository;
+    this.configRepository = configRepository;
   }
 
   @Override
@@ -179,48 +187,52 @@ public class FileMoveDetectionStep implements ComputationStep {
   private Map<String, File> getReportFileSourcesByKey(Map<String, Component> reportFilesByKey, Set<String> addedFileKeys) {
     ImmutableMap.Builder<String, File> builder = ImmutableMap.builder();
     for (String fileKey : addedFileKeys) {
-      // FIXME computation of sourceHash and lineHashes might be done multiple times for some files: here, in ComputeFileSourceData, in
-      // SourceHashRepository
       Component component = reportFilesByKey.get(fileKey);
-      SourceLinesHashesComputer linesHashesComputer = new SourceLinesHashesComputer();
-      try (CloseableIterator<String> lineIterator = sourceLinesRepository.readLines(component)) {
-        while (lineIterator.hasNext()) {
-          String line = lineIterator.next();
-          linesHashesComputer.addLine(line);
-        }
-      }
-      builder.put(fileKey, new File(component.getReportAttributes().getPath(), linesHashesComputer.getLineHashes()));
+      builder.put(fileKey, new File(component.getReportAttributes().getPath(), sourceLinesHashRepository.getLineHashes(component)));
     }
     return builder.build();
   }
 
   private ScoreMatrix computeScoreMatrix(Map<String, DbComponent> dtosByKey, Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey) {
-    int[][] scoreMatrix = new int[dbFileKeys.size()][reportFileSourcesByKey.size()];
-    int maxScore = 0;
+    int maxCandidatesPerFile = configRepository.getConfiguration().getInt(MAX_CANDIDATES_PER_FILE_PROPERTY).orElse(DEFAULT_MAX_CANDIDATES_PER_FILE);
+    FileMoveCandidatesIndex candidatesIndex = new FileMoveCandidatesIndex();
+    reportFileSourcesByKey.forEach((key, file) -> candidatesIndex.add(key, file.getLineHashes()));
 
+    List<ScoreMatrix.ScoreFile> scores = new ArrayList<>();
+    int maxScore = 0;
     try (DbSession dbSession = dbClient.openSession(false)) {
-      int dbFileIndex = 0;
       for (String removedFileKey : dbFileKeys) {
         File fileInDb = getFile(dbSession, dtosByKey.get(removedFileKey));
         if (fileInDb == null) {
           continue;
         }
 
-        int reportFileIndex = 0;
-        for (Map.Entry<String, File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-          File unmatchedFile = reportFileSourceAndKey.getValue();
+        for (String reportFileKey : candidatesIndex.getCandidates(fileInDb.getLineHashes(), maxCandidatesPerFile)) {
+          File unmatchedFile = reportFileSourcesByKey.get(reportFileKey);
+          if (!canReachMinRequiredScore(fileInDb, unmatchedFile)) {
+            continue;
+          }
           int score = fileSimilarity.score(fileInDb, unmatchedFile);
-          scoreMatrix[dbFileIndex][reportFileIndex] = score;
+          scores.add(new ScoreMatrix.ScoreFile(removedFileKey, reportFileKey, score));
           if (score > maxScore) {
             maxScore = score;
           }
-          reportFileIndex++;
         }
-        dbFileIndex++;
       }
     }
+    LOG.debug("{} pairs of files compared out of {} removed and {} added files", scores.size(), dbFileKeys.size(), reportFileSourcesByKey.size());
+
+    return new ScoreMatrix(scores, maxScore);
+  }
 
-    return new ScoreMatrix(dbFileKeys, reportFileSourcesByKey, scoreMatrix, maxScore);
+  /**
+   * The score is based on the Levenshtein distance between the line hashes of the two files, which is at least
+   * the difference of their number of lines.
+   */
+  private static boolean canReachMinRequiredScore(File file1, File file2) {
+    int size1 = file1.getLineHashes().size();
+    int size2 = file2.getLineHashes().size();
+    return 100L * Math.min(size1, size2) >= (long) MIN_REQUIRED_SCORE * Math.max(size1, size2);
   }
 
   @CheckForNull
@@ -0,0 +1,67 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filesystem;
+
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.server.platform.ServerFileSystem;
+
+/**
+ * Deletes at startup the {@link TaskWorkingDirectory working directories} of the tasks which are not in queue anymore,
+ * for example because they have been canceled or processed by another node after this one has been killed.
+ * Directories of the tasks which are still in queue, whatever their status, are kept so that these tasks can reuse them.
+ */
+public class TaskWorkingDirectoriesCleaner implements Startable {
+  private static final Logger LOG = Loggers.get(TaskWorkingDirectoriesCleaner.class);
+
+  private final ServerFileSystem fs;
+  private final DbClient dbClient;
+
+  public TaskWorkingDirectoriesCleaner(ServerFileSystem fs, DbClient dbClient) {
+    this.fs = fs;
+    this.dbClient = dbClient;
+  }
+
+  @Override
+  public void start() {
+    File[] taskDirs = TaskWorkingDirectory.getTasksDir(fs).listFiles(File::isDirectory);
+    if (taskDirs == null || taskDirs.length == 0) {
+      return;
+    }
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      for (File taskDir : taskDirs) {
+        if (!dbClient.ceQueueDao().selectByUuid(dbSession, taskDir.getName()).isPresent()) {
+          LOG.debug("Delete working directory of task {}", taskDir.getName());
+          FileUtils.deleteQuietly(taskDir);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    // nothing to do
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filesystem;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.picocontainer.Startable;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.server.platform.ServerFileSystem;
+
+/**
+ * Directory dedicated to a task, located in the "ce/tasks" directory of the data directory of the SonarQube instance.
+ * Contrary to the temp directory, which is cleaned at startup, it survives a restart of the node.
+ * <p>
+ * It contains checkpoints of the work done by the task, so that the task, if it is restarted on the same node (for
+ * example when the node has been killed during the processing), does not do the same work twice. It contains the
+ * extracted analysis report (see {@link org.sonar.server.computation.task.projectanalysis.step.ExtractReportStep}),
+ * the UUIDs of the components (see {@link org.sonar.server.computation.task.projectanalysis.step.BuildComponentTreeStep})
+ * and the measures and issues computed by the last completed step (see
+ * {@link org.sonar.server.computation.task.projectanalysis.step.ReportComputationStepCheckpoints}).
+ * </p>
+ * <p>
+ * This directory is deleted at the end of the processing, whatever its status.
+ * </p>
+ */
+public class TaskWorkingDirectory implements Startable {
+
+  private static final String TASKS_DIR = "ce/tasks";
+  private static final String CHECKPOINT_SUFFIX = ".done";
+
+  private final File dir;
+
+  public TaskWorkingDirectory(ServerFileSystem fs, CeTask task) {
+    this.dir = new File(getTasksDir(fs), task.getUuid());
+  }
+
+  static File getTasksDir(ServerFileSystem fs) {
+    return new File(fs.getDataDir(), TASKS_DIR);
+  }
+
+  /**
+   * Whether the work named {@code name} has been completed by a previous execution of the task.
+   */
+  public boolean hasCheckpoint(String name) {
+    return checkpointFile(name).isFile();
+  }
+
+  /**
+   * Sub-directory {@code name}, which content is kept as long as the task is not finished.
+   */
+  public File getDir(String name) {
+    File subDir = new File(dir, name);
+    try {
+      FileUtils.forceMkdir(subDir);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create directory " + subDir, e);
+    }
+    return subDir;
+  }
+
+  /**
+   * Empty sub-directory {@code name}. The checkpoint of the work named {@code name}, if any, is removed.
+   */
+  public File resetDir(String name) {
+    delete(name);
+    return getDir(name);
+  }
+
+  /**
+   * Deletes the checkpoint of the work named {@code name}, if any, and its sub-directory.
+   */
+  public void delete(String name) {
+    FileUtils.deleteQuietly(checkpointFile(name));
+    FileUtils.deleteQuietly(new File(dir, name));
+  }
+
+  /**
+   * Marks the work named {@code name} as completed.
+   */
+  public void checkpoint(String name) {
+    File file = checkpointFile(name);
+    try {
+      FileUtils.touch(file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to create checkpoint " + file, e);
+    }
+  }
+
+  private File checkpointFile(String name) {
+    return new File(dir, name + CHECKPOINT_SUFFIX);
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    FileUtils.deleteQuietly(dir);
+  }
+}
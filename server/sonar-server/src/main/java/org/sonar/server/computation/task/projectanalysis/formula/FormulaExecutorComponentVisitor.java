@@ -20,15 +20,15 @@
 package org.sonar.server.computation.task.projectanalysis.formula;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import javax.annotation.CheckForNull;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
 import org.sonar.server.computation.task.projectanalysis.component.PathAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.formula.counter.IntSumCounter;
+import org.sonar.server.computation.task.projectanalysis.formula.counter.LongSumCounter;
 import org.sonar.server.computation.task.projectanalysis.measure.Measure;
 import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepository;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
@@ -38,39 +38,47 @@ import org.sonar.server.computation.task.projectanalysis.period.PeriodHolder;
 
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Executes {@link Formula formulas} on all the components of the tree, in a single bottom-up pass.
+ * <p>
+ * {@link SumFormula.IntSumFormula} and {@link SumFormula.LongSumFormula}, which are most of the formulas, are not evaluated
+ * with {@link Counter} objects but with primitive accumulators: the sums of each level of the tree are stored in arrays
+ * indexed by formula, which avoids creating a counter per formula and per component. Other formulas use their counters.
+ */
 public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<FormulaExecutorComponentVisitor.Counters> {
-  private static final SimpleStackElementFactory<Counters> COUNTERS_FACTORY = new SimpleStackElementFactory<Counters>() {
-
-    @Override
-    public Counters createForAny(Component component) {
-      return new Counters();
-    }
-
-    @Override
-    public Counters createForFile(Component component) {
-      // No need to create a counter on leaf levels
-      return null;
-    }
-
-    @Override
-    public Counters createForProjectView(Component projectView) {
-      // No need to create a counter on leaf levels
-      return null;
-    }
-  };
 
   @CheckForNull
   private final PeriodHolder periodHolder;
   private final MetricRepository metricRepository;
   private final MeasureRepository measureRepository;
-  private final List<Formula> formulas;
-
-  private FormulaExecutorComponentVisitor(Builder builder, Iterable<Formula> formulas) {
-    super(CrawlerDepthLimit.LEAVES, ComponentVisitor.Order.POST_ORDER, COUNTERS_FACTORY);
+  // formulas evaluated with counters
+  private final Formula[] formulas;
+  // formulas evaluated with primitive accumulators
+  private final SumFormula[] sumFormulas;
+  // metrics are resolved on first use, MetricRepository may not be populated when visitor is created
+  private Metric[][] outputMetrics;
+  private Metric[] sumMetrics;
+
+  private FormulaExecutorComponentVisitor(Builder builder, Formula[] formulas, SumFormula[] sumFormulas) {
+    super(CrawlerDepthLimit.LEAVES, ComponentVisitor.Order.POST_ORDER, new CountersFactory(formulas.length, sumFormulas.length));
     this.periodHolder = builder.periodHolder;
     this.measureRepository = builder.measureRepository;
     this.metricRepository = builder.metricRepository;
-    this.formulas = ImmutableList.copyOf(formulas);
+    this.formulas = formulas;
+    this.sumFormulas = sumFormulas;
+  }
+
+  private static FormulaExecutorComponentVisitor create(Builder builder, Iterable<Formula> formulas) {
+    List<Formula> counterFormulas = new ArrayList<>();
+    List<SumFormula> sumFormulas = new ArrayList<>();
+    for (Formula formula : formulas) {
+      if (formula.getClass() == SumFormula.IntSumFormula.class || formula.getClass() == SumFormula.LongSumFormula.class) {
+        sumFormulas.add((SumFormula) formula);
+      } else {
+        counterFormulas.add(formula);
+      }
+    }
+    return new FormulaExecutorComponentVisitor(builder, counterFormulas.toArray(new Formula[0]), sumFormulas.toArray(new SumFormula[0]));
   }
 
   public static Builder newBuilder(MetricRepository metricRepository, MeasureRepository measureRepository) {
@@ -98,7 +106,7 @@ public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<For
     }
 
     public FormulaExecutorComponentVisitor buildFor(Iterable<Formula> formulas) {
-      return new FormulaExecutorComponentVisitor(this, formulas);
+      return FormulaExecutorComponentVisitor.create(this, formulas);
     }
   }
 
@@ -138,6 +146,7 @@ public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<For
   }
 
   private void process(Component component, Path<FormulaExecutorComponentVisitor.Counters> path) {
+    resolveMetrics();
     if (component.getChildren().isEmpty()) {
       processLeaf(component, path);
     } else {
@@ -145,47 +154,105 @@ public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<For
     }
   }
 
+  private void resolveMetrics() {
+    if (outputMetrics != null) {
+      return;
+    }
+    outputMetrics = new Metric[formulas.length][];
+    for (int i = 0; i < formulas.length; i++) {
+      String[] metricKeys = formulas[i].getOutputMetricKeys();
+      outputMetrics[i] = new Metric[metricKeys.length];
+      for (int j = 0; j < metricKeys.length; j++) {
+        outputMetrics[i][j] = metricRepository.getByKey(metricKeys[j]);
+      }
+    }
+    sumMetrics = new Metric[sumFormulas.length];
+    for (int i = 0; i < sumFormulas.length; i++) {
+      sumMetrics[i] = metricRepository.getByKey(sumFormulas[i].metricKey);
+    }
+  }
+
   private void processNotLeaf(Component component, Path<FormulaExecutorComponentVisitor.Counters> path) {
-    for (Formula formula : formulas) {
-      Counter counter = path.current().getCounter(formula);
+    Counters counters = path.current();
+    for (int i = 0; i < formulas.length; i++) {
+      Counter counter = counters.getCounter(i);
       // If there were no file under this node, the counter won't be initialized
       if (counter != null) {
-        for (String metricKey : formula.getOutputMetricKeys()) {
-          addNewMeasure(component, metricKey, formula, counter);
+        addNewMeasures(component, i, counter);
+        if (!path.isRoot()) {
+          path.parent().aggregate(i, counter);
+        }
+      }
+    }
+    for (int i = 0; i < sumFormulas.length; i++) {
+      if (counters.sumInitialized[i]) {
+        long sum = counters.sums[i];
+        addNewSumMeasure(component, i, sum);
+        if (!path.isRoot()) {
+          path.parent().addToSum(i, sum);
         }
-        aggregateToParent(path, formula, counter);
       }
     }
   }
 
   private void processLeaf(Component file, Path<FormulaExecutorComponentVisitor.Counters> path) {
     CounterInitializationContext counterContext = new CounterInitializationContextImpl(file);
-    for (Formula formula : formulas) {
-      Counter counter = formula.createNewCounter();
+    for (int i = 0; i < formulas.length; i++) {
+      Counter counter = formulas[i].createNewCounter();
       counter.initialize(counterContext);
-      for (String metricKey : formula.getOutputMetricKeys()) {
-        addNewMeasure(file, metricKey, formula, counter);
+      addNewMeasures(file, i, counter);
+      if (!path.isRoot()) {
+        path.parent().aggregate(i, counter);
+      }
+    }
+    for (int i = 0; i < sumFormulas.length; i++) {
+      Optional<Measure> measure = measureRepository.getRawMeasure(file, sumMetrics[i]);
+      Number value = measure.isPresent() ? leafValue(sumFormulas[i], measure.get()) : sumFormulas[i].defaultInputValue;
+      if (value != null) {
+        addNewSumMeasure(file, i, value.longValue());
+        if (!path.isRoot()) {
+          path.parent().addToSum(i, value.longValue());
+        }
       }
-      aggregateToParent(path, formula, counter);
     }
   }
 
-  private void addNewMeasure(Component component, String metricKey, Formula formula, Counter counter) {
+  private static Number leafValue(SumFormula formula, Measure measure) {
+    if (formula instanceof SumFormula.IntSumFormula) {
+      return measure.getIntValue();
+    }
+    return measure.getLongValue();
+  }
+
+  private void addNewMeasures(Component component, int formulaIndex, Counter counter) {
     // no new measure can be created by formulas for PROJECT_VIEW components, their measures are the copy
     if (component.getType() == Component.Type.PROJECT_VIEW) {
       return;
     }
-    Metric metric = metricRepository.getByKey(metricKey);
-    Optional<Measure> measure = formula.createMeasure(counter, new CreateMeasureContextImpl(component, metric));
-    if (measure.isPresent()) {
-      measureRepository.add(component, metric, measure.get());
+    Formula formula = formulas[formulaIndex];
+    for (Metric metric : outputMetrics[formulaIndex]) {
+      Optional<Measure> measure = formula.createMeasure(counter, new CreateMeasureContextImpl(component, metric));
+      if (measure.isPresent()) {
+        measureRepository.add(component, metric, measure.get());
+      }
     }
   }
 
-  private static void aggregateToParent(Path<FormulaExecutorComponentVisitor.Counters> path, Formula formula, Counter currentCounter) {
-    if (!path.isRoot()) {
-      path.parent().aggregate(formula, currentCounter);
+  /**
+   * Same as {@link SumFormula.IntSumFormula#createMeasure(IntSumCounter, CreateMeasureContext)} and
+   * {@link SumFormula.LongSumFormula#createMeasure(LongSumCounter, CreateMeasureContext)}
+   */
+  private void addNewSumMeasure(Component component, int formulaIndex, long sum) {
+    if (component.getType() == Component.Type.PROJECT_VIEW || !CrawlerDepthLimit.LEAVES.isDeeperThan(component.getType())) {
+      return;
     }
+    Measure measure;
+    if (sumFormulas[formulaIndex] instanceof SumFormula.IntSumFormula) {
+      measure = Measure.newMeasureBuilder().create((int) sum);
+    } else {
+      measure = Measure.newMeasureBuilder().create(sum);
+    }
+    measureRepository.add(component, sumMetrics[formulaIndex], measure);
   }
 
   private class CounterInitializationContextImpl implements CounterInitializationContext {
@@ -217,23 +284,63 @@ public class FormulaExecutorComponentVisitor extends PathAwareVisitorAdapter<For
   }
 
   public static class Counters {
-    Map<Formula, Counter> countersByFormula = new HashMap<>();
+    private final Counter[] counters;
+    private final long[] sums;
+    private final boolean[] sumInitialized;
+
+    private Counters(int formulas, int sumFormulas) {
+      this.counters = new Counter[formulas];
+      this.sums = new long[sumFormulas];
+      this.sumInitialized = new boolean[sumFormulas];
+    }
 
-    public void aggregate(Formula formula, Counter childCounter) {
-      Counter counter = countersByFormula.get(formula);
+    private void aggregate(int formulaIndex, Counter childCounter) {
+      Counter counter = counters[formulaIndex];
       if (counter == null) {
-        countersByFormula.put(formula, childCounter);
+        counters[formulaIndex] = childCounter;
       } else {
         counter.aggregate(childCounter);
       }
     }
 
+    private void addToSum(int sumFormulaIndex, long value) {
+      sums[sumFormulaIndex] += value;
+      sumInitialized[sumFormulaIndex] = true;
+    }
+
     /**
      * Counter can be null on a level when it has not been fed by children levels
      */
     @CheckForNull
-    public Counter getCounter(Formula formula) {
-      return countersByFormula.get(formula);
+    private Counter getCounter(int formulaIndex) {
+      return counters[formulaIndex];
+    }
+  }
+
+  private static class CountersFactory extends SimpleStackElementFactory<Counters> {
+    private final int formulas;
+    private final int sumFormulas;
+
+    private CountersFactory(int formulas, int sumFormulas) {
+      this.formulas = formulas;
+      this.sumFormulas = sumFormulas;
+    }
+
+    @Override
+    public Counters createForAny(Component component) {
+      return new Counters(formulas, sumFormulas);
+    }
+
+    @Override
+    public Counters createForFile(Component component) {
+      // No need to create a counter on leaf levels
+      return null;
+    }
+
+    @Override
+    public Counters createForProjectView(Component projectView) {
+      // No need to create a counter on leaf levels
+      return null;
     }
   }
 
@@ -0,0 +1,88 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Keys of the issues created, updated or closed by the analysis. They are used to index only these issues
+ * once the analysis is persisted.
+ * <p>
+ * Issues are also indexed when their component is moved, as the index copies the path and the module path of
+ * components. The uuids of these components are kept by {@link #addMovedComponent(String)}.
+ * <p>
+ * When too many issues are changed (for example on the first analysis of a project), keys are not kept anymore and
+ * all the issues of the branch must be indexed.
+ */
+public class ChangedIssueKeysHolder {
+
+  static final int MAX_KEYS = 50_000;
+
+  private final int maxKeys;
+  @CheckForNull
+  private Set<String> keys = new HashSet<>();
+  private final Set<String> movedComponentUuids = new HashSet<>();
+
+  public ChangedIssueKeysHolder() {
+    this(MAX_KEYS);
+  }
+
+  ChangedIssueKeysHolder(int maxKeys) {
+    this.maxKeys = maxKeys;
+  }
+
+  public void add(String issueKey) {
+    if (keys == null) {
+      return;
+    }
+    keys.add(issueKey);
+    if (keys.size() > maxKeys) {
+      keys = null;
+    }
+  }
+
+  /**
+   * Declares that the path or the module path of the component changed, so that all its issues must be indexed.
+   */
+  public void addMovedComponent(String componentUuid) {
+    movedComponentUuids.add(componentUuid);
+  }
+
+  /**
+   * Whether too many issues have been changed to keep their keys.
+   */
+  public boolean isOverflowed() {
+    return keys == null;
+  }
+
+  public Set<String> getKeys() {
+    checkState(keys != null, "More than %s issues have been changed, their keys are not kept", maxKeys);
+    return Collections.unmodifiableSet(keys);
+  }
+
+  public Set<String> getMovedComponentUuids() {
+    return Collections.unmodifiableSet(movedComponentUuids);
+  }
+}
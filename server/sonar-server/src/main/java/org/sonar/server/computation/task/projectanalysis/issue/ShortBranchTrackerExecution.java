@@ -45,6 +45,10 @@ public class ShortBranchTrackerExecution {
   public Tracking<DefaultIssue, DefaultIssue> track(Component component) {
     Input<DefaultIssue> rawInput = rawInputFactory.create(component);
     Input<DefaultIssue> baseInput = baseInputFactory.create(component);
+    if (rawInput.getIssues().isEmpty()) {
+      // no issue can match the merge branch, do not load its issues
+      return tracker.track(rawInput, baseInput);
+    }
     Input<DefaultIssue> mergeInput = mergeInputFactory.create(component);
 
     Tracking<DefaultIssue, DefaultIssue> mergeTracking = tracker.track(rawInput, mergeInput);
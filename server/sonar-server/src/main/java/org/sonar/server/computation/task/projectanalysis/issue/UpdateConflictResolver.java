@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.issue;
 
 import com.google.common.annotations.VisibleForTesting;
+import javax.annotation.Nullable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.issue.DefaultIssue;
@@ -35,9 +36,15 @@ public class UpdateConflictResolver {
   private static final Logger LOG = Loggers.get(UpdateConflictResolver.class);
 
   public void resolve(DefaultIssue issue, IssueMapper mapper) {
+    resolve(issue, mapper.selectByKey(issue.key()), mapper);
+  }
+
+  /**
+   * Same as {@link #resolve(DefaultIssue, IssueMapper)} when the issue has already been loaded from database
+   */
+  public void resolve(DefaultIssue issue, @Nullable IssueDto dbIssue, IssueMapper mapper) {
     LOG.debug("Resolve conflict on issue {}", issue.key());
 
-    IssueDto dbIssue = mapper.selectByKey(issue.key());
     if (dbIssue != null) {
       mergeFields(dbIssue, issue);
       mapper.update(IssueDto.toDtoForUpdate(issue, System.currentTimeMillis()));
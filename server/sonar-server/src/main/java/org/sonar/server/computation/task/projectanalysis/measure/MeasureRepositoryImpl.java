@@ -21,8 +21,16 @@ package org.sonar.server.computation.task.projectanalysis.measure;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.SetMultimap;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -30,6 +38,7 @@ import org.sonar.db.measure.MeasureDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.measure.MapBasedRawMeasureRepository.OverridePolicy;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
@@ -125,4 +134,154 @@ public class MeasureRepositoryImpl implements MeasureRepository {
     loadedComponents.add(component.getReportAttributes().getRef());
   }
 
+  /**
+   * Writes the raw measures of the tree of components, including the ones already loaded from the report, so that
+   * they can be restored by {@link #readFrom(TreeRootHolder, DataInput)}.
+   */
+  public void writeTo(Component root, DataOutput output) throws IOException {
+    writeComponent(root, output);
+    output.writeBoolean(false);
+  }
+
+  private void writeComponent(Component component, DataOutput output) throws IOException {
+    int ref = component.getReportAttributes().getRef();
+    SetMultimap<String, Measure> rawMeasures = delegate.getRawMeasures(component);
+    if (!rawMeasures.isEmpty() || loadedComponents.contains(ref)) {
+      output.writeBoolean(true);
+      output.writeInt(ref);
+      output.writeBoolean(loadedComponents.contains(ref));
+      output.writeInt(rawMeasures.size());
+      for (Map.Entry<String, Measure> entry : rawMeasures.entries()) {
+        output.writeUTF(entry.getKey());
+        writeMeasure(entry.getValue(), output);
+      }
+    }
+    for (Component child : component.getChildren()) {
+      writeComponent(child, output);
+    }
+  }
+
+  /**
+   * Restores the raw measures written by {@link #writeTo(Component, DataOutput)}. They replace the existing ones.
+   */
+  public void readFrom(TreeRootHolder treeRootHolder, DataInput input) throws IOException {
+    while (input.readBoolean()) {
+      int ref = input.readInt();
+      Component component = treeRootHolder.getComponentByRef(ref);
+      if (input.readBoolean()) {
+        loadedComponents.add(ref);
+      }
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        Metric metric = metricRepository.getByKey(input.readUTF());
+        delegate.add(component, metric, readMeasure(input), OverridePolicy.OVERRIDE);
+      }
+    }
+  }
+
+  private static void writeMeasure(Measure measure, DataOutput output) throws IOException {
+    output.writeUTF(measure.getValueType().name());
+    switch (measure.getValueType()) {
+      case BOOLEAN:
+        output.writeBoolean(measure.getBooleanValue());
+        break;
+      case INT:
+        output.writeInt(measure.getIntValue());
+        break;
+      case LONG:
+        output.writeLong(measure.getLongValue());
+        break;
+      case DOUBLE:
+        output.writeDouble(measure.getDoubleValue());
+        break;
+      case LEVEL:
+        output.writeUTF(measure.getLevelValue().name());
+        break;
+      default:
+        // no value or value stored in data
+        break;
+    }
+    writeNullableString(measure.getData(), output);
+    output.writeBoolean(measure.hasQualityGateStatus());
+    if (measure.hasQualityGateStatus()) {
+      output.writeUTF(measure.getQualityGateStatus().getStatus().name());
+      writeNullableString(measure.getQualityGateStatus().getText(), output);
+    }
+    output.writeBoolean(measure.hasVariation());
+    if (measure.hasVariation()) {
+      output.writeDouble(measure.getVariation());
+    }
+  }
+
+  private static Measure readMeasure(DataInput input) throws IOException {
+    Measure.ValueType valueType = Measure.ValueType.valueOf(input.readUTF());
+    Double value = null;
+    Measure.Level level = null;
+    switch (valueType) {
+      case BOOLEAN:
+        value = input.readBoolean() ? 1.0d : 0.0d;
+        break;
+      case INT:
+        value = (double) input.readInt();
+        break;
+      case LONG:
+        value = (double) input.readLong();
+        break;
+      case DOUBLE:
+        value = input.readDouble();
+        break;
+      case LEVEL:
+        level = Measure.Level.valueOf(input.readUTF());
+        break;
+      default:
+        break;
+    }
+    String data = readNullableString(input);
+    Measure.NewMeasureBuilder builder = Measure.newMeasureBuilder();
+    if (input.readBoolean()) {
+      Measure.Level status = Measure.Level.valueOf(input.readUTF());
+      builder.setQualityGateStatus(new QualityGateStatus(status, readNullableString(input)));
+    }
+    if (input.readBoolean()) {
+      builder.setVariation(input.readDouble());
+    }
+    switch (valueType) {
+      case BOOLEAN:
+        return builder.create(value == 1.0d, data);
+      case INT:
+        return builder.create(value.intValue(), data);
+      case LONG:
+        return builder.create(value.longValue(), data);
+      case DOUBLE:
+        // the value has already been scaled, its scale is kept as is
+        return builder.create(value, BigDecimal.valueOf(value).scale(), data);
+      case STRING:
+        return builder.create(data);
+      case LEVEL:
+        return builder.create(level);
+      default:
+        return builder.createNoValue();
+    }
+  }
+
+  private static void writeNullableString(@Nullable String s, DataOutput output) throws IOException {
+    output.writeBoolean(s != null);
+    if (s != null) {
+      // writeUTF() does not support strings longer than 64KB, for example the data of duplications
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+  }
+
+  @CheckForNull
+  private static String readNullableString(DataInput input) throws IOException {
+    if (!input.readBoolean()) {
+      return null;
+    }
+    byte[] bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
 }
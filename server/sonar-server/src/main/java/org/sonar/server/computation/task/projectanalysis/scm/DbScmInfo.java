@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.scm;
 
 import com.google.common.base.Optional;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -61,6 +62,40 @@ class DbScmInfo implements ScmInfo {
     return Optional.of(new DbScmInfo(new ScmInfoImpl(lineChangesets)));
   }
 
+  /**
+   * @see ScmDataEncoder
+   */
+  static Optional<ScmInfo> create(Component component, DbFileSources.ScmData scmData) {
+    Changeset.Builder builder = Changeset.newChangesetBuilder();
+    List<Changeset> changesets = new ArrayList<>(scmData.getChangesetRevisionCount());
+    long date = 0L;
+    for (int i = 0; i < scmData.getChangesetRevisionCount(); i++) {
+      int authorIndex = scmData.getChangesetAuthor(i);
+      date += scmData.getChangesetDateDelta(i);
+      changesets.add(builder
+        .setRevision(scmData.getChangesetRevision(i))
+        .setAuthor(authorIndex == 0 ? null : scmData.getAuthor(authorIndex - 1))
+        .setDate(date)
+        .build());
+    }
+
+    boolean encounteredLineWithoutScmInfo = false;
+    List<Changeset> lineChangesets = new ArrayList<>(scmData.getLineChangesetCount());
+    for (int changesetIndex : scmData.getLineChangesetList()) {
+      if (changesetIndex == 0) {
+        encounteredLineWithoutScmInfo = true;
+      } else {
+        lineChangesets.add(changesets.get(changesetIndex - 1));
+      }
+    }
+    if (lineChangesets.isEmpty()) {
+      return Optional.absent();
+    }
+    checkState(!encounteredLineWithoutScmInfo,
+      "Partial scm information stored in DB for component '%s'. Not all lines have SCM info. Can not proceed", component);
+    return Optional.of(new DbScmInfo(new ScmInfoImpl(lineChangesets)));
+  }
+
   @Override
   public Changeset getLatestChangeset() {
     return delegate.getLatestChangeset();
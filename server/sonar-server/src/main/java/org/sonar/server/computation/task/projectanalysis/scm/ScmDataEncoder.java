@@ -0,0 +1,61 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.scm;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.sonar.db.protobuf.DbFileSources;
+
+/**
+ * Converts the SCM information of lines into the columnar structure stored in column FILE_SOURCES.SCM_DATA.
+ * As done by {@link DbScmInfo}, changesets are identified by their revision.
+ */
+public final class ScmDataEncoder {
+
+  private ScmDataEncoder() {
+    // only static stuff
+  }
+
+  public static DbFileSources.ScmData encode(Iterable<DbFileSources.Line> lines) {
+    DbFileSources.ScmData.Builder builder = DbFileSources.ScmData.newBuilder();
+    Map<String, Integer> authorIndexes = new HashMap<>();
+    Map<String, Integer> changesetIndexes = new HashMap<>();
+    long previousDate = 0L;
+    for (DbFileSources.Line line : lines) {
+      if (!line.hasScmRevision() || !line.hasScmDate()) {
+        builder.addLineChangeset(0);
+        continue;
+      }
+      Integer changesetIndex = changesetIndexes.get(line.getScmRevision());
+      if (changesetIndex == null) {
+        int authorIndex = line.hasScmAuthor() ? authorIndexes.computeIfAbsent(line.getScmAuthor(), author -> builder.addAuthor(author).getAuthorCount()) : 0;
+        builder
+          .addChangesetRevision(line.getScmRevision())
+          .addChangesetAuthor(authorIndex)
+          .addChangesetDateDelta(line.getScmDate() - previousDate);
+        previousDate = line.getScmDate();
+        changesetIndex = builder.getChangesetRevisionCount();
+        changesetIndexes.put(line.getScmRevision(), changesetIndex);
+      }
+      builder.addLineChangeset(changesetIndex);
+    }
+    return builder.build();
+  }
+}
@@ -24,6 +24,7 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.analysis.Branch;
@@ -58,11 +59,20 @@ public class ScmInfoDbLoader {
 
     LOGGER.trace("Reading SCM info from db for file '{}'", uuid.get());
     try (DbSession dbSession = dbClient.openSession(false)) {
-      FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, uuid.get());
+      FileSourceDto dto = dbClient.fileSourceDao().selectScmDataByFileUuid(dbSession, uuid.get());
       if (dto == null || !isDtoValid(file, dto)) {
         return NoScmInfo.INSTANCE;
       }
-      return DbScmInfo.create(file, dto.getSourceData().getLinesList()).or(NoScmInfo.INSTANCE);
+      DbFileSources.ScmData scmData = dto.getScmData();
+      if (scmData != null) {
+        return DbScmInfo.create(file, scmData).or(NoScmInfo.INSTANCE);
+      }
+      // file has not been updated since column SCM_DATA exists, SCM info must be read from the sources
+      FileSourceDto sourceDto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, uuid.get());
+      if (sourceDto == null) {
+        return NoScmInfo.INSTANCE;
+      }
+      return DbScmInfo.create(file, sourceDto.getSourceData().getLinesList()).or(NoScmInfo.INSTANCE);
     }
   }
 
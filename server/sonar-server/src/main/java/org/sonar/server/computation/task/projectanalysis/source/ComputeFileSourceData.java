@@ -23,7 +23,6 @@ import com.google.common.base.Joiner;
 import java.util.Iterator;
 import java.util.List;
 import org.sonar.core.hash.SourceHashComputer;
-import org.sonar.core.hash.SourceLinesHashesComputer;
 import org.sonar.db.protobuf.DbFileSources;
 
 public class ComputeFileSourceData {
@@ -31,18 +30,21 @@ public class ComputeFileSourceData {
   private final List<LineReader> lineReaders;
   private final Iterator<String> linesIterator;
 
-  private final int numberOfLines;
+  private final List<String> lineHashes;
   private int currentLine;
 
-  public ComputeFileSourceData(Iterator<String> sourceLinesIterator, List<LineReader> dataLineReaders, int numberOfLines) {
+  /**
+   * @param lineHashes hashes of the lines, as returned by {@link SourceLinesHashRepository}, so that they are not computed again
+   */
+  public ComputeFileSourceData(Iterator<String> sourceLinesIterator, List<LineReader> dataLineReaders, List<String> lineHashes) {
     this.lineReaders = dataLineReaders;
     this.linesIterator = sourceLinesIterator;
-    this.numberOfLines = numberOfLines;
+    this.lineHashes = lineHashes;
     this.currentLine = 0;
   }
 
   public Data compute() {
-    Data data = new Data(numberOfLines);
+    Data data = new Data(lineHashes);
     while (linesIterator.hasNext()) {
       currentLine++;
       read(data, linesIterator.next(), linesIterator.hasNext());
@@ -51,7 +53,6 @@ public class ComputeFileSourceData {
   }
 
   private void read(Data data, String source, boolean hasNextLine) {
-    data.linesHashesComputer.addLine(source);
     data.sourceHashComputer.addLine(source, hasNextLine);
 
     DbFileSources.Line.Builder lineBuilder = data.fileSourceBuilder.addLinesBuilder()
@@ -65,12 +66,12 @@ public class ComputeFileSourceData {
   public static class Data {
     private static final Joiner LINE_RETURN_JOINER = Joiner.on('\n');
 
-    private final SourceLinesHashesComputer linesHashesComputer;
+    private final List<String> lineHashes;
     private final SourceHashComputer sourceHashComputer = new SourceHashComputer();
     private final DbFileSources.Data.Builder fileSourceBuilder = DbFileSources.Data.newBuilder();
 
-    public Data(int lineCount) {
-      this.linesHashesComputer = new SourceLinesHashesComputer(lineCount);
+    public Data(List<String> lineHashes) {
+      this.lineHashes = lineHashes;
     }
 
     public String getSrcHash() {
@@ -78,7 +79,7 @@ public class ComputeFileSourceData {
     }
 
     public String getLineHashes() {
-      return LINE_RETURN_JOINER.join(linesHashesComputer.getLineHashes());
+      return LINE_RETURN_JOINER.join(lineHashes);
     }
 
     public DbFileSources.Data getFileSourceData() {
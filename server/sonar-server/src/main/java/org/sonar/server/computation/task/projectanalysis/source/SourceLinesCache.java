@@ -0,0 +1,218 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.source;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * Cache of the decoded lines and of the line hashes of the files of the analysis report, shared by all the steps
+ * of a Compute Engine task which read sources.
+ * <p>
+ * Entries are keyed by component ref and evicted in LRU order as soon as their estimated size exceeds
+ * {@link #DEFAULT_MAX_SIZE_IN_BYTES}. This class is thread-safe: sources are read concurrently by
+ * {@link org.sonar.server.computation.task.projectanalysis.step.PersistFileSourcesStep}.
+ */
+public class SourceLinesCache implements Startable {
+
+  static final long DEFAULT_MAX_SIZE_IN_BYTES = 32L * 1024 * 1024;
+
+  private static final Logger LOG = Loggers.get(SourceLinesCache.class);
+  // approximation of the memory used by a String, in addition to its characters
+  private static final int STRING_OVERHEAD_IN_BYTES = 40;
+
+  private final SourceLinesCacheStatistics statistics;
+  private final long maxSizeInBytes;
+  private final Map<Integer, Entry> entriesByRef = new LinkedHashMap<>(16, 0.75F, true);
+  private long sizeInBytes = 0L;
+  private long lineHits = 0L;
+  private long lineMisses = 0L;
+  private long hashHits = 0L;
+  private long hashMisses = 0L;
+  private long evictions = 0L;
+
+  public SourceLinesCache(SourceLinesCacheStatistics statistics) {
+    this(statistics, DEFAULT_MAX_SIZE_IN_BYTES);
+  }
+
+  SourceLinesCache(SourceLinesCacheStatistics statistics, long maxSizeInBytes) {
+    this.statistics = statistics;
+    this.maxSizeInBytes = maxSizeInBytes;
+  }
+
+  /**
+   * Returns the lines of the file with the specified ref, loading them with {@code loader} if they are not cached.
+   */
+  public List<String> getLines(int ref, Supplier<List<String>> loader) {
+    List<String> cached = getCachedLines(ref);
+    if (cached != null) {
+      return cached;
+    }
+    List<String> lines = unmodifiableList(loader.get());
+    putLines(ref, lines);
+    return lines;
+  }
+
+  /**
+   * Returns the lines of the file with the specified ref, or {@code null} if they are not cached. In this case the
+   * caller is expected to read the lines from the report and to call {@link #putLines(int, List)} if they are
+   * small enough to be cached (see {@link #getMaxEntrySizeInBytes()}).
+   */
+  @CheckForNull
+  public synchronized List<String> getCachedLines(int ref) {
+    Entry entry = entriesByRef.get(ref);
+    if (entry != null && entry.lines != null) {
+      lineHits++;
+      return entry.lines;
+    }
+    lineMisses++;
+    return null;
+  }
+
+  public synchronized void putLines(int ref, List<String> lines) {
+    store(ref, unmodifiableList(lines), null);
+  }
+
+  /**
+   * Files whose lines are bigger than this size are not worth buffering in order to be cached: they
+   * would evict most of the other entries.
+   */
+  public long getMaxEntrySizeInBytes() {
+    return maxSizeInBytes / 4;
+  }
+
+  static long sizeOf(String s) {
+    return STRING_OVERHEAD_IN_BYTES + 2L * s.length();
+  }
+
+  /**
+   * Returns the line hashes of the file with the specified ref, computing them with {@code loader} if they are not cached.
+   */
+  public List<String> getLineHashes(int ref, Supplier<List<String>> loader) {
+    synchronized (this) {
+      Entry entry = entriesByRef.get(ref);
+      if (entry != null && entry.lineHashes != null) {
+        hashHits++;
+        return entry.lineHashes;
+      }
+      hashMisses++;
+    }
+    List<String> lineHashes = unmodifiableList(loader.get());
+    synchronized (this) {
+      store(ref, null, lineHashes);
+    }
+    return lineHashes;
+  }
+
+  private void store(int ref, @Nullable List<String> lines, @Nullable List<String> lineHashes) {
+    Entry entry = entriesByRef.get(ref);
+    if (entry == null) {
+      entry = new Entry();
+      entriesByRef.put(ref, entry);
+    }
+    if (lines != null) {
+      entry.lines = lines;
+    }
+    if (lineHashes != null) {
+      entry.lineHashes = lineHashes;
+    }
+    sizeInBytes -= entry.sizeInBytes;
+    entry.sizeInBytes = sizeOf(entry.lines) + sizeOf(entry.lineHashes);
+    sizeInBytes += entry.sizeInBytes;
+    evict();
+  }
+
+  /**
+   * Evicts the least recently used entries until the size of the cache is below the limit. An entry which is alone
+   * bigger than the limit is not kept.
+   */
+  private void evict() {
+    Iterator<Entry> it = entriesByRef.values().iterator();
+    while (sizeInBytes > maxSizeInBytes && it.hasNext()) {
+      Entry eldest = it.next();
+      it.remove();
+      sizeInBytes -= eldest.sizeInBytes;
+      evictions++;
+    }
+  }
+
+  private static long sizeOf(@CheckForNull List<String> strings) {
+    if (strings == null) {
+      return 0L;
+    }
+    long size = 0L;
+    for (String s : strings) {
+      size += sizeOf(s);
+    }
+    return size;
+  }
+
+  synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  synchronized int size() {
+    return entriesByRef.size();
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (lineHits + lineMisses + hashHits + hashMisses > 0) {
+      LOG.debug("Source lines cache: lines {} hits/{} misses ({}% hit rate), line hashes {} hits/{} misses ({}% hit rate), {} evictions",
+        lineHits, lineMisses, hitRate(lineHits, lineMisses), hashHits, hashMisses, hitRate(hashHits, hashMisses), evictions);
+    }
+    statistics.add(lineHits, lineMisses, hashHits, hashMisses, evictions);
+    entriesByRef.clear();
+    sizeInBytes = 0L;
+    lineHits = 0L;
+    lineMisses = 0L;
+    hashHits = 0L;
+    hashMisses = 0L;
+    evictions = 0L;
+  }
+
+  private static long hitRate(long hits, long misses) {
+    long total = hits + misses;
+    return total == 0 ? 0 : (100 * hits / total);
+  }
+
+  private static final class Entry {
+    @CheckForNull
+    private List<String> lines;
+    @CheckForNull
+    private List<String> lineHashes;
+    private long sizeInBytes = 0L;
+  }
+}
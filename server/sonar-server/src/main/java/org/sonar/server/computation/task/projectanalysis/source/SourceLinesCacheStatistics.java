@@ -0,0 +1,63 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.source;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits, misses and evictions of the {@link SourceLinesCache} of all the tasks processed since startup. Counters of a
+ * task are added when its cache is stopped.
+ */
+public class SourceLinesCacheStatistics {
+
+  private final AtomicLong lineHits = new AtomicLong();
+  private final AtomicLong lineMisses = new AtomicLong();
+  private final AtomicLong lineHashesHits = new AtomicLong();
+  private final AtomicLong lineHashesMisses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  void add(long lineHits, long lineMisses, long lineHashesHits, long lineHashesMisses, long evictions) {
+    this.lineHits.addAndGet(lineHits);
+    this.lineMisses.addAndGet(lineMisses);
+    this.lineHashesHits.addAndGet(lineHashesHits);
+    this.lineHashesMisses.addAndGet(lineHashesMisses);
+    this.evictions.addAndGet(evictions);
+  }
+
+  public long getLineHits() {
+    return lineHits.get();
+  }
+
+  public long getLineMisses() {
+    return lineMisses.get();
+  }
+
+  public long getLineHashesHits() {
+    return lineHashesHits.get();
+  }
+
+  public long getLineHashesMisses() {
+    return lineHashesMisses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+}
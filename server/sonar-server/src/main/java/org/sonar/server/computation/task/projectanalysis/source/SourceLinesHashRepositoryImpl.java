@@ -0,0 +1,58 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.source;
+
+import java.util.List;
+import org.sonar.core.hash.SourceLinesHashesComputer;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.FILE;
+
+public class SourceLinesHashRepositoryImpl implements SourceLinesHashRepository {
+
+  private final SourceLinesRepository sourceLinesRepository;
+  private final SourceLinesCache cache;
+
+  public SourceLinesHashRepositoryImpl(SourceLinesRepository sourceLinesRepository, SourceLinesCache cache) {
+    this.sourceLinesRepository = sourceLinesRepository;
+    this.cache = cache;
+  }
+
+  @Override
+  public List<String> getLineHashes(Component file) {
+    requireNonNull(file, "Component should not be null");
+    checkArgument(file.getType() == FILE, "Component '%s' is not a file", file);
+
+    return cache.getLineHashes(file.getReportAttributes().getRef(), () -> computeLineHashes(file));
+  }
+
+  private List<String> computeLineHashes(Component file) {
+    SourceLinesHashesComputer linesHashesComputer = new SourceLinesHashesComputer();
+    try (CloseableIterator<String> lines = sourceLinesRepository.readLines(file)) {
+      while (lines.hasNext()) {
+        linesHashesComputer.addLine(lines.next());
+      }
+    }
+    return linesHashesComputer.getLineHashes();
+  }
+}
@@ -32,10 +32,11 @@ public interface SourceLinesRepository {
    * of lines specified by {@link org.sonar.scanner.protocol.output.ScannerReport.Component#getLines()} is respected, adding
    * an extra empty last line if required.
    * </p>
+   * Lines are shared with the other readers of the same component through {@link SourceLinesCache}.
    *
    * @throws NullPointerException if argument is {@code null}
    * @throws IllegalArgumentException if component is not a {@link Component.Type#FILE}
-   * @throws IllegalStateException if the file has no source code in the report
+   * @throws IllegalStateException if the file has no source code in the report or if its number of lines is not the expected one
    */
   CloseableIterator<String> readLines(Component component);
 }
@@ -19,7 +19,10 @@
  */
 package org.sonar.server.computation.task.projectanalysis.source;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import javax.annotation.CheckForNull;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
@@ -32,22 +35,85 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
 public class SourceLinesRepositoryImpl implements SourceLinesRepository {
 
   private final BatchReportReader reportReader;
+  private final SourceLinesCache cache;
 
-  public SourceLinesRepositoryImpl(BatchReportReader reportReader) {
+  public SourceLinesRepositoryImpl(BatchReportReader reportReader, SourceLinesCache cache) {
     this.reportReader = reportReader;
+    this.cache = cache;
   }
 
+  /**
+   * Lines are served from the cache if possible. Otherwise they are streamed from the report, and buffered
+   * in order to be cached only while the file is small enough.
+   */
   @Override
   public CloseableIterator<String> readLines(Component file) {
     requireNonNull(file, "Component should not be bull");
     checkArgument(file.getType() == FILE, "Component '%s' is not a file", file);
 
-    Optional<CloseableIterator<String>> linesIteratorOptional = reportReader.readFileSource(file.getReportAttributes().getRef());
-
+    int ref = file.getReportAttributes().getRef();
+    List<String> cachedLines = cache.getCachedLines(ref);
+    if (cachedLines != null) {
+      return CloseableIterator.from(cachedLines.iterator());
+    }
+    Optional<CloseableIterator<String>> linesIteratorOptional = reportReader.readFileSource(ref);
     checkState(linesIteratorOptional.isPresent(), "File '%s' has no source code", file);
-    CloseableIterator<String> lineIterator = linesIteratorOptional.get();
+    int numberOfLines = file.getFileAttributes().getLines();
+    return new CachingCloseableIterator(ref, new ComponentLinesCloseableIterator(file, linesIteratorOptional.get(), numberOfLines));
+  }
+
+  /**
+   * Adds the lines to the cache once they have all been read, unless their size exceeds
+   * {@link SourceLinesCache#getMaxEntrySizeInBytes()}.
+   */
+  private class CachingCloseableIterator extends CloseableIterator<String> {
+    private final int ref;
+    private final CloseableIterator<String> delegate;
+    @CheckForNull
+    private List<String> buffer = new ArrayList<>();
+    private long bufferSizeInBytes = 0L;
+
+    private CachingCloseableIterator(int ref, CloseableIterator<String> delegate) {
+      this.ref = ref;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (delegate.hasNext()) {
+        return true;
+      }
+      if (buffer != null) {
+        cache.putLines(ref, buffer);
+        buffer = null;
+      }
+      return false;
+    }
 
-    return new ComponentLinesCloseableIterator(file, lineIterator, file.getFileAttributes().getLines());
+    @Override
+    public String next() {
+      String line = delegate.next();
+      if (buffer != null) {
+        bufferSizeInBytes += SourceLinesCache.sizeOf(line);
+        if (bufferSizeInBytes > cache.getMaxEntrySizeInBytes()) {
+          // too big to be cached, lines are only streamed
+          buffer = null;
+        } else {
+          buffer.add(line);
+        }
+      }
+      return line;
+    }
+
+    @Override
+    protected String doNext() {
+      throw new UnsupportedOperationException("No implemented because hasNext and next are override");
+    }
+
+    @Override
+    protected void doClose() {
+      delegate.close();
+    }
   }
 
   private static class ComponentLinesCloseableIterator extends CloseableIterator<String> {
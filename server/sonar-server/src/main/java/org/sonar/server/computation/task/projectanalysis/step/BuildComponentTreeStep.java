@@ -19,6 +19,17 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.db.DbClient;
@@ -36,24 +47,34 @@ import org.sonar.server.computation.task.projectanalysis.component.ComponentTree
 import org.sonar.server.computation.task.projectanalysis.component.ComponentUuidFactory;
 import org.sonar.server.computation.task.projectanalysis.component.DefaultBranchImpl;
 import org.sonar.server.computation.task.projectanalysis.component.MutableTreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 /**
  * Populates the {@link MutableTreeRootHolder} and {@link MutableAnalysisMetadataHolder} from the {@link BatchReportReader}
+ * <p>
+ * The UUIDs of the components are saved in the {@link TaskWorkingDirectory working directory} of the task. If the task
+ * is restarted, the UUIDs generated for new components by the previous execution are reused, as they may be referenced
+ * by the checkpointed issues and measures (see {@link ReportComputationStepCheckpoints}).
+ * </p>
  */
 public class BuildComponentTreeStep implements ComputationStep {
+  static final String COMPONENT_UUIDS_DIR = "component-uuids";
+  private static final String COMPONENT_UUIDS_FILE = "uuids.dat";
 
   private final DbClient dbClient;
   private final BatchReportReader reportReader;
   private final MutableTreeRootHolder treeRootHolder;
   private final MutableAnalysisMetadataHolder analysisMetadataHolder;
+  private final TaskWorkingDirectory workingDirectory;
 
   public BuildComponentTreeStep(DbClient dbClient, BatchReportReader reportReader,
-    MutableTreeRootHolder treeRootHolder, MutableAnalysisMetadataHolder analysisMetadataHolder) {
+    MutableTreeRootHolder treeRootHolder, MutableAnalysisMetadataHolder analysisMetadataHolder, TaskWorkingDirectory workingDirectory) {
     this.dbClient = dbClient;
     this.reportReader = reportReader;
     this.treeRootHolder = treeRootHolder;
     this.analysisMetadataHolder = analysisMetadataHolder;
+    this.workingDirectory = workingDirectory;
   }
 
   @Override
@@ -73,12 +94,17 @@ public class BuildComponentTreeStep implements ComputationStep {
 
       // loads the UUIDs from database. If they don't exist, then generate new ones
       ComponentUuidFactory componentUuidFactory = new ComponentUuidFactory(dbClient, dbSession, rootKey);
+      Map<String, String> checkpointedUuids = readCheckpointedUuids();
+      Function<String, String> uuidSupplier = key -> {
+        String uuid = checkpointedUuids.get(key);
+        return uuid == null ? componentUuidFactory.getOrCreateForKey(key) : uuid;
+      };
 
-      String rootUuid = componentUuidFactory.getOrCreateForKey(rootKey);
+      String rootUuid = uuidSupplier.apply(rootKey);
       SnapshotDto baseAnalysis = loadBaseAnalysis(dbSession, rootUuid);
 
       ComponentTreeBuilder builder = new ComponentTreeBuilder(keyGenerator, publicKeyGenerator,
-        componentUuidFactory::getOrCreateForKey,
+        uuidSupplier,
         reportReader::readComponent,
         analysisMetadataHolder.getProject(),
         baseAnalysis);
@@ -87,6 +113,47 @@ public class BuildComponentTreeStep implements ComputationStep {
 
       treeRootHolder.setRoot(project);
       analysisMetadataHolder.setBaseAnalysis(toAnalysis(baseAnalysis));
+      checkpointUuids(project);
+    }
+  }
+
+  private Map<String, String> readCheckpointedUuids() {
+    Map<String, String> uuidsByKey = new HashMap<>();
+    if (!workingDirectory.hasCheckpoint(COMPONENT_UUIDS_DIR)) {
+      return uuidsByKey;
+    }
+    File file = new File(workingDirectory.getDir(COMPONENT_UUIDS_DIR), COMPONENT_UUIDS_FILE);
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      int count = input.readInt();
+      for (int i = 0; i < count; i++) {
+        uuidsByKey.put(input.readUTF(), input.readUTF());
+      }
+      return uuidsByKey;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read UUIDs of components from " + file, e);
+    }
+  }
+
+  private void checkpointUuids(Component project) {
+    Map<String, String> uuidsByKey = new HashMap<>();
+    collectUuids(project, uuidsByKey);
+    File file = new File(workingDirectory.resetDir(COMPONENT_UUIDS_DIR), COMPONENT_UUIDS_FILE);
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      output.writeInt(uuidsByKey.size());
+      for (Map.Entry<String, String> entry : uuidsByKey.entrySet()) {
+        output.writeUTF(entry.getKey());
+        output.writeUTF(entry.getValue());
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write UUIDs of components to " + file, e);
+    }
+    workingDirectory.checkpoint(COMPONENT_UUIDS_DIR);
+  }
+
+  private static void collectUuids(Component component, Map<String, String> uuidsByKey) {
+    uuidsByKey.put(component.getKey(), component.getUuid());
+    for (Component child : component.getChildren()) {
+      collectUuids(child, uuidsByKey);
     }
   }
 
@@ -22,6 +22,7 @@ package org.sonar.server.computation.task.projectanalysis.step;
 import com.google.common.base.Optional;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,6 +30,8 @@ import java.util.function.Predicate;
 import java.util.stream.StreamSupport;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
 import org.sonar.core.util.stream.MoreCollectors;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -43,14 +46,11 @@ import org.sonar.server.computation.task.projectanalysis.measure.MeasureKey;
 import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepository;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
-import org.sonar.server.computation.task.projectanalysis.period.Period;
 import org.sonar.server.computation.task.projectanalysis.period.PeriodHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static java.lang.String.format;
-import static java.util.function.Function.identity;
-import static org.sonar.core.util.stream.MoreCollectors.uniqueIndex;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.DIRECTORY;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.SUBVIEW;
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
@@ -60,6 +60,9 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
  * This step MUST be executed after all steps that create some measures
  * <p/>
  * Note that measures on developer are not handle yet.
+ * <p/>
+ * Past measures of the period analysis are read with a single forward-only query, ordered by component, instead of
+ * one query per component.
  */
 public class ComputeMeasureVariationsStep implements ComputationStep {
 
@@ -80,52 +83,95 @@ public class ComputeMeasureVariationsStep implements ComputationStep {
 
   @Override
   public void execute() {
+    if (!periodHolder.hasPeriod()) {
+      return;
+    }
+    List<Metric> metrics = StreamSupport.stream(metricRepository.getAll().spliterator(), false).filter(isNumeric()).collect(MoreCollectors.toList());
+    Map<String, Component> componentsByUuid = new HashMap<>();
+    new DepthTraversalTypeAwareCrawler(new ComponentCollector(componentsByUuid)).visit(treeRootHolder.getRoot());
+
     try (DbSession dbSession = dbClient.openSession(false)) {
-      List<Metric> metrics = StreamSupport.stream(metricRepository.getAll().spliterator(), false).filter(isNumeric()).collect(MoreCollectors.toList());
-      new DepthTraversalTypeAwareCrawler(new VariationMeasuresVisitor(dbSession, metrics))
-        .visit(treeRootHolder.getRoot());
+      PastMeasuresMerger merger = new PastMeasuresMerger(componentsByUuid, metrics);
+      dbClient.measureDao().scrollPastMeasures(dbSession, periodHolder.getPeriod().getAnalysisUuid(), merger);
+      merger.finish();
     }
   }
 
-  private class VariationMeasuresVisitor extends TypeAwareVisitorAdapter {
-
-    private final DbSession session;
-    private final Set<Integer> metricIds;
-    private final List<Metric> metrics;
+  private static class ComponentCollector extends TypeAwareVisitorAdapter {
+    private final Map<String, Component> componentsByUuid;
 
-    VariationMeasuresVisitor(DbSession session, List<Metric> metrics) {
+    ComponentCollector(Map<String, Component> componentsByUuid) {
       // measures on files are currently purged, so past measures are not available on files
       super(CrawlerDepthLimit.reportMaxDepth(DIRECTORY).withViewsMaxDepth(SUBVIEW), PRE_ORDER);
-      this.session = session;
-      this.metricIds = metrics.stream().map(Metric::getId).collect(MoreCollectors.toSet());
-      this.metrics = metrics;
+      this.componentsByUuid = componentsByUuid;
     }
 
     @Override
     public void visitAny(Component component) {
-      MeasuresWithVariationRepository measuresWithVariationRepository = computeMeasuresWithVariations(component);
-      processMeasuresWithVariation(component, measuresWithVariationRepository);
+      componentsByUuid.put(component.getUuid(), component);
     }
+  }
 
-    private MeasuresWithVariationRepository computeMeasuresWithVariations(Component component) {
-      MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
-      if (periodHolder.hasPeriod()) {
-        Period period = periodHolder.getPeriod();
-        List<PastMeasureDto> pastMeasures = dbClient.measureDao()
-          .selectPastMeasures(session, component.getUuid(), period.getAnalysisUuid(), metricIds);
-        setVariationMeasures(component, pastMeasures, measuresWithVariationRepository);
+  /**
+   * Past measures are streamed ordered by component, so only the past measures of a single component are kept in memory.
+   * Variations of a component are computed as soon as all its past measures have been read. Components which have no
+   * past measure are processed at the end.
+   */
+  private class PastMeasuresMerger implements ResultHandler<PastMeasureDto> {
+    private final Map<String, Component> componentsByUuid;
+    private final List<Metric> metrics;
+    private final Set<Integer> metricIds;
+    private final Set<String> processedUuids = new HashSet<>();
+    private final Map<Integer, PastMeasureDto> pastMeasuresByMetricId = new HashMap<>();
+    @CheckForNull
+    private String currentUuid;
+
+    PastMeasuresMerger(Map<String, Component> componentsByUuid, List<Metric> metrics) {
+      this.componentsByUuid = componentsByUuid;
+      this.metrics = metrics;
+      this.metricIds = metrics.stream().map(Metric::getId).collect(MoreCollectors.toSet());
+    }
+
+    @Override
+    public void handleResult(ResultContext<? extends PastMeasureDto> context) {
+      PastMeasureDto pastMeasure = context.getResultObject();
+      if (!pastMeasure.getComponentUuid().equals(currentUuid)) {
+        flush();
+        currentUuid = pastMeasure.getComponentUuid();
       }
-      return measuresWithVariationRepository;
+      if (metricIds.contains(pastMeasure.getMetricId()) && componentsByUuid.containsKey(currentUuid)) {
+        pastMeasuresByMetricId.put(pastMeasure.getMetricId(), pastMeasure);
+      }
+    }
+
+    private void flush() {
+      if (currentUuid != null) {
+        Component component = componentsByUuid.get(currentUuid);
+        if (component != null && processedUuids.add(currentUuid)) {
+          processComponent(component);
+        }
+      }
+      pastMeasuresByMetricId.clear();
+    }
+
+    void finish() {
+      flush();
+      componentsByUuid.values().stream()
+        .filter(component -> processedUuids.add(component.getUuid()))
+        .forEach(this::processComponent);
+    }
+
+    private void processComponent(Component component) {
+      MeasuresWithVariationRepository measuresWithVariationRepository = new MeasuresWithVariationRepository();
+      setVariationMeasures(component, measuresWithVariationRepository);
+      processMeasuresWithVariation(component, measuresWithVariationRepository);
     }
 
-    private void setVariationMeasures(Component component, List<PastMeasureDto> pastMeasures, MeasuresWithVariationRepository measuresWithVariationRepository) {
-      Map<MeasureKey, PastMeasureDto> pastMeasuresByMeasureKey = pastMeasures
-        .stream()
-        .collect(uniqueIndex(m -> new MeasureKey(metricRepository.getById((long) m.getMetricId()).getKey(), null), identity()));
+    private void setVariationMeasures(Component component, MeasuresWithVariationRepository measuresWithVariationRepository) {
       for (Metric metric : metrics) {
         Optional<Measure> measure = measureRepository.getRawMeasure(component, metric);
         if (measure.isPresent() && !measure.get().hasVariation()) {
-          PastMeasureDto pastMeasure = pastMeasuresByMeasureKey.get(new MeasureKey(metric.getKey(), null));
+          PastMeasureDto pastMeasure = pastMeasuresByMetricId.get(metric.getId());
           double pastValue = (pastMeasure != null && pastMeasure.hasValue()) ? pastMeasure.getValue() : 0d;
           measuresWithVariationRepository.add(metric, measure.get(), computeVariation(measure.get(), pastValue));
         }
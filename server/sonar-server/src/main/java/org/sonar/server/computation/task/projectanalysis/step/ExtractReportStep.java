@@ -19,52 +19,79 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.io.CountingInputStream;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.util.Optional;
+import org.apache.commons.io.FileUtils;
 import org.sonar.api.utils.MessageException;
-import org.sonar.api.utils.TempFolder;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.ZipUtils;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeTaskInputDao;
 import org.sonar.server.computation.task.projectanalysis.batch.MutableBatchReportDirectoryHolder;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
 import org.sonar.server.computation.task.step.ComputationStep;
 
+import static org.apache.commons.io.FileUtils.byteCountToDisplaySize;
+
 /**
- * Extracts the content zip file of the {@link CeTask} to a temp directory and adds a {@link File}
- * representing that temp directory to the {@link MutableBatchReportDirectoryHolder}.
+ * Extracts the content zip file of the {@link CeTask} to the {@link TaskWorkingDirectory working directory} of the task
+ * and adds a {@link File} representing that directory to the {@link MutableBatchReportDirectoryHolder}.
+ * <p>
+ * The zip is unpacked by {@link ZipUtils} while it is streamed from the database, without being copied to a local file
+ * first. The CRC-32 of each entry is verified when it is read: a corrupted report makes the step fail.
+ * </p>
+ * <p>
+ * If the task is restarted after the report has been fully extracted, for example because the node has been killed,
+ * then the report extracted by the previous execution is reused.
+ * </p>
  */
 public class ExtractReportStep implements ComputationStep {
+  private static final Logger LOGGER = Loggers.get(ExtractReportStep.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  static final String REPORT_DIR = "report";
 
   private final DbClient dbClient;
   private final CeTask task;
-  private final TempFolder tempFolder;
+  private final TaskWorkingDirectory workingDirectory;
   private final MutableBatchReportDirectoryHolder reportDirectoryHolder;
+  private final System2 system2;
 
-  public ExtractReportStep(DbClient dbClient, CeTask task, TempFolder tempFolder,
-    MutableBatchReportDirectoryHolder reportDirectoryHolder) {
+  public ExtractReportStep(DbClient dbClient, CeTask task, TaskWorkingDirectory workingDirectory,
+    MutableBatchReportDirectoryHolder reportDirectoryHolder, System2 system2) {
     this.dbClient = dbClient;
     this.task = task;
-    this.tempFolder = tempFolder;
+    this.workingDirectory = workingDirectory;
     this.reportDirectoryHolder = reportDirectoryHolder;
+    this.system2 = system2;
   }
 
   @Override
   public void execute() {
+    if (workingDirectory.hasCheckpoint(REPORT_DIR)) {
+      LOGGER.info("Analysis report has already been extracted by a previous execution of the task");
+      reportDirectoryHolder.setDirectory(workingDirectory.getDir(REPORT_DIR));
+      return;
+    }
     try (DbSession dbSession = dbClient.openSession(false)) {
       Optional<CeTaskInputDao.DataStream> opt = dbClient.ceTaskInputDao().selectData(dbSession, task.getUuid());
       if (opt.isPresent()) {
-        File unzippedDir = tempFolder.newDir();
+        File unzippedDir = workingDirectory.resetDir(REPORT_DIR);
+        long start = system2.now();
         try (CeTaskInputDao.DataStream reportStream = opt.get();
-             InputStream zipStream = new BufferedInputStream(reportStream.getInputStream())) {
+          CountingInputStream zipStream = new CountingInputStream(new BufferedInputStream(reportStream.getInputStream(), BUFFER_SIZE))) {
           ZipUtils.unzip(zipStream, unzippedDir);
+          logExtraction(zipStream.getCount(), FileUtils.sizeOfDirectory(unzippedDir), system2.now() - start);
         } catch (IOException e) {
           throw new IllegalStateException("Fail to extract report " + task.getUuid() + " from database", e);
         }
+        workingDirectory.checkpoint(REPORT_DIR);
         reportDirectoryHolder.setDirectory(unzippedDir);
       } else {
         throw MessageException.of("Analysis report " + task.getUuid() + " is missing in database");
@@ -72,6 +99,12 @@ public class ExtractReportStep implements ComputationStep {
     }
   }
 
+  private static void logExtraction(long zippedSize, long unzippedSize, long durationMs) {
+    LOGGER.info("Analysis report is {} zipped, {} unzipped, extracted in {} ms ({}/s)",
+      byteCountToDisplaySize(zippedSize), byteCountToDisplaySize(unzippedSize), durationMs,
+      byteCountToDisplaySize(unzippedSize * 1_000L / Math.max(1L, durationMs)));
+  }
+
   @Override
   public String getDescription() {
     return "Extract report";
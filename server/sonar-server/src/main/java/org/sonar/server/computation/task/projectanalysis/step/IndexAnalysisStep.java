@@ -19,33 +19,102 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import org.slf4j.MDC;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 import org.sonar.server.es.ProjectIndexer;
+import org.sonar.server.issue.index.IssueIndexer;
 
+/**
+ * Indexes the analysed branch. Each indexer loads its data from database, so they are called concurrently on the
+ * threads of {@link IndexAnalysisExecutorService}. Their bulk requests go through the {@link org.sonar.server.es.BulkPipeline}
+ * of the Elasticsearch client, which adapts the bulk size and the number of concurrent requests to the load of Elasticsearch.
+ */
 public class IndexAnalysisStep implements ComputationStep {
 
   private static final Logger LOGGER = Loggers.get(IndexAnalysisStep.class);
 
   private final TreeRootHolder treeRootHolder;
+  private final ChangedIssueKeysHolder changedIssueKeysHolder;
+  private final IndexAnalysisExecutorService executor;
   private final ProjectIndexer[] indexers;
 
-  public IndexAnalysisStep(TreeRootHolder treeRootHolder, ProjectIndexer... indexers) {
+  public IndexAnalysisStep(TreeRootHolder treeRootHolder, ChangedIssueKeysHolder changedIssueKeysHolder, IndexAnalysisExecutorService executor,
+    ProjectIndexer... indexers) {
     this.treeRootHolder = treeRootHolder;
+    this.changedIssueKeysHolder = changedIssueKeysHolder;
+    this.executor = executor;
     this.indexers = indexers;
   }
 
   @Override
   public void execute() {
     String branchUuid = treeRootHolder.getRoot().getUuid();
+    if (indexers.length <= 1) {
+      for (ProjectIndexer indexer : indexers) {
+        index(indexer, branchUuid);
+      }
+      return;
+    }
+
+    // logs of indexers must keep the context of the task
+    Map<String, String> logContext = MDC.getCopyOfContextMap();
+    List<Future<?>> futures = new ArrayList<>();
     for (ProjectIndexer indexer : indexers) {
-      LOGGER.debug("Call {}", indexer);
+      futures.add(executor.submit(() -> {
+        if (logContext != null) {
+          MDC.setContextMap(logContext);
+        }
+        try {
+          index(indexer, branchUuid);
+        } finally {
+          MDC.clear();
+        }
+      }));
+    }
+    awaitTermination(futures);
+  }
+
+  private void index(ProjectIndexer indexer, String branchUuid) {
+    LOGGER.debug("Call {}", indexer);
+    if (indexer instanceof IssueIndexer && !changedIssueKeysHolder.isOverflowed()) {
+      // only the issues changed by the analysis and the issues of the components it moved are indexed
+      ((IssueIndexer) indexer).indexOnAnalysis(branchUuid, changedIssueKeysHolder.getKeys(), changedIssueKeysHolder.getMovedComponentUuids());
+    } else {
       indexer.indexOnAnalysis(branchUuid);
     }
   }
 
+  private static void awaitTermination(List<Future<?>> futures) {
+    RuntimeException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        // threads are shared with the other analyses, indexers of this analysis must not keep them busy
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while indexing analysis", e);
+      } catch (ExecutionException e) {
+        // wait for the other indexers before failing, the first failure is reported
+        if (failure == null) {
+          failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException("Fail to index analysis", e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
   @Override
   public String getDescription() {
     return "Index analysis";
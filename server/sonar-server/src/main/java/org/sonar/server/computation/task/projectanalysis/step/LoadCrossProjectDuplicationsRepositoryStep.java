@@ -20,8 +20,18 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Multimap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -29,6 +39,7 @@ import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 import org.sonar.scanner.protocol.output.ScannerReport.CpdTextBlock;
@@ -39,6 +50,7 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.IntegrateCrossProjectDuplications;
 import org.sonar.server.computation.task.projectanalysis.analysis.Analysis;
@@ -54,10 +66,13 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
  * Blocks can be empty if :
  * - The file is excluded from the analysis using {@link org.sonar.api.CoreProperties#CPD_EXCLUSIONS}
  * - On Java, if the number of statements of the file is too small, nothing will be sent.
+ *
+ * Candidates are not loaded file by file but by batches of hashes of files of the same language, see {@link #HASHES_BATCH_SIZE}.
  */
 public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationStep {
 
   private static final Logger LOGGER = Loggers.get(LoadCrossProjectDuplicationsRepositoryStep.class);
+  static final int HASHES_BATCH_SIZE = 10_000;
 
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
@@ -65,22 +80,28 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
   private final IntegrateCrossProjectDuplications integrateCrossProjectDuplications;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
   private final DbClient dbClient;
+  private final CrossProjectDuplicationIndex crossProjectDuplicationIndex;
 
   public LoadCrossProjectDuplicationsRepositoryStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader,
     AnalysisMetadataHolder analysisMetadataHolder, CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder,
-    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient) {
+    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient, CrossProjectDuplicationIndex crossProjectDuplicationIndex) {
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.integrateCrossProjectDuplications = integrateCrossProjectDuplications;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
     this.dbClient = dbClient;
+    this.crossProjectDuplicationIndex = crossProjectDuplicationIndex;
   }
 
   @Override
   public void execute() {
     if (crossProjectDuplicationStatusHolder.isEnabled()) {
-      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor()).visit(treeRootHolder.getRoot());
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        CrossProjectDuplicationVisitor visitor = new CrossProjectDuplicationVisitor(dbSession, crossProjectDuplicationIndex.isEnabled());
+        new DepthTraversalTypeAwareCrawler(visitor).visit(treeRootHolder.getRoot());
+        visitor.flushAll();
+      }
     }
   }
 
@@ -89,10 +110,26 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
     return "Compute cross project duplications";
   }
 
+  /**
+   * Files are grouped by language, and the candidates of all the blocks of a group are loaded with a few
+   * queries as soon as the group contains {@link #HASHES_BATCH_SIZE} distinct hashes. Candidates are loaded from
+   * {@link CrossProjectDuplicationIndex} rather than from database when the index is enabled.
+   */
   private class CrossProjectDuplicationVisitor extends TypeAwareVisitorAdapter {
+    private final DbSession dbSession;
+    private final boolean useIndex;
+    private final String rootComponentUuid;
+    @CheckForNull
+    private final String analysisUuid;
+    private final Map<String, FilesBatch> batchesByLanguage = new HashMap<>();
 
-    private CrossProjectDuplicationVisitor() {
+    private CrossProjectDuplicationVisitor(DbSession dbSession, boolean useIndex) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
+      this.dbSession = dbSession;
+      this.useIndex = useIndex;
+      this.rootComponentUuid = treeRootHolder.getRoot().getUuid();
+      Analysis baseAnalysis = analysisMetadataHolder.getBaseAnalysis();
+      this.analysisUuid = baseAnalysis == null ? null : baseAnalysis.getUuid();
     }
 
     @Override
@@ -106,25 +143,73 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
         }
       }
 
-      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toList();
-      List<DuplicationUnitDto> dtos = selectDuplicates(file, hashes);
-      if (dtos.isEmpty()) {
+      String language = file.getFileAttributes().getLanguageKey();
+      FilesBatch batch = batchesByLanguage.computeIfAbsent(language, FilesBatch::new);
+      batch.add(file, cpdTextBlocks);
+      if (batch.hashes.size() >= HASHES_BATCH_SIZE) {
+        flush(batch);
+      }
+    }
+
+    private void flushAll() {
+      batchesByLanguage.values().forEach(this::flush);
+    }
+
+    private void flush(FilesBatch batch) {
+      if (batch.files.isEmpty()) {
+        return;
+      }
+      Multimap<String, Block> candidatesByHash = ArrayListMultimap.create();
+      if (useIndex) {
+        crossProjectDuplicationIndex.selectCandidates(rootComponentUuid, batch.language, batch.hashes,
+          dto -> candidatesByHash.put(dto.getHash(), IndexedDtoToBlock.INSTANCE.apply(dto)));
+      } else {
+        dbClient.duplicationDao().scrollCandidates(dbSession, analysisUuid, batch.language, batch.hashes,
+          context -> {
+            DuplicationUnitDto dto = context.getResultObject();
+            candidatesByHash.put(dto.getHash(), DtoToBlock.INSTANCE.apply(dto));
+          });
+      }
+      LOGGER.debug("Found {} duplication candidates for {} hashes of {} {} files", candidatesByHash.size(), batch.hashes.size(),
+        batch.files.size(), batch.language);
+      if (!candidatesByHash.isEmpty()) {
+        batch.files.forEach((file, cpdTextBlocks) -> computeCpd(file, cpdTextBlocks, candidatesByHash));
+      }
+      batch.clear();
+    }
+
+    private void computeCpd(Component file, List<CpdTextBlock> cpdTextBlocks, Multimap<String, Block> candidatesByHash) {
+      Set<String> fileHashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).copyInto(new LinkedHashSet<>());
+      List<Block> duplicatedBlocks = new ArrayList<>();
+      fileHashes.forEach(hash -> duplicatedBlocks.addAll(candidatesByHash.get(hash)));
+      if (duplicatedBlocks.isEmpty()) {
         return;
       }
 
-      Collection<Block> duplicatedBlocks = from(dtos).transform(DtoToBlock.INSTANCE).toList();
       Collection<Block> originBlocks = from(cpdTextBlocks).transform(new CpdTextBlockToBlock(file.getKey())).toList();
       LOGGER.trace("Found {} duplicated cpd blocks on file {}", duplicatedBlocks.size(), file.getKey());
 
       integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
     }
+  }
 
-    private List<DuplicationUnitDto> selectDuplicates(Component file, Collection<String> hashes) {
-      try (DbSession dbSession = dbClient.openSession(false)) {
-        Analysis projectAnalysis = analysisMetadataHolder.getBaseAnalysis();
-        String analysisUuid = projectAnalysis == null ? null : projectAnalysis.getUuid();
-        return dbClient.duplicationDao().selectCandidates(dbSession, analysisUuid, file.getFileAttributes().getLanguageKey(), hashes);
-      }
+  private static class FilesBatch {
+    private final String language;
+    private final Map<Component, List<CpdTextBlock>> files = new LinkedHashMap<>();
+    private final Set<String> hashes = new HashSet<>();
+
+    private FilesBatch(String language) {
+      this.language = language;
+    }
+
+    private void add(Component file, List<CpdTextBlock> cpdTextBlocks) {
+      files.put(file, cpdTextBlocks);
+      cpdTextBlocks.forEach(block -> hashes.add(block.getHash()));
+    }
+
+    private void clear() {
+      files.clear();
+      hashes.clear();
     }
   }
 
@@ -152,6 +237,20 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
     }
   }
 
+  private enum IndexedDtoToBlock implements Function<IndexedDuplicationUnitDto, Block> {
+    INSTANCE;
+
+    @Override
+    public Block apply(@Nonnull IndexedDuplicationUnitDto dto) {
+      return Block.builder()
+        .setResourceId(dto.getComponentKey())
+        .setBlockHash(new ByteArray(dto.getHash()))
+        .setIndexInFile(dto.getIndexInFile())
+        .setLines(dto.getStartLine(), dto.getEndLine())
+        .build();
+    }
+  }
+
   private static class CpdTextBlockToBlock implements Function<CpdTextBlock, Block> {
     private final String fileKey;
     private int indexInFile = 0;
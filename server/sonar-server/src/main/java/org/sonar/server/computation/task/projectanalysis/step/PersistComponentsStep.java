@@ -51,6 +51,7 @@ import org.sonar.server.computation.task.projectanalysis.component.PathAwareCraw
 import org.sonar.server.computation.task.projectanalysis.component.PathAwareVisitor;
 import org.sonar.server.computation.task.projectanalysis.component.PathAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static com.google.common.collect.FluentIterable.from;
@@ -72,11 +73,12 @@ public class PersistComponentsStep implements ComputationStep {
   private final MutableDisabledComponentsHolder disabledComponentsHolder;
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final BranchPersister branchPersister;
+  private final ChangedIssueKeysHolder changedIssueKeysHolder;
 
   public PersistComponentsStep(DbClient dbClient, TreeRootHolder treeRootHolder,
     MutableDbIdsRepository dbIdsRepository, System2 system2,
     MutableDisabledComponentsHolder disabledComponentsHolder, AnalysisMetadataHolder analysisMetadataHolder,
-    BranchPersister branchPersister) {
+    BranchPersister branchPersister, ChangedIssueKeysHolder changedIssueKeysHolder) {
     this.dbClient = dbClient;
     this.treeRootHolder = treeRootHolder;
     this.dbIdsRepository = dbIdsRepository;
@@ -84,6 +86,7 @@ public class PersistComponentsStep implements ComputationStep {
     this.disabledComponentsHolder = disabledComponentsHolder;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.branchPersister = branchPersister;
+    this.changedIssueKeysHolder = changedIssueKeysHolder;
   }
 
   @Override
@@ -256,6 +259,11 @@ public class PersistComponentsStep implements ComputationStep {
       if (update.isPresent()) {
         ComponentUpdateDto updateDto = update.get();
         dbClient.componentDao().update(dbSession, updateDto);
+        if (!StringUtils.equals(existingComponent.path(), updateDto.getBPath()) ||
+          !StringUtils.equals(existingComponent.moduleUuidPath(), updateDto.getBModuleUuidPath())) {
+          // path and module path are copied in the index of issues
+          changedIssueKeysHolder.addMovedComponent(existingComponent.uuid());
+        }
 
         // update the fields in memory in order the PathAwareVisitor.Path
         // to be up-to-date
@@ -19,10 +19,13 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
@@ -31,13 +34,16 @@ import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthL
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationBlocksHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
 /**
- * Persist cross project duplications text blocks into DUPLICATIONS_INDEX table
+ * Persist cross project duplications text blocks into DUPLICATIONS_INDEX table. The blocks are added to
+ * {@link org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex} by
+ * {@link UpdateCrossProjectDuplicationIndexStep}, once the analysis is enabled.
  */
 public class PersistCrossProjectDuplicationIndexStep implements ComputationStep {
 
@@ -46,15 +52,17 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final BatchReportReader reportReader;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
+  private final CrossProjectDuplicationBlocksHolder blocksHolder;
 
   public PersistCrossProjectDuplicationIndexStep(CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder, DbClient dbClient,
     TreeRootHolder treeRootHolder, AnalysisMetadataHolder analysisMetadataHolder,
-    BatchReportReader reportReader) {
+    BatchReportReader reportReader, CrossProjectDuplicationBlocksHolder blocksHolder) {
     this.dbClient = dbClient;
     this.treeRootHolder = treeRootHolder;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.reportReader = reportReader;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
+    this.blocksHolder = blocksHolder;
   }
 
   @Override
@@ -65,8 +73,10 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
 
     try (DbSession dbSession = dbClient.openSession(true)) {
       Component project = treeRootHolder.getRoot();
-      new DepthTraversalTypeAwareCrawler(new DuplicationVisitor(dbSession, analysisMetadataHolder.getUuid())).visit(project);
+      DuplicationVisitor visitor = new DuplicationVisitor(dbSession, analysisMetadataHolder.getUuid(), project.getUuid());
+      new DepthTraversalTypeAwareCrawler(visitor).visit(project);
       dbSession.commit();
+      blocksHolder.setBlocks(project.getUuid(), visitor.indexedBlocks);
     }
   }
 
@@ -74,11 +84,14 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
 
     private final DbSession session;
     private final String analysisUuid;
+    private final String rootComponentUuid;
+    private final List<IndexedDuplicationUnitDto> indexedBlocks = new ArrayList<>();
 
-    private DuplicationVisitor(DbSession session, String analysisUuid) {
+    private DuplicationVisitor(DbSession session, String analysisUuid, String rootComponentUuid) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
       this.session = session;
       this.analysisUuid = analysisUuid;
+      this.rootComponentUuid = rootComponentUuid;
     }
 
     @Override
@@ -104,6 +117,16 @@ public class PersistCrossProjectDuplicationIndexStep implements ComputationStep
               .setIndexInFile(indexInFile)
               .setAnalysisUuid(analysisUuid)
               .setComponentUuid(component.getUuid()));
+          indexedBlocks.add(new IndexedDuplicationUnitDto()
+            .setAnalysisUuid(analysisUuid)
+            .setRootComponentUuid(rootComponentUuid)
+            .setComponentUuid(component.getUuid())
+            .setComponentKey(component.getKey())
+            .setLanguage(component.getFileAttributes().getLanguageKey())
+            .setHash(block.getHash())
+            .setIndexInFile(indexInFile)
+            .setStartLine(block.getStartLine())
+            .setEndLine(block.getEndLine()));
           indexInFile++;
         }
       }
@@ -0,0 +1,51 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.sonar.server.util.AbstractStoppableExecutorService;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+public class PersistFileSourcesExecutorServiceImpl extends AbstractStoppableExecutorService<ThreadPoolExecutor> implements PersistFileSourcesExecutorService {
+
+  static final int MAX_THREAD_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+  private static final long KEEP_ALIVE_TIME_IN_MINUTES = 1L;
+
+  public PersistFileSourcesExecutorServiceImpl() {
+    super(createDelegate());
+  }
+
+  private static ThreadPoolExecutor createDelegate() {
+    ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+      MAX_THREAD_COUNT, MAX_THREAD_COUNT,
+      KEEP_ALIVE_TIME_IN_MINUTES, MINUTES,
+      new LinkedBlockingQueue<>(),
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("PersistFileSources-%d")
+        .build());
+    // threads are released between analyses
+    threadPoolExecutor.allowCoreThreadTimeOut(true);
+    return threadPoolExecutor;
+  }
+}
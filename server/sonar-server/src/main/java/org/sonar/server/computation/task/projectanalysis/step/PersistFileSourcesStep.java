@@ -21,14 +21,18 @@ package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang.ObjectUtils;
+import org.slf4j.MDC;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.db.DbClient;
@@ -45,6 +49,7 @@ import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolde
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
 import org.sonar.server.computation.task.projectanalysis.duplication.DuplicationRepository;
 import org.sonar.server.computation.task.projectanalysis.scm.Changeset;
+import org.sonar.server.computation.task.projectanalysis.scm.ScmDataEncoder;
 import org.sonar.server.computation.task.projectanalysis.scm.ScmInfo;
 import org.sonar.server.computation.task.projectanalysis.scm.ScmInfoRepository;
 import org.sonar.server.computation.task.projectanalysis.source.ComputeFileSourceData;
@@ -54,48 +59,79 @@ import org.sonar.server.computation.task.projectanalysis.source.HighlightingLine
 import org.sonar.server.computation.task.projectanalysis.source.LineReader;
 import org.sonar.server.computation.task.projectanalysis.source.RangeOffsetConverter;
 import org.sonar.server.computation.task.projectanalysis.source.ScmLineReader;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepository;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepository;
 import org.sonar.server.computation.task.projectanalysis.source.SymbolsLineReader;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
 public class PersistFileSourcesStep implements ComputationStep {
 
+  private static final int MAX_PENDING_SOURCES = 2 * PersistFileSourcesExecutorServiceImpl.MAX_THREAD_COUNT;
+  private static final long MAX_BATCH_BYTES = 10L * 1024 * 1024;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
   private final SourceLinesRepository sourceLinesRepository;
+  private final SourceLinesHashRepository sourceLinesHashRepository;
   private final ScmInfoRepository scmInfoRepository;
   private final DuplicationRepository duplicationRepository;
+  private final ComputationStepStatistics statistics;
+  private final PersistFileSourcesExecutorService workers;
 
   public PersistFileSourcesStep(DbClient dbClient, System2 system2, TreeRootHolder treeRootHolder, BatchReportReader reportReader, SourceLinesRepository sourceLinesRepository,
-    ScmInfoRepository scmInfoRepository, DuplicationRepository duplicationRepository) {
+    SourceLinesHashRepository sourceLinesHashRepository, ScmInfoRepository scmInfoRepository, DuplicationRepository duplicationRepository, ComputationStepStatistics statistics,
+    PersistFileSourcesExecutorService workers) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.sourceLinesRepository = sourceLinesRepository;
+    this.sourceLinesHashRepository = sourceLinesHashRepository;
     this.scmInfoRepository = scmInfoRepository;
     this.duplicationRepository = duplicationRepository;
+    this.statistics = statistics;
+    this.workers = workers;
   }
 
   @Override
   public void execute() {
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    try (DbSession dbSession = dbClient.openSession(false)) {
-      new DepthTraversalTypeAwareCrawler(new FileSourceVisitor(dbSession))
-        .visit(treeRootHolder.getRoot());
+    try (DbSession dbSession = dbClient.openSession(true)) {
+      FileSourceVisitor visitor = new FileSourceVisitor(dbSession);
+      try {
+        new DepthTraversalTypeAwareCrawler(visitor)
+          .visit(treeRootHolder.getRoot());
+        visitor.persistPendingSources();
+      } finally {
+        // workers are shared with the other analyses
+        visitor.cancelPendingSources();
+      }
+      statistics.add("inserts", visitor.inserts).add("updates", visitor.updates).add("unchanged", visitor.unchanged);
     }
   }
 
+  /**
+   * Sources of files are computed and compressed by the workers, while rows are written by the visitor in the order of
+   * the files, in batches of rows committed together. Sources which did not change since the previous analysis are
+   * detected by the workers before being compressed.
+   */
   private class FileSourceVisitor extends TypeAwareVisitorAdapter {
 
     private final DbSession session;
+    private final Deque<Future<FileSource>> pendingSources = new ArrayDeque<>();
+    // logs of workers must keep the context of the task
+    private final Map<String, String> logContext = MDC.getCopyOfContextMap();
 
     private Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
     private String projectUuid;
+    private long uncommittedBytes = 0;
+    private long inserts = 0;
+    private long updates = 0;
+    private long unchanged = 0;
 
     private FileSourceVisitor(DbSession session) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
@@ -114,23 +150,92 @@ public class PersistFileSourcesStep implements ComputationStep {
 
     @Override
     public void visitFile(Component file) {
+      // repository of SCM info is not thread-safe, it must be used by the thread of the task
+      Optional<ScmInfo> scmInfo = scmInfoRepository.getScmInfo(file);
+      pendingSources.add(workers.submit(() -> {
+        if (logContext != null) {
+          MDC.setContextMap(logContext);
+        }
+        try {
+          return computeSource(file, scmInfo);
+        } finally {
+          MDC.clear();
+        }
+      }));
+      if (pendingSources.size() > MAX_PENDING_SOURCES) {
+        persistSource(pendingSources.poll());
+      }
+    }
+
+    private FileSource computeSource(Component file, Optional<ScmInfo> scmInfo) {
       try (CloseableIterator<String> linesIterator = sourceLinesRepository.readLines(file);
-        LineReaders lineReaders = new LineReaders(reportReader, scmInfoRepository, duplicationRepository, file)) {
-        ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), file.getFileAttributes().getLines());
+        LineReaders lineReaders = new LineReaders(reportReader, scmInfo, duplicationRepository, file)) {
+        ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(),
+          sourceLinesHashRepository.getLineHashes(file));
         ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
-        persistSource(fileSourceData, file.getUuid(), lineReaders.getLatestChange());
+        String dataHash = FileSourceDto.hashSourceData(fileSourceData.getFileSourceData());
+        String revision = computeRevision(lineReaders.getLatestChange());
+        // the map is not modified anymore once files are visited
+        FileSourceDto previousDto = previousFileSourcesByUuid.get(file.getUuid());
+        if (previousDto != null && !isUpdated(previousDto, dataHash, fileSourceData.getSrcHash(), revision)) {
+          return FileSource.unchanged(file);
+        }
+        byte[] data = FileSourceDto.encodeSourceData(fileSourceData.getFileSourceData());
+        byte[] scmData = ScmDataEncoder.encode(fileSourceData.getFileSourceData().getLinesList()).toByteArray();
+        return new FileSource(file, data, dataHash, scmData, fileSourceData, revision);
       } catch (Exception e) {
         throw new IllegalStateException(String.format("Cannot persist sources of %s", file.getKey()), e);
       }
     }
 
-    private void persistSource(ComputeFileSourceData.Data fileSourceData, String componentUuid, @Nullable Changeset latestChange) {
-      DbFileSources.Data fileData = fileSourceData.getFileSourceData();
+    /**
+     * Update only if data_hash has changed or if src_hash, revision or scm_data is missing (progressive migration).
+     * SCM data is part of source data, so it can't change without data_hash being changed.
+     */
+    private boolean isUpdated(FileSourceDto previousDto, String dataHash, String srcHash, @Nullable String revision) {
+      boolean dataUpdated = !dataHash.equals(previousDto.getDataHash());
+      boolean srcHashUpdated = !srcHash.equals(previousDto.getSrcHash());
+      boolean revisionUpdated = !ObjectUtils.equals(revision, previousDto.getRevision());
+      return dataUpdated || srcHashUpdated || revisionUpdated || !previousDto.hasScmData();
+    }
 
-      byte[] data = FileSourceDto.encodeSourceData(fileData);
-      String dataHash = DigestUtils.md5Hex(data);
-      String srcHash = fileSourceData.getSrcHash();
-      String lineHashes = fileSourceData.getLineHashes();
+    private void persistPendingSources() {
+      while (!pendingSources.isEmpty()) {
+        persistSource(pendingSources.poll());
+      }
+      session.commit();
+    }
+
+    private void cancelPendingSources() {
+      pendingSources.forEach(pendingSource -> pendingSource.cancel(true));
+      pendingSources.clear();
+    }
+
+    private void persistSource(Future<FileSource> pendingSource) {
+      try {
+        persistSource(pendingSource.get());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while persisting sources", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException(e.getCause());
+      }
+    }
+
+    private void persistSource(FileSource fileSource) {
+      if (fileSource.isUnchanged()) {
+        unchanged++;
+        return;
+      }
+      String componentUuid = fileSource.file.getUuid();
+      byte[] data = fileSource.data;
+      String dataHash = fileSource.dataHash;
+      String srcHash = fileSource.fileSourceData.getSrcHash();
+      String lineHashes = fileSource.fileSourceData.getLineHashes();
+      String revision = fileSource.revision;
       FileSourceDto previousDto = previousFileSourcesByUuid.get(componentUuid);
 
       if (previousDto == null) {
@@ -139,31 +244,39 @@ public class PersistFileSourcesStep implements ComputationStep {
           .setFileUuid(componentUuid)
           .setDataType(Type.SOURCE)
           .setBinaryData(data)
+          .setBinaryScmData(fileSource.scmData)
           .setSrcHash(srcHash)
           .setDataHash(dataHash)
           .setLineHashes(lineHashes)
           .setCreatedAt(system2.now())
           .setUpdatedAt(system2.now())
-          .setRevision(computeRevision(latestChange));
+          .setRevision(revision);
         dbClient.fileSourceDao().insert(session, dto);
-        session.commit();
+        inserts++;
       } else {
-        // Update only if data_hash has changed or if src_hash is missing or revision is missing (progressive migration)
-        boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
-        boolean srcHashUpdated = !srcHash.equals(previousDto.getSrcHash());
-        String revision = computeRevision(latestChange);
-        boolean revisionUpdated = !ObjectUtils.equals(revision, previousDto.getRevision());
-        if (binaryDataUpdated || srcHashUpdated || revisionUpdated) {
-          previousDto
-            .setBinaryData(data)
-            .setDataHash(dataHash)
-            .setSrcHash(srcHash)
-            .setLineHashes(lineHashes)
-            .setRevision(revision)
-            .setUpdatedAt(system2.now());
-          dbClient.fileSourceDao().update(session, previousDto);
-          session.commit();
-        }
+        previousDto
+          .setBinaryData(data)
+          .setBinaryScmData(fileSource.scmData)
+          .setDataHash(dataHash)
+          .setSrcHash(srcHash)
+          .setLineHashes(lineHashes)
+          .setRevision(revision)
+          .setUpdatedAt(system2.now());
+        dbClient.fileSourceDao().update(session, previousDto);
+        updates++;
+      }
+      commitIfBatchIsFull(data.length);
+    }
+
+    /**
+     * Rows are flushed by the batch session every {@link org.sonar.db.BatchSession#MAX_BATCH_SIZE} statements. Big
+     * files are committed earlier, so that the batch does not keep too much binary data in memory.
+     */
+    private void commitIfBatchIsFull(int dataSize) {
+      uncommittedBytes += dataSize;
+      if (uncommittedBytes >= MAX_BATCH_BYTES) {
+        session.commit();
+        uncommittedBytes = 0;
       }
     }
 
@@ -176,19 +289,53 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
   }
 
+  private static class FileSource {
+    private final Component file;
+    @CheckForNull
+    private final byte[] data;
+    @CheckForNull
+    private final String dataHash;
+    @CheckForNull
+    private final byte[] scmData;
+    @CheckForNull
+    private final ComputeFileSourceData.Data fileSourceData;
+    @CheckForNull
+    private final String revision;
+
+    private FileSource(Component file, @Nullable byte[] data, @Nullable String dataHash, @Nullable byte[] scmData,
+      @Nullable ComputeFileSourceData.Data fileSourceData, @Nullable String revision) {
+      this.file = file;
+      this.data = data;
+      this.dataHash = dataHash;
+      this.scmData = scmData;
+      this.fileSourceData = fileSourceData;
+      this.revision = revision;
+    }
+
+    /**
+     * Sources which are already persisted, nothing is kept in memory
+     */
+    private static FileSource unchanged(Component file) {
+      return new FileSource(file, null, null, null, null, null);
+    }
+
+    private boolean isUnchanged() {
+      return data == null;
+    }
+  }
+
   private static class LineReaders implements AutoCloseable {
     private final List<LineReader> readers = new ArrayList<>();
     private final List<CloseableIterator<?>> closeables = new ArrayList<>();
     @CheckForNull
     private final ScmLineReader scmLineReader;
 
-    LineReaders(BatchReportReader reportReader, ScmInfoRepository scmInfoRepository, DuplicationRepository duplicationRepository, Component component) {
+    LineReaders(BatchReportReader reportReader, Optional<ScmInfo> scmInfoOptional, DuplicationRepository duplicationRepository, Component component) {
       int componentRef = component.getReportAttributes().getRef();
       CloseableIterator<ScannerReport.LineCoverage> coverageIt = reportReader.readComponentCoverage(componentRef);
       closeables.add(coverageIt);
       readers.add(new CoverageLineReader(coverageIt));
 
-      Optional<ScmInfo> scmInfoOptional = scmInfoRepository.getScmInfo(component);
       if (scmInfoOptional.isPresent()) {
         this.scmLineReader = new ScmLineReader(scmInfoOptional.get());
         readers.add(scmLineReader);
@@ -19,83 +19,155 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.apache.ibatis.executor.BatchResult;
 import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.BatchSession;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.issue.IssueChangeMapper;
 import org.sonar.db.issue.IssueDto;
 import org.sonar.db.issue.IssueMapper;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
 import org.sonar.server.computation.task.projectanalysis.issue.RuleRepository;
 import org.sonar.server.computation.task.projectanalysis.issue.UpdateConflictResolver;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 import org.sonar.server.issue.IssueStorage;
 
 public class PersistIssuesStep implements ComputationStep {
 
+  private static final Logger LOG = Loggers.get(PersistIssuesStep.class);
+
+  /**
+   * Statements are grouped by type in JDBC batches of this size. It must be lower than {@link BatchSession#MAX_BATCH_SIZE},
+   * otherwise the batch session commits, and loses the update counts, before the batch is flushed.
+   */
+  private static final int BATCH_SIZE = 200;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final UpdateConflictResolver conflictResolver;
   private final RuleRepository ruleRepository;
   private final IssueCache issueCache;
+  private final ChangedIssueKeysHolder changedIssueKeysHolder;
+  private final ComputationStepStatistics statistics;
 
   public PersistIssuesStep(DbClient dbClient, System2 system2, UpdateConflictResolver conflictResolver,
-    RuleRepository ruleRepository, IssueCache issueCache) {
+    RuleRepository ruleRepository, IssueCache issueCache, ChangedIssueKeysHolder changedIssueKeysHolder, ComputationStepStatistics statistics) {
     this.dbClient = dbClient;
     this.system2 = system2;
     this.conflictResolver = conflictResolver;
     this.ruleRepository = ruleRepository;
     this.issueCache = issueCache;
+    this.changedIssueKeysHolder = changedIssueKeysHolder;
+    this.statistics = statistics;
   }
 
   @Override
   public void execute() {
+    long start = system2.now();
+    int count = 0;
+    int inserts = 0;
+    int updates = 0;
     try (DbSession dbSession = dbClient.openSession(true);
       CloseableIterator<DefaultIssue> issues = issueCache.traverse()) {
 
       IssueMapper mapper = dbSession.getMapper(IssueMapper.class);
       IssueChangeMapper changeMapper = dbSession.getMapper(IssueChangeMapper.class);
+      List<DefaultIssue> addedIssues = new ArrayList<>(BATCH_SIZE);
+      List<DefaultIssue> updatedIssues = new ArrayList<>(BATCH_SIZE);
       while (issues.hasNext()) {
         DefaultIssue issue = issues.next();
-        boolean saved = persistIssueIfRequired(mapper, issue);
-        if (saved) {
-          IssueStorage.insertChanges(changeMapper, issue);
+        if (issue.isNew() || issue.isCopied()) {
+          addedIssues.add(issue);
+          changedIssueKeysHolder.add(issue.key());
+          count++;
+          inserts++;
+          if (addedIssues.size() >= BATCH_SIZE) {
+            persistNewIssues(dbSession, mapper, changeMapper, addedIssues);
+          }
+        } else if (issue.isChanged()) {
+          updatedIssues.add(issue);
+          changedIssueKeysHolder.add(issue.key());
+          count++;
+          updates++;
+          if (updatedIssues.size() >= BATCH_SIZE) {
+            persistUpdatedIssues(dbSession, mapper, changeMapper, updatedIssues);
+          }
         }
       }
+      persistNewIssues(dbSession, mapper, changeMapper, addedIssues);
+      persistUpdatedIssues(dbSession, mapper, changeMapper, updatedIssues);
       dbSession.flushStatements();
       dbSession.commit();
     }
+    statistics.add("inserts", inserts).add("updates", updates);
+    long duration = system2.now() - start;
+    LOG.info("{} issues persisted in {} ms ({} issues/s)", count, duration, duration == 0 ? count : (count * 1_000L / duration));
   }
 
-  private boolean persistIssueIfRequired(IssueMapper mapper, DefaultIssue issue) {
-    if (issue.isNew() || issue.isCopied()) {
-      persistNewIssue(mapper, issue);
-      return true;
+  private void persistNewIssues(DbSession dbSession, IssueMapper mapper, IssueChangeMapper changeMapper, List<DefaultIssue> addedIssues) {
+    if (addedIssues.isEmpty()) {
+      return;
     }
-
-    if (issue.isChanged()) {
-      persistChangedIssue(mapper, issue);
-      return true;
+    long now = system2.now();
+    for (DefaultIssue issue : addedIssues) {
+      Integer ruleId = ruleRepository.getByKey(issue.ruleKey()).getId();
+      mapper.insert(IssueDto.toDtoForComputationInsert(issue, ruleId, now));
     }
-    return false;
+    dbSession.flushStatements();
+    insertChanges(dbSession, changeMapper, addedIssues);
   }
 
-  private void persistNewIssue(IssueMapper mapper, DefaultIssue issue) {
-    Integer ruleId = ruleRepository.getByKey(issue.ruleKey()).getId();
-    IssueDto dto = IssueDto.toDtoForComputationInsert(issue, ruleId, system2.now());
-    mapper.insert(dto);
+  private void persistUpdatedIssues(DbSession dbSession, IssueMapper mapper, IssueChangeMapper changeMapper, List<DefaultIssue> updatedIssues) {
+    if (updatedIssues.isEmpty()) {
+      return;
+    }
+    long now = system2.now();
+    for (DefaultIssue issue : updatedIssues) {
+      mapper.updateIfBeforeSelectedDate(IssueDto.toDtoForUpdate(issue, now));
+    }
+    Set<String> conflictingKeys = new HashSet<>();
+    for (BatchResult batchResult : dbSession.flushStatements()) {
+      int[] updateCounts = batchResult.getUpdateCounts();
+      List<Object> dtos = batchResult.getParameterObjects();
+      for (int i = 0; i < updateCounts.length; i++) {
+        if (updateCounts[i] == 0) {
+          conflictingKeys.add(((IssueDto) dtos.get(i)).getKey());
+        }
+      }
+    }
+    if (!conflictingKeys.isEmpty()) {
+      // End-user and scan changed the issues at the same time.
+      // See https://jira.sonarsource.com/browse/SONAR-4309
+      Map<String, IssueDto> dbIssuesByKey = mapper.selectByKeys(new ArrayList<>(conflictingKeys)).stream()
+        .collect(Collectors.toMap(IssueDto::getKey, Function.identity()));
+      updatedIssues.stream()
+        .filter(issue -> conflictingKeys.contains(issue.key()))
+        .forEach(issue -> conflictResolver.resolve(issue, dbIssuesByKey.get(issue.key()), mapper));
+      dbSession.flushStatements();
+    }
+    insertChanges(dbSession, changeMapper, updatedIssues);
   }
 
-  private void persistChangedIssue(IssueMapper mapper, DefaultIssue issue) {
-    IssueDto dto = IssueDto.toDtoForUpdate(issue, system2.now());
-    int updateCount = mapper.updateIfBeforeSelectedDate(dto);
-    if (updateCount == 0) {
-      // End-user and scan changed the issue at the same time.
-      // See https://jira.sonarsource.com/browse/SONAR-4309
-      conflictResolver.resolve(issue, mapper);
+  private static void insertChanges(DbSession dbSession, IssueChangeMapper changeMapper, List<DefaultIssue> issues) {
+    for (DefaultIssue issue : issues) {
+      IssueStorage.insertChanges(changeMapper, issue);
     }
+    dbSession.flushStatements();
+    issues.clear();
   }
 
   @Override
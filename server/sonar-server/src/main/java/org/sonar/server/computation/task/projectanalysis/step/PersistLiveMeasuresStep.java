@@ -19,18 +19,25 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
-import com.google.common.collect.Multimap;
-import java.util.Collection;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.function.Predicate;
 import javax.annotation.Nonnull;
-import org.sonar.core.util.Uuids;
+import javax.annotation.Nullable;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
-import org.sonar.db.measure.LiveMeasureDao;
 import org.sonar.db.measure.LiveMeasureDto;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
@@ -54,6 +61,8 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
 
 public class PersistLiveMeasuresStep implements ComputationStep {
 
+  private static final Logger LOG = Loggers.get(PersistLiveMeasuresStep.class);
+
   /**
    * List of metrics that should not be persisted on file measure.
    */
@@ -84,53 +93,185 @@ public class PersistLiveMeasuresStep implements ComputationStep {
 
   @Override
   public void execute() {
-    try (DbSession dbSession = dbClient.openSession(false)) {
-      String marker = Uuids.create();
+    try (DbSession dbSession = dbClient.openSession(true)) {
       Component root = treeRootHolder.getRoot();
-      new DepthTraversalTypeAwareCrawler(new MeasureVisitor(dbSession, marker)).visit(root);
-      dbClient.liveMeasureDao().deleteByProjectUuidExcludingMarker(dbSession, root.getUuid(), marker);
+      Map<String, Component> componentsByUuid = new HashMap<>();
+      new DepthTraversalTypeAwareCrawler(new TypeAwareVisitorAdapter(CrawlerDepthLimit.LEAVES, PRE_ORDER) {
+        @Override
+        public void visitAny(Component component) {
+          componentsByUuid.put(component.getUuid(), component);
+        }
+      }).visit(root);
+
+      // existing measures are compared to the raw measures while being streamed. Writes are executed once the
+      // result set is closed, as some drivers (MySQL) do not support other statements on a connection which is streaming rows.
+      ExistingMeasuresHandler existingMeasures = new ExistingMeasuresHandler(componentsByUuid);
+      dbClient.liveMeasureDao().scrollByProjectUuid(dbSession, root.getUuid(), existingMeasures);
+
+      MeasureVisitor visitor = new MeasureVisitor(dbSession, existingMeasures);
+      new DepthTraversalTypeAwareCrawler(visitor).visit(root);
+      visitor.deleteObsoleteMeasures();
       dbSession.commit();
+      LOG.debug("Live measures: {} inserted, {} updated, {} deleted, {} unchanged", visitor.inserts, visitor.updates, visitor.deletes, existingMeasures.unchanged);
+    }
+  }
+
+  /**
+   * The measure to be persisted for the given component and metric, if any
+   */
+  private Optional<LiveMeasureDto> toLiveMeasureDto(Component component, Metric metric) {
+    if (NOT_TO_PERSIST_ON_FILE_METRIC_KEYS.contains(metric.getKey()) && component.getType() == Component.Type.FILE) {
+      return Optional.empty();
     }
+    Predicate<Measure> notBestValueOptimized = BestValueOptimization.from(metric, component).negate();
+    return measureRepository.getRawMeasures(component, metric).stream()
+      .filter(NonEmptyMeasure.INSTANCE)
+      .filter(notBestValueOptimized)
+      .map(measure -> measureToMeasureDto.toLiveMeasureDto(measure, metric, component))
+      .findFirst();
+  }
+
+  /**
+   * Hash of the values of a measure. Two measures with the same fingerprint are considered as equal.
+   */
+  private static long fingerprint(LiveMeasureDto dto) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    putNullable(hasher, dto.getValue());
+    putNullable(hasher, dto.getVariation());
+    String textValue = dto.getTextValue();
+    hasher.putBoolean(textValue != null);
+    if (textValue != null) {
+      hasher.putInt(textValue.length()).putUnencodedChars(textValue);
+    }
+    byte[] data = dto.getData();
+    hasher.putBoolean(data != null);
+    if (data != null) {
+      hasher.putInt(data.length).putBytes(data);
+    }
+    return hasher.hash().asLong();
+  }
+
+  private static void putNullable(Hasher hasher, @Nullable Double value) {
+    hasher.putBoolean(value != null);
+    if (value != null) {
+      hasher.putDouble(value);
+    }
+  }
+
+  /**
+   * Compares each row of table LIVE_MEASURES to the raw measure of the same component and metric. Only the metric ids
+   * of the existing and of the changed measures are kept in memory, the values of the rows are not.
+   */
+  private class ExistingMeasuresHandler implements ResultHandler<LiveMeasureDto> {
+    private final Map<String, Component> componentsByUuid;
+    private final Map<String, ExistingMeasures> existingMeasuresByComponentUuid = new HashMap<>();
+    private final Map<String, List<Integer>> obsoleteMetricIdsByComponentUuid = new HashMap<>();
+    private final Set<String> removedComponentUuids = new HashSet<>();
+    private int removedComponentMeasures = 0;
+    private int unchanged = 0;
+
+    private ExistingMeasuresHandler(Map<String, Component> componentsByUuid) {
+      this.componentsByUuid = componentsByUuid;
+    }
+
+    @Override
+    public void handleResult(ResultContext<? extends LiveMeasureDto> context) {
+      LiveMeasureDto existing = context.getResultObject();
+      String componentUuid = existing.getComponentUuid();
+      Component component = componentsByUuid.get(componentUuid);
+      if (component == null) {
+        // the component does not exist anymore
+        removedComponentUuids.add(componentUuid);
+        removedComponentMeasures++;
+        return;
+      }
+      int metricId = existing.getMetricId();
+      Optional<LiveMeasureDto> raw = metricRepository.getOptionalById(metricId)
+        .flatMap(metric -> toLiveMeasureDto(component, metric));
+      if (!raw.isPresent()) {
+        obsoleteMetricIdsByComponentUuid.computeIfAbsent(componentUuid, uuid -> new ArrayList<>()).add(metricId);
+        return;
+      }
+      ExistingMeasures existingMeasures = existingMeasuresByComponentUuid.computeIfAbsent(componentUuid, uuid -> new ExistingMeasures());
+      existingMeasures.existing.set(metricId);
+      if (fingerprint(raw.get()) == fingerprint(existing)) {
+        unchanged++;
+      } else {
+        existingMeasures.changed.set(metricId);
+      }
+    }
+  }
+
+  /**
+   * Metric ids of the measures of a component which exist in database and which are still computed
+   */
+  private static class ExistingMeasures {
+    private final BitSet existing = new BitSet();
+    private final BitSet changed = new BitSet();
   }
 
   private class MeasureVisitor extends TypeAwareVisitorAdapter {
     private final DbSession dbSession;
-    private final String marker;
+    private final ExistingMeasuresHandler existingMeasures;
+    private int inserts = 0;
+    private int updates = 0;
+    private int deletes = 0;
 
-    private MeasureVisitor(DbSession dbSession, String marker) {
+    private MeasureVisitor(DbSession dbSession, ExistingMeasuresHandler existingMeasures) {
       super(CrawlerDepthLimit.LEAVES, PRE_ORDER);
       this.dbSession = dbSession;
-      this.marker = marker;
+      this.existingMeasures = existingMeasures;
     }
 
     @Override
     public void visitAny(Component component) {
-      int count = 0;
-      LiveMeasureDao dao = dbClient.liveMeasureDao();
-      Multimap<String, Measure> measures = measureRepository.getRawMeasures(component);
-      for (Map.Entry<String, Collection<Measure>> measuresByMetricKey : measures.asMap().entrySet()) {
-        String metricKey = measuresByMetricKey.getKey();
-        if (NOT_TO_PERSIST_ON_FILE_METRIC_KEYS.contains(metricKey) && component.getType() == Component.Type.FILE) {
-          continue;
-        }
+      ExistingMeasures existing = existingMeasures.existingMeasuresByComponentUuid.remove(component.getUuid());
+      for (String metricKey : measureRepository.getRawMeasures(component).keySet()) {
         Metric metric = metricRepository.getByKey(metricKey);
-        Predicate<Measure> notBestValueOptimized = BestValueOptimization.from(metric, component).negate();
-        Iterator<LiveMeasureDto> liveMeasures = measuresByMetricKey.getValue().stream()
-          .filter(NonEmptyMeasure.INSTANCE)
-          .filter(notBestValueOptimized)
-          .map(measure -> measureToMeasureDto.toLiveMeasureDto(measure, metric, component))
-          .iterator();
-        while (liveMeasures.hasNext()) {
-          dao.insertOrUpdate(dbSession, liveMeasures.next(), marker);
-          count++;
-          if (count % 100 == 0) {
-            // use short transactions to avoid potential deadlocks on MySQL
-            // https://jira.sonarsource.com/browse/SONAR-10117?focusedCommentId=153555&page=com.atlassian.jira.plugin.system.issuetabpanels:comment-tabpanel#comment-153555
-            dbSession.commit();
+        int metricId = metric.getId();
+        if (existing != null && existing.existing.get(metricId)) {
+          if (existing.changed.get(metricId)) {
+            toLiveMeasureDto(component, metric).ifPresent(this::update);
           }
+        } else {
+          toLiveMeasureDto(component, metric).ifPresent(this::insert);
         }
       }
     }
+
+    private void insert(LiveMeasureDto dto) {
+      dbClient.liveMeasureDao().insert(dbSession, dto);
+      inserts++;
+      written(1);
+    }
+
+    private void update(LiveMeasureDto dto) {
+      dbClient.liveMeasureDao().update(dbSession, dto);
+      updates++;
+      written(1);
+    }
+
+    private void deleteObsoleteMeasures() {
+      existingMeasures.obsoleteMetricIdsByComponentUuid.forEach((componentUuid, metricIds) -> {
+        dbClient.liveMeasureDao().deleteByComponentUuidAndMetricIds(dbSession, componentUuid, metricIds);
+        deletes += metricIds.size();
+        written(metricIds.size());
+      });
+      if (!existingMeasures.removedComponentUuids.isEmpty()) {
+        dbClient.liveMeasureDao().deleteByComponentUuids(dbSession, existingMeasures.removedComponentUuids);
+        deletes += existingMeasures.removedComponentMeasures;
+        dbSession.commit();
+      }
+    }
+
+    private void written(int rows) {
+      int before = inserts + updates + deletes - rows;
+      if ((before + rows) / 100 != before / 100) {
+        // use short transactions to avoid potential deadlocks on MySQL
+        // https://jira.sonarsource.com/browse/SONAR-10117?focusedCommentId=153555&page=com.atlassian.jira.plugin.system.issuetabpanels:comment-tabpanel#comment-153555
+        dbSession.commit();
+      }
+    }
   }
 
   private enum NonEmptyMeasure implements Predicate<Measure> {
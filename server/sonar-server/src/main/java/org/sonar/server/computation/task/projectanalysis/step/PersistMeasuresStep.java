@@ -42,6 +42,7 @@ import org.sonar.server.computation.task.projectanalysis.measure.MeasureToMeasur
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 
 import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
 
@@ -53,22 +54,24 @@ public class PersistMeasuresStep implements ComputationStep {
   private final TreeRootHolder treeRootHolder;
   private final MeasureRepository measureRepository;
   private final boolean persistDirectories;
+  private final ComputationStepStatistics statistics;
 
   public PersistMeasuresStep(DbClient dbClient, MetricRepository metricRepository, MeasureToMeasureDto measureToMeasureDto,
-    TreeRootHolder treeRootHolder, MeasureRepository measureRepository, ConfigurationRepository settings) {
-    this(dbClient, metricRepository, measureToMeasureDto, treeRootHolder,measureRepository,
+    TreeRootHolder treeRootHolder, MeasureRepository measureRepository, ConfigurationRepository settings, ComputationStepStatistics statistics) {
+    this(dbClient, metricRepository, measureToMeasureDto, treeRootHolder, measureRepository, statistics,
       !settings.getConfiguration().getBoolean(PurgeConstants.PROPERTY_CLEAN_DIRECTORY).orElseThrow(() -> new IllegalStateException("Missing default value")));
   }
 
   @VisibleForTesting
   PersistMeasuresStep(DbClient dbClient, MetricRepository metricRepository, MeasureToMeasureDto measureToMeasureDto, TreeRootHolder treeRootHolder,
-    MeasureRepository measureRepository, boolean persistDirectories) {
+    MeasureRepository measureRepository, ComputationStepStatistics statistics, boolean persistDirectories) {
     this.dbClient = dbClient;
     this.metricRepository = metricRepository;
     this.measureToMeasureDto = measureToMeasureDto;
     this.treeRootHolder = treeRootHolder;
     this.measureRepository = measureRepository;
     this.persistDirectories = persistDirectories;
+    this.statistics = statistics;
   }
 
   @Override
@@ -79,13 +82,16 @@ public class PersistMeasuresStep implements ComputationStep {
   @Override
   public void execute() {
     try (DbSession dbSession = dbClient.openSession(true)) {
-      new DepthTraversalTypeAwareCrawler(new MeasureVisitor(dbSession)).visit(treeRootHolder.getRoot());
+      MeasureVisitor visitor = new MeasureVisitor(dbSession);
+      new DepthTraversalTypeAwareCrawler(visitor).visit(treeRootHolder.getRoot());
       dbSession.commit();
+      statistics.add("inserts", visitor.inserts);
     }
   }
 
   private class MeasureVisitor extends TypeAwareVisitorAdapter {
     private final DbSession session;
+    private long inserts = 0;
 
     private MeasureVisitor(DbSession session) {
       super(CrawlerDepthLimit.LEAVES, PRE_ORDER);
@@ -133,6 +139,7 @@ public class PersistMeasuresStep implements ComputationStep {
         measuresByMetricKey.getValue().stream().filter(NonEmptyMeasure.INSTANCE).forEach(measure -> {
           MeasureDto measureDto = measureToMeasureDto.toMeasureDto(measure, metric, component);
           measureDao.insert(session, measureDto);
+          inserts++;
         });
       }
     }
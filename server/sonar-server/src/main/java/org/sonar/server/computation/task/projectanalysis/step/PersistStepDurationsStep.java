@@ -0,0 +1,91 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import org.sonar.ce.queue.CeTask;
+import org.sonar.core.util.UuidFactory;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeTaskCharacteristicDto;
+import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
+import org.sonar.server.computation.task.step.ComputationStepStatistics.StepStatistics;
+
+import static java.util.Collections.singletonList;
+import static org.sonar.db.ce.CeTaskCharacteristicDto.MAX_VALUE_LENGTH;
+import static org.sonar.db.ce.CeTaskCharacteristicDto.STEP_DURATIONS_KEY;
+
+/**
+ * Persists the durations of the previous steps as a characteristic of the task, for example
+ * "Extract report=120;Build tree of components=45;...". Steps which don't fit in the characteristic are ignored.
+ */
+public class PersistStepDurationsStep implements ComputationStep {
+
+  private final DbClient dbClient;
+  private final UuidFactory uuidFactory;
+  private final CeTask ceTask;
+  private final ComputationStepStatistics statistics;
+
+  public PersistStepDurationsStep(DbClient dbClient, UuidFactory uuidFactory, CeTask ceTask, ComputationStepStatistics statistics) {
+    this.dbClient = dbClient;
+    this.uuidFactory = uuidFactory;
+    this.ceTask = ceTask;
+    this.statistics = statistics;
+  }
+
+  @Override
+  public void execute() {
+    String durations = formatDurations();
+    if (durations.isEmpty()) {
+      return;
+    }
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      boolean alreadyPersisted = dbClient.ceTaskCharacteristicsDao().selectByTaskUuid(dbSession, ceTask.getUuid()).stream()
+        .anyMatch(characteristic -> STEP_DURATIONS_KEY.equals(characteristic.getKey()));
+      // the task may have been restarted
+      if (!alreadyPersisted) {
+        dbClient.ceTaskCharacteristicsDao().insert(dbSession, singletonList(new CeTaskCharacteristicDto()
+          .setUuid(uuidFactory.create())
+          .setTaskUuid(ceTask.getUuid())
+          .setKey(STEP_DURATIONS_KEY)
+          .setValue(durations)));
+        dbSession.commit();
+      }
+    }
+  }
+
+  private String formatDurations() {
+    StringBuilder sb = new StringBuilder();
+    for (StepStatistics step : statistics.getSteps()) {
+      String separator = sb.length() == 0 ? "" : ";";
+      String entry = step.getStep() + "=" + step.getDurationMs();
+      if (sb.length() + separator.length() + entry.length() > MAX_VALUE_LENGTH) {
+        break;
+      }
+      sb.append(separator).append(entry);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String getDescription() {
+    return "Persist durations of steps";
+  }
+}
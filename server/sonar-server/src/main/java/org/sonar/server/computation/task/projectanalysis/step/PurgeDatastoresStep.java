@@ -19,8 +19,11 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import org.sonar.ce.queue.CeQueue;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.db.purge.IdUuidPair;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.DbIdsRepository;
@@ -45,15 +48,17 @@ public class PurgeDatastoresStep implements ComputationStep {
   private final TreeRootHolder treeRootHolder;
   private final ConfigurationRepository configRepository;
   private final DisabledComponentsHolder disabledComponentsHolder;
+  private final CeQueue ceQueue;
 
   public PurgeDatastoresStep(DbClient dbClient, ProjectCleaner projectCleaner, DbIdsRepository dbIdsRepository, TreeRootHolder treeRootHolder,
-    ConfigurationRepository configRepository, DisabledComponentsHolder disabledComponentsHolder) {
+    ConfigurationRepository configRepository, DisabledComponentsHolder disabledComponentsHolder, CeQueue ceQueue) {
     this.projectCleaner = projectCleaner;
     this.dbClient = dbClient;
     this.dbIdsRepository = dbIdsRepository;
     this.treeRootHolder = treeRootHolder;
     this.configRepository = configRepository;
     this.disabledComponentsHolder = disabledComponentsHolder;
+    this.ceQueue = ceQueue;
   }
 
   @Override
@@ -75,8 +80,24 @@ public class PurgeDatastoresStep implements ComputationStep {
   private void execute(Component root) {
     try (DbSession dbSession = dbClient.openSession(true)) {
       IdUuidPair idUuidPair = new IdUuidPair(dbIdsRepository.getComponentId(root), root.getUuid());
-      projectCleaner.purge(dbSession, idUuidPair, configRepository.getConfiguration(), disabledComponentsHolder.getUuids());
+      projectCleaner.purgeDisabledComponents(dbSession, idUuidPair, configRepository.getConfiguration(), disabledComponentsHolder.getUuids());
       dbSession.commit();
+      submitPurgeTask(dbSession, root);
+    }
+  }
+
+  /**
+   * The purge of the history is executed by a separate task, so that it does not delay the analysis.
+   * It is not submitted again if a previous one is still pending.
+   */
+  private void submitPurgeTask(DbSession dbSession, Component root) {
+    boolean alreadyPending = dbClient.ceQueueDao().selectByComponentUuid(dbSession, root.getUuid()).stream()
+      .anyMatch(task -> CeTaskTypes.PROJECT_PURGE.equals(task.getTaskType()) && task.getStatus() == CeQueueDto.Status.PENDING);
+    if (!alreadyPending) {
+      ceQueue.submit(ceQueue.prepareSubmit()
+        .setType(CeTaskTypes.PROJECT_PURGE)
+        .setComponentUuid(root.getUuid())
+        .build());
     }
   }
 
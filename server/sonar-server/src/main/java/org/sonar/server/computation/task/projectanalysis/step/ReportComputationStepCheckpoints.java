@@ -0,0 +1,166 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
+import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
+import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepositoryImpl;
+import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepCheckpoints;
+
+/**
+ * Checkpoints the {@link MeasureRepositoryImpl measures} and the {@link IssueCache issues} in the
+ * {@link TaskWorkingDirectory working directory} of the task after each step of {@link #RESUMABLE_STEPS}.
+ * <p>
+ * When the task is restarted, the resumable steps completed by the previous execution are skipped and the measures
+ * and issues of the last completed one are restored. The other steps are always executed: they load data from the
+ * report or the database, which is cheap compared to the computation of measures and issues, or they persist the
+ * results. The component tree is built again by {@link BuildComponentTreeStep}, with the UUIDs of the previous
+ * execution, and the report extracted by {@link ExtractReportStep} is reused.
+ * </p>
+ */
+public class ReportComputationStepCheckpoints implements ComputationStepCheckpoints {
+  private static final Logger LOGGER = Loggers.get(ReportComputationStepCheckpoints.class);
+  private static final String CHECKPOINT_PREFIX = "step-";
+  private static final String MEASURES_FILE = "measures.dat";
+  private static final String ISSUES_FILE = "issues.dat";
+
+  /**
+   * Steps which results are stored only in the measure repository and in the issue cache, in order of execution
+   */
+  static final List<Class<? extends ComputationStep>> RESUMABLE_STEPS = Arrays.asList(
+    SizeMeasuresStep.class,
+    NewCoverageMeasuresStep.class,
+    CoverageMeasuresStep.class,
+    CommentMeasuresStep.class,
+    CustomMeasuresCopyStep.class,
+    DuplicationMeasuresStep.class,
+    DuplicationDataMeasuresStep.class,
+    NewSizeMeasuresStep.class,
+    LanguageDistributionMeasuresStep.class,
+    UnitTestMeasuresStep.class,
+    ComplexityMeasuresStep.class,
+    ExecuteVisitorsStep.class,
+    ComputeMeasureVariationsStep.class);
+
+  private final TaskWorkingDirectory workingDirectory;
+  private final TreeRootHolder treeRootHolder;
+  private final MeasureRepositoryImpl measureRepository;
+  private final IssueCache issueCache;
+  private Integer lastCompletedStep;
+
+  public ReportComputationStepCheckpoints(TaskWorkingDirectory workingDirectory, TreeRootHolder treeRootHolder,
+    MeasureRepositoryImpl measureRepository, IssueCache issueCache) {
+    this.workingDirectory = workingDirectory;
+    this.treeRootHolder = treeRootHolder;
+    this.measureRepository = measureRepository;
+    this.issueCache = issueCache;
+  }
+
+  @Override
+  public boolean restore(ComputationStep step) {
+    int index = indexOf(step);
+    if (index < 0 || index > getLastCompletedStep()) {
+      return false;
+    }
+    if (index == lastCompletedStep) {
+      restoreState(checkpointName(index));
+    }
+    return true;
+  }
+
+  /**
+   * Index in {@link #RESUMABLE_STEPS} of the last step completed by a previous execution of the task, -1 if none.
+   * Only the checkpoint of this step is kept.
+   */
+  private int getLastCompletedStep() {
+    if (lastCompletedStep == null) {
+      lastCompletedStep = -1;
+      for (int i = RESUMABLE_STEPS.size() - 1; i >= 0 && lastCompletedStep < 0; i--) {
+        if (workingDirectory.hasCheckpoint(checkpointName(i))) {
+          lastCompletedStep = i;
+        }
+      }
+    }
+    return lastCompletedStep;
+  }
+
+  @Override
+  public void checkpoint(ComputationStep step) {
+    int index = indexOf(step);
+    if (index < 0) {
+      return;
+    }
+    String name = checkpointName(index);
+    File dir = workingDirectory.resetDir(name);
+    File measuresFile = new File(dir, MEASURES_FILE);
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(measuresFile)))) {
+      measureRepository.writeTo(treeRootHolder.getRoot(), output);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write measures to " + measuresFile, e);
+    }
+    issueCache.copyTo(new File(dir, ISSUES_FILE));
+    workingDirectory.checkpoint(name);
+
+    // the checkpoints of the previous steps are deleted only once the new one is complete. Some steps
+    // may have been skipped, so the previous checkpoint is not always the one of the preceding step.
+    for (int i = 0; i < index; i++) {
+      workingDirectory.delete(checkpointName(i));
+    }
+  }
+
+  private void restoreState(String name) {
+    File dir = workingDirectory.getDir(name);
+    File measuresFile = new File(dir, MEASURES_FILE);
+    try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(measuresFile)))) {
+      measureRepository.readFrom(treeRootHolder, input);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read measures from " + measuresFile, e);
+    }
+    issueCache.copyFrom(new File(dir, ISSUES_FILE));
+    LOGGER.info("Measures and issues restored from checkpoint {} of a previous execution of the task", name);
+  }
+
+  private static int indexOf(ComputationStep step) {
+    for (int i = 0; i < RESUMABLE_STEPS.size(); i++) {
+      if (RESUMABLE_STEPS.get(i).isInstance(step)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String checkpointName(int index) {
+    return CHECKPOINT_PREFIX + RESUMABLE_STEPS.get(index).getSimpleName();
+  }
+}
@@ -19,9 +19,13 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
 import org.sonar.server.computation.task.container.TaskContainer;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
 import org.sonar.server.computation.task.projectanalysis.filemove.FileMoveDetectionStep;
 import org.sonar.server.computation.task.step.ComputationStep;
 import org.sonar.server.computation.task.step.ExecuteStatelessInitExtensionsStep;
@@ -31,7 +35,7 @@ import org.sonar.server.computation.task.step.ExecuteStatelessInitExtensionsStep
  */
 public class ReportComputationSteps extends AbstractComputationSteps {
 
-  private static final List<Class<? extends ComputationStep>> STEPS = Arrays.asList(
+  static final List<Class<? extends ComputationStep>> STEPS = Arrays.asList(
     ExtractReportStep.class,
     PersistScannerContextStep.class,
     GenerateAnalysisUuid.class,
@@ -96,6 +100,7 @@ public class ReportComputationSteps extends AbstractComputationSteps {
     PersistTestsStep.class,
     PersistCrossProjectDuplicationIndexStep.class,
     EnableAnalysisStep.class,
+    UpdateCrossProjectDuplicationIndexStep.class,
 
     UpdateQualityProfilesLastUsedDateStep.class,
     PurgeDatastoresStep.class,
@@ -104,10 +109,44 @@ public class ReportComputationSteps extends AbstractComputationSteps {
     // notifications are sent at the end, so that webapp displays up-to-date information
     SendIssueNotificationsStep.class,
 
+    PersistStepDurationsStep.class,
     PublishTaskResultStep.class);
 
+  /**
+   * Steps of {@link #STEPS} which are not executed on short-living branches (including pull requests):
+   * <ul>
+   *   <li>cross project duplications are not supported on branches</li>
+   *   <li>custom measures are defined on the components of the main branch only</li>
+   *   <li>events are not displayed on short-living branches</li>
+   * </ul>
+   */
+  static final Set<Class<? extends ComputationStep>> SKIPPED_ON_SHORT_LIVING_BRANCH = ImmutableSet.of(
+    LoadCrossProjectDuplicationsRepositoryStep.class,
+    CustomMeasuresCopyStep.class,
+    QualityProfileEventsStep.class,
+    QualityGateEventsStep.class,
+    PersistCrossProjectDuplicationIndexStep.class,
+    UpdateCrossProjectDuplicationIndexStep.class);
+
+  private final TaskContainer taskContainer;
+
   public ReportComputationSteps(TaskContainer taskContainer) {
     super(taskContainer);
+    this.taskContainer = taskContainer;
+  }
+
+  /**
+   * Instances are filtered lazily: the type of branch is known when the steps following
+   * {@link LoadReportAnalysisMetadataHolderStep} are requested.
+   */
+  @Override
+  public Iterable<ComputationStep> instances() {
+    return Iterables.filter(super.instances(), step -> !isSkipped(step));
+  }
+
+  private boolean isSkipped(ComputationStep step) {
+    return SKIPPED_ON_SHORT_LIVING_BRANCH.stream().anyMatch(stepClass -> stepClass.isInstance(step))
+      && taskContainer.getComponentByType(AnalysisMetadataHolder.class).isShortLivingBranch();
   }
 
   /**
@@ -0,0 +1,63 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import java.util.List;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationBlocksHolder;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex;
+import org.sonar.server.computation.task.step.ComputationStep;
+
+import static java.util.Collections.emptyList;
+
+/**
+ * Replaces the duplication blocks of the project or branch in {@link CrossProjectDuplicationIndex} by the blocks persisted by
+ * {@link PersistCrossProjectDuplicationIndexStep}, which are empty when cross project duplication is disabled.
+ * It is executed after {@link EnableAnalysisStep}, so that blocks of failed analyses are never indexed.
+ */
+public class UpdateCrossProjectDuplicationIndexStep implements ComputationStep {
+
+  private final TreeRootHolder treeRootHolder;
+  private final AnalysisMetadataHolder analysisMetadataHolder;
+  private final CrossProjectDuplicationBlocksHolder blocksHolder;
+  private final CrossProjectDuplicationIndex crossProjectDuplicationIndex;
+
+  public UpdateCrossProjectDuplicationIndexStep(TreeRootHolder treeRootHolder, AnalysisMetadataHolder analysisMetadataHolder,
+    CrossProjectDuplicationBlocksHolder blocksHolder, CrossProjectDuplicationIndex crossProjectDuplicationIndex) {
+    this.treeRootHolder = treeRootHolder;
+    this.analysisMetadataHolder = analysisMetadataHolder;
+    this.blocksHolder = blocksHolder;
+    this.crossProjectDuplicationIndex = crossProjectDuplicationIndex;
+  }
+
+  @Override
+  public void execute() {
+    // blocks of the previous analysis must be removed from the index even if no blocks have been persisted
+    List<IndexedDuplicationUnitDto> blocks = blocksHolder.hasBlocks() ? blocksHolder.getBlocks() : emptyList();
+    crossProjectDuplicationIndex.replace(treeRootHolder.getRoot().getUuid(), analysisMetadataHolder.getUuid(), blocks);
+  }
+
+  @Override
+  public String getDescription() {
+    return "Update cross project duplications index";
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+/**
+ * Checkpoints of the state computed by the steps of a task, so that a task restarted on the same node, for example
+ * after the node has been killed, resumes from its last completed step instead of computing everything again.
+ */
+public interface ComputationStepCheckpoints {
+
+  /**
+   * Called before the execution of {@code step}. Returns {@code true} if the step has been completed by a previous
+   * execution of the task, in which case its results are restored (if not yet done) and the step is not executed.
+   */
+  boolean restore(ComputationStep step);
+
+  /**
+   * Called after the execution of {@code step}, to save its results.
+   */
+  void checkpoint(ComputationStep step);
+}
@@ -31,6 +31,12 @@ public final class ComputationStepExecutor {
   private final ComputationSteps steps;
   @CheckForNull
   private final Listener listener;
+  @CheckForNull
+  private final ComputationStepStatistics statistics;
+  @CheckForNull
+  private final ComputationStepHistograms histograms;
+  @CheckForNull
+  private final ComputationStepCheckpoints checkpoints;
 
   /**
    * Used when no {@link ComputationStepExecutor.Listener} is available in pico
@@ -41,8 +47,22 @@ public final class ComputationStepExecutor {
   }
 
   public ComputationStepExecutor(ComputationSteps steps, @Nullable Listener listener) {
+    this(steps, listener, null, null);
+  }
+
+  public ComputationStepExecutor(ComputationSteps steps, @Nullable Listener listener,
+    @Nullable ComputationStepStatistics statistics, @Nullable ComputationStepHistograms histograms) {
+    this(steps, listener, statistics, histograms, null);
+  }
+
+  public ComputationStepExecutor(ComputationSteps steps, @Nullable Listener listener,
+    @Nullable ComputationStepStatistics statistics, @Nullable ComputationStepHistograms histograms,
+    @Nullable ComputationStepCheckpoints checkpoints) {
     this.steps = steps;
     this.listener = listener;
+    this.statistics = statistics;
+    this.histograms = histograms;
+    this.checkpoints = checkpoints;
   }
 
   public void execute() {
@@ -60,9 +80,29 @@ public final class ComputationStepExecutor {
 
   private void executeSteps(Profiler stepProfiler) {
     for (ComputationStep step : steps.instances()) {
+      if (checkpoints != null && checkpoints.restore(step)) {
+        LOGGER.info("{} | restored from checkpoint", step.getDescription());
+        continue;
+      }
       stepProfiler.start();
       step.execute();
-      stepProfiler.stopDebug(step.getDescription());
+      if (statistics != null) {
+        statistics.getCurrentStepItems().forEach(stepProfiler::addContext);
+      }
+      long durationMs = stepProfiler.stopDebug(step.getDescription());
+      recordStatistics(step, durationMs);
+      if (checkpoints != null) {
+        checkpoints.checkpoint(step);
+      }
+    }
+  }
+
+  private void recordStatistics(ComputationStep step, long durationMs) {
+    if (statistics != null) {
+      ComputationStepStatistics.StepStatistics stepStatistics = statistics.stepFinished(step.getDescription(), durationMs);
+      if (histograms != null) {
+        histograms.add(stepStatistics);
+      }
     }
   }
 
@@ -0,0 +1,148 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+import org.sonar.server.computation.task.step.ComputationStepStatistics.StepStatistics;
+
+/**
+ * Durations and processed items of the steps executed by all the workers since startup.
+ * <p>
+ * Percentiles of durations are computed on the last {@link #RESERVOIR_SIZE} executions of each step.
+ */
+public class ComputationStepHistograms {
+
+  static final int RESERVOIR_SIZE = 1_024;
+
+  private final Map<String, Histogram> histogramsByStep = new LinkedHashMap<>();
+
+  public synchronized void add(StepStatistics statistics) {
+    histogramsByStep.computeIfAbsent(statistics.getStep(), s -> new Histogram()).add(statistics);
+  }
+
+  /**
+   * Summaries of the executed steps, in order of first execution.
+   */
+  public synchronized List<Summary> getSummaries() {
+    List<Summary> summaries = new ArrayList<>(histogramsByStep.size());
+    histogramsByStep.forEach((step, histogram) -> summaries.add(histogram.toSummary(step)));
+    return summaries;
+  }
+
+  private static class Histogram {
+    private final long[] durations = new long[RESERVOIR_SIZE];
+    private final Map<String, Long> items = new LinkedHashMap<>();
+    private long count = 0;
+    private long totalDurationMs = 0;
+
+    void add(StepStatistics statistics) {
+      durations[(int) (count % RESERVOIR_SIZE)] = statistics.getDurationMs();
+      count++;
+      totalDurationMs += statistics.getDurationMs();
+      statistics.getItems().forEach((item, itemCount) -> items.merge(item, itemCount, Long::sum));
+    }
+
+    Summary toSummary(String step) {
+      long[] sortedDurations = Arrays.copyOf(durations, (int) Math.min(count, RESERVOIR_SIZE));
+      Arrays.sort(sortedDurations);
+      return new Summary(step, count, totalDurationMs,
+        percentile(sortedDurations, 50), percentile(sortedDurations, 95), percentile(sortedDurations, 99),
+        items);
+    }
+
+    private static long percentile(long[] sortedValues, int percentile) {
+      int rank = (int) Math.ceil(percentile / 100d * sortedValues.length);
+      return sortedValues[Math.max(rank - 1, 0)];
+    }
+  }
+
+  @Immutable
+  public static final class Summary {
+    private final String step;
+    private final long count;
+    private final long totalDurationMs;
+    private final long p50DurationMs;
+    private final long p95DurationMs;
+    private final long p99DurationMs;
+    private final Map<String, Long> items;
+
+    Summary(String step, long count, long totalDurationMs, long p50DurationMs, long p95DurationMs, long p99DurationMs, Map<String, Long> items) {
+      this.step = step;
+      this.count = count;
+      this.totalDurationMs = totalDurationMs;
+      this.p50DurationMs = p50DurationMs;
+      this.p95DurationMs = p95DurationMs;
+      this.p99DurationMs = p99DurationMs;
+      this.items = ImmutableMap.copyOf(items);
+    }
+
+    public String getStep() {
+      return step;
+    }
+
+    /**
+     * Number of executions of the step
+     */
+    public long getCount() {
+      return count;
+    }
+
+    public long getTotalDurationMs() {
+      return totalDurationMs;
+    }
+
+    public long getP50DurationMs() {
+      return p50DurationMs;
+    }
+
+    public long getP95DurationMs() {
+      return p95DurationMs;
+    }
+
+    public long getP99DurationMs() {
+      return p99DurationMs;
+    }
+
+    /**
+     * Total number of items processed by all the executions of the step
+     */
+    public Map<String, Long> getItems() {
+      return items;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder(step)
+        .append(" | count=").append(count)
+        .append(" | p50=").append(p50DurationMs).append("ms")
+        .append(" | p95=").append(p95DurationMs).append("ms")
+        .append(" | p99=").append(p99DurationMs).append("ms")
+        .append(" | total=").append(totalDurationMs).append("ms");
+      items.forEach((item, itemCount) -> sb.append(" | ").append(item).append('=').append(itemCount));
+      return sb.toString();
+    }
+  }
+}
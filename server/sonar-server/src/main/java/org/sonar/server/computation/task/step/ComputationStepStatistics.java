@@ -0,0 +1,100 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.concurrent.Immutable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Statistics of the steps executed by a task: duration of each step and number of items (files, issues, measures, ...)
+ * processed by each step. Steps declare their items with {@link #add(String, long)} while they are executed.
+ */
+public class ComputationStepStatistics {
+
+  private final List<StepStatistics> steps = new ArrayList<>();
+  private final Map<String, Long> currentStepItems = new LinkedHashMap<>();
+
+  /**
+   * Adds {@code count} items of type {@code item} to the step being executed.
+   */
+  public ComputationStepStatistics add(String item, long count) {
+    requireNonNull(item, "Item can't be null");
+    checkArgument(count >= 0, "Count of %s can't be negative: %s", item, count);
+    currentStepItems.merge(item, count, Long::sum);
+    return this;
+  }
+
+  /**
+   * Items added so far by the step being executed.
+   */
+  public Map<String, Long> getCurrentStepItems() {
+    return Collections.unmodifiableMap(currentStepItems);
+  }
+
+  /**
+   * Called by {@link ComputationStepExecutor} at the end of each step.
+   */
+  public StepStatistics stepFinished(String step, long durationMs) {
+    StepStatistics statistics = new StepStatistics(step, durationMs, currentStepItems);
+    currentStepItems.clear();
+    steps.add(statistics);
+    return statistics;
+  }
+
+  /**
+   * Statistics of the executed steps, in order of execution.
+   */
+  public List<StepStatistics> getSteps() {
+    return Collections.unmodifiableList(steps);
+  }
+
+  @Immutable
+  public static final class StepStatistics {
+    private final String step;
+    private final long durationMs;
+    private final Map<String, Long> items;
+
+    StepStatistics(String step, long durationMs, Map<String, Long> items) {
+      this.step = requireNonNull(step, "Step can't be null");
+      this.durationMs = durationMs;
+      this.items = ImmutableMap.copyOf(items);
+    }
+
+    public String getStep() {
+      return step;
+    }
+
+    public long getDurationMs() {
+      return durationMs;
+    }
+
+    public Map<String, Long> getItems() {
+      return items;
+    }
+  }
+}
@@ -20,19 +20,21 @@
 package org.sonar.server.es;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.elasticsearch.action.DocWriteRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequestBuilder;
-import org.elasticsearch.action.bulk.BackoffPolicy;
 import org.elasticsearch.action.bulk.BulkItemResponse;
-import org.elasticsearch.action.bulk.BulkProcessor;
-import org.elasticsearch.action.bulk.BulkProcessor.Listener;
 import org.elasticsearch.action.bulk.BulkRequest;
 import org.elasticsearch.action.bulk.BulkResponse;
 import org.elasticsearch.action.delete.DeleteRequest;
@@ -41,8 +43,6 @@ import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
-import org.elasticsearch.common.unit.ByteSizeUnit;
-import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.SearchHitField;
@@ -56,24 +56,27 @@ import static java.lang.String.format;
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
- *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
+ *   <li>bulk request is sent on the wire when its size is higher than the bulk size of the {@link BulkPipeline}
+ *   of the client, which adapts it to the load of Elasticsearch</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  * </ul>
  */
 public class BulkIndexer {
 
   private static final Logger LOGGER = Loggers.get(BulkIndexer.class);
-  private static final ByteSizeValue FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB);
-  private static final int FLUSH_ACTIONS = -1;
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final int DEFAULT_NUMBER_OF_SHARDS = 5;
 
   private final EsClient client;
   private final IndexType indexType;
-  private final BulkProcessor bulkProcessor;
   private final IndexingResult result = new IndexingResult();
   private final IndexingListener indexingListener;
   private final SizeHandler sizeHandler;
+  private final int concurrentRequests;
+  private final Semaphore semaphore;
+  private BulkRequest bulkRequest = new BulkRequest();
+  @CheckForNull
+  private ExecutorService executorService;
 
   public BulkIndexer(EsClient client, IndexType indexType, Size size) {
     this(client, indexType, size, IndexingListener.FAIL_ON_ERROR);
@@ -84,13 +87,8 @@ public class BulkIndexer {
     this.indexType = indexType;
     this.sizeHandler = size.createHandler(Runtime2.INSTANCE);
     this.indexingListener = indexingListener;
-    BulkProcessorListener bulkProcessorListener = new BulkProcessorListener();
-    this.bulkProcessor = BulkProcessor.builder(client.nativeClient(), bulkProcessorListener)
-      .setBackoffPolicy(BackoffPolicy.exponentialBackoff())
-      .setBulkSize(FLUSH_BYTE_SIZE)
-      .setBulkActions(FLUSH_ACTIONS)
-      .setConcurrentRequests(sizeHandler.getConcurrentRequests())
-      .build();
+    this.concurrentRequests = sizeHandler.getConcurrentRequests();
+    this.semaphore = new Semaphore(Math.max(1, concurrentRequests));
   }
 
   public IndexType getIndexType() {
@@ -99,6 +97,12 @@ public class BulkIndexer {
 
   public void start() {
     result.clear();
+    if (concurrentRequests > 0) {
+      executorService = Executors.newFixedThreadPool(concurrentRequests, new ThreadFactoryBuilder()
+        .setNameFormat("BulkIndexer-" + indexType.getIndex() + "-%d")
+        .setDaemon(true)
+        .build());
+    }
     sizeHandler.beforeStart(this);
   }
 
@@ -106,11 +110,22 @@ public class BulkIndexer {
    * @return the number of documents successfully indexed
    */
   public IndexingResult stop() {
+    flush();
     try {
-      bulkProcessor.awaitClose(1, TimeUnit.MINUTES);
+      int permits = Math.max(1, concurrentRequests);
+      if (semaphore.tryAcquire(permits, 1, TimeUnit.MINUTES)) {
+        semaphore.release(permits);
+      } else {
+        LOGGER.warn("Elasticsearch bulk requests still being executed after 1 minute");
+      }
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
       throw new IllegalStateException("Elasticsearch bulk requests still being executed after 1 minute", e);
+    } finally {
+      if (executorService != null) {
+        executorService.shutdown();
+        executorService = null;
+      }
     }
     client.prepareRefresh(indexType.getIndex()).get();
     sizeHandler.afterStop(this);
@@ -119,18 +134,71 @@ public class BulkIndexer {
   }
 
   public void add(IndexRequest request) {
-    result.incrementRequests();
-    bulkProcessor.add(request);
+    add((DocWriteRequest) request);
   }
 
   public void add(DeleteRequest request) {
-    result.incrementRequests();
-    bulkProcessor.add(request);
+    add((DocWriteRequest) request);
   }
 
-  public void add(DocWriteRequest request) {
+  public synchronized void add(DocWriteRequest request) {
     result.incrementRequests();
-    bulkProcessor.add(request);
+    bulkRequest.add(request);
+    if (bulkRequest.estimatedSizeInBytes() >= client.bulkPipeline().getBulkSize()) {
+      flush();
+    }
+  }
+
+  /**
+   * Sends the pending requests. Bulk requests are executed in the current thread, unless the size
+   * allows concurrent requests. In this case, the current thread waits only if {@link Size#createHandler(Runtime2)
+   * the maximum number of concurrent requests} of this indexer is reached.
+   */
+  private synchronized void flush() {
+    if (bulkRequest.numberOfActions() == 0) {
+      return;
+    }
+    BulkRequest request = bulkRequest;
+    bulkRequest = new BulkRequest();
+    try {
+      semaphore.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the execution of Elasticsearch bulk requests", e);
+    }
+    ExecutorService executor = executorService;
+    if (executor == null) {
+      execute(request);
+    } else {
+      executor.execute(() -> execute(request));
+    }
+  }
+
+  private void execute(BulkRequest request) {
+    try {
+      BulkResponse response = client.bulkPipeline().execute(client.nativeClient(), request);
+      onResponse(response);
+    } catch (Exception e) {
+      LOGGER.error("Fail to execute bulk index request: " + request, e);
+    } finally {
+      semaphore.release();
+    }
+  }
+
+  private void onResponse(BulkResponse response) {
+    List<DocId> successDocIds = new ArrayList<>();
+    // responses of concurrent requests are handled by different threads
+    synchronized (result) {
+      for (BulkItemResponse item : response.getItems()) {
+        if (item.isFailed()) {
+          LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
+        } else {
+          result.incrementSuccess();
+          successDocIds.add(new DocId(item.getIndex(), item.getType(), item.getId()));
+        }
+      }
+      indexingListener.onSuccess(successDocIds);
+    }
   }
 
   public void addDeletion(SearchRequestBuilder searchRequest) {
@@ -189,32 +257,6 @@ public class BulkIndexer {
     return bulk.stop();
   }
 
-  private final class BulkProcessorListener implements Listener {
-    @Override
-    public void beforeBulk(long executionId, BulkRequest request) {
-      // no action required
-    }
-
-    @Override
-    public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
-      List<DocId> successDocIds = new ArrayList<>();
-      for (BulkItemResponse item : response.getItems()) {
-        if (item.isFailed()) {
-          LOGGER.error("index [{}], type [{}], id [{}], message [{}]", item.getIndex(), item.getType(), item.getId(), item.getFailureMessage());
-        } else {
-          result.incrementSuccess();
-          successDocIds.add(new DocId(item.getIndex(), item.getType(), item.getId()));
-        }
-      }
-      indexingListener.onSuccess(successDocIds);
-    }
-
-    @Override
-    public void afterBulk(long executionId, BulkRequest req, Throwable e) {
-      LOGGER.error("Fail to execute bulk index request: " + req, e);
-    }
-  }
-
   public enum Size {
     /** Use this size for a limited number of documents. */
     REGULAR {
@@ -250,7 +292,8 @@ public class BulkIndexer {
 
   static class SizeHandler {
     /**
-     * @see BulkProcessor.Builder#setConcurrentRequests(int)
+     * Number of bulk requests of the indexer executed in background threads. These requests are also limited
+     * by {@link BulkPipeline#getConcurrentRequests()}, which is shared by all the indexers.
      */
     int getConcurrentRequests() {
       // in the same thread by default
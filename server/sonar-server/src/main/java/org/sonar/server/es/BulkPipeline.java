@@ -0,0 +1,202 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.elasticsearch.action.DocWriteRequest;
+import org.elasticsearch.action.bulk.BackoffPolicy;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Executes the bulk requests of all the {@link BulkIndexer}s of an {@link EsClient}.
+ * <p>
+ * The size of bulk requests and the number of bulk requests executed concurrently are adapted to the load of
+ * Elasticsearch. They are increased while bulk requests are executed quickly. They are decreased when bulk requests
+ * are slow or when Elasticsearch rejects items because its bulk queue is full. Rejected items are retried with an
+ * exponential backoff.
+ * </p>
+ */
+public class BulkPipeline {
+
+  private static final Logger LOGGER = Loggers.get(BulkPipeline.class);
+
+  static final long MIN_BULK_SIZE = ByteSizeUnit.KB.toBytes(512);
+  static final long INITIAL_BULK_SIZE = ByteSizeUnit.MB.toBytes(1);
+  static final long MAX_BULK_SIZE = ByteSizeUnit.MB.toBytes(8);
+  static final int INITIAL_CONCURRENT_REQUESTS = 2;
+  static final int MAX_CONCURRENT_REQUESTS = 8;
+  static final long FAST_RESPONSE_MS = 500L;
+  static final long SLOW_RESPONSE_MS = 2_000L;
+
+  private final System2 system2;
+  private long bulkSize = INITIAL_BULK_SIZE;
+  private int concurrentRequests = INITIAL_CONCURRENT_REQUESTS;
+  private int executingRequests = 0;
+
+  public BulkPipeline(System2 system2) {
+    this.system2 = system2;
+  }
+
+  /**
+   * Size in bytes above which {@link BulkIndexer}s send their bulk request
+   */
+  public synchronized long getBulkSize() {
+    return bulkSize;
+  }
+
+  /**
+   * Maximum number of bulk requests executed concurrently, whatever the {@link BulkIndexer}
+   */
+  public synchronized int getConcurrentRequests() {
+    return concurrentRequests;
+  }
+
+  /**
+   * Executes the bulk request in the current thread, once the number of bulk requests being executed
+   * is lower than {@link #getConcurrentRequests()}.
+   *
+   * @return the responses of all the items of the request, including the items still rejected after all the retries
+   */
+  public BulkResponse execute(Client client, BulkRequest request) {
+    List<DocWriteRequest> requests = request.requests();
+    BulkItemResponse[] responses = new BulkItemResponse[requests.size()];
+    // positions in the original request of the items of the request being executed
+    List<Integer> positions = new ArrayList<>(requests.size());
+    for (int i = 0; i < requests.size(); i++) {
+      positions.add(i);
+    }
+    long startedAt = system2.now();
+    Iterator<TimeValue> backoff = BackoffPolicy.exponentialBackoff().iterator();
+    BulkRequest toExecute = request;
+    while (true) {
+      BulkResponse response = executeOnce(client, toExecute);
+      List<Integer> rejectedPositions = new ArrayList<>();
+      for (BulkItemResponse item : response.getItems()) {
+        int position = positions.get(item.getItemId());
+        responses[position] = item;
+        if (isRejected(item)) {
+          rejectedPositions.add(position);
+        }
+      }
+      if (rejectedPositions.isEmpty() || !backoff.hasNext()) {
+        return new BulkResponse(responses, system2.now() - startedAt);
+      }
+      LOGGER.debug("{} items of bulk request rejected by Elasticsearch, retrying", rejectedPositions.size());
+      sleep(backoff.next());
+      toExecute = new BulkRequest();
+      for (Integer position : rejectedPositions) {
+        toExecute.add(requests.get(position));
+      }
+      positions = rejectedPositions;
+    }
+  }
+
+  private BulkResponse executeOnce(Client client, BulkRequest request) {
+    acquire();
+    long startedAt = system2.now();
+    boolean rejected = false;
+    try {
+      BulkResponse response = client.bulk(request).actionGet();
+      rejected = hasRejectedItems(response);
+      return response;
+    } catch (EsRejectedExecutionException e) {
+      rejected = true;
+      throw e;
+    } finally {
+      release(request.estimatedSizeInBytes(), system2.now() - startedAt, rejected);
+    }
+  }
+
+  private synchronized void acquire() {
+    while (executingRequests >= concurrentRequests) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting for the execution of Elasticsearch bulk requests", e);
+      }
+    }
+    executingRequests++;
+  }
+
+  /**
+   * Adapts the bulk size and the number of concurrent requests to the execution of a bulk request:
+   * <ul>
+   *   <li>additive increase when the request is fast and at least half the bulk size, so that the pipeline
+   *   slowly converges to the capacity of Elasticsearch</li>
+   *   <li>multiplicative decrease when items are rejected, so that the bulk queue of Elasticsearch is drained quickly</li>
+   *   <li>additive decrease when the request is slow</li>
+   * </ul>
+   */
+  @VisibleForTesting
+  synchronized void release(long requestSizeInBytes, long durationMs, boolean rejected) {
+    executingRequests--;
+    if (rejected) {
+      bulkSize = Math.max(MIN_BULK_SIZE, bulkSize / 2);
+      concurrentRequests = Math.max(1, concurrentRequests / 2);
+      LOGGER.debug("Elasticsearch rejected bulk items. Bulk size decreased to {} bytes and concurrent requests to {}", bulkSize, concurrentRequests);
+    } else if (durationMs >= SLOW_RESPONSE_MS) {
+      bulkSize = Math.max(MIN_BULK_SIZE, bulkSize - MIN_BULK_SIZE);
+      concurrentRequests = Math.max(1, concurrentRequests - 1);
+      LOGGER.debug("Slow Elasticsearch bulk request ({} ms). Bulk size decreased to {} bytes and concurrent requests to {}", durationMs, bulkSize,
+        concurrentRequests);
+    } else if (durationMs < FAST_RESPONSE_MS && requestSizeInBytes >= bulkSize / 2) {
+      bulkSize = Math.min(MAX_BULK_SIZE, bulkSize + MIN_BULK_SIZE);
+      concurrentRequests = Math.min(MAX_CONCURRENT_REQUESTS, concurrentRequests + 1);
+    }
+    notifyAll();
+  }
+
+  private static boolean hasRejectedItems(BulkResponse response) {
+    for (BulkItemResponse item : response.getItems()) {
+      if (isRejected(item)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isRejected(BulkItemResponse item) {
+    return item.isFailed()
+      && (item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS || item.getFailure().getCause() instanceof EsRejectedExecutionException);
+  }
+
+  private static void sleep(TimeValue delay) {
+    try {
+      Thread.sleep(delay.millis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while retrying Elasticsearch bulk request", e);
+    }
+  }
+}
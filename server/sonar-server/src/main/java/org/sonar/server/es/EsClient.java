@@ -45,6 +45,7 @@ import org.elasticsearch.common.Priority;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.metrics.max.Max;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.es.request.ProxyBulkRequestBuilder;
@@ -77,6 +78,7 @@ public class EsClient implements Closeable {
   public static final Logger LOGGER = Loggers.get("es");
 
   private final Client nativeClient;
+  private final BulkPipeline bulkPipeline = new BulkPipeline(System2.INSTANCE);
 
   public EsClient(Client nativeClient) {
     this.nativeClient = requireNonNull(nativeClient);
@@ -196,6 +198,13 @@ public class EsClient implements Closeable {
     return nativeClient;
   }
 
+  /**
+   * Pipeline shared by all the {@link BulkIndexer}s using this client
+   */
+  public BulkPipeline bulkPipeline() {
+    return bulkPipeline;
+  }
+
   /**
    * Checks whether there is any document in any mentioned type.
    */
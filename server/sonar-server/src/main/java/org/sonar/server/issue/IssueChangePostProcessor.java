@@ -30,7 +30,8 @@ import org.sonar.db.component.ComponentDto;
 public interface IssueChangePostProcessor {
 
   /**
-   * Refresh measures, quality gate status and send webhooks
+   * Refresh measures, quality gate status and send webhooks. The changes of issues must be committed, as
+   * the refresh may be executed asynchronously in another session.
    *
    * @param components the components of changed issues
    */
@@ -19,28 +19,160 @@
  */
 package org.sonar.server.issue;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.server.measure.live.LiveMeasureComputer;
 import org.sonar.server.qualitygate.changeevent.QGChangeEvent;
 import org.sonar.server.qualitygate.changeevent.QGChangeEventListeners;
 
-public class IssueChangePostProcessorImpl implements IssueChangePostProcessor {
+import static java.util.stream.Collectors.groupingBy;
 
+/**
+ * Refreshes are executed in background, at most one at a time per project. The changes
+ * received while the refresh of a project is pending or running are coalesced into its next refresh.
+ */
+public class IssueChangePostProcessorImpl implements IssueChangePostProcessor, Startable {
+
+  private static final Logger LOGGER = Loggers.get(IssueChangePostProcessorImpl.class);
+  private static final int THREAD_COUNT = 2;
+  private static final long STOP_TIMEOUT_SECONDS = 10L;
+
+  private final DbClient dbClient;
   private final LiveMeasureComputer liveMeasureComputer;
   private final QGChangeEventListeners qualityGateListeners;
+  private final ExecutorService executor;
+
+  // project uuid -> changes not refreshed yet. A project is present as long as its refresh task is queued or running.
+  private final Map<String, PendingChanges> pendingChangesByProjectUuid = new HashMap<>();
+
+  public IssueChangePostProcessorImpl(DbClient dbClient, LiveMeasureComputer liveMeasureComputer, QGChangeEventListeners qualityGateListeners) {
+    this(dbClient, liveMeasureComputer, qualityGateListeners, createExecutor());
+  }
 
-  public IssueChangePostProcessorImpl(LiveMeasureComputer liveMeasureComputer, QGChangeEventListeners qualityGateListeners) {
+  @VisibleForTesting
+  IssueChangePostProcessorImpl(DbClient dbClient, LiveMeasureComputer liveMeasureComputer, QGChangeEventListeners qualityGateListeners, ExecutorService executor) {
+    this.dbClient = dbClient;
     this.liveMeasureComputer = liveMeasureComputer;
     this.qualityGateListeners = qualityGateListeners;
+    this.executor = executor;
+  }
+
+  private static ExecutorService createExecutor() {
+    // a project is submitted at most once at a time, so the work queue is bounded by the number of projects
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      THREAD_COUNT, THREAD_COUNT,
+      5L, TimeUnit.MINUTES,
+      new LinkedBlockingQueue<>(),
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("sq-live-measures-%d")
+        .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor.shutdownNow();
+    synchronized (pendingChangesByProjectUuid) {
+      if (!pendingChangesByProjectUuid.isEmpty()) {
+        LOGGER.warn("Live measures of {} projects are not refreshed. They will be refreshed by the next analysis.", pendingChangesByProjectUuid.size());
+        pendingChangesByProjectUuid.clear();
+      }
+    }
   }
 
   @Override
   public void process(DbSession dbSession, List<DefaultIssue> changedIssues, Collection<ComponentDto> components) {
-    List<QGChangeEvent> gateChangeEvents = liveMeasureComputer.refresh(dbSession, components);
-    qualityGateListeners.broadcastOnIssueChange(changedIssues, gateChangeEvents);
+    Map<String, List<ComponentDto>> componentsByProjectUuid = components.stream().collect(groupingBy(ComponentDto::projectUuid));
+    Map<String, List<DefaultIssue>> issuesByProjectUuid = changedIssues.stream().collect(groupingBy(DefaultIssue::projectUuid));
+    componentsByProjectUuid.forEach((projectUuid, projectComponents) -> enqueue(projectUuid, projectComponents, issuesByProjectUuid.getOrDefault(projectUuid, new ArrayList<>())));
+  }
+
+  private void enqueue(String projectUuid, List<ComponentDto> components, List<DefaultIssue> changedIssues) {
+    synchronized (pendingChangesByProjectUuid) {
+      PendingChanges pendingChanges = pendingChangesByProjectUuid.get(projectUuid);
+      boolean submit = pendingChanges == null;
+      if (submit) {
+        pendingChanges = new PendingChanges();
+        pendingChangesByProjectUuid.put(projectUuid, pendingChanges);
+      }
+      pendingChanges.add(components, changedIssues);
+      if (submit) {
+        executor.execute(() -> refresh(projectUuid));
+      }
+    }
+  }
+
+  /**
+   * Refreshes the project until no more changes are pending, so that its refreshes are never concurrent.
+   */
+  private void refresh(String projectUuid) {
+    while (true) {
+      PendingChanges changes;
+      synchronized (pendingChangesByProjectUuid) {
+        changes = pendingChangesByProjectUuid.get(projectUuid);
+        if (changes == null || changes.isEmpty()) {
+          pendingChangesByProjectUuid.remove(projectUuid);
+          return;
+        }
+        pendingChangesByProjectUuid.put(projectUuid, new PendingChanges());
+      }
+      try {
+        refresh(changes);
+      } catch (Exception e) {
+        LOGGER.error("Fail to refresh live measures of project " + projectUuid, e);
+      }
+    }
+  }
+
+  private void refresh(PendingChanges changes) {
+    List<QGChangeEvent> gateChangeEvents;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      gateChangeEvents = liveMeasureComputer.refresh(dbSession, new ArrayList<>(changes.componentsByUuid.values()), changes.issues);
+    }
+    qualityGateListeners.broadcastOnIssueChange(changes.issues, gateChangeEvents);
+  }
+
+  private static final class PendingChanges {
+    private final Map<String, ComponentDto> componentsByUuid = new LinkedHashMap<>();
+    private final List<DefaultIssue> issues = new ArrayList<>();
+
+    private void add(Collection<ComponentDto> components, Collection<DefaultIssue> changedIssues) {
+      components.forEach(c -> componentsByUuid.put(c.uuid(), c));
+      issues.addAll(changedIssues);
+    }
+
+    private boolean isEmpty() {
+      return componentsByUuid.isEmpty();
+    }
   }
 }
@@ -24,11 +24,14 @@ import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Function;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
+import org.elasticsearch.common.unit.TimeValue;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
@@ -52,6 +55,10 @@ import org.sonar.server.permission.index.NeedAuthorizationIndexer;
 import static java.util.Collections.emptyList;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.sonar.server.es.EsUtils.SCROLL_TIME_IN_MINUTES;
+import static org.sonar.server.es.EsUtils.optimizeScrollRequest;
+import static org.sonar.server.es.EsUtils.scrollIds;
+import static org.sonar.server.issue.index.IssueIndexDefinition.FIELD_ISSUE_BRANCH_UUID;
 import static org.sonar.server.issue.index.IssueIndexDefinition.FIELD_ISSUE_PROJECT_UUID;
 import static org.sonar.server.issue.index.IssueIndexDefinition.INDEX_TYPE_ISSUE;
 
@@ -103,6 +110,86 @@ public class IssueIndexer implements ProjectIndexer, NeedAuthorizationIndexer {
     }
   }
 
+  /**
+   * Indexes only the given issues of the branch and the issues of the given components, for example the issues
+   * changed by an analysis and the issues of the components it moved. Issues which do not exist in db anymore
+   * are deleted from index.
+   * <p>
+   * All the issues of the branch are then indexed again if the index does not contain as many issues of the branch
+   * as the db, for example when the index has been dropped or when a previous indexing partially failed.
+   */
+  public void indexOnAnalysis(String branchUuid, Collection<String> issueKeys, Collection<String> componentUuids) {
+    Set<String> keys = new HashSet<>(issueKeys);
+    String projectUuid;
+    int dbCount;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      keys.addAll(dbClient.issueDao().selectKeysByComponentUuids(dbSession, componentUuids));
+      projectUuid = selectProjectUuid(dbSession, branchUuid);
+      dbCount = dbClient.issueDao().countByProjectUuid(dbSession, branchUuid);
+    }
+
+    if (!keys.isEmpty()) {
+      BulkIndexer bulkIndexer = createBulkIndexer(Size.REGULAR, IndexingListener.FAIL_ON_ERROR);
+      bulkIndexer.start();
+      try (IssueIterator issues = issueIteratorFactory.createForIssueKeys(keys)) {
+        while (issues.hasNext()) {
+          IssueDoc issue = issues.next();
+          bulkIndexer.add(newIndexRequest(issue));
+          keys.remove(issue.key());
+        }
+      }
+      // the remaining keys reference issues that don't exist in db
+      keys.forEach(issueKey -> bulkIndexer.addDeletion(INDEX_TYPE_ISSUE, issueKey, projectUuid));
+      bulkIndexer.stop();
+    }
+
+    long indexedCount = esClient.prepareSearch(INDEX_TYPE_ISSUE)
+      .setRouting(projectUuid)
+      .setQuery(boolQuery().filter(termQuery(FIELD_ISSUE_BRANCH_UUID, branchUuid)))
+      .setSize(0)
+      .get()
+      .getHits()
+      .getTotalHits();
+    if (indexedCount != dbCount) {
+      LOGGER.info("Index contains {} issues of branch {} instead of {}, all its issues are indexed", indexedCount, branchUuid, dbCount);
+      reindexBranch(branchUuid, projectUuid);
+    }
+  }
+
+  /**
+   * Issues are routed by the uuid of the project, which is the uuid of the main branch.
+   */
+  private String selectProjectUuid(DbSession dbSession, String branchUuid) {
+    return dbClient.componentDao().selectByUuid(dbSession, branchUuid)
+      .transform(branch -> branch.getMainBranchProjectUuid() == null ? branchUuid : branch.getMainBranchProjectUuid())
+      .or(branchUuid);
+  }
+
+  private void reindexBranch(String branchUuid, String projectUuid) {
+    SearchRequestBuilder search = esClient.prepareSearch(INDEX_TYPE_ISSUE)
+      .setRouting(projectUuid)
+      .setQuery(boolQuery().filter(termQuery(FIELD_ISSUE_BRANCH_UUID, branchUuid)))
+      .setScroll(TimeValue.timeValueMinutes(SCROLL_TIME_IN_MINUTES))
+      .setSize(100)
+      .setFetchSource(false);
+    optimizeScrollRequest(search);
+    Set<String> indexedKeys = new HashSet<>();
+    scrollIds(esClient, search.get(), Function.identity()).forEachRemaining(indexedKeys::add);
+
+    BulkIndexer bulkIndexer = createBulkIndexer(Size.REGULAR, IndexingListener.FAIL_ON_ERROR);
+    bulkIndexer.start();
+    try (IssueIterator issues = issueIteratorFactory.createForProject(branchUuid)) {
+      while (issues.hasNext()) {
+        IssueDoc issue = issues.next();
+        bulkIndexer.add(newIndexRequest(issue));
+        indexedKeys.remove(issue.key());
+      }
+    }
+    // the remaining keys reference issues that don't exist in db
+    indexedKeys.forEach(issueKey -> bulkIndexer.addDeletion(INDEX_TYPE_ISSUE, issueKey, projectUuid));
+    bulkIndexer.stop();
+  }
+
   @Override
   public Collection<EsQueueDto> prepareForRecovery(DbSession dbSession, Collection<String> projectUuids, ProjectIndexer.Cause cause) {
     switch (cause) {
@@ -0,0 +1,255 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.live;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.issue.IssueGroupDto;
+import org.sonar.db.measure.LiveMeasureDto;
+import org.sonar.db.rule.SeverityUtil;
+import org.sonar.server.computation.task.projectanalysis.qualitymodel.Rating;
+
+import static java.lang.String.format;
+import static java.util.Collections.singletonList;
+import static org.sonar.server.computation.task.projectanalysis.qualitymodel.Rating.RATING_BY_SEVERITY;
+
+/**
+ * Counter of issues which does not need to load the issues of the component. Values are the
+ * measures computed before the change of some issues, plus the difference introduced by these changes.
+ * The changes are provided as groups of issues, where the previous state of the changed issues is
+ * counted negatively.
+ * <p/>
+ * Only the values required by {@link IssueMetricFormulaFactoryImpl} are supported.
+ */
+class IncrementalIssueCounter extends IssueCounter {
+
+  private static final Map<RuleType, Metric> UNRESOLVED_BY_TYPE = ImmutableMap.of(
+    RuleType.CODE_SMELL, CoreMetrics.CODE_SMELLS,
+    RuleType.BUG, CoreMetrics.BUGS,
+    RuleType.VULNERABILITY, CoreMetrics.VULNERABILITIES);
+  private static final Map<RuleType, Metric> NEW_UNRESOLVED_BY_TYPE = ImmutableMap.of(
+    RuleType.CODE_SMELL, CoreMetrics.NEW_CODE_SMELLS,
+    RuleType.BUG, CoreMetrics.NEW_BUGS,
+    RuleType.VULNERABILITY, CoreMetrics.NEW_VULNERABILITIES);
+  private static final Map<String, Metric> UNRESOLVED_BY_SEVERITY = ImmutableMap.of(
+    Severity.BLOCKER, CoreMetrics.BLOCKER_VIOLATIONS,
+    Severity.CRITICAL, CoreMetrics.CRITICAL_VIOLATIONS,
+    Severity.MAJOR, CoreMetrics.MAJOR_VIOLATIONS,
+    Severity.MINOR, CoreMetrics.MINOR_VIOLATIONS,
+    Severity.INFO, CoreMetrics.INFO_VIOLATIONS);
+  private static final Map<String, Metric> NEW_UNRESOLVED_BY_SEVERITY = ImmutableMap.of(
+    Severity.BLOCKER, CoreMetrics.NEW_BLOCKER_VIOLATIONS,
+    Severity.CRITICAL, CoreMetrics.NEW_CRITICAL_VIOLATIONS,
+    Severity.MAJOR, CoreMetrics.NEW_MAJOR_VIOLATIONS,
+    Severity.MINOR, CoreMetrics.NEW_MINOR_VIOLATIONS,
+    Severity.INFO, CoreMetrics.NEW_INFO_VIOLATIONS);
+  private static final Map<String, Metric> BY_RESOLUTION = ImmutableMap.of(
+    Issue.RESOLUTION_FALSE_POSITIVE, CoreMetrics.FALSE_POSITIVE_ISSUES,
+    Issue.RESOLUTION_WONT_FIX, CoreMetrics.WONT_FIX_ISSUES);
+  private static final Map<String, Metric> BY_STATUS = ImmutableMap.of(
+    Issue.STATUS_OPEN, CoreMetrics.OPEN_ISSUES,
+    Issue.STATUS_REOPENED, CoreMetrics.REOPENED_ISSUES,
+    Issue.STATUS_CONFIRMED, CoreMetrics.CONFIRMED_ISSUES);
+  private static final Map<RuleType, Metric> EFFORT_OF_UNRESOLVED = ImmutableMap.of(
+    RuleType.CODE_SMELL, CoreMetrics.TECHNICAL_DEBT,
+    RuleType.BUG, CoreMetrics.RELIABILITY_REMEDIATION_EFFORT,
+    RuleType.VULNERABILITY, CoreMetrics.SECURITY_REMEDIATION_EFFORT);
+  private static final Map<RuleType, Metric> NEW_EFFORT_OF_UNRESOLVED = ImmutableMap.of(
+    RuleType.CODE_SMELL, CoreMetrics.NEW_TECHNICAL_DEBT,
+    RuleType.BUG, CoreMetrics.NEW_RELIABILITY_REMEDIATION_EFFORT,
+    RuleType.VULNERABILITY, CoreMetrics.NEW_SECURITY_REMEDIATION_EFFORT);
+  private static final Map<RuleType, Metric> RATING_BY_TYPE = ImmutableMap.of(
+    RuleType.BUG, CoreMetrics.RELIABILITY_RATING,
+    RuleType.VULNERABILITY, CoreMetrics.SECURITY_RATING);
+  private static final Map<RuleType, Metric> NEW_RATING_BY_TYPE = ImmutableMap.of(
+    RuleType.BUG, CoreMetrics.NEW_RELIABILITY_RATING,
+    RuleType.VULNERABILITY, CoreMetrics.NEW_SECURITY_RATING);
+
+  // metric key -> value before the changes
+  private final Map<String, Double> values;
+  // metric key -> leak value before the changes
+  private final Map<String, Double> leakValues;
+  private final Map<RuleType, String> highestSeverityOfUnresolved;
+  private final Map<RuleType, String> newHighestSeverityOfUnresolved;
+
+  private IncrementalIssueCounter(Collection<IssueGroupDto> changes, Map<String, Double> values, Map<String, Double> leakValues,
+    Map<RuleType, String> highestSeverityOfUnresolved, Map<RuleType, String> newHighestSeverityOfUnresolved) {
+    super(changes);
+    this.values = values;
+    this.leakValues = leakValues;
+    this.highestSeverityOfUnresolved = highestSeverityOfUnresolved;
+    this.newHighestSeverityOfUnresolved = newHighestSeverityOfUnresolved;
+  }
+
+  /**
+   * @return the counter, or {@link Optional#empty()} if the issues of the component must be loaded
+   * because some measures are missing or because the highest severity may have been lowered by the changes.
+   */
+  static Optional<IssueCounter> create(MeasureMatrix matrix, ComponentDto component, Collection<IssueGroupDto> changes, boolean withLeak) {
+    Map<String, Double> values = new HashMap<>();
+    Map<String, Double> leakValues = new HashMap<>();
+    boolean complete = copyValues(matrix, component, UNRESOLVED_BY_TYPE.values(), values, false)
+      && copyValues(matrix, component, UNRESOLVED_BY_SEVERITY.values(), values, false)
+      && copyValues(matrix, component, BY_RESOLUTION.values(), values, false)
+      && copyValues(matrix, component, BY_STATUS.values(), values, false)
+      && copyValues(matrix, component, EFFORT_OF_UNRESOLVED.values(), values, false)
+      && copyValues(matrix, component, RATING_BY_TYPE.values(), values, false)
+      && copyValues(matrix, component, singletonList(CoreMetrics.VIOLATIONS), values, false);
+    if (withLeak) {
+      complete = complete
+        && copyValues(matrix, component, NEW_UNRESOLVED_BY_TYPE.values(), leakValues, true)
+        && copyValues(matrix, component, NEW_UNRESOLVED_BY_SEVERITY.values(), leakValues, true)
+        && copyValues(matrix, component, NEW_EFFORT_OF_UNRESOLVED.values(), leakValues, true)
+        && copyValues(matrix, component, NEW_RATING_BY_TYPE.values(), leakValues, true)
+        && copyValues(matrix, component, singletonList(CoreMetrics.NEW_VIOLATIONS), leakValues, true);
+    }
+    if (!complete) {
+      return Optional.empty();
+    }
+
+    Map<RuleType, String> highestSeverities = new HashMap<>();
+    Map<RuleType, String> newHighestSeverities = new HashMap<>();
+    for (RuleType type : RATING_BY_TYPE.keySet()) {
+      Optional<String> highestSeverity = highestSeverityAfterChanges(type, values.get(RATING_BY_TYPE.get(type).getKey()), changes, false);
+      if (!highestSeverity.isPresent()) {
+        return Optional.empty();
+      }
+      highestSeverities.put(type, highestSeverity.get());
+      if (withLeak) {
+        Optional<String> newHighestSeverity = highestSeverityAfterChanges(type, leakValues.get(NEW_RATING_BY_TYPE.get(type).getKey()), changes, true);
+        if (!newHighestSeverity.isPresent()) {
+          return Optional.empty();
+        }
+        newHighestSeverities.put(type, newHighestSeverity.get());
+      }
+    }
+    return Optional.of(new IncrementalIssueCounter(changes, values, leakValues, highestSeverities, newHighestSeverities));
+  }
+
+  private static boolean copyValues(MeasureMatrix matrix, ComponentDto component, Collection<Metric> metrics, Map<String, Double> target, boolean leak) {
+    for (Metric metric : metrics) {
+      if (!matrix.hasMetric(metric.getKey())) {
+        return false;
+      }
+      Optional<Double> value = matrix.getMeasure(component, metric.getKey()).map(leak ? LiveMeasureDto::getVariation : LiveMeasureDto::getValue);
+      if (!value.isPresent()) {
+        return false;
+      }
+      target.put(metric.getKey(), value.get());
+    }
+    return true;
+  }
+
+  /**
+   * The highest severity can be raised by the issues added to the counter, but it can not be lowered
+   * without knowing if other issues remain with the same severity.
+   */
+  private static Optional<String> highestSeverityAfterChanges(RuleType type, double rating, Collection<IssueGroupDto> changes, boolean onlyInLeak) {
+    int highestSeverity = SeverityUtil.getOrdinalFromSeverity(severityOfRating(rating));
+    Map<Integer, Long> countBySeverity = new HashMap<>();
+    changes.stream()
+      .filter(g -> g.getResolution() == null && g.getRuleType() == type.getDbConstant())
+      .filter(g -> !onlyInLeak || g.isInLeak())
+      .forEach(g -> countBySeverity.merge(SeverityUtil.getOrdinalFromSeverity(g.getSeverity()), g.getCount(), Long::sum));
+
+    Optional<Integer> highestAddedSeverity = countBySeverity.entrySet().stream()
+      .filter(e -> e.getValue() > 0)
+      .map(Map.Entry::getKey)
+      .max(Integer::compare);
+    if (highestAddedSeverity.isPresent() && highestAddedSeverity.get() >= highestSeverity) {
+      return Optional.of(SeverityUtil.getSeverityFromOrdinal(highestAddedSeverity.get()));
+    }
+    if (countBySeverity.getOrDefault(highestSeverity, 0L) < 0 && highestSeverity > SeverityUtil.getOrdinalFromSeverity(Severity.INFO)) {
+      return Optional.empty();
+    }
+    return Optional.of(SeverityUtil.getSeverityFromOrdinal(highestSeverity));
+  }
+
+  private static String severityOfRating(double rating) {
+    Rating r = Rating.valueOf((int) rating);
+    return RATING_BY_SEVERITY.entrySet().stream()
+      .filter(e -> e.getValue() == r)
+      .map(Map.Entry::getKey)
+      .findFirst()
+      .orElseThrow(() -> new IllegalStateException("No severity for rating " + r));
+  }
+
+  @Override
+  public Optional<String> getHighestSeverityOfUnresolved(RuleType ruleType, boolean onlyInLeak) {
+    Map<RuleType, String> severities = onlyInLeak ? newHighestSeverityOfUnresolved : highestSeverityOfUnresolved;
+    return Optional.of(get(severities, ruleType));
+  }
+
+  @Override
+  public double sumEffortOfUnresolved(RuleType type, boolean onlyInLeak) {
+    return valueBeforeChanges(onlyInLeak ? NEW_EFFORT_OF_UNRESOLVED : EFFORT_OF_UNRESOLVED, type, onlyInLeak)
+      + super.sumEffortOfUnresolved(type, onlyInLeak);
+  }
+
+  @Override
+  public long countUnresolvedBySeverity(String severity, boolean onlyInLeak) {
+    return (long) valueBeforeChanges(onlyInLeak ? NEW_UNRESOLVED_BY_SEVERITY : UNRESOLVED_BY_SEVERITY, severity, onlyInLeak)
+      + super.countUnresolvedBySeverity(severity, onlyInLeak);
+  }
+
+  @Override
+  public long countByResolution(String resolution, boolean onlyInLeak) {
+    return (long) valueBeforeChanges(BY_RESOLUTION, resolution, onlyInLeak) + super.countByResolution(resolution, onlyInLeak);
+  }
+
+  @Override
+  public long countUnresolvedByType(RuleType type, boolean onlyInLeak) {
+    return (long) valueBeforeChanges(onlyInLeak ? NEW_UNRESOLVED_BY_TYPE : UNRESOLVED_BY_TYPE, type, onlyInLeak)
+      + super.countUnresolvedByType(type, onlyInLeak);
+  }
+
+  @Override
+  public long countByStatus(String status, boolean onlyInLeak) {
+    return (long) valueBeforeChanges(BY_STATUS, status, onlyInLeak) + super.countByStatus(status, onlyInLeak);
+  }
+
+  @Override
+  public long countUnresolved(boolean onlyInLeak) {
+    String metricKey = onlyInLeak ? CoreMetrics.NEW_VIOLATIONS_KEY : CoreMetrics.VIOLATIONS_KEY;
+    return get(onlyInLeak ? leakValues : values, metricKey).longValue() + super.countUnresolved(onlyInLeak);
+  }
+
+  private double valueBeforeChanges(Map<?, Metric> metrics, Object key, boolean onlyInLeak) {
+    Metric metric = get(metrics, key);
+    return get(onlyInLeak ? leakValues : values, metric.getKey());
+  }
+
+  private static <K, V> V get(Map<K, V> map, Object key) {
+    V value = map.get(key);
+    if (value == null) {
+      throw new IllegalStateException(format("Value of %s is not supported by incremental counter", key));
+    }
+    return value;
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.live;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rules.RuleType;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.issue.IssueGroupDto;
+
+import static java.util.Collections.emptyList;
+import static org.sonar.server.issue.IssueFieldsSetter.FILE;
+import static org.sonar.server.issue.IssueFieldsSetter.RESOLUTION;
+import static org.sonar.server.issue.IssueFieldsSetter.SEVERITY;
+import static org.sonar.server.issue.IssueFieldsSetter.STATUS;
+import static org.sonar.server.issue.IssueFieldsSetter.TECHNICAL_DEBT;
+import static org.sonar.server.issue.IssueFieldsSetter.TYPE;
+
+/**
+ * Converts the change of an issue into issue groups that can be added to the groups loaded
+ * from database: the state before the change is counted negatively, the state after the change positively.
+ * As in database, closed issues are not counted.
+ */
+class IssueGroupChanges {
+
+  private IssueGroupChanges() {
+    // only static methods
+  }
+
+  /**
+   * @return the groups, or {@link Optional#empty()} if the state of the issue before the change is not known
+   */
+  static Optional<List<IssueGroupDto>> of(DefaultIssue issue, long leakPeriodBeginningDate) {
+    FieldDiffs diffs = issue.currentChange();
+    if (diffs == null) {
+      return Optional.of(emptyList());
+    }
+    if (issue.isNew() || diffs.get(FILE) != null) {
+      return Optional.empty();
+    }
+    boolean inLeak = isInLeak(issue.creationDate(), leakPeriodBeginningDate);
+    List<IssueGroupDto> groups = new ArrayList<>();
+    String previousStatus = previousValue(diffs, STATUS, issue.status());
+    if (!Issue.STATUS_CLOSED.equals(previousStatus)) {
+      Long previousEffort = diffs.get(TECHNICAL_DEBT) == null ? issue.effortInMinutes() : diffs.get(TECHNICAL_DEBT).oldValueLong();
+      groups.add(new IssueGroupDto()
+        .setRuleType(RuleType.valueOf(previousValue(diffs, TYPE, issue.type().name())).getDbConstant())
+        .setSeverity(previousValue(diffs, SEVERITY, issue.severity()))
+        .setResolution(previousValue(diffs, RESOLUTION, issue.resolution()))
+        .setStatus(previousStatus)
+        .setEffort(previousEffort == null ? 0.0 : -previousEffort)
+        .setCount(-1L)
+        .setInLeak(inLeak));
+    }
+    if (!Issue.STATUS_CLOSED.equals(issue.status())) {
+      Long effort = issue.effortInMinutes();
+      groups.add(new IssueGroupDto()
+        .setRuleType(issue.type().getDbConstant())
+        .setSeverity(issue.severity())
+        .setResolution(issue.resolution())
+        .setStatus(issue.status())
+        .setEffort(effort == null ? 0.0 : effort)
+        .setCount(1L)
+        .setInLeak(inLeak));
+    }
+    return Optional.of(groups);
+  }
+
+  private static boolean isInLeak(@Nullable Date creationDate, long leakPeriodBeginningDate) {
+    return creationDate != null && creationDate.getTime() >= leakPeriodBeginningDate;
+  }
+
+  @CheckForNull
+  private static String previousValue(FieldDiffs diffs, String field, @Nullable String currentValue) {
+    FieldDiffs.Diff diff = diffs.get(field);
+    if (diff == null) {
+      return currentValue;
+    }
+    Serializable previousValue = diff.oldValue();
+    return previousValue == null ? null : previousValue.toString();
+  }
+}
@@ -22,6 +22,7 @@ package org.sonar.server.measure.live;
 import java.util.Collection;
 import java.util.List;
 import org.sonar.api.server.ServerSide;
+import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.server.qualitygate.changeevent.QGChangeEvent;
@@ -40,4 +41,13 @@ public interface LiveMeasureComputer {
 
   List<QGChangeEvent> refresh(DbSession dbSession, Collection<ComponentDto> components);
 
+  /**
+   * Same as {@link #refresh(DbSession, Collection)}, except that issues are counted from the measures
+   * before the changes of the given issues, plus the difference introduced by these changes. Issues are
+   * loaded from database only for the components missing some measures.
+   *
+   * @param changedIssues the issues which changes are persisted but not counted yet in measures
+   */
+  List<QGChangeEvent> refresh(DbSession dbSession, Collection<ComponentDto> components, Collection<DefaultIssue> changedIssues);
+
 }
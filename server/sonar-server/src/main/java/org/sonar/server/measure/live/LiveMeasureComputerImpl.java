@@ -21,6 +21,7 @@ package org.sonar.server.measure.live;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -28,14 +29,17 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.BranchDto;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.SnapshotDto;
+import org.sonar.db.issue.IssueGroupDto;
 import org.sonar.db.measure.LiveMeasureDto;
 import org.sonar.db.metric.MetricDto;
 import org.sonar.db.organization.OrganizationDto;
@@ -54,6 +58,7 @@ import static java.util.Collections.singleton;
 import static java.util.stream.Collectors.groupingBy;
 import static org.sonar.api.measures.CoreMetrics.ALERT_STATUS_KEY;
 import static org.sonar.core.util.stream.MoreCollectors.toArrayList;
+import static org.sonar.core.util.stream.MoreCollectors.toList;
 import static org.sonar.core.util.stream.MoreCollectors.uniqueIndex;
 
 public class LiveMeasureComputerImpl implements LiveMeasureComputer {
@@ -75,6 +80,15 @@ public class LiveMeasureComputerImpl implements LiveMeasureComputer {
 
   @Override
   public List<QGChangeEvent> refresh(DbSession dbSession, Collection<ComponentDto> components) {
+    return refreshProjects(dbSession, components, null);
+  }
+
+  @Override
+  public List<QGChangeEvent> refresh(DbSession dbSession, Collection<ComponentDto> components, Collection<DefaultIssue> changedIssues) {
+    return refreshProjects(dbSession, components, changedIssues);
+  }
+
+  private List<QGChangeEvent> refreshProjects(DbSession dbSession, Collection<ComponentDto> components, @Nullable Collection<DefaultIssue> changedIssues) {
     if (components.isEmpty()) {
       return emptyList();
     }
@@ -82,13 +96,17 @@ public class LiveMeasureComputerImpl implements LiveMeasureComputer {
     List<QGChangeEvent> result = new ArrayList<>();
     Map<String, List<ComponentDto>> componentsByProjectUuid = components.stream().collect(groupingBy(ComponentDto::projectUuid));
     for (List<ComponentDto> groupedComponents : componentsByProjectUuid.values()) {
-      Optional<QGChangeEvent> qgChangeEvent = refreshComponentsOnSameProject(dbSession, groupedComponents);
+      List<DefaultIssue> changedIssuesOfProject = changedIssues == null ? null : changedIssues.stream()
+        .filter(i -> groupedComponents.get(0).projectUuid().equals(i.projectUuid()))
+        .collect(toList());
+      Optional<QGChangeEvent> qgChangeEvent = refreshComponentsOnSameProject(dbSession, groupedComponents, changedIssuesOfProject);
       qgChangeEvent.ifPresent(result::add);
     }
     return result;
   }
 
-  private Optional<QGChangeEvent> refreshComponentsOnSameProject(DbSession dbSession, List<ComponentDto> touchedComponents) {
+  private Optional<QGChangeEvent> refreshComponentsOnSameProject(DbSession dbSession, List<ComponentDto> touchedComponents,
+    @Nullable List<DefaultIssue> changedIssues) {
     // load all the components to be refreshed, including their ancestors
     List<ComponentDto> components = loadTreeOfComponents(dbSession, touchedComponents);
     ComponentDto project = findProject(components);
@@ -117,8 +135,9 @@ public class LiveMeasureComputerImpl implements LiveMeasureComputer {
 
     MeasureMatrix matrix = new MeasureMatrix(components, metricsPerId.values(), dbMeasures);
     FormulaContextImpl context = new FormulaContextImpl(matrix, debtRatingGrid);
+    Map<String, IssueCounter> issueCounters = loadIssueCounters(dbSession, components, matrix, changedIssues, beginningOfLeakPeriod.orElse(null));
     components.forEach(c -> {
-      IssueCounter issueCounter = new IssueCounter(dbClient.issueDao().selectIssueGroupsByBaseComponent(dbSession, c, beginningOfLeakPeriod.orElse(Long.MAX_VALUE)));
+      IssueCounter issueCounter = issueCounters.get(c.uuid());
       for (IssueMetricFormula formula : formulaFactory.getFormulas()) {
         // exclude leak formulas when leak period is not defined
         if (beginningOfLeakPeriod.isPresent() || !formula.isOnLeak()) {
@@ -142,6 +161,53 @@ public class LiveMeasureComputerImpl implements LiveMeasureComputer {
       new QGChangeEvent(project, branch, lastAnalysis.get(), config, previousStatus, () -> Optional.of(evaluatedQualityGate)));
   }
 
+  /**
+   * When the changed issues are known, counters are computed from the measures before the changes plus the
+   * difference introduced by the changes. Issue groups are aggregated in database only for the components
+   * which can not be counted this way.
+   */
+  private Map<String, IssueCounter> loadIssueCounters(DbSession dbSession, List<ComponentDto> components, MeasureMatrix matrix,
+    @Nullable List<DefaultIssue> changedIssues, @Nullable Long beginningOfLeakPeriod) {
+    long leakPeriodBeginningDate = beginningOfLeakPeriod == null ? Long.MAX_VALUE : beginningOfLeakPeriod;
+    Map<String, IssueCounter> result = new HashMap<>();
+    Optional<Map<String, List<IssueGroupDto>>> changes = changedIssues == null ? Optional.empty() : toIssueGroupChanges(components, changedIssues, leakPeriodBeginningDate);
+    changes.ifPresent(changesByComponentUuid -> components.forEach(
+      c -> IncrementalIssueCounter.create(matrix, c, changesByComponentUuid.getOrDefault(c.uuid(), emptyList()), beginningOfLeakPeriod != null)
+        .ifPresent(counter -> result.put(c.uuid(), counter))));
+
+    List<String> uncountedComponentUuids = components.stream()
+      .map(ComponentDto::uuid)
+      .filter(uuid -> !result.containsKey(uuid))
+      .collect(toList());
+    if (!uncountedComponentUuids.isEmpty()) {
+      Map<String, List<IssueGroupDto>> groupsByComponentUuid = dbClient.issueDao()
+        .selectIssueGroupsByComponentUuids(dbSession, uncountedComponentUuids, leakPeriodBeginningDate)
+        .stream()
+        .collect(groupingBy(IssueGroupDto::getComponentUuid));
+      uncountedComponentUuids.forEach(uuid -> result.put(uuid, new IssueCounter(groupsByComponentUuid.getOrDefault(uuid, emptyList()))));
+    }
+    return result;
+  }
+
+  /**
+   * Changes of an issue are counted on its component and on all its ancestors.
+   */
+  private static Optional<Map<String, List<IssueGroupDto>>> toIssueGroupChanges(List<ComponentDto> components, List<DefaultIssue> changedIssues,
+    long leakPeriodBeginningDate) {
+    Map<String, ComponentDto> componentsByUuid = components.stream().collect(uniqueIndex(ComponentDto::uuid));
+    Map<String, List<IssueGroupDto>> result = new HashMap<>();
+    for (DefaultIssue issue : changedIssues) {
+      ComponentDto component = componentsByUuid.get(issue.componentUuid());
+      Optional<List<IssueGroupDto>> groups = IssueGroupChanges.of(issue, leakPeriodBeginningDate);
+      if (component == null || !groups.isPresent()) {
+        return Optional.empty();
+      }
+      result.computeIfAbsent(component.uuid(), k -> new ArrayList<>()).addAll(groups.get());
+      component.getUuidPathAsList().forEach(ancestorUuid -> result.computeIfAbsent(ancestorUuid, k -> new ArrayList<>()).addAll(groups.get()));
+    }
+    return Optional.of(result);
+  }
+
   @CheckForNull
   private static Metric.Level loadPreviousStatus(List<MetricDto> metrics, List<LiveMeasureDto> dbMeasures) {
     MetricDto alertStatusMetric = metrics.stream()
@@ -75,6 +75,10 @@ class MeasureMatrix {
     return requireNonNull(metricsByKeys.get(key), () -> String.format("Metric with key %s not found", key));
   }
 
+  boolean hasMetric(String metricKey) {
+    return table.containsColumn(metricKey);
+  }
+
   Optional<LiveMeasureDto> getMeasure(ComponentDto component, String metricKey) {
     checkArgument(table.containsColumn(metricKey), "Metric with key %s is not registered", metricKey);
     MeasureCell cell = table.get(component.uuid(), metricKey);
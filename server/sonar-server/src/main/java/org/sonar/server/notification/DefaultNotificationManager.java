@@ -25,6 +25,7 @@ import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
 import java.io.IOException;
 import java.io.InvalidClassException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -32,6 +33,7 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
@@ -78,21 +80,58 @@ public class DefaultNotificationManager implements NotificationManager {
   /**
    * Give the notification queue so that it can be processed
    */
+  @CheckForNull
   public Notification getFromQueue() {
-    int batchSize = 1;
-    List<NotificationQueueDto> notificationDtos = dbClient.notificationQueueDao().selectOldest(batchSize);
-    if (notificationDtos.isEmpty()) {
+    List<QueuedNotification> notifications = getFromQueue(1);
+    if (notifications.isEmpty()) {
       return null;
     }
-    dbClient.notificationQueueDao().delete(notificationDtos);
+    removeFromQueue(notifications);
+    return notifications.get(0).getNotification();
+  }
+
+  /**
+   * Give at most {@code batchSize} of the oldest notifications of the queue. They are kept in the queue until
+   * {@link #removeFromQueue(List)} is called once they are delivered, so that they are not lost if the server
+   * stops before. Notifications which can't be deserialized are removed. The returned list is empty only when
+   * the queue is empty.
+   */
+  public List<QueuedNotification> getFromQueue(int batchSize) {
+    List<QueuedNotification> notifications = new ArrayList<>(batchSize);
+    while (notifications.isEmpty()) {
+      List<NotificationQueueDto> notificationDtos = dbClient.notificationQueueDao().selectOldest(batchSize);
+      if (notificationDtos.isEmpty()) {
+        return Collections.emptyList();
+      }
+      List<NotificationQueueDto> invalidDtos = new ArrayList<>();
+      for (NotificationQueueDto notificationDto : notificationDtos) {
+        Notification notification = convertToNotification(notificationDto);
+        if (notification == null) {
+          invalidDtos.add(notificationDto);
+        } else {
+          notifications.add(new QueuedNotification(notificationDto, notification));
+        }
+      }
+      if (!invalidDtos.isEmpty()) {
+        dbClient.notificationQueueDao().delete(invalidDtos);
+      }
+    }
+    return notifications;
+  }
 
-    return convertToNotification(notificationDtos);
+  /**
+   * Remove from the queue notifications returned by {@link #getFromQueue(int)}
+   */
+  public void removeFromQueue(List<QueuedNotification> notifications) {
+    if (!notifications.isEmpty()) {
+      dbClient.notificationQueueDao().delete(notifications.stream().map(n -> n.dto).collect(Collectors.toList()));
+    }
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  @CheckForNull
+  private Notification convertToNotification(NotificationQueueDto notification) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notification.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
@@ -209,6 +248,23 @@ public class DefaultNotificationManager implements NotificationManager {
     }
   }
 
+  /**
+   * Notification read from the queue, see {@link #getFromQueue(int)}
+   */
+  public static final class QueuedNotification {
+    private final NotificationQueueDto dto;
+    private final Notification notification;
+
+    QueuedNotification(NotificationQueueDto dto, Notification notification) {
+      this.dto = dto;
+      this.notification = notification;
+    }
+
+    public Notification getNotification() {
+      return notification;
+    }
+  }
+
   @VisibleForTesting
   protected List<NotificationChannel> getChannels() {
     return Arrays.asList(notificationChannels);
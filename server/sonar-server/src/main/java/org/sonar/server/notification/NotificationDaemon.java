@@ -21,9 +21,12 @@ package org.sonar.server.notification;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.picocontainer.Startable;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
@@ -32,6 +35,7 @@ import org.sonar.api.notifications.Notification;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.server.notification.DefaultNotificationManager.QueuedNotification;
 
 @Properties({
   @Property(
@@ -43,6 +47,11 @@ import org.sonar.api.utils.log.Loggers;
     key = NotificationDaemon.PROPERTY_DELAY_BEFORE_REPORTING_STATUS,
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
+    global = false),
+  @Property(
+    key = NotificationDaemon.PROPERTY_DELIVERY_THREADS_PER_CHANNEL,
+    defaultValue = "4",
+    name = "Number of threads delivering notifications through each channel",
     global = false)
 })
 @ServerSide
@@ -53,24 +62,34 @@ public class NotificationDaemon implements Startable {
 
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
+  public static final String PROPERTY_DELIVERY_THREADS_PER_CHANNEL = "sonar.notifications.deliveryThreadsPerChannel";
+
+  /**
+   * Number of notifications dequeued at once
+   */
+  static final int BATCH_SIZE = 100;
 
   private final long delayInSeconds;
   private final long delayBeforeReportingStatusInSeconds;
+  private final int deliveryThreadsPerChannel;
   private final DefaultNotificationManager manager;
   private final NotificationService service;
 
   private ScheduledExecutorService executorService;
-  private boolean stopping = false;
+  private NotificationDeliveryPool deliveryPool;
+  private volatile boolean stopping = false;
 
   public NotificationDaemon(Configuration config, DefaultNotificationManager manager, NotificationService service) {
     this.delayInSeconds = config.getLong(PROPERTY_DELAY).get();
     this.delayBeforeReportingStatusInSeconds = config.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS).get();
+    this.deliveryThreadsPerChannel = config.getInt(PROPERTY_DELIVERY_THREADS_PER_CHANNEL).get();
     this.manager = manager;
     this.service = service;
   }
 
   @Override
   public void start() {
+    deliveryPool = new NotificationDeliveryPool(deliveryThreadsPerChannel);
     executorService = Executors.newSingleThreadScheduledExecutor(
       new ThreadFactoryBuilder()
         .setNameFormat(THREAD_NAME_PREFIX + "%d")
@@ -79,6 +98,8 @@ public class NotificationDaemon implements Startable {
     executorService.scheduleWithFixedDelay(() -> {
       try {
         processQueue();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
       } catch (Exception e) {
         LOG.error("Error in NotificationService", e);
       }
@@ -91,6 +112,8 @@ public class NotificationDaemon implements Startable {
     try {
       stopping = true;
       executorService.shutdown();
+      // deliveries which are not done on time are cancelled, their notifications stay in queue
+      deliveryPool.stop(5, TimeUnit.SECONDS);
       executorService.awaitTermination(5, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
@@ -99,15 +122,14 @@ public class NotificationDaemon implements Startable {
     LOG.info("Notification service stopped");
   }
 
-  private synchronized void processQueue() {
+  private synchronized void processQueue() throws InterruptedException {
     long start = now();
     long lastLog = start;
     long notifSentCount = 0;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      service.deliver(notifToSend);
-      notifSentCount++;
+    List<QueuedNotification> notifsToSend = manager.getFromQueue(BATCH_SIZE);
+    while (!notifsToSend.isEmpty()) {
+      notifSentCount += deliver(notifsToSend);
       if (stopping) {
         break;
       }
@@ -118,8 +140,28 @@ public class NotificationDaemon implements Startable {
         long spentTimeInMinutes = (now - start) / (60 * 1000);
         log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
       }
-      notifToSend = manager.getFromQueue();
+      notifsToSend = manager.getFromQueue(BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Delivers the notifications, then removes them from the queue. The notifications of which a delivery has been
+   * cancelled because the server is stopping are kept in the queue, to be delivered after restart.
+   *
+   * @return the number of notifications removed from the queue
+   */
+  private int deliver(List<QueuedNotification> notifications) throws InterruptedException {
+    for (QueuedNotification queuedNotification : notifications) {
+      Notification notification = queuedNotification.getNotification();
+      service.findRecipients(notification).entries()
+        .forEach(recipient -> deliveryPool.submit(notification, recipient.getKey(), recipient.getValue()));
     }
+    Set<Notification> undelivered = deliveryPool.awaitDeliveries();
+    List<QueuedNotification> delivered = notifications.stream()
+      .filter(queuedNotification -> !undelivered.contains(queuedNotification.getNotification()))
+      .collect(Collectors.toList());
+    manager.removeFromQueue(delivered);
+    return delivered.size();
   }
 
   @VisibleForTesting
@@ -0,0 +1,152 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notification;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.sonar.api.notifications.Notification;
+import org.sonar.api.notifications.NotificationChannel;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Delivers notifications in parallel, with a bounded number of threads per channel. All the deliveries
+ * to a given user through a given channel are executed by the same thread, so that the user receives
+ * them in the order they have been submitted.
+ */
+class NotificationDeliveryPool {
+  private static final String THREAD_NAME_PREFIX = "sq-notification-delivery-";
+  private static final Logger LOG = Loggers.get(NotificationDeliveryPool.class);
+
+  private final int threadsPerChannel;
+  private final Map<NotificationChannel, ExecutorService[]> executorsByChannel = new ConcurrentHashMap<>();
+  private final List<Delivery> pendingDeliveries = new ArrayList<>();
+
+  NotificationDeliveryPool(int threadsPerChannel) {
+    checkArgument(threadsPerChannel > 0, "Number of delivery threads per channel must be strictly positive, got %s", threadsPerChannel);
+    this.threadsPerChannel = threadsPerChannel;
+  }
+
+  void submit(Notification notification, String username, NotificationChannel channel) {
+    ExecutorService[] executors = executorsByChannel.computeIfAbsent(channel, this::createExecutors);
+    ExecutorService executor = executors[Math.floorMod(username.hashCode(), executors.length)];
+    Future<?> future;
+    try {
+      future = executor.submit(() -> NotificationService.deliver(notification, username, channel));
+    } catch (RejectedExecutionException e) {
+      // pool is stopped
+      future = new CompletableFuture<>();
+      future.cancel(false);
+    }
+    pendingDeliveries.add(new Delivery(notification, username, future));
+  }
+
+  /**
+   * Blocks until all the submitted deliveries are done, or cancelled by {@link #stop(long, TimeUnit)}. Each
+   * unexpected failure of a delivery is logged.
+   *
+   * @return the notifications of which at least one delivery has been cancelled
+   */
+  Set<Notification> awaitDeliveries() throws InterruptedException {
+    Set<Notification> undelivered = Collections.newSetFromMap(new IdentityHashMap<>());
+    try {
+      for (Delivery delivery : pendingDeliveries) {
+        try {
+          delivery.future.get();
+        } catch (CancellationException e) {
+          undelivered.add(delivery.notification);
+        } catch (ExecutionException e) {
+          // deliveries catch their own exceptions, this is not expected to happen
+          LOG.error("Failed to deliver notification " + delivery.notification + " to " + delivery.username, e.getCause());
+        }
+      }
+    } finally {
+      pendingDeliveries.clear();
+    }
+    return undelivered;
+  }
+
+  /**
+   * Stops the threads once the submitted deliveries are done, or when the timeout is reached. Then the deliveries
+   * which are not started are cancelled and the threads which are still delivering are interrupted. Deliveries
+   * submitted afterwards are cancelled.
+   */
+  void stop(long timeout, TimeUnit unit) throws InterruptedException {
+    executorsByChannel.values().forEach(executors -> {
+      for (ExecutorService executor : executors) {
+        executor.shutdown();
+      }
+    });
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (ExecutorService[] executors : executorsByChannel.values()) {
+      for (ExecutorService executor : executors) {
+        executor.awaitTermination(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      }
+    }
+    for (ExecutorService[] executors : executorsByChannel.values()) {
+      for (ExecutorService executor : executors) {
+        executor.shutdownNow().stream()
+          .filter(Future.class::isInstance)
+          .forEach(task -> ((Future<?>) task).cancel(false));
+      }
+    }
+  }
+
+  private ExecutorService[] createExecutors(NotificationChannel channel) {
+    ExecutorService[] executors = new ExecutorService[threadsPerChannel];
+    for (int i = 0; i < threadsPerChannel; i++) {
+      executors[i] = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder()
+          .setNameFormat(THREAD_NAME_PREFIX + channel.getKey() + "-" + i)
+          .setPriority(Thread.MIN_PRIORITY)
+          .setDaemon(true)
+          .build());
+    }
+    return executors;
+  }
+
+  private static final class Delivery {
+    private final Notification notification;
+    private final String username;
+    private final Future<?> future;
+
+    private Delivery(Notification notification, String username, Future<?> future) {
+      this.notification = notification;
+      this.username = username;
+      this.future = future;
+    }
+  }
+}
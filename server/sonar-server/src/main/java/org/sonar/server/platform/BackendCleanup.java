@@ -51,7 +51,7 @@ public class BackendCleanup {
     "ce_activity", "ce_queue", "ce_task_input", "ce_scanner_context",
     "duplications_index", "events", "issues", "issue_changes", "manual_measures",
     "notifications", "project_links", "project_measures", "projects",
-    "snapshots", "file_sources", "webhook_deliveries"
+    "snapshots", "file_sources", "webhook_deliveries", "webhook_queue"
   };
   private static final String[] RESOURCE_RELATED_TABLES = {
     "group_roles", "user_roles", "properties"
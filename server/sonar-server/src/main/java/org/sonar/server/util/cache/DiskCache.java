@@ -75,6 +75,29 @@ public class DiskCache<O extends Serializable> {
     }
   }
 
+  /**
+   * Copies the objects of the cache to {@code target}, from which they can be loaded back by {@link #copyFrom(File)}.
+   * Must not be called while an appender is opened.
+   */
+  public void copyTo(File target) {
+    try {
+      FileUtils.copyFile(file, target);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to copy file " + file + " to " + target, e);
+    }
+  }
+
+  /**
+   * Replaces the objects of the cache by the ones copied to {@code source} by {@link #copyTo(File)}.
+   */
+  public void copyFrom(File source) {
+    try {
+      FileUtils.copyFile(source, file);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to copy file " + source + " to " + file, e);
+    }
+  }
+
   public class DiskAppender implements AutoCloseable {
     private final ObjectOutputStream output;
 
@@ -0,0 +1,502 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.webhook;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import okhttp3.HttpUrl;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.core.util.stream.MoreCollectors;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.webhook.WebhookQueueDao;
+import org.sonar.db.webhook.WebhookQueueDto;
+import org.sonar.process.Jmx;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Collections.singletonList;
+
+/**
+ * Delivers webhooks asynchronously, so that slow endpoints do not delay the callers.
+ * <ul>
+ *   <li>requested deliveries are stored in the table WEBHOOK_QUEUE until their outcome is persisted by
+ *   {@link WebhookDeliveryStorage}, so that they are not lost when the server is stopped</li>
+ *   <li>a row is claimed by the process which delivers it. Claims are refreshed while the deliveries are in progress
+ *   and released on shutdown. Unclaimed rows, or rows whose claim expired because the process crashed, are loaded at
+ *   startup then regularly</li>
+ *   <li>deliveries are executed by a bounded pool of threads. At most {@link #MAX_PENDING_DELIVERIES} deliveries are
+ *   loaded in memory, the others stay in database until there is room for them</li>
+ *   <li>at most {@link #MAX_CONCURRENT_DELIVERIES_PER_ENDPOINT} deliveries to the same host are executed
+ *   concurrently, at most {@link #MAX_WAITING_DELIVERIES_PER_ENDPOINT} others wait for their turn in memory</li>
+ *   <li>deliveries which failed because of a network error or of a server error (HTTP 5xx) are retried
+ *   with an exponential backoff</li>
+ * </ul>
+ * Only the outcome of the last attempt is persisted.
+ */
+public class WebhookDeliveryQueue implements WebhookDeliveryQueueMBean, Startable {
+
+  private static final Logger LOGGER = Loggers.get(WebhookDeliveryQueue.class);
+
+  @VisibleForTesting
+  static final int MAX_CONCURRENT_DELIVERIES_PER_ENDPOINT = 2;
+  @VisibleForTesting
+  static final int MAX_WAITING_DELIVERIES_PER_ENDPOINT = 20;
+  @VisibleForTesting
+  static final int MAX_PENDING_DELIVERIES = 200;
+  @VisibleForTesting
+  static final int MAX_ATTEMPTS = 3;
+  @VisibleForTesting
+  static final long INITIAL_BACKOFF_MS = 1_000L;
+  @VisibleForTesting
+  static final long POLL_DELAY_MS = 10_000L;
+  @VisibleForTesting
+  static final long CLAIM_TIMEOUT_MS = 10L * 60 * 1_000;
+  private static final int THREAD_COUNT = 5;
+  private static final long STOP_TIMEOUT_SECONDS = 5L;
+
+  private final DbClient dbClient;
+  private final WebhookCaller caller;
+  private final WebhookDeliveryStorage deliveryStorage;
+  private final System2 system;
+  private final ExecutorService deliveryExecutor;
+  private final ScheduledExecutorService scheduler;
+  private final int maxConcurrentDeliveriesPerEndpoint;
+  private final int maxAttempts;
+
+  private final Object admissionLock = new Object();
+  private final Map<String, Endpoint> endpointsByKey = new HashMap<>();
+  private final Map<String, Delivery> pendingDeliveriesByUuid = new ConcurrentHashMap<>();
+  private final AtomicBoolean hasDeliveriesInDb = new AtomicBoolean(false);
+  private final AtomicLong successCount = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+  private final AtomicLong retryCount = new AtomicLong();
+  private final AtomicLong totalLatencyMs = new AtomicLong();
+  private final AtomicLong maxLatencyMs = new AtomicLong();
+
+  public WebhookDeliveryQueue(DbClient dbClient, WebhookCaller caller, WebhookDeliveryStorage deliveryStorage, System2 system) {
+    this(dbClient, caller, deliveryStorage, system, createDeliveryExecutor(), createScheduler(), MAX_CONCURRENT_DELIVERIES_PER_ENDPOINT, MAX_ATTEMPTS);
+  }
+
+  @VisibleForTesting
+  WebhookDeliveryQueue(DbClient dbClient, WebhookCaller caller, WebhookDeliveryStorage deliveryStorage, System2 system,
+    ExecutorService deliveryExecutor, ScheduledExecutorService scheduler, int maxConcurrentDeliveriesPerEndpoint, int maxAttempts) {
+    checkArgument(maxConcurrentDeliveriesPerEndpoint > 0, "Max concurrent deliveries per endpoint must be strictly positive");
+    checkArgument(maxAttempts > 0, "Max attempts must be strictly positive");
+    this.dbClient = dbClient;
+    this.caller = caller;
+    this.deliveryStorage = deliveryStorage;
+    this.system = system;
+    this.deliveryExecutor = deliveryExecutor;
+    this.scheduler = scheduler;
+    this.maxConcurrentDeliveriesPerEndpoint = maxConcurrentDeliveriesPerEndpoint;
+    this.maxAttempts = maxAttempts;
+  }
+
+  private static ExecutorService createDeliveryExecutor() {
+    // a delivery is submitted at most once at a time, so the work queue can't be full
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+      THREAD_COUNT, THREAD_COUNT,
+      5L, TimeUnit.MINUTES,
+      new LinkedBlockingQueue<>(MAX_PENDING_DELIVERIES),
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("sq-webhook-delivery-%d")
+        .build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static ScheduledExecutorService createScheduler() {
+    return Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("sq-webhook-scheduler-%d")
+        .build());
+  }
+
+  @Override
+  public void start() {
+    Jmx.register(OBJECT_NAME, this);
+    // resume the deliveries which were not completed before the last shutdown
+    scheduler.scheduleWithFixedDelay(this::poll, 0L, POLL_DELAY_MS, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void stop() {
+    Jmx.unregister(OBJECT_NAME);
+    scheduler.shutdownNow();
+    deliveryExecutor.shutdown();
+    try {
+      deliveryExecutor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    deliveryExecutor.shutdownNow();
+
+    List<String> notCompleted = new ArrayList<>(pendingDeliveriesByUuid.keySet());
+    pendingDeliveriesByUuid.clear();
+    if (!notCompleted.isEmpty()) {
+      LOGGER.info("{} webhook deliveries are not completed, they will be resumed at next startup", notCompleted.size());
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        dbClient.webhookQueueDao().unclaim(dbSession, notCompleted);
+        dbSession.commit();
+      } catch (Exception e) {
+        LOGGER.warn("Failed to release webhook deliveries, they will be resumed once their claim expires", e);
+      }
+    }
+  }
+
+  /**
+   * Enqueue the delivery of the payload to the webhook. This method returns once the delivery is stored in database.
+   */
+  public void enqueue(Webhook webhook, WebhookPayload payload) {
+    enqueue(singletonList(webhook), payload);
+  }
+
+  /**
+   * Enqueue the delivery of the payload to the webhooks. This method returns once the deliveries are stored in database.
+   * The deliveries previous to the last 30 days of the same component are purged once outcomes are persisted.
+   */
+  public void enqueue(Collection<Webhook> webhooks, WebhookPayload payload) {
+    if (webhooks.isEmpty()) {
+      return;
+    }
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      WebhookQueueDao dao = dbClient.webhookQueueDao();
+      List<WebhookQueueDto> dtos = webhooks.stream()
+        .map(webhook -> dao.insert(dbSession, toDto(webhook, payload)))
+        .collect(MoreCollectors.toList(webhooks.size()));
+      dbSession.commit();
+      admit(dbSession, dtos);
+    }
+  }
+
+  private static WebhookQueueDto toDto(Webhook webhook, WebhookPayload payload) {
+    return new WebhookQueueDto()
+      .setComponentUuid(webhook.getComponentUuid())
+      .setCeTaskUuid(webhook.getCeTaskUuid().orElse(null))
+      .setAnalysisUuid(webhook.getAnalysisUuid().orElse(null))
+      .setName(webhook.getName())
+      .setUrl(webhook.getUrl())
+      .setProjectKey(payload.getProjectKey())
+      .setPayload(payload.getJson());
+  }
+
+  /**
+   * Refreshes the claims of the deliveries in progress, then loads the deliveries which are not claimed by any process,
+   * as long as there is room for them.
+   */
+  @VisibleForTesting
+  void poll() {
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      WebhookQueueDao dao = dbClient.webhookQueueDao();
+      if (!pendingDeliveriesByUuid.isEmpty()) {
+        dao.refreshClaims(dbSession, new ArrayList<>(pendingDeliveriesByUuid.keySet()));
+        dbSession.commit();
+      }
+      if (pendingDeliveriesByUuid.size() < MAX_PENDING_DELIVERIES) {
+        hasDeliveriesInDb.set(false);
+        admit(dbSession, dao.selectUnclaimed(dbSession, system.now() - CLAIM_TIMEOUT_MS, MAX_PENDING_DELIVERIES));
+      }
+    } catch (Exception e) {
+      LOGGER.error("Failed to load webhook deliveries", e);
+    }
+  }
+
+  /**
+   * Claims and submits the deliveries which fit in the limits of the queue. The others stay in database.
+   */
+  private void admit(DbSession dbSession, List<WebhookQueueDto> dtos) {
+    List<Delivery> admitted = new ArrayList<>();
+    synchronized (admissionLock) {
+      WebhookQueueDao dao = dbClient.webhookQueueDao();
+      long claimedBefore = system.now() - CLAIM_TIMEOUT_MS;
+      for (WebhookQueueDto dto : dtos) {
+        if (pendingDeliveriesByUuid.size() >= MAX_PENDING_DELIVERIES) {
+          hasDeliveriesInDb.set(true);
+          break;
+        }
+        if (pendingDeliveriesByUuid.containsKey(dto.getUuid())) {
+          continue;
+        }
+        String endpointKey = toEndpointKey(dto.getUrl());
+        if (!reserve(endpointKey)) {
+          hasDeliveriesInDb.set(true);
+          continue;
+        }
+        if (dao.claim(dbSession, dto.getUuid(), claimedBefore)) {
+          dbSession.commit();
+          Delivery delivery = new Delivery(dto, endpointKey);
+          pendingDeliveriesByUuid.put(delivery.uuid, delivery);
+          admitted.add(delivery);
+        } else {
+          // delivered by another process
+          release(endpointKey);
+        }
+      }
+    }
+    admitted.forEach(this::submit);
+  }
+
+  private boolean reserve(String endpointKey) {
+    synchronized (endpointsByKey) {
+      Endpoint endpoint = endpointsByKey.computeIfAbsent(endpointKey, Endpoint::new);
+      if (endpoint.admitted >= maxConcurrentDeliveriesPerEndpoint + MAX_WAITING_DELIVERIES_PER_ENDPOINT) {
+        return false;
+      }
+      endpoint.admitted++;
+      return true;
+    }
+  }
+
+  private void release(String endpointKey) {
+    synchronized (endpointsByKey) {
+      Endpoint endpoint = endpointsByKey.get(endpointKey);
+      endpoint.admitted--;
+      removeIfIdle(endpoint);
+    }
+  }
+
+  private void removeIfIdle(Endpoint endpoint) {
+    if (endpoint.admitted == 0 && endpoint.running == 0) {
+      endpointsByKey.remove(endpoint.key);
+    }
+  }
+
+  private void submit(Delivery delivery) {
+    Endpoint endpoint;
+    synchronized (endpointsByKey) {
+      endpoint = endpointsByKey.get(delivery.endpointKey);
+      if (endpoint.running >= maxConcurrentDeliveriesPerEndpoint) {
+        endpoint.waiting.add(delivery);
+        return;
+      }
+      endpoint.running++;
+    }
+    execute(endpoint, delivery);
+  }
+
+  private void execute(Endpoint endpoint, Delivery delivery) {
+    try {
+      deliveryExecutor.execute(() -> {
+        try {
+          attempt(delivery);
+        } catch (Exception e) {
+          LOGGER.error("Failed to deliver webhook '{}'", delivery.webhook.getName(), e);
+          fail(delivery, e);
+        } finally {
+          executeNext(endpoint);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // queue is being stopped, the delivery is released by stop()
+      LOGGER.debug("Webhook '{}' is not delivered, queue is stopped", delivery.webhook.getName());
+      synchronized (endpointsByKey) {
+        endpoint.running--;
+      }
+    }
+  }
+
+  private void executeNext(Endpoint endpoint) {
+    Delivery next;
+    synchronized (endpointsByKey) {
+      next = endpoint.waiting.poll();
+      if (next == null) {
+        endpoint.running--;
+        removeIfIdle(endpoint);
+        return;
+      }
+    }
+    execute(endpoint, next);
+  }
+
+  private void attempt(Delivery delivery) {
+    delivery.attempts++;
+    WebhookDelivery result = caller.call(delivery.webhook, delivery.payload);
+    if (delivery.attempts < maxAttempts && isRetryable(result)) {
+      long backoffMs = INITIAL_BACKOFF_MS << (delivery.attempts - 1);
+      LOGGER.debug("Failed to send webhook '{}' | url={} | attempt={} | retry in {}ms",
+        delivery.webhook.getName(), delivery.webhook.getUrl(), delivery.attempts, backoffMs);
+      try {
+        scheduler.schedule(() -> submit(delivery), backoffMs, TimeUnit.MILLISECONDS);
+        retryCount.incrementAndGet();
+      } catch (RejectedExecutionException e) {
+        // queue is being stopped, the delivery is resumed at next startup
+      }
+      return;
+    }
+    complete(delivery, result);
+  }
+
+  private static boolean isRetryable(WebhookDelivery result) {
+    return result.getError().isPresent() || result.getHttpStatus().filter(status -> status >= 500).isPresent();
+  }
+
+  /**
+   * Persists a failure if the outcome of the delivery is not persisted yet. Otherwise the row stays in database and
+   * the delivery is resumed once its claim expires.
+   */
+  private void fail(Delivery delivery, Exception cause) {
+    try {
+      complete(delivery, new WebhookDelivery.Builder()
+        .setWebhook(delivery.webhook)
+        .setPayload(delivery.payload)
+        .setAt(system.now())
+        .setError(cause)
+        .build());
+    } catch (Exception e) {
+      LOGGER.error("Failed to record webhook '{}' as not delivered", delivery.webhook.getName(), e);
+    }
+  }
+
+  private void complete(Delivery delivery, WebhookDelivery result) {
+    if (pendingDeliveriesByUuid.remove(delivery.uuid) == null) {
+      // queue is stopped, the delivery is resumed at next startup
+      return;
+    }
+    release(delivery.endpointKey);
+    long latencyMs = system.now() - delivery.enqueuedAt;
+    totalLatencyMs.addAndGet(latencyMs);
+    maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    if (result.isSuccess()) {
+      successCount.incrementAndGet();
+    } else {
+      failureCount.incrementAndGet();
+    }
+    log(result);
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      deliveryStorage.persist(dbSession, result);
+      dbClient.webhookQueueDao().delete(dbSession, delivery.uuid);
+      dbSession.commit();
+    }
+    deliveryStorage.purge(delivery.webhook.getComponentUuid());
+    if (hasDeliveriesInDb.compareAndSet(true, false)) {
+      pollAsynchronously();
+    }
+  }
+
+  private void pollAsynchronously() {
+    try {
+      scheduler.execute(this::poll);
+    } catch (RejectedExecutionException e) {
+      // queue is being stopped
+    }
+  }
+
+  private static void log(WebhookDelivery delivery) {
+    Optional<String> error = delivery.getErrorMessage();
+    if (error.isPresent()) {
+      LOGGER.debug("Failed to send webhook '{}' | url={} | message={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), error.get());
+    } else {
+      LOGGER.debug("Sent webhook '{}' | url={} | time={}ms | status={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), delivery.getDurationInMs().orElse(-1), delivery.getHttpStatus().orElse(-1));
+    }
+  }
+
+  @Override
+  public long getPendingCount() {
+    return pendingDeliveriesByUuid.size();
+  }
+
+  @Override
+  public long getSuccessCount() {
+    return successCount.get();
+  }
+
+  @Override
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+
+  @Override
+  public long getRetryCount() {
+    return retryCount.get();
+  }
+
+  @Override
+  public long getAverageLatencyInMs() {
+    long completed = successCount.get() + failureCount.get();
+    return completed == 0 ? 0 : (totalLatencyMs.get() / completed);
+  }
+
+  @Override
+  public long getMaxLatencyInMs() {
+    return maxLatencyMs.get();
+  }
+
+  private static String toEndpointKey(String url) {
+    HttpUrl httpUrl = HttpUrl.parse(url);
+    if (httpUrl == null) {
+      return url;
+    }
+    return httpUrl.host() + ":" + httpUrl.port();
+  }
+
+  private static final class Delivery {
+    private final String uuid;
+    private final Webhook webhook;
+    private final WebhookPayload payload;
+    private final long enqueuedAt;
+    private final String endpointKey;
+    private int attempts = 0;
+
+    private Delivery(WebhookQueueDto dto, String endpointKey) {
+      this.uuid = dto.getUuid();
+      this.webhook = new Webhook(dto.getComponentUuid(), dto.getCeTaskUuid(), dto.getAnalysisUuid(), dto.getName(), dto.getUrl());
+      this.payload = new WebhookPayload(dto.getProjectKey(), dto.getPayload());
+      this.enqueuedAt = dto.getCreatedAt();
+      this.endpointKey = endpointKey;
+    }
+  }
+
+  private static final class Endpoint {
+    private final String key;
+    private final Queue<Delivery> waiting = new ArrayDeque<>();
+    /** number of deliveries which are running, waiting for their turn or scheduled for a retry */
+    private int admitted = 0;
+    private int running = 0;
+
+    private Endpoint(String key) {
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.webhook;
+
+public interface WebhookDeliveryQueueMBean {
+
+  String OBJECT_NAME = "SonarQube:name=WebhookDeliveries";
+
+  /**
+   * Number of deliveries loaded in memory which are waiting, running or scheduled for a retry. It does not include the
+   * deliveries which are kept in database because the queue is full.
+   */
+  long getPendingCount();
+
+  /**
+   * Number of webhooks successfully delivered since startup
+   */
+  long getSuccessCount();
+
+  /**
+   * Number of webhooks which could not be delivered, even after retries, since startup
+   */
+  long getFailureCount();
+
+  /**
+   * Number of retries since startup
+   */
+  long getRetryCount();
+
+  /**
+   * Average time, in milliseconds, between the enqueuing of a webhook and its final delivery attempt
+   */
+  long getAverageLatencyInMs();
+
+  /**
+   * Maximum time, in milliseconds, between the enqueuing of a webhook and its final delivery attempt
+   */
+  long getMaxLatencyInMs();
+}
@@ -25,7 +25,6 @@ import org.sonar.api.utils.System2;
 import org.sonar.core.util.UuidFactory;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
-import org.sonar.db.webhook.WebhookDeliveryDao;
 import org.sonar.db.webhook.WebhookDeliveryDto;
 
 /**
@@ -47,13 +46,19 @@ public class WebhookDeliveryStorage {
   }
 
   public void persist(WebhookDelivery delivery) {
-    WebhookDeliveryDao dao = dbClient.webhookDeliveryDao();
     try (DbSession dbSession = dbClient.openSession(false)) {
-      dao.insert(dbSession, toDto(delivery));
+      persist(dbSession, delivery);
       dbSession.commit();
     }
   }
 
+  /**
+   * Same as {@link #persist(WebhookDelivery)} but does not commit the session.
+   */
+  public void persist(DbSession dbSession, WebhookDelivery delivery) {
+    dbClient.webhookDeliveryDao().insert(dbSession, toDto(delivery));
+  }
+
   public void purge(String componentUuid) {
     long beforeDate = system.now() - ALIVE_DELAY_MS;
     try (DbSession dbSession = dbClient.openSession(false)) {
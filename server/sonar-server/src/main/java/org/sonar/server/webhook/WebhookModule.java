@@ -27,6 +27,7 @@ public class WebhookModule extends Module {
     add(
       WebhookCallerImpl.class,
       WebhookDeliveryStorage.class,
+      WebhookDeliveryQueue.class,
       WebHooksImpl.class,
       WebhookPayloadFactoryImpl.class);
   }
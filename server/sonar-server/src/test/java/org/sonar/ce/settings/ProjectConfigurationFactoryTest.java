@@ -139,6 +139,30 @@ public class ProjectConfigurationFactoryTest {
     assertThat(config.get("sonar.leak.period")).hasValue("1");
   }
 
+  @Test
+  public void configuration_of_persisted_branch_contains_project_and_branch_settings() {
+    settings.setProperty("global", "global_value");
+    ComponentDto project = db.components().insertMainBranch();
+    db.properties().insertProperties(newComponentPropertyDto(project).setKey("key").setValue("value"));
+    ComponentDto branch = db.components().insertProjectBranch(project);
+    db.properties().insertProperties(newComponentPropertyDto(branch).setKey("key").setValue("branch_value"));
+
+    Configuration config = underTest.newProjectConfiguration(db.getSession(), branch);
+
+    assertThat(config.get("global")).hasValue("global_value");
+    assertThat(config.get("key")).hasValue("branch_value");
+  }
+
+  @Test
+  public void configuration_of_persisted_project_contains_project_settings() {
+    ComponentDto project = db.components().insertPrivateProject();
+    db.properties().insertProperties(newComponentPropertyDto(project).setKey("key").setValue("value"));
+
+    Configuration config = underTest.newProjectConfiguration(db.getSession(), project);
+
+    assertThat(config.get("key")).hasValue("value");
+  }
+
   @Test
   public void legacy_branch() {
     ComponentDto project = db.components().insertMainBranch();
@@ -160,6 +160,36 @@ public class ComponentActionTest {
     assertThat(response.getCurrent().getId()).isEqualTo("T3");
   }
 
+  @Test
+  public void purge_tasks_must_not_be_picked_as_current_analysis() {
+    ComponentDto project = db.components().insertPrivateProject();
+    userSession.addProjectPermission(UserRole.USER, project);
+    insertActivity("T1", project, CeActivityDto.Status.SUCCESS);
+    insertActivity("T2", project, CeTaskTypes.PROJECT_PURGE, CeActivityDto.Status.SUCCESS, null);
+
+    Ce.ComponentResponse response = ws.newRequest()
+      .setParam(PARAM_COMPONENT, project.getKey())
+      .executeProtobuf(Ce.ComponentResponse.class);
+
+    assertThat(response.hasCurrent()).isTrue();
+    assertThat(response.getCurrent().getId()).isEqualTo("T1");
+  }
+
+  @Test
+  public void purge_tasks_are_not_returned_in_queue() {
+    ComponentDto project = db.components().insertPrivateProject();
+    userSession.addProjectPermission(UserRole.USER, project);
+    insertQueue("T1", project, CeQueueDto.Status.IN_PROGRESS);
+    insertQueue("T2", project, CeTaskTypes.PROJECT_PURGE, CeQueueDto.Status.PENDING);
+    insertQueue("T3", project, CeQueueDto.Status.PENDING);
+
+    Ce.ComponentResponse response = ws.newRequest()
+      .setParam(PARAM_COMPONENT, project.getKey())
+      .executeProtobuf(Ce.ComponentResponse.class);
+
+    assertThat(response.getQueueList()).extracting(Ce.Task::getId).containsOnly("T1", "T3");
+  }
+
   @Test
   public void long_living_branch_in_activity() {
     ComponentDto project = db.components().insertMainBranch();
@@ -279,8 +309,12 @@ public class ComponentActionTest {
   }
 
   private CeQueueDto insertQueue(String taskUuid, ComponentDto component, CeQueueDto.Status status) {
+    return insertQueue(taskUuid, component, CeTaskTypes.REPORT, status);
+  }
+
+  private CeQueueDto insertQueue(String taskUuid, ComponentDto component, String taskType, CeQueueDto.Status status) {
     CeQueueDto queueDto = new CeQueueDto();
-    queueDto.setTaskType(CeTaskTypes.REPORT);
+    queueDto.setTaskType(taskType);
     queueDto.setComponentUuid(component.uuid());
     queueDto.setUuid(taskUuid);
     queueDto.setStatus(status);
@@ -294,8 +328,12 @@ public class ComponentActionTest {
   }
 
   private CeActivityDto insertActivity(String taskUuid, ComponentDto component, CeActivityDto.Status status, @Nullable SnapshotDto analysis) {
+    return insertActivity(taskUuid, component, CeTaskTypes.REPORT, status, analysis);
+  }
+
+  private CeActivityDto insertActivity(String taskUuid, ComponentDto component, String taskType, CeActivityDto.Status status, @Nullable SnapshotDto analysis) {
     CeQueueDto queueDto = new CeQueueDto();
-    queueDto.setTaskType(CeTaskTypes.REPORT);
+    queueDto.setTaskType(taskType);
     queueDto.setComponentUuid(component.uuid());
     queueDto.setUuid(taskUuid);
     CeActivityDto activityDto = new CeActivityDto(queueDto);
@@ -19,8 +19,10 @@
  */
 package org.sonar.server.computation.dbcleaner;
 
+import java.util.function.BooleanSupplier;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.sonar.api.CoreProperties;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.config.PropertyDefinitions;
@@ -37,13 +39,19 @@ import org.sonar.db.purge.PurgeProfiler;
 import org.sonar.db.purge.period.DefaultPeriodCleaner;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ProjectCleanerTest {
 
@@ -68,6 +76,43 @@ public class ProjectCleanerTest {
     verify(profiler, never()).dump(anyLong(), any(Logger.class));
   }
 
+  @Test
+  public void purgeDisabledComponents_only_purges_disabled_components() {
+    DbSession dbSession = mock(DbSession.class);
+
+    underTest.purgeDisabledComponents(dbSession, new IdUuidPair(1L, "1"), settings.asConfig(), singletonList("UUID"));
+
+    verify(dao).purgeDisabledComponents(any(DbSession.class), any(PurgeConfiguration.class), same(purgeListener));
+    verify(dao, never()).purge(any(DbSession.class), any(PurgeConfiguration.class), any(PurgeListener.class), any(PurgeProfiler.class));
+    verify(periodCleaner, never()).clean(any(DbSession.class), anyString(), any(Configuration.class));
+    verify(dbSession).commit();
+  }
+
+  @Test
+  public void purgeInPhases_executes_period_cleaning_then_purge() {
+    DbSession dbSession = mock(DbSession.class);
+    BooleanSupplier continuePurge = () -> true;
+    when(dao.purge(same(dbSession), any(PurgeConfiguration.class), same(purgeListener), same(profiler), same(continuePurge))).thenReturn(true);
+
+    assertThat(underTest.purgeInPhases(dbSession, new IdUuidPair(1L, "1"), settings.asConfig(), continuePurge)).isTrue();
+
+    InOrder inOrder = inOrder(periodCleaner, dbSession, dao);
+    inOrder.verify(periodCleaner).clean(same(dbSession), eq("1"), any(Configuration.class));
+    inOrder.verify(dbSession).commit();
+    inOrder.verify(dao).purge(same(dbSession), any(PurgeConfiguration.class), same(purgeListener), same(profiler), same(continuePurge));
+  }
+
+  @Test
+  public void purgeInPhases_stops_after_period_cleaning_if_requested() {
+    DbSession dbSession = mock(DbSession.class);
+
+    assertThat(underTest.purgeInPhases(dbSession, new IdUuidPair(1L, "1"), settings.asConfig(), () -> false)).isFalse();
+
+    verify(periodCleaner).clean(same(dbSession), eq("1"), any(Configuration.class));
+    verify(dbSession).commit();
+    verify(dao, never()).purge(any(DbSession.class), any(PurgeConfiguration.class), any(PurgeListener.class), any(PurgeProfiler.class), any(BooleanSupplier.class));
+  }
+
   @Test
   public void profiling_when_property_is_true() {
     settings.setProperty(CoreProperties.PROFILING_LOG_PROPERTY, true);
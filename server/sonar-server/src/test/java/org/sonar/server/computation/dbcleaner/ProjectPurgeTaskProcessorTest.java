@@ -0,0 +1,156 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.dbcleaner;
+
+import java.util.function.BooleanSupplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.ce.queue.CeQueue;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.ce.queue.CeTaskSubmit;
+import org.sonar.ce.settings.ProjectConfigurationFactory;
+import org.sonar.core.util.Uuids;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.purge.IdUuidPair;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class ProjectPurgeTaskProcessorTest {
+
+  @Rule
+  public DbTester db = DbTester.create();
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private ProjectCleaner projectCleaner = mock(ProjectCleaner.class);
+  private ProjectConfigurationFactory configurationFactory = mock(ProjectConfigurationFactory.class);
+  private CeQueue ceQueue = mock(CeQueue.class);
+  private ProjectPurgeTaskProcessor underTest = new ProjectPurgeTaskProcessor(db.getDbClient(), projectCleaner, configurationFactory, ceQueue, 0L);
+
+  @Test
+  public void handles_project_purge_tasks() {
+    assertThat(underTest.getHandledCeTaskTypes()).containsOnly(CeTaskTypes.PROJECT_PURGE);
+  }
+
+  @Test
+  public void purge_history_of_component() {
+    ComponentDto project = db.components().insertPrivateProject();
+    Configuration config = new MapSettings().asConfig();
+    when(configurationFactory.newProjectConfiguration(any(DbSession.class), any(ComponentDto.class))).thenReturn(config);
+
+    when(projectCleaner.purgeInPhases(any(DbSession.class), any(IdUuidPair.class), same(config), any(BooleanSupplier.class))).thenReturn(true);
+
+    assertThat(underTest.process(newTask(project.uuid()))).isNull();
+
+    ArgumentCaptor<IdUuidPair> rootId = ArgumentCaptor.forClass(IdUuidPair.class);
+    verify(projectCleaner).purgeInPhases(any(DbSession.class), rootId.capture(), same(config), any(BooleanSupplier.class));
+    assertThat(rootId.getValue().getId()).isEqualTo(project.getId());
+    assertThat(rootId.getValue().getUuid()).isEqualTo(project.uuid());
+    verifyZeroInteractions(ceQueue);
+  }
+
+  @Test
+  public void purge_continues_while_no_other_task_of_component_is_pending() {
+    ComponentDto project = db.components().insertPrivateProject();
+    insertQueue(project, CeTaskTypes.PROJECT_PURGE, CeQueueDto.Status.IN_PROGRESS);
+    insertQueue(db.components().insertPrivateProject(), CeTaskTypes.REPORT, CeQueueDto.Status.PENDING);
+
+    assertThat(captureContinuePurge(project).getAsBoolean()).isTrue();
+  }
+
+  @Test
+  public void purge_stops_when_another_task_of_component_is_pending() {
+    ComponentDto project = db.components().insertPrivateProject();
+    insertQueue(project, CeTaskTypes.PROJECT_PURGE, CeQueueDto.Status.IN_PROGRESS);
+    insertQueue(project, CeTaskTypes.REPORT, CeQueueDto.Status.PENDING);
+
+    assertThat(captureContinuePurge(project).getAsBoolean()).isFalse();
+  }
+
+  @Test
+  public void submit_new_purge_task_if_purge_is_interrupted() {
+    ComponentDto project = db.components().insertPrivateProject();
+    when(configurationFactory.newProjectConfiguration(any(DbSession.class), any(ComponentDto.class))).thenReturn(new MapSettings().asConfig());
+    when(projectCleaner.purgeInPhases(any(DbSession.class), any(IdUuidPair.class), any(Configuration.class), any(BooleanSupplier.class))).thenReturn(false);
+    when(ceQueue.prepareSubmit()).thenReturn(new CeTaskSubmit.Builder("TASK_2"));
+
+    underTest.process(newTask(project.uuid()));
+
+    ArgumentCaptor<CeTaskSubmit> submit = ArgumentCaptor.forClass(CeTaskSubmit.class);
+    verify(ceQueue).submit(submit.capture());
+    assertThat(submit.getValue().getType()).isEqualTo(CeTaskTypes.PROJECT_PURGE);
+    assertThat(submit.getValue().getComponentUuid()).isEqualTo(project.uuid());
+  }
+
+  @Test
+  public void ignore_task_of_deleted_component() {
+    assertThat(underTest.process(newTask("DELETED"))).isNull();
+
+    verifyZeroInteractions(projectCleaner);
+  }
+
+  @Test
+  public void fail_if_task_has_no_component() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Task TASK_1 has no component");
+
+    underTest.process(newTask(null));
+  }
+
+  private BooleanSupplier captureContinuePurge(ComponentDto project) {
+    when(configurationFactory.newProjectConfiguration(any(DbSession.class), any(ComponentDto.class))).thenReturn(new MapSettings().asConfig());
+    underTest.process(newTask(project.uuid()));
+    ArgumentCaptor<BooleanSupplier> continuePurge = ArgumentCaptor.forClass(BooleanSupplier.class);
+    verify(projectCleaner).purgeInPhases(any(DbSession.class), any(IdUuidPair.class), any(Configuration.class), continuePurge.capture());
+    return continuePurge.getValue();
+  }
+
+  private void insertQueue(ComponentDto component, String taskType, CeQueueDto.Status status) {
+    db.getDbClient().ceQueueDao().insert(db.getSession(), new CeQueueDto()
+      .setUuid(Uuids.createFast())
+      .setTaskType(taskType)
+      .setComponentUuid(component.uuid())
+      .setStatus(status));
+    db.commit();
+  }
+
+  private static CeTask newTask(String componentUuid) {
+    return new CeTask.Builder()
+      .setOrganizationUuid("ORG_1")
+      .setUuid("TASK_1")
+      .setType(CeTaskTypes.PROJECT_PURGE)
+      .setComponentUuid(componentUuid)
+      .build();
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.computation.queue;
 
+import com.google.common.collect.ImmutableMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -129,7 +130,31 @@ public class ReportSubmitterTest {
     List<CeTaskCharacteristicDto> insertedCharacteristics = db.getDbClient().ceTaskCharacteristicsDao().selectByTaskUuid(db.getSession(), taskUuid);
     assertThat(insertedCharacteristics)
       .extracting(CeTaskCharacteristicDto::getKey, CeTaskCharacteristicDto::getValue)
-      .containsOnly(tuple("incremental", "true"), tuple("pr", "mypr"));
+      .containsOnly(tuple("incremental", "true"), tuple("pr", "mypr"), tuple(CeTaskCharacteristicDto.REPORT_SIZE_KEY, "8"));
+  }
+
+  @Test
+  public void submit_stores_size_of_report_and_ignores_size_provided_by_scanner() {
+    userSession
+      .addPermission(OrganizationPermission.SCAN, db.getDefaultOrganization().getUuid())
+      .addPermission(PROVISION_PROJECTS, db.getDefaultOrganization());
+
+    mockSuccessfulPrepareSubmitCall();
+    ComponentDto project = newPrivateProjectDto(db.getDefaultOrganization(), PROJECT_UUID).setDbKey(PROJECT_KEY);
+    when(componentUpdater.create(any(DbSession.class), any(NewComponent.class), eq(null))).thenReturn(project);
+    when(permissionTemplateService.wouldUserHaveScanPermissionWithDefaultTemplate(any(DbSession.class), eq(defaultOrganizationUuid), anyInt(), eq(PROJECT_KEY),
+      eq(Qualifiers.PROJECT)))
+        .thenReturn(true);
+
+    underTest.submit(defaultOrganizationKey, PROJECT_KEY, null, PROJECT_NAME, ImmutableMap.of(CeTaskCharacteristicDto.REPORT_SIZE_KEY, "1"),
+      IOUtils.toInputStream("{binary report}"));
+
+    ArgumentCaptor<CeTaskSubmit> submittedTask = ArgumentCaptor.forClass(CeTaskSubmit.class);
+    verify(queue).submit(submittedTask.capture());
+    List<CeTaskCharacteristicDto> insertedCharacteristics = db.getDbClient().ceTaskCharacteristicsDao().selectByTaskUuid(db.getSession(), submittedTask.getValue().getUuid());
+    assertThat(insertedCharacteristics)
+      .extracting(CeTaskCharacteristicDto::getKey, CeTaskCharacteristicDto::getValue)
+      .containsOnly(tuple(CeTaskCharacteristicDto.REPORT_SIZE_KEY, "15"));
   }
 
   @Test
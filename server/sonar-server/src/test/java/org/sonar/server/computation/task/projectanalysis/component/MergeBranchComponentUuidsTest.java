@@ -24,6 +24,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.db.DbTester;
+import org.sonar.db.component.BranchType;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.ComponentTesting;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
@@ -39,6 +40,8 @@ public class MergeBranchComponentUuidsTest {
 
   @Rule
   public DbTester db = DbTester.create();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
 
   private MergeBranchComponentUuids underTest;
   private Branch branch = mock(Branch.class);
@@ -46,18 +49,24 @@ public class MergeBranchComponentUuidsTest {
   private ComponentDto mergeBranch;
   private ComponentDto mergeBranchFile;
   private ComponentDto branchFile;
+  private ComponentDto mergeBranchOtherFile;
 
   @Before
   public void setUp() {
-    underTest = new MergeBranchComponentUuids(analysisMetadataHolder, db.getDbClient());
+    underTest = new MergeBranchComponentUuids(analysisMetadataHolder, treeRootHolder, db.getDbClient());
     analysisMetadataHolder.setBranch(branch);
+    when(branch.getType()).thenReturn(BranchType.SHORT);
 
     ComponentDto project = db.components().insertMainBranch();
     mergeBranch = db.components().insertProjectBranch(project, b -> b.setKey("mergeBranch"));
     ComponentDto branch = db.components().insertProjectBranch(project, b -> b.setKey("branch1"));
     mergeBranchFile = ComponentTesting.newFileDto(mergeBranch, null, "file").setUuid("mergeFile");
     branchFile = ComponentTesting.newFileDto(branch, null, "file").setUuid("file1");
-    db.components().insertComponents(mergeBranchFile, branchFile);
+    mergeBranchOtherFile = ComponentTesting.newFileDto(mergeBranch, null, "otherFile").setUuid("mergeOtherFile");
+    db.components().insertComponents(mergeBranchFile, branchFile, mergeBranchOtherFile);
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setKey(branch.getDbKey()).setUuid(branch.uuid())
+      .addChildren(ReportComponent.builder(Component.Type.FILE, 2).setKey(branchFile.getDbKey()).setUuid(branchFile.uuid()).build())
+      .build());
   }
 
   @Test
@@ -72,6 +81,27 @@ public class MergeBranchComponentUuidsTest {
     assertThat(underTest.getUuid(branchFile.getKey())).isEqualTo(mergeBranchFile.uuid());
   }
 
+  @Test
+  public void should_support_merge_branch_component() {
+    when(branch.getMergeBranchUuid()).thenReturn(Optional.of(mergeBranch.uuid()));
+    assertThat(underTest.getUuid(mergeBranch.getDbKey())).isEqualTo(mergeBranch.uuid());
+    assertThat(underTest.getMergeBranchName()).isEqualTo("mergeBranch");
+  }
+
+  @Test
+  public void components_which_are_not_in_the_analysed_tree_are_not_loaded() {
+    when(branch.getMergeBranchUuid()).thenReturn(Optional.of(mergeBranch.uuid()));
+    assertThat(underTest.getUuid(mergeBranchOtherFile.getDbKey())).isNull();
+  }
+
+  @Test
+  public void all_components_of_merge_branch_are_loaded_on_long_living_branch() {
+    when(branch.getType()).thenReturn(BranchType.LONG);
+    when(branch.getMergeBranchUuid()).thenReturn(Optional.of(mergeBranch.uuid()));
+    assertThat(underTest.getUuid(branchFile.getDbKey())).isEqualTo(mergeBranchFile.uuid());
+    assertThat(underTest.getUuid(mergeBranchOtherFile.getDbKey())).isEqualTo(mergeBranchOtherFile.uuid());
+  }
+
   @Test
   public void return_null_if_file_doesnt_exist() {
     when(branch.getMergeBranchUuid()).thenReturn(Optional.of(mergeBranch.uuid()));
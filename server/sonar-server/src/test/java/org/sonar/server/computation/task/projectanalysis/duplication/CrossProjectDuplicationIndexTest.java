@@ -0,0 +1,325 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.duplication;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.component.SnapshotDto;
+import org.sonar.db.component.SnapshotTesting;
+import org.sonar.db.duplication.DuplicationDao;
+import org.sonar.db.duplication.DuplicationUnitDto;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class CrossProjectDuplicationIndexTest {
+
+  private static final String HASH = "a8998353e96320ec";
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  private DbClient dbClient = db.getDbClient();
+  private DbSession dbSession = db.getSession();
+  private TestSystem2 system2 = new TestSystem2().setNow(1_000L);
+  private MapSettings settings = new MapSettings();
+
+  @Test
+  public void select_candidates_of_other_projects_with_same_language() {
+    ComponentDto project1 = insertProject();
+    insertBlock(project1, "java", HASH, 1);
+    ComponentDto project2 = insertProject();
+    insertBlock(project2, "java", HASH, 2);
+    insertBlock(project2, "java", "other hash", 3);
+    ComponentDto project3 = insertProject();
+    insertBlock(project3, "js", HASH, 4);
+    CrossProjectDuplicationIndex underTest = newIndex();
+
+    assertThat(underTest.isEnabled()).isTrue();
+    assertThat(selectCandidates(underTest, project1.uuid(), "java", HASH))
+      .extracting(IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(tuple(project2.uuid(), 2));
+    assertThat(selectCandidates(underTest, "other", "java", HASH, "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getStartLine)
+      .containsOnly(1, 2, 3);
+    assertThat(selectCandidates(underTest, "other", null, HASH)).isEmpty();
+  }
+
+  @Test
+  public void replace_blocks_of_project() {
+    ComponentDto project1 = insertProject();
+    insertBlock(project1, "java", HASH, 1);
+    ComponentDto project2 = insertProject();
+    insertBlock(project2, "java", HASH, 2);
+    CrossProjectDuplicationIndex underTest = newIndex();
+    underTest.isEnabled();
+
+    underTest.replace(project1.uuid(), "new analysis", singletonList(newIndexedBlock(project1.uuid(), "other hash", 10)));
+
+    assertThat(selectCandidates(underTest, "other", "java", HASH))
+      .extracting(IndexedDuplicationUnitDto::getRootComponentUuid)
+      .containsExactly(project2.uuid());
+    assertThat(selectCandidates(underTest, "other", "java", "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(10);
+  }
+
+  @Test
+  public void replace_does_nothing_if_index_is_not_loaded() {
+    CrossProjectDuplicationIndex underTest = newIndex();
+
+    underTest.replace("project", "analysis", singletonList(newIndexedBlock("project", HASH, 10)));
+
+    assertThat(selectCandidates(underTest, "other", "java", HASH)).isEmpty();
+  }
+
+  @Test
+  public void refresh_index_with_projects_analyzed_by_other_nodes_when_outdated() {
+    ComponentDto project1 = insertProject();
+    insertBlock(project1, "java", HASH, 1);
+    CrossProjectDuplicationIndex underTest = newIndex();
+    underTest.isEnabled();
+    ComponentDto project2 = insertProject();
+    insertBlock(project2, "java", HASH, 2);
+
+    underTest.isEnabled();
+    assertThat(selectCandidates(underTest, "other", "java", HASH)).hasSize(1);
+
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+    assertThat(underTest.isEnabled()).isTrue();
+    assertThat(selectCandidates(underTest, "other", "java", HASH))
+      .extracting(IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getStartLine)
+      .containsOnly(tuple(project1.uuid(), 1), tuple(project2.uuid(), 2));
+  }
+
+  @Test
+  public void refresh_index_with_projects_reanalyzed_or_deleted_by_other_nodes() {
+    ComponentDto project1 = insertProject();
+    insertBlock(project1, "java", HASH, 1);
+    ComponentDto project2 = insertProject();
+    insertBlock(project2, "java", HASH, 2);
+    CrossProjectDuplicationIndex underTest = newIndex();
+    underTest.isEnabled();
+    insertAnalysis(project1);
+    insertBlock(project1, "java", "other hash", 10);
+    db.executeUpdateSql("update snapshots set islast=? where component_uuid=?", false, project2.uuid());
+
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+    assertThat(underTest.isEnabled()).isTrue();
+
+    assertThat(selectCandidates(underTest, "other", "java", HASH)).isEmpty();
+    assertThat(selectCandidates(underTest, "other", "java", "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(tuple(project1.uuid(), 10));
+  }
+
+  @Test
+  public void refresh_does_not_reload_projects_replaced_with_their_last_analysis() {
+    ComponentDto project = insertProject();
+    insertBlock(project, "java", HASH, 1);
+    DbClient spiedDbClient = spy(dbClient);
+    DuplicationDao duplicationDao = spy(dbClient.duplicationDao());
+    when(spiedDbClient.duplicationDao()).thenReturn(duplicationDao);
+    CrossProjectDuplicationIndex underTest = new CrossProjectDuplicationIndex(spiedDbClient, system2, settings.asConfig());
+    underTest.isEnabled();
+    SnapshotDto analysis = insertAnalysis(project);
+    underTest.replace(project.uuid(), analysis.getUuid(), singletonList(newIndexedBlock(project.uuid(), "other hash", 10)));
+
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+    assertThat(underTest.isEnabled()).isTrue();
+
+    verify(duplicationDao, never()).scrollForIndexing(any(), any(), any());
+    assertThat(selectCandidates(underTest, "other", "java", "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(10);
+  }
+
+  @Test
+  public void refresh_does_not_overwrite_projects_replaced_while_it_is_loading_blocks() {
+    ComponentDto project1 = insertProject();
+    CrossProjectDuplicationIndex[] index = new CrossProjectDuplicationIndex[1];
+    DbClient spiedDbClient = spy(dbClient);
+    DuplicationDao duplicationDao = spy(dbClient.duplicationDao());
+    when(spiedDbClient.duplicationDao()).thenReturn(duplicationDao);
+    index[0] = new CrossProjectDuplicationIndex(spiedDbClient, system2, settings.asConfig());
+    index[0].isEnabled();
+    SnapshotDto analysis = insertAnalysis(project1);
+    insertBlock(project1, "java", HASH, 1);
+    doAnswer(invocation -> {
+      index[0].replace(project1.uuid(), analysis.getUuid(), singletonList(newIndexedBlock(project1.uuid(), "other hash", 10)));
+      return invocation.callRealMethod();
+    }).when(duplicationDao).scrollForIndexing(any(), any(), any());
+
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+    assertThat(index[0].isEnabled()).isTrue();
+
+    assertThat(selectCandidates(index[0], "other", "java", HASH)).isEmpty();
+    assertThat(selectCandidates(index[0], "other", "java", "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(10);
+  }
+
+  @Test
+  public void apply_blocks_replaced_while_index_is_loaded() {
+    ComponentDto project1 = insertProject();
+    insertBlock(project1, "java", HASH, 1);
+    CrossProjectDuplicationIndex[] index = new CrossProjectDuplicationIndex[1];
+    DbClient spiedDbClient = spy(dbClient);
+    DuplicationDao duplicationDao = spy(dbClient.duplicationDao());
+    when(spiedDbClient.duplicationDao()).thenReturn(duplicationDao);
+    doAnswer(invocation -> {
+      index[0].replace(project1.uuid(), "new analysis", singletonList(newIndexedBlock(project1.uuid(), "other hash", 10)));
+      return invocation.callRealMethod();
+    }).when(duplicationDao).scrollAllForIndexing(any(), any());
+    index[0] = new CrossProjectDuplicationIndex(spiedDbClient, system2, settings.asConfig());
+
+    assertThat(index[0].isEnabled()).isTrue();
+
+    assertThat(selectCandidates(index[0], "other", "java", HASH)).isEmpty();
+    assertThat(selectCandidates(index[0], "other", "java", "other hash"))
+      .extracting(IndexedDuplicationUnitDto::getStartLine)
+      .containsExactly(10);
+  }
+
+  @Test
+  public void index_is_disabled_when_database_contains_too_many_blocks() {
+    settings.setProperty(CrossProjectDuplicationIndex.MAX_BLOCKS_PROPERTY, 1);
+    ComponentDto project = insertProject();
+    insertBlock(project, "java", HASH, 1);
+    insertBlock(project, "java", HASH, 2);
+    CrossProjectDuplicationIndex underTest = newIndex();
+
+    assertThat(underTest.isEnabled()).isFalse();
+    assertThat(selectCandidates(underTest, "other", "java", HASH)).isEmpty();
+  }
+
+  @Test
+  public void index_is_not_loaded_again_once_disabled_because_of_too_many_blocks() {
+    settings.setProperty(CrossProjectDuplicationIndex.MAX_BLOCKS_PROPERTY, 1);
+    ComponentDto project = insertProject();
+    insertBlock(project, "java", HASH, 1);
+    insertBlock(project, "java", HASH, 2);
+    DbClient spiedDbClient = spy(dbClient);
+    DuplicationDao duplicationDao = spy(dbClient.duplicationDao());
+    when(spiedDbClient.duplicationDao()).thenReturn(duplicationDao);
+    CrossProjectDuplicationIndex underTest = new CrossProjectDuplicationIndex(spiedDbClient, system2, settings.asConfig());
+    assertThat(underTest.isEnabled()).isFalse();
+    db.executeUpdateSql("delete from duplications_index");
+
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+
+    assertThat(underTest.isEnabled()).isFalse();
+    verify(duplicationDao, times(1)).scrollAllForIndexing(any(), any());
+  }
+
+  @Test
+  public void index_is_disabled_when_replaced_blocks_are_too_many() {
+    settings.setProperty(CrossProjectDuplicationIndex.MAX_BLOCKS_PROPERTY, 1);
+    CrossProjectDuplicationIndex underTest = newIndex();
+    assertThat(underTest.isEnabled()).isTrue();
+
+    underTest.replace("project", "analysis", asList(newIndexedBlock("project", HASH, 1), newIndexedBlock("project", HASH, 2)));
+
+    assertThat(selectCandidates(underTest, "other", "java", HASH)).isEmpty();
+    system2.setNow(1_000L + CrossProjectDuplicationIndex.REFRESH_PERIOD_MS);
+    assertThat(underTest.isEnabled()).isFalse();
+  }
+
+  @Test
+  public void index_is_disabled_by_configuration() {
+    settings.setProperty(CrossProjectDuplicationIndex.MAX_BLOCKS_PROPERTY, 0);
+    CrossProjectDuplicationIndex underTest = newIndex();
+
+    assertThat(underTest.isEnabled()).isFalse();
+  }
+
+  private CrossProjectDuplicationIndex newIndex() {
+    return new CrossProjectDuplicationIndex(dbClient, system2, settings.asConfig());
+  }
+
+  private static List<IndexedDuplicationUnitDto> selectCandidates(CrossProjectDuplicationIndex underTest, String excludedRootComponentUuid,
+    String language, String... hashes) {
+    List<IndexedDuplicationUnitDto> result = new ArrayList<>();
+    underTest.selectCandidates(excludedRootComponentUuid, language, asList(hashes), result::add);
+    return result;
+  }
+
+  private static IndexedDuplicationUnitDto newIndexedBlock(String rootComponentUuid, String hash, int startLine) {
+    return new IndexedDuplicationUnitDto()
+      .setAnalysisUuid("analysis")
+      .setRootComponentUuid(rootComponentUuid)
+      .setComponentUuid("file")
+      .setComponentKey("file key")
+      .setLanguage("java")
+      .setHash(hash)
+      .setIndexInFile(0)
+      .setStartLine(startLine)
+      .setEndLine(startLine + 10);
+  }
+
+  private ComponentDto insertProject() {
+    ComponentDto project = ComponentTesting.newPrivateProjectDto(db.organizations().insert());
+    dbClient.componentDao().insert(dbSession, project);
+    dbClient.snapshotDao().insert(dbSession, SnapshotTesting.newAnalysis(project));
+    dbSession.commit();
+    return project;
+  }
+
+  private SnapshotDto insertAnalysis(ComponentDto project) {
+    SnapshotDto analysis = dbClient.snapshotDao().insert(dbSession, SnapshotTesting.newAnalysis(project).setLast(false));
+    dbClient.snapshotDao().switchIsLastFlagAndSetProcessedStatus(dbSession, project.uuid(), analysis.getUuid());
+    dbSession.commit();
+    return analysis;
+  }
+
+  private void insertBlock(ComponentDto project, String language, String hash, int startLine) {
+    ComponentDto file = ComponentTesting.newFileDto(project, null).setLanguage(language);
+    dbClient.componentDao().insert(dbSession, file);
+    SnapshotDto analysis = dbClient.snapshotDao().selectLastAnalysisByRootComponentUuid(dbSession, project.uuid()).get();
+    dbClient.duplicationDao().insert(dbSession, new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(startLine)
+      .setEndLine(startLine + 10)
+      .setIndexInFile(0)
+      .setAnalysisUuid(analysis.getUuid())
+      .setComponentUuid(file.uuid()));
+    dbSession.commit();
+  }
+}
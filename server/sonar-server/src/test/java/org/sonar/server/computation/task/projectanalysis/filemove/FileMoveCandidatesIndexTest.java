@@ -0,0 +1,89 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileMoveCandidatesIndexTest {
+
+  private FileMoveCandidatesIndex underTest = new FileMoveCandidatesIndex();
+
+  @Test
+  public void getCandidates_returns_file_with_same_content() {
+    underTest.add("A", lines(0, 100));
+    underTest.add("B", lines(1_000, 1_100));
+
+    assertThat(underTest.getCandidates(lines(0, 100), 10)).containsExactly("A");
+  }
+
+  @Test
+  public void getCandidates_returns_file_with_most_lines_in_common() {
+    underTest.add("A", lines(0, 100));
+    underTest.add("B", lines(5, 105));
+    underTest.add("C", lines(1_000, 1_100));
+
+    assertThat(underTest.getCandidates(lines(0, 95), 10)).containsOnly("A", "B");
+    assertThat(underTest.getCandidates(lines(0, 95), 1)).containsExactly("A");
+  }
+
+  @Test
+  public void getCandidates_returns_nothing_if_no_file_is_similar() {
+    underTest.add("A", lines(0, 100));
+
+    assertThat(underTest.getCandidates(lines(1_000, 1_100), 10)).isEmpty();
+  }
+
+  @Test
+  public void empty_files_are_never_candidates() {
+    underTest.add("A", emptyList());
+    underTest.add("B", lines(0, 10));
+
+    assertThat(underTest.getCandidates(emptyList(), 10)).isEmpty();
+    assertThat(underTest.getCandidates(lines(0, 10), 10)).containsExactly("B");
+  }
+
+  @Test
+  public void getCandidates_returns_nothing_if_max_is_zero() {
+    underTest.add("A", lines(0, 100));
+
+    assertThat(underTest.getCandidates(lines(0, 100), 0)).isEmpty();
+  }
+
+  @Test
+  public void estimatedSimilarity_is_max_for_same_lines() {
+    int[] signature = FileMoveCandidatesIndex.signature(lines(0, 50));
+
+    assertThat(FileMoveCandidatesIndex.estimatedSimilarity(signature, FileMoveCandidatesIndex.signature(lines(0, 50))))
+      .isEqualTo(FileMoveCandidatesIndex.BANDS * FileMoveCandidatesIndex.ROWS_PER_BAND);
+  }
+
+  private static List<String> lines(int from, int to) {
+    List<String> res = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      res.add("hash" + i);
+    }
+    return res;
+  }
+}
@@ -34,6 +34,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.core.hash.SourceLinesHashesComputer;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -46,7 +47,11 @@ import org.sonar.server.computation.task.projectanalysis.analysis.Analysis;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TestSettingsRepository;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCache;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryRule;
 
 import static com.google.common.base.Joiner.on;
@@ -228,10 +233,11 @@ public class FileMoveDetectionStepTest {
   private ComponentDao componentDao = mock(ComponentDao.class);
   private FileSourceDao fileSourceDao = mock(FileSourceDao.class);
   private FileSimilarity fileSimilarity = new FileSimilarityImpl(new SourceSimilarityImpl());
+  private MapSettings settings = new MapSettings();
   private long dbIdGenerator = 0;
 
   private FileMoveDetectionStep underTest = new FileMoveDetectionStep(analysisMetadataHolder, treeRootHolder, dbClient,
-    sourceLinesRepository, fileSimilarity, movedFilesRepository);
+    new SourceLinesHashRepositoryImpl(sourceLinesRepository, new SourceLinesCache(new SourceLinesCacheStatistics())), fileSimilarity, movedFilesRepository, new TestSettingsRepository(settings.asConfig()));
 
   @Before
   public void setUp() throws Exception {
@@ -327,6 +333,20 @@ public class FileMoveDetectionStepTest {
     assertThat(originalFile.getUuid()).isEqualTo(dtos[0].uuid());
   }
 
+  @Test
+  public void execute_compares_only_the_configured_number_of_candidates() {
+    settings.setProperty("sonar.filemove.maxCandidatesPerFile", 0);
+    analysisMetadataHolder.setBaseAnalysis(ANALYSIS);
+    mockComponents(FILE_1.getKey());
+    mockContentOfFileInDb(FILE_1.getKey(), CONTENT1);
+    setFilesInReport(FILE_2);
+    setFileContentInReport(FILE_2_REF, CONTENT1);
+
+    underTest.execute();
+
+    assertThat(movedFilesRepository.getComponentsWithOriginal()).isEmpty();
+  }
+
   @Test
   public void execute_detects_no_move_if_content_of_file_is_not_similar_enough() {
     analysisMetadataHolder.setBaseAnalysis(ANALYSIS);
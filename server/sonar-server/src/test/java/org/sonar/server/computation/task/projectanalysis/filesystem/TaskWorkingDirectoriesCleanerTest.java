@@ -0,0 +1,85 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filesystem;
+
+import java.io.File;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.server.platform.ServerFileSystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskWorkingDirectoriesCleanerTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  private ServerFileSystem fs = mock(ServerFileSystem.class);
+  private TaskWorkingDirectoriesCleaner underTest = new TaskWorkingDirectoriesCleaner(fs, db.getDbClient());
+
+  @Test
+  public void delete_directories_of_tasks_which_are_not_in_queue() throws Exception {
+    File dataDir = temp.newFolder();
+    when(fs.getDataDir()).thenReturn(dataDir);
+    insertTask("PENDING_TASK", CeQueueDto.Status.PENDING);
+    insertTask("IN_PROGRESS_TASK", CeQueueDto.Status.IN_PROGRESS);
+    File pendingTaskDir = createTaskDir(dataDir, "PENDING_TASK");
+    File inProgressTaskDir = createTaskDir(dataDir, "IN_PROGRESS_TASK");
+    File finishedTaskDir = createTaskDir(dataDir, "FINISHED_TASK");
+
+    underTest.start();
+
+    assertThat(pendingTaskDir).isDirectory();
+    assertThat(new File(pendingTaskDir, "report")).isDirectory();
+    assertThat(inProgressTaskDir).isDirectory();
+    assertThat(finishedTaskDir).doesNotExist();
+  }
+
+  @Test
+  public void do_nothing_if_no_working_directories() throws Exception {
+    when(fs.getDataDir()).thenReturn(temp.newFolder());
+
+    underTest.start();
+    underTest.stop();
+  }
+
+  private void insertTask(String uuid, CeQueueDto.Status status) {
+    db.getDbClient().ceQueueDao().insert(db.getSession(), new CeQueueDto()
+      .setUuid(uuid)
+      .setTaskType(CeTaskTypes.REPORT)
+      .setStatus(status));
+    db.commit();
+  }
+
+  private static File createTaskDir(File dataDir, String taskUuid) {
+    File dir = new File(dataDir, "ce/tasks/" + taskUuid + "/report");
+    assertThat(dir.mkdirs()).isTrue();
+    return dir.getParentFile();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filesystem;
+
+import java.io.File;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.server.platform.ServerFileSystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TaskWorkingDirectoryTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private ServerFileSystem fs = mock(ServerFileSystem.class);
+  private CeTask task = new CeTask.Builder().setOrganizationUuid("org1").setType(CeTaskTypes.REPORT).setUuid("TASK_1").build();
+  private File dataDir;
+  private TaskWorkingDirectory underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    dataDir = temp.newFolder();
+    when(fs.getDataDir()).thenReturn(dataDir);
+    underTest = new TaskWorkingDirectory(fs, task);
+  }
+
+  @Test
+  public void sub_directories_are_located_in_data_directory() {
+    File dir = underTest.getDir("foo");
+
+    assertThat(dir).isDirectory();
+    assertThat(dir).isEqualTo(new File(dataDir, "ce/tasks/TASK_1/foo"));
+  }
+
+  @Test
+  public void checkpoints_survive_a_new_instance_for_the_same_task() {
+    assertThat(underTest.hasCheckpoint("foo")).isFalse();
+
+    underTest.checkpoint("foo");
+
+    assertThat(underTest.hasCheckpoint("foo")).isTrue();
+    assertThat(new TaskWorkingDirectory(fs, task).hasCheckpoint("foo")).isTrue();
+    assertThat(new TaskWorkingDirectory(fs, task).hasCheckpoint("bar")).isFalse();
+  }
+
+  @Test
+  public void resetDir_deletes_content_and_checkpoint() throws Exception {
+    FileUtils.write(new File(underTest.getDir("foo"), "file.txt"), "content");
+    underTest.checkpoint("foo");
+
+    File dir = underTest.resetDir("foo");
+
+    assertThat(dir).isDirectory();
+    assertThat(dir.list()).isEmpty();
+    assertThat(underTest.hasCheckpoint("foo")).isFalse();
+  }
+
+  @Test
+  public void delete_removes_directory_and_checkpoint() throws Exception {
+    FileUtils.write(new File(underTest.getDir("foo"), "file.txt"), "content");
+    underTest.checkpoint("foo");
+
+    underTest.delete("foo");
+
+    assertThat(new File(dataDir, "ce/tasks/TASK_1/foo")).doesNotExist();
+    assertThat(underTest.hasCheckpoint("foo")).isFalse();
+  }
+
+  @Test
+  public void stop_deletes_directory() {
+    underTest.getDir("foo");
+    underTest.checkpoint("foo");
+
+    underTest.stop();
+
+    assertThat(new File(dataDir, "ce/tasks/TASK_1")).doesNotExist();
+  }
+}
@@ -34,11 +34,13 @@ import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.guava.api.Assertions.assertThat;
 import static org.sonar.api.measures.CoreMetrics.LINES_KEY;
+import static org.sonar.api.measures.CoreMetrics.TECHNICAL_DEBT_KEY;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.DIRECTORY;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.MODULE;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.PROJECT;
 import static org.sonar.server.computation.task.projectanalysis.component.ReportComponent.builder;
 import static org.sonar.server.computation.task.projectanalysis.formula.SumFormula.createIntSumFormula;
+import static org.sonar.server.computation.task.projectanalysis.formula.SumFormula.createLongSumFormula;
 import static org.sonar.server.computation.task.projectanalysis.measure.Measure.newMeasureBuilder;
 import static org.sonar.server.computation.task.projectanalysis.measure.MeasureRepoEntry.entryOf;
 import static org.sonar.server.computation.task.projectanalysis.measure.MeasureRepoEntry.toEntries;
@@ -48,7 +50,7 @@ public class SumFormulaExecutionTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
   @Rule
-  public MetricRepositoryRule metricRepository = new MetricRepositoryRule().add(CoreMetrics.LINES);
+  public MetricRepositoryRule metricRepository = new MetricRepositoryRule().add(CoreMetrics.LINES).add(CoreMetrics.TECHNICAL_DEBT);
   @Rule
   public MeasureRepositoryRule measureRepository = MeasureRepositoryRule.create(treeRootHolder, metricRepository);
 
@@ -122,4 +124,38 @@ public class SumFormulaExecutionTest {
     assertThat(measureRepository.getAddedRawMeasures(1111)).isEmpty();
   }
 
+  @Test
+  public void add_measures_of_long_sum_and_use_default_value_when_no_data_on_file() {
+    underTest = FormulaExecutorComponentVisitor.newBuilder(metricRepository, measureRepository)
+      .buildFor(Lists.newArrayList(createIntSumFormula(LINES_KEY, 0), createLongSumFormula(TECHNICAL_DEBT_KEY)));
+    ReportComponent project = builder(PROJECT, 1)
+      .addChildren(
+        builder(DIRECTORY, 11)
+          .addChildren(
+            builder(Component.Type.FILE, 111).build(),
+            builder(Component.Type.FILE, 112).build())
+          .build(),
+        builder(DIRECTORY, 12)
+          .addChildren(
+            builder(Component.Type.FILE, 121).build())
+          .build())
+      .build();
+    treeRootHolder.setRoot(project);
+    measureRepository.addRawMeasure(111, LINES_KEY, newMeasureBuilder().create(10));
+    measureRepository.addRawMeasure(111, TECHNICAL_DEBT_KEY, newMeasureBuilder().create(3_000_000_000L));
+    measureRepository.addRawMeasure(112, TECHNICAL_DEBT_KEY, newMeasureBuilder().create(1L));
+
+    new PathAwareCrawler<>(underTest).visit(project);
+
+    assertThat(toEntries(measureRepository.getAddedRawMeasures(1))).containsOnly(
+      entryOf(LINES_KEY, newMeasureBuilder().create(10)),
+      entryOf(TECHNICAL_DEBT_KEY, newMeasureBuilder().create(3_000_000_001L)));
+    assertThat(toEntries(measureRepository.getAddedRawMeasures(11))).containsOnly(
+      entryOf(LINES_KEY, newMeasureBuilder().create(10)),
+      entryOf(TECHNICAL_DEBT_KEY, newMeasureBuilder().create(3_000_000_001L)));
+    assertThat(toEntries(measureRepository.getAddedRawMeasures(12))).containsOnly(entryOf(LINES_KEY, newMeasureBuilder().create(0)));
+    assertThat(measureRepository.getAddedRawMeasures(111)).isEmpty();
+    assertThat(measureRepository.getAddedRawMeasures(121)).isEmpty();
+  }
+
 }
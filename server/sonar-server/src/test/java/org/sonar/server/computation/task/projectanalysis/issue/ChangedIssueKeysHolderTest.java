@@ -0,0 +1,85 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChangedIssueKeysHolderTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private ChangedIssueKeysHolder underTest = new ChangedIssueKeysHolder(2);
+
+  @Test
+  public void keep_keys_of_changed_issues() {
+    underTest.add("I1");
+    underTest.add("I2");
+    underTest.add("I1");
+
+    assertThat(underTest.isOverflowed()).isFalse();
+    assertThat(underTest.getKeys()).containsOnly("I1", "I2");
+  }
+
+  @Test
+  public void no_keys_by_default() {
+    assertThat(new ChangedIssueKeysHolder().isOverflowed()).isFalse();
+    assertThat(new ChangedIssueKeysHolder().getKeys()).isEmpty();
+    assertThat(new ChangedIssueKeysHolder().getMovedComponentUuids()).isEmpty();
+  }
+
+  @Test
+  public void keep_uuids_of_moved_components_even_when_too_many_issues_are_changed() {
+    underTest.addMovedComponent("FILE1");
+    underTest.add("I1");
+    underTest.add("I2");
+    underTest.add("I3");
+    underTest.addMovedComponent("FILE2");
+
+    assertThat(underTest.isOverflowed()).isTrue();
+    assertThat(underTest.getMovedComponentUuids()).containsOnly("FILE1", "FILE2");
+  }
+
+  @Test
+  public void drop_keys_when_too_many_issues_are_changed() {
+    underTest.add("I1");
+    underTest.add("I2");
+    underTest.add("I3");
+    underTest.add("I4");
+
+    assertThat(underTest.isOverflowed()).isTrue();
+  }
+
+  @Test
+  public void fail_to_get_keys_when_too_many_issues_are_changed() {
+    underTest.add("I1");
+    underTest.add("I2");
+    underTest.add("I3");
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("More than 2 issues have been changed, their keys are not kept");
+
+    underTest.getKeys();
+  }
+}
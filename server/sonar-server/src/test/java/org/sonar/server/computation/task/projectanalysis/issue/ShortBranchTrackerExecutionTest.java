@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 import static org.sonar.server.computation.task.projectanalysis.component.ReportComponent.builder;
 
@@ -103,6 +104,16 @@ public class ShortBranchTrackerExecutionTest {
     assertThat(tracking.getUnmatchedRaws()).containsOnly(rawIssues.get(2));
   }
 
+  @Test
+  public void issues_of_merge_branch_are_not_loaded_when_there_are_no_raw_issues() {
+    baseIssues.add(createIssue(1, RuleTesting.XOO_X1));
+
+    Tracking<DefaultIssue, DefaultIssue> tracking = underTest.track(FILE);
+
+    assertThat(tracking.getUnmatchedBases()).containsOnly(baseIssues.get(0));
+    verifyZeroInteractions(mergeFactory);
+  }
+
   private DefaultIssue createIssue(int line, RuleKey ruleKey) {
     DefaultIssue issue = new DefaultIssue()
       .setRuleKey(ruleKey)
@@ -37,6 +37,9 @@ import org.sonar.server.computation.task.projectanalysis.component.ReportCompone
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.issue.commonrule.CommonRuleEngine;
 import org.sonar.server.computation.task.projectanalysis.issue.filter.IssueFilter;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCache;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryRule;
 import org.sonar.server.rule.CommonRuleKeys;
 
@@ -67,7 +70,7 @@ public class TrackerRawInputFactoryTest {
 
   IssueFilter issueFilter = mock(IssueFilter.class);
 
-  TrackerRawInputFactory underTest = new TrackerRawInputFactory(treeRootHolder, reportReader, fileSourceRepository, commonRuleEngine, issueFilter);
+  TrackerRawInputFactory underTest = new TrackerRawInputFactory(treeRootHolder, reportReader, new SourceLinesHashRepositoryImpl(fileSourceRepository, new SourceLinesCache(new SourceLinesCacheStatistics())), commonRuleEngine, issueFilter);
 
   @Test
   public void load_source_hash_sequences() {
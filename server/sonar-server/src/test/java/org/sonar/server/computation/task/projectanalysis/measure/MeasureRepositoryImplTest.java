@@ -27,8 +27,14 @@ import com.google.common.collect.SetMultimap;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.List;
 import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -45,6 +51,7 @@ import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.metric.Metric;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricImpl;
 import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
@@ -415,6 +422,39 @@ public class MeasureRepositoryImplTest {
     assertThat(rawMeasures.get(METRIC_KEY_2)).containsOnly(Measure.newMeasureBuilder().create("some value"));
   }
 
+  @Test
+  public void raw_measures_written_by_writeTo_are_restored_by_readFrom() throws IOException {
+    Component project = ReportComponent.builder(Component.Type.PROJECT, 10).setKey("project key").addChildren(FILE_COMPONENT, OTHER_COMPONENT).build();
+    TreeRootHolderRule treeRootHolder = new TreeRootHolderRule().setRoot(project);
+    Metric doubleMetric = new MetricImpl(3, "metric 3", "metric 3", Metric.MetricType.FLOAT, 3, null, false);
+    Metric levelMetric = new MetricImpl(4, "metric 4", "metric 4", Metric.MetricType.LEVEL);
+    when(metricRepository.getByKey("metric 3")).thenReturn(doubleMetric);
+    when(metricRepository.getByKey("metric 4")).thenReturn(levelMetric);
+    Measure stringMeasure = Measure.newMeasureBuilder()
+      .setQualityGateStatus(new QualityGateStatus(Measure.Level.ERROR, "failed"))
+      .create(StringUtils.repeat("a", 70_000));
+    Measure doubleMeasure = Measure.newMeasureBuilder().setVariation(-1.5d).create(12.3456d, 3, SOME_DATA);
+    Measure levelMeasure = Measure.newMeasureBuilder().create(Measure.Level.OK);
+    underTest.add(FILE_COMPONENT, metric1, stringMeasure);
+    underTest.add(FILE_COMPONENT, doubleMetric, doubleMeasure);
+    underTest.add(project, levelMetric, levelMeasure);
+    when(reportMetricValidator.validate(METRIC_KEY_2)).thenReturn(true);
+    reportReader.putMeasures(OTHER_COMPONENT.getReportAttributes().getRef(), ImmutableList.of(
+      ScannerReport.Measure.newBuilder().setMetricKey(METRIC_KEY_2).setStringValue(StringValue.newBuilder().setValue("from report")).build()));
+    underTest.getRawMeasures(OTHER_COMPONENT);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    underTest.writeTo(project, new DataOutputStream(bytes));
+    underTestWithMock.readFrom(treeRootHolder, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertThat(underTestWithMock.getRawMeasure(FILE_COMPONENT, metric1).get()).isEqualToComparingFieldByField(stringMeasure);
+    assertThat(underTestWithMock.getRawMeasure(FILE_COMPONENT, doubleMetric).get()).isEqualToComparingFieldByField(doubleMeasure);
+    assertThat(underTestWithMock.getRawMeasure(project, levelMetric).get()).isEqualToComparingFieldByField(levelMeasure);
+    // measures of the report already loaded by the previous execution are not loaded again
+    assertThat(underTestWithMock.getRawMeasures(OTHER_COMPONENT).get(METRIC_KEY_2)).extracting(Measure::getStringValue).containsOnly("from report");
+    verifyZeroInteractions(mockBatchReportReader);
+  }
+
   private static MeasureDto createMeasureDto(int metricId, String componentUuid, String analysisUuid) {
     return new MeasureDto()
       .setComponentUuid(componentUuid)
@@ -106,7 +106,7 @@ public class MetricRepositoryRule extends ExternalResource implements MetricRepo
 
   @Override
   public Optional<Metric> getOptionalById(long id) {
-    return Optional.of(metricsById.get(id));
+    return Optional.ofNullable(metricsById.get(id));
   }
 
   @Override
@@ -157,6 +157,44 @@ public class DbScmInfoTest {
     DbScmInfo.create(FILE, fileDataBuilder.getLinesList()).get().getAllChangesets();
   }
 
+  @Test
+  public void create_scm_info_from_scm_data_with_same_changesets_as_from_lines() {
+    DbFileSources.Data.Builder fileDataBuilder = DbFileSources.Data.newBuilder();
+    addLine(fileDataBuilder, 1, "john", 123456789L, "rev-1");
+    addLine(fileDataBuilder, 2, "henry", 1234567810L, "rev-2");
+    addLine(fileDataBuilder, 3, "john", 123456789L, "rev-1");
+    fileDataBuilder.addLinesBuilder().setLine(4).setScmDate(12L).setScmRevision("rev-3");
+
+    ScmInfo fromLines = DbScmInfo.create(FILE, fileDataBuilder.getLinesList()).get();
+    ScmInfo fromScmData = DbScmInfo.create(FILE, ScmDataEncoder.encode(fileDataBuilder.getLinesList())).get();
+
+    assertThat(fromScmData.getAllChangesets()).containsExactlyElementsOf(fromLines.getAllChangesets());
+    assertThat(fromScmData.getChangesetForLine(4).getAuthor()).isNull();
+    assertThat(fromScmData.getChangesetForLine(1)).isSameAs(fromScmData.getChangesetForLine(3));
+    assertThat(fromScmData.getLatestChangeset()).isEqualTo(fromLines.getLatestChangeset());
+  }
+
+  @Test
+  public void return_absent_dsm_info_when_no_changeset_in_scm_data() {
+    DbFileSources.Data.Builder fileDataBuilder = DbFileSources.Data.newBuilder();
+    fileDataBuilder.addLinesBuilder().setLine(1);
+
+    assertThat(DbScmInfo.create(FILE, ScmDataEncoder.encode(fileDataBuilder.getLinesList()))).isAbsent();
+  }
+
+  @Test
+  public void fail_with_ISE_when_scm_data_is_partial() {
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Partial scm information stored in DB for component 'ReportComponent{ref=1, key='FILE_KEY', type=FILE}'. " +
+      "Not all lines have SCM info. Can not proceed");
+
+    DbFileSources.Data.Builder fileDataBuilder = DbFileSources.Data.newBuilder();
+    fileDataBuilder.addLinesBuilder().setScmRevision("rev").setScmDate(543L).setLine(1);
+    fileDataBuilder.addLinesBuilder().setLine(2);
+
+    DbScmInfo.create(FILE, ScmDataEncoder.encode(fileDataBuilder.getLinesList()));
+  }
+
   private static void addLine(DbFileSources.Data.Builder dataBuilder, Integer line, String author, Long date, String revision) {
     dataBuilder.addLinesBuilder()
       .setLine(line)
@@ -0,0 +1,66 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.scm;
+
+import org.junit.Test;
+import org.sonar.db.protobuf.DbFileSources;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ScmDataEncoderTest {
+
+  @Test
+  public void encode_changesets_and_authors_once() {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    data.addLinesBuilder().setLine(1).setScmAuthor("john").setScmDate(1_000L).setScmRevision("rev-1");
+    data.addLinesBuilder().setLine(2).setScmAuthor("henry").setScmDate(1_500L).setScmRevision("rev-2");
+    data.addLinesBuilder().setLine(3).setScmAuthor("john").setScmDate(1_000L).setScmRevision("rev-1");
+    data.addLinesBuilder().setLine(4).setScmAuthor("john").setScmDate(700L).setScmRevision("rev-3");
+
+    DbFileSources.ScmData scmData = ScmDataEncoder.encode(data.getLinesList());
+
+    assertThat(scmData.getAuthorList()).containsExactly("john", "henry");
+    assertThat(scmData.getChangesetRevisionList()).containsExactly("rev-1", "rev-2", "rev-3");
+    assertThat(scmData.getChangesetAuthorList()).containsExactly(1, 2, 1);
+    assertThat(scmData.getChangesetDateDeltaList()).containsExactly(1_000L, 500L, -800L);
+    assertThat(scmData.getLineChangesetList()).containsExactly(1, 2, 1, 3);
+  }
+
+  @Test
+  public void encode_lines_without_scm_info() {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    data.addLinesBuilder().setLine(1);
+    data.addLinesBuilder().setLine(2).setScmDate(1_000L).setScmRevision("rev-1");
+    data.addLinesBuilder().setLine(3).setScmRevision("rev-2");
+
+    DbFileSources.ScmData scmData = ScmDataEncoder.encode(data.getLinesList());
+
+    assertThat(scmData.getAuthorCount()).isZero();
+    assertThat(scmData.getChangesetRevisionList()).containsExactly("rev-1");
+    assertThat(scmData.getChangesetAuthorList()).containsExactly(0);
+    assertThat(scmData.getLineChangesetList()).containsExactly(0, 1, 0);
+  }
+
+  @Test
+  public void encode_no_lines() {
+    assertThat(ScmDataEncoder.encode(DbFileSources.Data.getDefaultInstance().getLinesList()))
+      .isEqualTo(DbFileSources.ScmData.getDefaultInstance());
+  }
+}
@@ -41,6 +41,8 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.MergeBranchComponentUuids;
 import org.sonar.server.computation.task.projectanalysis.scm.ScmInfoRepositoryImpl.NoScmInfo;
 import org.sonar.server.computation.task.projectanalysis.source.SourceHashRepositoryImpl;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCache;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryImpl;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -71,7 +73,7 @@ public class ScmInfoDbLoaderTest {
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
 
   private Branch branch = mock(Branch.class);
-  private SourceHashRepositoryImpl sourceHashRepository = new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader));
+  private SourceHashRepositoryImpl sourceHashRepository = new SourceHashRepositoryImpl(new SourceLinesRepositoryImpl(reportReader, new SourceLinesCache(new SourceLinesCacheStatistics())));
   private MergeBranchComponentUuids mergeBranchComponentUuids = mock(MergeBranchComponentUuids.class);
 
   private ScmInfoDbLoader underTest = new ScmInfoDbLoader(analysisMetadataHolder, dbTester.getDbClient(), sourceHashRepository, mergeBranchComponentUuids);
@@ -90,6 +92,28 @@ public class ScmInfoDbLoaderTest {
     assertThat(logTester.logs(TRACE)).containsOnly("Reading SCM info from db for file 'FILE_UUID'");
   }
 
+  @Test
+  public void returns_ScmInfo_from_column_scm_data() {
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+    analysisMetadataHolder.setBranch(null);
+
+    DbFileSources.Data.Builder fileDataBuilder = DbFileSources.Data.newBuilder();
+    fileDataBuilder.addLinesBuilder().setLine(1).setScmAuthor("henry").setScmDate(DATE_1).setScmRevision("rev-1");
+    dbTester.getDbClient().fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setFileUuid(FILE.getUuid())
+      .setProjectUuid("PROJECT_UUID")
+      // SCM data is not read from sources
+      .setSourceData(DbFileSources.Data.getDefaultInstance())
+      .setScmData(ScmDataEncoder.encode(fileDataBuilder.getLinesList()))
+      .setSrcHash(computeSourceHash(1)));
+    dbTester.commit();
+    addFileSourceInReport(1);
+
+    ScmInfo scmInfo = underTest.getScmInfoFromDb(FILE);
+
+    assertThat(scmInfo.getAllChangesets()).containsExactly(Changeset.newChangesetBuilder().setAuthor("henry").setDate(DATE_1).setRevision("rev-1").build());
+  }
+
   @Test
   public void read_from_merge_branch_if_no_base() {
     analysisMetadataHolder.setBaseAnalysis(null);
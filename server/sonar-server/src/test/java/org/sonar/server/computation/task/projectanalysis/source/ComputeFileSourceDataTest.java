@@ -33,7 +33,7 @@ public class ComputeFileSourceDataTest {
     ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(
       newArrayList("line1").iterator(),
       Lists.newArrayList(new MockLineReader()),
-      1);
+      newArrayList("137f72c3708c6bd0de00a0e5a69c699b"));
 
     ComputeFileSourceData.Data data = computeFileSourceData.compute();
     assertThat(data.getLineHashes()).isEqualTo("137f72c3708c6bd0de00a0e5a69c699b");
@@ -47,7 +47,7 @@ public class ComputeFileSourceDataTest {
     ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(
       newArrayList("line1", "line2").iterator(),
       Lists.newArrayList(new MockLineReader()),
-      2);
+      newArrayList("137f72c3708c6bd0de00a0e5a69c699b", "e6251bcf1a7dc3ba5e7933e325bbe605"));
 
     ComputeFileSourceData.Data data = computeFileSourceData.compute();
     assertThat(data.getLineHashes()).isEqualTo("137f72c3708c6bd0de00a0e5a69c699b\ne6251bcf1a7dc3ba5e7933e325bbe605");
@@ -58,24 +58,13 @@ public class ComputeFileSourceDataTest {
   }
 
   @Test
-  public void remove_tabs_and_spaces_in_line_hashes() {
-    String refLineHashes = new ComputeFileSourceData(
-      newArrayList("line1").iterator(),
+  public void line_hashes_are_not_computed_again() {
+    ComputeFileSourceData.Data data = new ComputeFileSourceData(
+      newArrayList("line1", "line2").iterator(),
       Lists.newArrayList(new MockLineReader()),
-      1).compute().getLineHashes();
+      newArrayList("hash1", "")).compute();
 
-    assertThat(new ComputeFileSourceData(
-      newArrayList(" line\t \t 1  ").iterator(),
-      Lists.newArrayList(new MockLineReader()),
-      1).compute().getLineHashes()).isEqualTo(refLineHashes);
-  }
-
-  @Test
-  public void compute_line_hashes_of_empty_lines() {
-    assertThat(new ComputeFileSourceData(
-      newArrayList("   ").iterator(),
-      Lists.newArrayList(new MockLineReader()),
-      1).compute().getLineHashes()).isEqualTo("");
+    assertThat(data.getLineHashes()).isEqualTo("hash1\n");
   }
 
   private static class MockLineReader implements LineReader {
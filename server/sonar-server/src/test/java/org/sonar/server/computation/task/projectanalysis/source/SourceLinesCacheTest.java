@@ -0,0 +1,136 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.source;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLinesCacheTest {
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private SourceLinesCacheStatistics statistics = new SourceLinesCacheStatistics();
+  private SourceLinesCache underTest = new SourceLinesCache(statistics);
+
+  @Test
+  public void load_lines_only_once() {
+    AtomicInteger loads = new AtomicInteger();
+    Supplier<List<String>> loader = () -> {
+      loads.incrementAndGet();
+      return asList("a", "b");
+    };
+
+    assertThat(underTest.getLines(1, loader)).containsExactly("a", "b");
+    assertThat(underTest.getLines(1, loader)).containsExactly("a", "b");
+
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void lines_and_line_hashes_are_cached_independently() {
+    underTest.getLines(1, () -> asList("a", "b"));
+
+    assertThat(underTest.getLineHashes(1, () -> asList("h1", "h2"))).containsExactly("h1", "h2");
+    assertThat(underTest.getLineHashes(1, () -> asList("other"))).containsExactly("h1", "h2");
+    assertThat(underTest.getLines(1, () -> asList("other"))).containsExactly("a", "b");
+    assertThat(underTest.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void evict_least_recently_used_entries_when_max_size_is_exceeded() {
+    // each line of one character uses 42 bytes
+    underTest = new SourceLinesCache(statistics, 100);
+
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLines(2, () -> asList("b"));
+    // access to 1 makes 2 the least recently used entry
+    underTest.getLines(1, () -> asList("not cached"));
+    underTest.getLines(3, () -> asList("c"));
+
+    assertThat(underTest.size()).isEqualTo(2);
+    assertThat(underTest.getSizeInBytes()).isEqualTo(84);
+    assertThat(underTest.getLines(1, () -> asList("reloaded"))).containsExactly("a");
+    assertThat(underTest.getLines(2, () -> asList("reloaded"))).containsExactly("reloaded");
+  }
+
+  @Test
+  public void do_not_keep_entry_bigger_than_max_size() {
+    underTest = new SourceLinesCache(statistics, 50);
+
+    assertThat(underTest.getLines(1, () -> asList("a", "b"))).containsExactly("a", "b");
+
+    assertThat(underTest.size()).isZero();
+    assertThat(underTest.getSizeInBytes()).isZero();
+  }
+
+  @Test
+  public void log_hit_rate_and_clear_cache_on_stop() {
+    logTester.setLevel(LoggerLevel.DEBUG);
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLineHashes(1, () -> asList("h"));
+
+    underTest.stop();
+
+    assertThat(logTester.logs(LoggerLevel.DEBUG))
+      .containsOnly("Source lines cache: lines 2 hits/1 misses (66% hit rate), line hashes 0 hits/1 misses (0% hit rate), 0 evictions");
+    assertThat(underTest.size()).isZero();
+    assertThat(underTest.getSizeInBytes()).isZero();
+  }
+
+  @Test
+  public void add_counters_to_statistics_on_stop() {
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLines(1, () -> asList("a"));
+    underTest.getLineHashes(1, () -> asList("h"));
+    underTest.stop();
+
+    SourceLinesCache otherTaskCache = new SourceLinesCache(statistics, 50);
+    otherTaskCache.getLines(2, () -> asList("a", "b"));
+    otherTaskCache.stop();
+    // counters are reset, so stopping again does not count twice
+    otherTaskCache.stop();
+
+    assertThat(statistics.getLineHits()).isEqualTo(1);
+    assertThat(statistics.getLineMisses()).isEqualTo(2);
+    assertThat(statistics.getLineHashesHits()).isEqualTo(0);
+    assertThat(statistics.getLineHashesMisses()).isEqualTo(1);
+    assertThat(statistics.getEvictions()).isEqualTo(1);
+  }
+
+  @Test
+  public void do_not_log_on_stop_if_cache_was_not_used() {
+    logTester.setLevel(LoggerLevel.DEBUG);
+
+    underTest.stop();
+
+    assertThat(logTester.logs()).isEmpty();
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.source;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.core.hash.SourceLinesHashesComputer;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.server.computation.task.projectanalysis.component.ReportComponent.builder;
+
+public class SourceLinesHashRepositoryImplTest {
+
+  private static final int FILE_REF = 2;
+  private static final Component FILE = builder(Component.Type.FILE, FILE_REF).setKey("FILE_KEY").build();
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  public SourceLinesRepositoryRule sourceLinesRepository = new SourceLinesRepositoryRule();
+
+  private SourceLinesCache cache = new SourceLinesCache(new SourceLinesCacheStatistics());
+  private SourceLinesHashRepositoryImpl underTest = new SourceLinesHashRepositoryImpl(sourceLinesRepository, cache);
+
+  @Test
+  public void compute_line_hashes_of_file() {
+    sourceLinesRepository.addLines(FILE_REF, "line 1", "  line  2 ", "");
+
+    assertThat(underTest.getLineHashes(FILE)).isEqualTo(computeLineHashes("line 1", "  line  2 ", ""));
+  }
+
+  @Test
+  public void remove_tabs_and_spaces_in_line_hashes() {
+    sourceLinesRepository.addLines(FILE_REF, " line\t \t 1  ");
+
+    assertThat(underTest.getLineHashes(FILE)).isEqualTo(computeLineHashes("line1"));
+  }
+
+  @Test
+  public void line_hash_of_blank_line_is_empty() {
+    sourceLinesRepository.addLines(FILE_REF, "   ");
+
+    assertThat(underTest.getLineHashes(FILE)).containsExactly("");
+  }
+
+  @Test
+  public void line_hashes_are_computed_only_once() {
+    sourceLinesRepository.addLines(FILE_REF, "line 1");
+    underTest.getLineHashes(FILE);
+    sourceLinesRepository.addLines(FILE_REF, "line 2");
+
+    assertThat(underTest.getLineHashes(FILE)).isEqualTo(computeLineHashes("line 1"));
+  }
+
+  @Test
+  public void fail_with_NPE_on_null_component() {
+    expectedException.expect(NullPointerException.class);
+    expectedException.expectMessage("Component should not be null");
+
+    underTest.getLineHashes(null);
+  }
+
+  @Test
+  public void fail_with_IAE_on_not_file_component() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Component 'ReportComponent{ref=123, key='NotFile', type=PROJECT}' is not a file");
+
+    underTest.getLineHashes(builder(Component.Type.PROJECT, 123).setKey("NotFile").build());
+  }
+
+  private static List<String> computeLineHashes(String... lines) {
+    SourceLinesHashesComputer computer = new SourceLinesHashesComputer();
+    for (String line : lines) {
+      computer.addLine(line);
+    }
+    return computer.getLineHashes();
+  }
+}
@@ -42,7 +42,7 @@ public class SourceLinesRepositoryImplTest {
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
 
-  SourceLinesRepositoryImpl underTest = new SourceLinesRepositoryImpl(reportReader);
+  SourceLinesRepositoryImpl underTest = new SourceLinesRepositoryImpl(reportReader, new SourceLinesCache(new SourceLinesCacheStatistics()));
 
   @Test
   public void read_lines_from_report() {
@@ -51,6 +51,36 @@ public class SourceLinesRepositoryImplTest {
     assertThat(underTest.readLines(createComponent(2))).containsOnly("line1", "line2");
   }
 
+  @Test
+  public void read_lines_from_report_only_once() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+    consume(underTest.readLines(createComponent(2)));
+    reportReader.putFileSourceLines(FILE_REF, "other1", "other2");
+
+    assertThat(underTest.readLines(createComponent(2))).containsOnly("line1", "line2");
+  }
+
+  @Test
+  public void do_not_cache_lines_of_big_files() {
+    underTest = new SourceLinesRepositoryImpl(reportReader, new SourceLinesCache(new SourceLinesCacheStatistics(), 400));
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2", "line3");
+    consume(underTest.readLines(createComponent(3)));
+    reportReader.putFileSourceLines(FILE_REF, "other1", "other2", "other3");
+
+    assertThat(underTest.readLines(createComponent(3))).containsOnly("other1", "other2", "other3");
+  }
+
+  @Test
+  public void do_not_cache_lines_of_partially_read_files() {
+    reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
+    CloseableIterator<String> lines = underTest.readLines(createComponent(2));
+    lines.next();
+    lines.close();
+    reportReader.putFileSourceLines(FILE_REF, "other1", "other2");
+
+    assertThat(underTest.readLines(createComponent(2))).containsOnly("other1", "other2");
+  }
+
   @Test
   public void read_lines_adds_one_extra_empty_line_when_sourceLine_has_elements_count_equals_to_lineCount_minus_1() {
     reportReader.putFileSourceLines(FILE_REF, "line1", "line2");
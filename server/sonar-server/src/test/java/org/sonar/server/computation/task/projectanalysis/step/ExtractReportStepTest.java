@@ -19,10 +19,12 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import org.apache.commons.io.FileUtils;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -37,8 +39,13 @@ import org.sonar.db.DbTester;
 import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportDirectoryHolderImpl;
 import org.sonar.server.computation.task.projectanalysis.batch.MutableBatchReportDirectoryHolder;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
+import org.sonar.server.platform.ServerFileSystem;
 
+import static java.util.Collections.singleton;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ExtractReportStepTest {
 
@@ -59,7 +66,16 @@ public class ExtractReportStepTest {
   private MutableBatchReportDirectoryHolder reportDirectoryHolder = new BatchReportDirectoryHolderImpl();
   private CeTask ceTask = new CeTask.Builder().setOrganizationUuid("org1").setType(CeTaskTypes.REPORT).setUuid(TASK_UUID).build();
 
-  private ExtractReportStep underTest = new ExtractReportStep(dbTester.getDbClient(), ceTask, tempFolder, reportDirectoryHolder);
+  private ServerFileSystem fs = mock(ServerFileSystem.class);
+  private TaskWorkingDirectory workingDirectory;
+  private ExtractReportStep underTest;
+
+  @Before
+  public void setUp() {
+    when(fs.getDataDir()).thenReturn(tempFolder.newDir());
+    workingDirectory = new TaskWorkingDirectory(fs, ceTask);
+    underTest = new ExtractReportStep(dbTester.getDbClient(), ceTask, workingDirectory, reportDirectoryHolder, System2.INSTANCE);
+  }
 
   @Test
   public void fail_if_report_zip_does_not_exist() {
@@ -85,6 +101,69 @@ public class ExtractReportStepTest {
     assertThat(unzippedDir).isDirectory().exists();
     assertThat(unzippedDir.listFiles()).hasSize(1);
     assertThat(new File(unzippedDir, "metadata.pb")).hasContent("{metadata}");
+    assertThat(logTester.logs(LoggerLevel.INFO)).hasSize(1);
+    assertThat(logTester.logs(LoggerLevel.INFO).get(0)).startsWith("Analysis report is ").contains(" zipped, 10 bytes unzipped, extracted in ");
+  }
+
+  @Test
+  public void reuse_report_extracted_by_a_previous_execution_of_the_task() throws Exception {
+    insertReport();
+    underTest.execute();
+    File unzippedDir = reportDirectoryHolder.getDirectory();
+    dbTester.getDbClient().ceTaskInputDao().deleteByUuids(dbTester.getSession(), singleton(TASK_UUID));
+    dbTester.getSession().commit();
+    logTester.clear();
+
+    MutableBatchReportDirectoryHolder restartedHolder = new BatchReportDirectoryHolderImpl();
+    new ExtractReportStep(dbTester.getDbClient(), ceTask, new TaskWorkingDirectory(fs, ceTask), restartedHolder, System2.INSTANCE).execute();
+
+    assertThat(restartedHolder.getDirectory()).isEqualTo(unzippedDir);
+    assertThat(new File(unzippedDir, "metadata.pb")).hasContent("{metadata}");
+    assertThat(logTester.logs(LoggerLevel.INFO)).containsExactly("Analysis report has already been extracted by a previous execution of the task");
+  }
+
+  @Test
+  public void extract_report_again_if_previous_execution_did_not_complete_extraction() throws Exception {
+    insertReport();
+    File partialDir = workingDirectory.getDir("report");
+    FileUtils.write(new File(partialDir, "partial.pb"), "partial");
+
+    underTest.execute();
+
+    assertThat(reportDirectoryHolder.getDirectory().list()).containsExactly("metadata.pb");
+  }
+
+  @Test
+  public void delete_extracted_report_at_the_end_of_the_task() throws Exception {
+    insertReport();
+    underTest.execute();
+    File unzippedDir = reportDirectoryHolder.getDirectory();
+
+    workingDirectory.stop();
+
+    assertThat(unzippedDir).doesNotExist();
+  }
+
+  @Test
+  public void fail_if_report_is_corrupted() throws Exception {
+    byte[] report = FileUtils.readFileToByteArray(generateReport());
+    // alter the first byte of the content of metadata.pb, after the 30 bytes of header and the 11 bytes of file name
+    report[30 + "metadata.pb".length()] ^= 0xFF;
+    dbTester.getDbClient().ceTaskInputDao().insert(dbTester.getSession(), TASK_UUID, new ByteArrayInputStream(report));
+    dbTester.getSession().commit();
+    dbTester.getSession().close();
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to extract report 1 from database");
+
+    underTest.execute();
+  }
+
+  private void insertReport() throws IOException {
+    try (InputStream input = FileUtils.openInputStream(generateReport())) {
+      dbTester.getDbClient().ceTaskInputDao().insert(dbTester.getSession(), TASK_UUID, input);
+    }
+    dbTester.getSession().commit();
   }
 
   private File generateReport() throws IOException {
@@ -19,6 +19,8 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
@@ -26,11 +28,19 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
 import org.sonar.server.computation.task.projectanalysis.component.ViewsComponent;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 import org.sonar.server.es.ProjectIndexer;
+import org.sonar.server.issue.index.IssueIndexer;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.PROJECT;
 import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.VIEW;
 
@@ -44,8 +54,16 @@ public class IndexAnalysisStepTest extends BaseStepTest {
   @Rule
   public BatchReportReaderRule reportReader = new BatchReportReaderRule();
 
+  private ChangedIssueKeysHolder changedIssueKeysHolder = mock(ChangedIssueKeysHolder.class);
   private ProjectIndexer componentIndexer = mock(ProjectIndexer.class);
-  private IndexAnalysisStep underTest = new IndexAnalysisStep(treeRootHolder, componentIndexer);
+  private IssueIndexer issueIndexer = mock(IssueIndexer.class);
+  private IndexAnalysisExecutorServiceImpl executor = new IndexAnalysisExecutorServiceImpl();
+  private IndexAnalysisStep underTest = new IndexAnalysisStep(treeRootHolder, changedIssueKeysHolder, executor, componentIndexer, issueIndexer);
+
+  @After
+  public void tearDown() {
+    executor.stop();
+  }
 
   @Test
   public void call_indexByProjectUuid_of_indexer_for_project() {
@@ -67,6 +85,62 @@ public class IndexAnalysisStepTest extends BaseStepTest {
     verify(componentIndexer).indexOnAnalysis(PROJECT_UUID);
   }
 
+  @Test
+  public void index_only_changed_issues_of_project() {
+    Component project = ReportComponent.builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    treeRootHolder.setRoot(project);
+    when(changedIssueKeysHolder.getKeys()).thenReturn(ImmutableSet.of("I1", "I2"));
+    when(changedIssueKeysHolder.getMovedComponentUuids()).thenReturn(ImmutableSet.of("FILE1"));
+
+    underTest.execute();
+
+    verify(componentIndexer).indexOnAnalysis(PROJECT_UUID);
+    verify(issueIndexer).indexOnAnalysis(PROJECT_UUID, ImmutableSet.of("I1", "I2"), ImmutableSet.of("FILE1"));
+    verifyNoMoreInteractions(issueIndexer);
+  }
+
+  @Test
+  public void index_all_issues_of_project_when_too_many_issues_are_changed() {
+    Component project = ReportComponent.builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    treeRootHolder.setRoot(project);
+    when(changedIssueKeysHolder.isOverflowed()).thenReturn(true);
+
+    underTest.execute();
+
+    verify(issueIndexer).indexOnAnalysis(PROJECT_UUID);
+    verifyNoMoreInteractions(issueIndexer);
+  }
+
+  @Test
+  public void call_all_indexers_even_if_one_fails() {
+    Component project = ReportComponent.builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    treeRootHolder.setRoot(project);
+    when(changedIssueKeysHolder.isOverflowed()).thenReturn(true);
+    IllegalStateException failure = new IllegalStateException("ES is down");
+    doThrow(failure).when(componentIndexer).indexOnAnalysis(PROJECT_UUID);
+
+    try {
+      underTest.execute();
+      fail("An IllegalStateException should have been thrown");
+    } catch (IllegalStateException e) {
+      assertThat(e).isSameAs(failure);
+    }
+
+    verify(issueIndexer).indexOnAnalysis(PROJECT_UUID);
+  }
+
+  @Test
+  public void executor_is_reused_by_next_analyses() {
+    Component project = ReportComponent.builder(PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    treeRootHolder.setRoot(project);
+
+    underTest.execute();
+    underTest.execute();
+
+    assertThat(executor.isShutdown()).isFalse();
+    verify(componentIndexer, times(2)).indexOnAnalysis(PROJECT_UUID);
+  }
+
   @Override
   protected ComputationStep step() {
     return underTest;
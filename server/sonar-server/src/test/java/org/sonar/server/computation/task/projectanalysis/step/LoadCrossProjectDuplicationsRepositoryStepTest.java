@@ -30,6 +30,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
@@ -49,12 +50,14 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.IntegrateCrossProjectDuplications;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.anyCollection;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -103,8 +106,10 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
 
   Analysis baseProjectAnalysis;
 
+  MapSettings settings = new MapSettings();
+
   ComputationStep underTest = new LoadCrossProjectDuplicationsRepositoryStep(treeRootHolder, batchReportReader, analysisMetadataHolder, crossProjectDuplicationStatusHolder,
-    integrateCrossProjectDuplications, dbClient);
+    integrateCrossProjectDuplications, dbClient, new CrossProjectDuplicationIndex(dbClient, System2.INSTANCE, settings.asConfig()));
 
   @Before
   public void setUp() throws Exception {
@@ -171,6 +176,47 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
           .build()));
   }
 
+  @Test
+  public void call_compute_cpd_with_candidates_loaded_from_database_when_index_is_disabled() {
+    settings.setProperty("sonar.ce.crossProjectDuplicationIndex.maxBlocks", 0);
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    String hash = "a8998353e96320ec";
+    DuplicationUnitDto duplicate = new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    dbClient.duplicationDao().insert(dbSession, duplicate);
+    dbSession.commit();
+
+    ScannerReport.CpdTextBlock originBlock = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock));
+
+    underTest.execute();
+
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(), eq(asList(
+      new Block.Builder()
+        .setResourceId(otherFile.getDbKey())
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(duplicate.getIndexInFile())
+        .setLines(duplicate.getStartLine(), duplicate.getEndLine())
+        .build())));
+  }
+
   @Test
   public void call_compute_cpd_on_many_duplication() {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
@@ -259,6 +305,54 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
         .build());
   }
 
+  @Test
+  public void load_candidates_of_all_files_sharing_the_same_hash() {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+    Component otherCurrentFile = ReportComponent.builder(FILE, 3)
+      .setKey("OTHER_CURRENT_FILE_KEY")
+      .setFileAttributes(new FileAttributes(false, XOO_LANGUAGE, 1))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(PROJECT, PROJECT_REF).addChildren(CURRENT_FILE, otherCurrentFile).build());
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    String hash = "a8998353e96320ec";
+    DuplicationUnitDto duplicate = new DuplicationUnitDto()
+      .setHash(hash)
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    dbClient.duplicationDao().insert(dbSession, duplicate);
+    dbSession.commit();
+
+    ScannerReport.CpdTextBlock originBlock = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash(hash)
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock, originBlock));
+    batchReportReader.putDuplicationBlocks(3, asList(originBlock));
+
+    underTest.execute();
+
+    List<Block> duplicatedBlocks = Arrays.asList(
+      new Block.Builder()
+        .setResourceId(otherFile.getDbKey())
+        .setBlockHash(new ByteArray(hash))
+        .setIndexInFile(duplicate.getIndexInFile())
+        .setLines(duplicate.getStartLine(), duplicate.getEndLine())
+        .build());
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(), eq(duplicatedBlocks));
+    verify(integrateCrossProjectDuplications).computeCpd(eq(otherCurrentFile), anyCollection(), eq(duplicatedBlocks));
+  }
+
   @Test
   public void nothing_to_do_when_cross_project_duplication_is_disabled() {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(false);
@@ -32,6 +32,7 @@ import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.MutableDbIdsRepository;
 import org.sonar.server.computation.task.projectanalysis.component.MutableDisabledComponentsHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 
 import static java.util.Collections.emptyList;
 import static org.apache.commons.lang.RandomStringUtils.randomAlphabetic;
@@ -68,6 +69,7 @@ public class PersistComponentsStepTest {
       System2.INSTANCE,
       mock(MutableDisabledComponentsHolder.class),
       mock(AnalysisMetadataHolder.class),
-      mock(BranchPersister.class)).execute();
+      mock(BranchPersister.class),
+      new ChangedIssueKeysHolder()).execute();
   }
 }
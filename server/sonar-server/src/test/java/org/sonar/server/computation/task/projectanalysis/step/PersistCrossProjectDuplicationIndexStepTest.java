@@ -31,19 +31,23 @@ import org.mockito.MockitoAnnotations;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbTester;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.Analysis;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.Component.Status;
+import org.sonar.server.computation.task.projectanalysis.component.FileAttributes;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationBlocksHolder;
 import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationStatusHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Mockito.when;
 
 public class PersistCrossProjectDuplicationIndexStepTest {
@@ -52,9 +56,10 @@ public class PersistCrossProjectDuplicationIndexStepTest {
   private static final int FILE_2_REF = 3;
   private static final String FILE_2_UUID = "file2";
 
-  private static final Component FILE_1 = ReportComponent.builder(Component.Type.FILE, FILE_1_REF).build();
+  private static final Component FILE_1 = ReportComponent.builder(Component.Type.FILE, FILE_1_REF)
+    .setFileAttributes(new FileAttributes(false, "java", 1)).build();
   private static final Component FILE_2 = ReportComponent.builder(Component.Type.FILE, FILE_2_REF)
-    .setStatus(Status.SAME).setUuid(FILE_2_UUID).build();
+    .setStatus(Status.SAME).setUuid(FILE_2_UUID).setFileAttributes(new FileAttributes(false, "java", 1)).build();
 
   private static final Component PROJECT = ReportComponent.builder(Component.Type.PROJECT, 1)
     .addChildren(FILE_1)
@@ -85,6 +90,8 @@ public class PersistCrossProjectDuplicationIndexStepTest {
 
   DbClient dbClient = dbTester.getDbClient();
 
+  CrossProjectDuplicationBlocksHolder blocksHolder = new CrossProjectDuplicationBlocksHolder();
+
   ComputationStep underTest;
 
   @Before
@@ -93,7 +100,8 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     when(baseAnalysis.getUuid()).thenReturn(BASE_ANALYSIS_UUID);
     analysisMetadataHolder.setUuid(ANALYSIS_UUID);
     analysisMetadataHolder.setBaseAnalysis(baseAnalysis);
-    underTest = new PersistCrossProjectDuplicationIndexStep(crossProjectDuplicationStatusHolder, dbClient, treeRootHolder, analysisMetadataHolder, reportReader);
+    underTest = new PersistCrossProjectDuplicationIndexStep(crossProjectDuplicationStatusHolder, dbClient, treeRootHolder, analysisMetadataHolder, reportReader,
+      blocksHolder);
   }
 
   @Test
@@ -112,6 +120,20 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     assertThat(dto.get("ANALYSIS_UUID")).isEqualTo(ANALYSIS_UUID);
   }
 
+  @Test
+  public void keep_blocks_to_be_added_to_cross_project_duplication_index() {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    reportReader.putDuplicationBlocks(FILE_1_REF, singletonList(CPD_TEXT_BLOCK));
+
+    underTest.execute();
+
+    assertThat(blocksHolder.getRootComponentUuid()).isEqualTo(PROJECT.getUuid());
+    assertThat(blocksHolder.getBlocks())
+      .extracting(IndexedDuplicationUnitDto::getAnalysisUuid, IndexedDuplicationUnitDto::getRootComponentUuid, IndexedDuplicationUnitDto::getComponentUuid,
+        IndexedDuplicationUnitDto::getComponentKey, IndexedDuplicationUnitDto::getStartLine, IndexedDuplicationUnitDto::getEndLine)
+      .containsExactly(tuple(ANALYSIS_UUID, PROJECT.getUuid(), FILE_1.getUuid(), FILE_1.getKey(), 30, 45));
+  }
+
   @Test
   public void persist_many_cpd_text_blocks() {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
@@ -152,6 +174,7 @@ public class PersistCrossProjectDuplicationIndexStepTest {
     underTest.execute();
 
     assertThat(dbTester.countRowsOfTable("duplications_index")).isEqualTo(0);
+    assertThat(blocksHolder.hasBlocks()).isFalse();
   }
 
 }
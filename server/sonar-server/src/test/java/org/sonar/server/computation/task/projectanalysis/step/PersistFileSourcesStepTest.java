@@ -20,6 +20,8 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import java.util.Arrays;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -46,8 +48,12 @@ import org.sonar.server.computation.task.projectanalysis.duplication.InnerDuplic
 import org.sonar.server.computation.task.projectanalysis.duplication.TextBlock;
 import org.sonar.server.computation.task.projectanalysis.scm.Changeset;
 import org.sonar.server.computation.task.projectanalysis.scm.ScmInfoRepositoryRule;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCache;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesCacheStatistics;
+import org.sonar.server.computation.task.projectanalysis.source.SourceLinesHashRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.source.SourceLinesRepositoryRule;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -85,13 +91,21 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
   private DbClient dbClient = dbTester.getDbClient();
   private DbSession session = dbTester.getSession();
 
+  private PersistFileSourcesExecutorServiceImpl workers = new PersistFileSourcesExecutorServiceImpl();
   private PersistFileSourcesStep underTest;
 
   @Before
   public void setup() {
     when(system2.now()).thenReturn(NOW);
-    underTest = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, fileSourceRepository, scmInfoRepository,
-      duplicationRepository);
+    SourceLinesHashRepositoryImpl sourceLinesHashRepository = new SourceLinesHashRepositoryImpl(fileSourceRepository,
+      new SourceLinesCache(new SourceLinesCacheStatistics()));
+    underTest = new PersistFileSourcesStep(dbClient, system2, treeRootHolder, reportReader, fileSourceRepository, sourceLinesHashRepository,
+      scmInfoRepository, duplicationRepository, new ComputationStepStatistics(), workers);
+  }
+
+  @After
+  public void tearDown() {
+    workers.stop();
   }
 
   @Override
@@ -182,6 +196,12 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(data.getLines(0).getScmAuthor()).isEqualTo("john");
     assertThat(data.getLines(0).getScmDate()).isEqualTo(123456789L);
     assertThat(data.getLines(0).getScmRevision()).isEqualTo("rev-1");
+
+    DbFileSources.ScmData scmData = dbClient.fileSourceDao().selectScmDataByFileUuid(session, FILE1_UUID).getScmData();
+    assertThat(scmData.getAuthorList()).containsExactly("john");
+    assertThat(scmData.getChangesetRevisionList()).containsExactly("rev-1");
+    assertThat(scmData.getChangesetDateDeltaList()).containsExactly(123456789L);
+    assertThat(scmData.getLineChangesetList()).containsExactly(1);
   }
 
   @Test
@@ -284,7 +304,13 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     long past = 150000L;
     String srcHash = "137f72c3708c6bd0de00a0e5a69c699b";
     String lineHashes = "137f72c3708c6bd0de00a0e5a69c699b";
-    String dataHash = "29f25900140c94db38035128cb6de6a2";
+    DbFileSources.Data sourceData = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder()
+        .setLine(1)
+        .setSource("line1")
+        .build())
+      .build();
+    String dataHash = FileSourceDto.hashSourceData(sourceData);
 
     dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
       .setProjectUuid(PROJECT_UUID)
@@ -292,12 +318,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
       .setSrcHash(srcHash)
       .setLineHashes(lineHashes)
       .setDataHash(dataHash)
-      .setSourceData(DbFileSources.Data.newBuilder()
-        .addLines(DbFileSources.Line.newBuilder()
-          .setLine(1)
-          .setSource("line1")
-          .build())
-        .build())
+      .setSourceData(sourceData)
+      .setScmData(DbFileSources.ScmData.newBuilder().addLineChangeset(0).build())
       .setCreatedAt(past)
       .setUpdatedAt(past));
     dbTester.getSession().commit();
@@ -316,6 +338,37 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
   }
 
+  @Test
+  public void update_sources_when_data_hash_is_hash_of_compressed_data() {
+    // data hash of sources persisted by previous versions
+    long past = 150000L;
+    DbFileSources.Data sourceData = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder()
+        .setLine(1)
+        .setSource("line1")
+        .build())
+      .build();
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE1_UUID)
+      .setSrcHash("137f72c3708c6bd0de00a0e5a69c699b")
+      .setLineHashes("137f72c3708c6bd0de00a0e5a69c699b")
+      .setDataHash(DigestUtils.md5Hex(FileSourceDto.encodeSourceData(sourceData)))
+      .setSourceData(sourceData)
+      .setScmData(DbFileSources.ScmData.newBuilder().addLineChangeset(0).build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past));
+    dbTester.getSession().commit();
+
+    initBasicReport(1);
+
+    underTest.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSourceByFileUuid(session, FILE1_UUID);
+    assertThat(fileSourceDto.getDataHash()).isEqualTo(FileSourceDto.hashSourceData(sourceData));
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(NOW);
+  }
+
   @Test
   public void update_sources_when_source_updated() {
     // Existing sources
@@ -387,6 +440,38 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getSrcHash()).isEqualTo("137f72c3708c6bd0de00a0e5a69c699b");
   }
 
+  @Test
+  public void update_sources_when_scm_data_is_missing() {
+    // Existing sources
+    long past = 150000L;
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE1_UUID)
+      .setDataType(Type.SOURCE)
+      .setSrcHash("137f72c3708c6bd0de00a0e5a69c699b")
+      .setLineHashes("137f72c3708c6bd0de00a0e5a69c699b")
+      .setDataHash("29f25900140c94db38035128cb6de6a2")
+      // SCM data is missing, update will be made
+      .setSourceData(DbFileSources.Data.newBuilder()
+        .addLines(DbFileSources.Line.newBuilder()
+          .setLine(1)
+          .setSource("line1")
+          .build())
+        .build())
+      .setCreatedAt(past)
+      .setUpdatedAt(past));
+    dbTester.getSession().commit();
+
+    initBasicReport(1);
+
+    underTest.execute();
+
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(1);
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSourceByFileUuid(session, FILE1_UUID);
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(NOW);
+    assertThat(fileSourceDto.getScmData().getLineChangesetList()).containsExactly(0);
+  }
+
   @Test
   public void update_sources_when_revision_is_missing() {
     // Existing sources
@@ -459,6 +544,40 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getRevision()).isNull();
   }
 
+  @Test
+  public void persist_sources_of_many_files() {
+    int numberOfFiles = 50;
+    ReportComponent.Builder module = ReportComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY");
+    for (int i = 1; i <= numberOfFiles; i++) {
+      int ref = 10 + i;
+      module.addChildren(ReportComponent.builder(Component.Type.FILE, ref).setUuid("FILE_" + i).setKey("MODULE_KEY:src/Foo" + i + ".java")
+        .setFileAttributes(new FileAttributes(false, null, 1)).build());
+      fileSourceRepository.addLine(ref, "line of file " + i);
+    }
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(module.build()).build());
+
+    underTest.execute();
+
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(numberOfFiles);
+    for (int i = 1; i <= numberOfFiles; i++) {
+      DbFileSources.Data data = dbClient.fileSourceDao().selectSourceByFileUuid(session, "FILE_" + i).getSourceData();
+      assertThat(data.getLines(0).getSource()).isEqualTo("line of file " + i);
+    }
+  }
+
+  @Test
+  public void fail_with_key_of_file_when_sources_can_not_be_computed() {
+    treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
+      ReportComponent.builder(Component.Type.FILE, FILE2_REF).setUuid(FILE2_UUID).setKey("MODULE_KEY:src/Bar.java")
+        .setFileAttributes(new FileAttributes(false, null, 1)).build())
+      .build());
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Cannot persist sources of MODULE_KEY:src/Bar.java");
+
+    underTest.execute();
+  }
+
   private void initBasicReport(int numberOfLines) {
     treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
       ReportComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY").addChildren(
@@ -46,14 +46,17 @@ import org.sonar.db.rule.RuleTesting;
 import org.sonar.scanner.protocol.output.ScannerReport;
 import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReaderRule;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
 import org.sonar.server.computation.task.projectanalysis.issue.RuleRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.issue.UpdateConflictResolver;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
 import org.sonar.server.util.cache.DiskCache;
 
 import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import static org.sonar.api.issue.Issue.RESOLUTION_FIXED;
@@ -80,6 +83,8 @@ public class PersistIssuesStepTest extends BaseStepTest {
   private DbClient dbClient = db.getDbClient();
   private System2 system2;
   private IssueCache issueCache;
+  private ChangedIssueKeysHolder changedIssueKeysHolder = new ChangedIssueKeysHolder();
+  private ComputationStepStatistics statistics = new ComputationStepStatistics();
   private ComputationStep step;
 
   @Override
@@ -94,7 +99,8 @@ public class PersistIssuesStepTest extends BaseStepTest {
     when(system2.now()).thenReturn(NOW);
     reportReader.setMetadata(ScannerReport.Metadata.getDefaultInstance());
 
-    step = new PersistIssuesStep(dbClient, system2, new UpdateConflictResolver(), new RuleRepositoryImpl(dbClient, analysisMetadataHolder), issueCache);
+    step = new PersistIssuesStep(dbClient, system2, new UpdateConflictResolver(), new RuleRepositoryImpl(dbClient, analysisMetadataHolder), issueCache,
+      changedIssueKeysHolder, statistics);
   }
 
   @After
@@ -236,6 +242,8 @@ public class PersistIssuesStepTest extends BaseStepTest {
     assertThat(result.getSeverity()).isEqualTo(BLOCKER);
     assertThat(result.getStatus()).isEqualTo(STATUS_OPEN);
     assertThat(result.getType()).isEqualTo(RuleType.BUG.getDbConstant());
+    assertThat(changedIssueKeysHolder.getKeys()).containsOnly("ISSUE");
+    assertThat(statistics.getCurrentStepItems()).containsOnly(entry("inserts", 1L), entry("updates", 0L));
   }
 
   @Test
@@ -263,6 +271,8 @@ public class PersistIssuesStepTest extends BaseStepTest {
     IssueDto issueReloaded = db.getDbClient().issueDao().selectByKey(db.getSession(), issue.getKey()).get();
     assertThat(issueReloaded.getStatus()).isEqualTo(STATUS_CLOSED);
     assertThat(issueReloaded.getResolution()).isEqualTo(RESOLUTION_FIXED);
+    assertThat(changedIssueKeysHolder.getKeys()).containsOnly(issue.getKey());
+    assertThat(statistics.getCurrentStepItems()).containsOnly(entry("inserts", 0L), entry("updates", 1L));
   }
 
   @Test
@@ -335,4 +345,82 @@ public class PersistIssuesStepTest extends BaseStepTest {
       .containsOnly(IssueChangeDto.TYPE_FIELD_CHANGE, "john", "technicalDebt=1", issue.getKey(), NOW);
   }
 
+  @Test
+  public void insert_more_issues_than_batch_size() {
+    RuleDefinitionDto rule = RuleTesting.newRule(RuleKey.of("xoo", "S01"));
+    db.rules().insert(rule);
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    DiskCache<DefaultIssue>.DiskAppender issueCacheAppender = issueCache.newAppender();
+    for (int i = 0; i < 450; i++) {
+      issueCacheAppender.append(new DefaultIssue()
+        .setKey("ISSUE_" + i)
+        .setType(RuleType.CODE_SMELL)
+        .setRuleKey(rule.getKey())
+        .setComponentUuid(file.uuid())
+        .setProjectUuid(project.uuid())
+        .setSeverity(BLOCKER)
+        .setStatus(STATUS_OPEN)
+        .setNew(true)
+        .addComment(new DefaultIssueComment()
+          .setKey("COMMENT_" + i)
+          .setIssueKey("ISSUE_" + i)
+          .setUserLogin("john")
+          .setMarkdownText("Some text")
+          .setCreatedAt(new Date(NOW))
+          .setNew(true)));
+    }
+    issueCacheAppender.close();
+
+    step.execute();
+
+    assertThat(db.countRowsOfTable("issues")).isEqualTo(450);
+    assertThat(db.countRowsOfTable("issue_changes")).isEqualTo(450);
+  }
+
+  @Test
+  public void resolve_conflict_when_issue_has_been_updated_since_it_has_been_selected() {
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    RuleDefinitionDto rule = db.rules().insert();
+    IssueDto issue = db.issues().insert(rule, project, file,
+      i -> i.setStatus(STATUS_OPEN)
+        .setResolution(null)
+        .setCreatedAt(NOW - 1_000_000_000L)
+        .setUpdatedAt(NOW - 1_000_000_000L));
+    IssueDto notConflictingIssue = db.issues().insert(rule, project, file,
+      i -> i.setStatus(STATUS_OPEN)
+        .setResolution(null)
+        .setCreatedAt(NOW - 1_000_000_000L)
+        .setUpdatedAt(NOW - 1_000_000_000L));
+    DiskCache<DefaultIssue>.DiskAppender issueCacheAppender = issueCache.newAppender();
+    issueCacheAppender.append(
+      issue.toDefaultIssue()
+        .setStatus(STATUS_CLOSED)
+        .setResolution(RESOLUTION_FIXED)
+        .setSelectedAt(NOW - 1_000_000_000L)
+        .setNew(false)
+        .setChanged(true));
+    issueCacheAppender.append(
+      notConflictingIssue.toDefaultIssue()
+        .setStatus(STATUS_CLOSED)
+        .setResolution(RESOLUTION_FIXED)
+        .setSelectedAt(NOW)
+        .setNew(false)
+        .setChanged(true))
+      .close();
+    // issue is assigned by a user during the analysis
+    db.getDbClient().issueDao().update(db.getSession(), issue.setAssignee("john").setUpdatedAt(NOW));
+    db.getSession().commit();
+
+    step.execute();
+
+    IssueDto issueReloaded = db.getDbClient().issueDao().selectByKey(db.getSession(), issue.getKey()).get();
+    assertThat(issueReloaded.getAssignee()).isEqualTo("john");
+    assertThat(issueReloaded.getStatus()).isEqualTo(STATUS_OPEN);
+    IssueDto notConflictingIssueReloaded = db.getDbClient().issueDao().selectByKey(db.getSession(), notConflictingIssue.getKey()).get();
+    assertThat(notConflictingIssueReloaded.getStatus()).isEqualTo(STATUS_CLOSED);
+    assertThat(notConflictingIssueReloaded.getResolution()).isEqualTo(RESOLUTION_FIXED);
+  }
+
 }
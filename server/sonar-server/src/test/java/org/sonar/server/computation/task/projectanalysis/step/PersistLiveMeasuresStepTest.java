@@ -140,6 +140,7 @@ public class PersistLiveMeasuresStepTest extends BaseStepTest {
     LiveMeasureDto measureOnFileInProject = insertMeasure("file-uuid", "project-uuid", INT_METRIC);
     // measure to be deleted because on a file that has been deleted
     LiveMeasureDto measureOnDeletedFileInProject = insertMeasure("deleted-file-in-project", "project-uuid", INT_METRIC);
+    LiveMeasureDto otherMeasureOnDeletedFileInProject = insertMeasure("deleted-file-in-project", "project-uuid", STRING_METRIC);
     // measure to be deleted because not computed anymore
     LiveMeasureDto otherMeasureOnFileInProject = insertMeasure("file-uuid", "project-uuid", STRING_METRIC);
     // measure in another project, not touched
@@ -152,10 +153,46 @@ public class PersistLiveMeasuresStepTest extends BaseStepTest {
 
     assertThatMeasureHasValue(measureOnFileInProject, 42);
     assertThatMeasureDoesNotExist(measureOnDeletedFileInProject);
+    assertThatMeasureDoesNotExist(otherMeasureOnDeletedFileInProject);
     assertThatMeasureDoesNotExist(otherMeasureOnFileInProject);
     assertThatMeasureHasValue(measureInOtherProject, (int)measureInOtherProject.getValue().doubleValue());
   }
 
+  @Test
+  public void delete_measures_of_unknown_metrics() {
+    prepareProject();
+    LiveMeasureDto measureOfUnknownMetric = newLiveMeasure()
+      .setComponentUuid("file-uuid")
+      .setProjectUuid("project-uuid")
+      .setMetricId(9_999);
+    dbClient.liveMeasureDao().insertOrUpdate(db.getSession(), measureOfUnknownMetric, null);
+    db.commit();
+
+    step().execute();
+
+    assertThat(db.countRowsOfTable("live_measures")).isEqualTo(0);
+  }
+
+  @Test
+  public void do_not_update_measures_which_did_not_change() {
+    prepareProject();
+    LiveMeasureDto unchangedMeasure = insertMeasure("project-uuid", "project-uuid", STRING_METRIC).setValue(null).setVariation(null).setData("project-value");
+    LiveMeasureDto changedMeasure = insertMeasure("file-uuid", "project-uuid", INT_METRIC);
+    dbClient.liveMeasureDao().insertOrUpdate(db.getSession(), unchangedMeasure, null);
+    db.commit();
+    db.executeUpdateSql("update live_measures set updated_at=1");
+
+    measureRepository.addRawMeasure(REF_1, STRING_METRIC.getKey(), newMeasureBuilder().create("project-value"));
+    measureRepository.addRawMeasure(REF_4, INT_METRIC.getKey(), newMeasureBuilder().create(42));
+
+    step().execute();
+
+    assertThat(db.countRowsOfTable("live_measures")).isEqualTo(2);
+    assertThat(selectUpdatedAt(unchangedMeasure)).isEqualTo(1L);
+    assertThat(selectUpdatedAt(changedMeasure)).isGreaterThan(1L);
+    assertThatMeasureHasValue(changedMeasure, 42);
+  }
+
   @Test
   public void do_not_persist_file_measures_with_best_value() {
     prepareProject();
@@ -214,6 +251,11 @@ public class PersistLiveMeasuresStepTest extends BaseStepTest {
     assertThat(persisted.get().getValue()).isEqualTo((double) expectedValue);
   }
 
+  private long selectUpdatedAt(LiveMeasureDto template) {
+    return (long) db.selectFirst("select updated_at as \"updatedAt\" from live_measures where component_uuid='" + template.getComponentUuid()
+      + "' and metric_id=" + template.getMetricId()).get("updatedAt");
+  }
+
   private void assertThatMeasureDoesNotExist(LiveMeasureDto template) {
     assertThat(dbClient.liveMeasureDao().selectMeasure(db.getSession(),
       template.getComponentUuid(), metricRepository.getById(template.getMetricId()).getKey()))
@@ -0,0 +1,98 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import com.google.common.base.Strings;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.core.util.SequenceUuidFactory;
+import org.sonar.db.DbTester;
+import org.sonar.db.ce.CeTaskCharacteristicDto;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.computation.task.step.ComputationStepStatistics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.sonar.db.ce.CeTaskCharacteristicDto.STEP_DURATIONS_KEY;
+
+public class PersistStepDurationsStepTest extends BaseStepTest {
+
+  private static final String TASK_UUID = "TASK_1";
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+
+  private CeTask ceTask = new CeTask.Builder().setOrganizationUuid("org1").setType(CeTaskTypes.REPORT).setUuid(TASK_UUID).build();
+  private ComputationStepStatistics statistics = new ComputationStepStatistics();
+  private PersistStepDurationsStep underTest = new PersistStepDurationsStep(db.getDbClient(), new SequenceUuidFactory(), ceTask, statistics);
+
+  @Test
+  public void persist_durations_of_steps_as_task_characteristic() {
+    statistics.stepFinished("Extract report", 12);
+    statistics.stepFinished("Persist issues", 340);
+
+    underTest.execute();
+
+    assertThat(selectCharacteristics())
+      .extracting(CeTaskCharacteristicDto::getKey, CeTaskCharacteristicDto::getValue)
+      .containsOnly(tuple(STEP_DURATIONS_KEY, "Extract report=12;Persist issues=340"));
+  }
+
+  @Test
+  public void do_nothing_if_no_steps() {
+    underTest.execute();
+
+    assertThat(selectCharacteristics()).isEmpty();
+  }
+
+  @Test
+  public void ignore_steps_which_do_not_fit_in_characteristic() {
+    String longStep = Strings.repeat("a", CeTaskCharacteristicDto.MAX_VALUE_LENGTH - 3);
+    statistics.stepFinished(longStep, 10);
+    statistics.stepFinished("Persist issues", 340);
+
+    underTest.execute();
+
+    assertThat(selectCharacteristics()).extracting(CeTaskCharacteristicDto::getValue).containsOnly(longStep + "=10");
+  }
+
+  @Test
+  public void durations_are_persisted_only_once() {
+    statistics.stepFinished("Extract report", 12);
+
+    underTest.execute();
+    underTest.execute();
+
+    assertThat(selectCharacteristics()).hasSize(1);
+  }
+
+  private List<CeTaskCharacteristicDto> selectCharacteristics() {
+    return db.getDbClient().ceTaskCharacteristicsDao().selectByTaskUuid(db.getSession(), TASK_UUID);
+  }
+
+  @Override
+  protected ComputationStep step() {
+    return underTest;
+  }
+}
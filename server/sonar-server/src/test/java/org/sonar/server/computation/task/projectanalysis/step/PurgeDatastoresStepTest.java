@@ -24,6 +24,7 @@ import com.google.common.collect.FluentIterable;
 import com.tngtech.java.junit.dataprovider.DataProvider;
 import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -31,8 +32,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.sonar.api.config.Configuration;
 import org.sonar.api.config.internal.MapSettings;
+import org.sonar.ce.queue.CeQueue;
+import org.sonar.ce.queue.CeTaskSubmit;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.ce.CeQueueDto;
+import org.sonar.db.ce.CeTaskTypes;
 import org.sonar.db.purge.IdUuidPair;
 import org.sonar.server.computation.dbcleaner.ProjectCleaner;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
@@ -49,8 +54,10 @@ import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyList;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -71,8 +78,16 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
   private ConfigurationRepository settingsRepository = mock(ConfigurationRepository.class);
   private MutableDisabledComponentsHolder disabledComponentsHolder = mock(MutableDisabledComponentsHolder.class, RETURNS_DEEP_STUBS);
 
-  private PurgeDatastoresStep underTest = new PurgeDatastoresStep(mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS), projectCleaner, dbIdsRepository, treeRootHolder,
-    settingsRepository, disabledComponentsHolder);
+  private DbClient dbClient = mock(DbClient.class, Mockito.RETURNS_DEEP_STUBS);
+  private CeQueue ceQueue = mock(CeQueue.class);
+
+  private PurgeDatastoresStep underTest = new PurgeDatastoresStep(dbClient, projectCleaner, dbIdsRepository, treeRootHolder,
+    settingsRepository, disabledComponentsHolder, ceQueue);
+
+  @Before
+  public void setUp() {
+    when(ceQueue.prepareSubmit()).thenReturn(new CeTaskSubmit.Builder("TASK_UUID"));
+  }
 
   @Test
   public void call_purge_method_of_the_purge_task_for_project() {
@@ -88,6 +103,40 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
     verify_call_purge_method_of_the_purge_task(project);
   }
 
+  @Test
+  public void submit_purge_task_for_project() {
+    Component project = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+
+    verify_call_purge_method_of_the_purge_task(project);
+
+    ArgumentCaptor<CeTaskSubmit> submit = ArgumentCaptor.forClass(CeTaskSubmit.class);
+    verify(ceQueue).submit(submit.capture());
+    assertThat(submit.getValue().getType()).isEqualTo(CeTaskTypes.PROJECT_PURGE);
+    assertThat(submit.getValue().getComponentUuid()).isEqualTo(PROJECT_UUID);
+  }
+
+  @Test
+  public void do_not_submit_purge_task_if_one_is_already_pending() {
+    Component project = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    when(dbClient.ceQueueDao().selectByComponentUuid(any(DbSession.class), eq(PROJECT_UUID))).thenReturn(asList(
+      new CeQueueDto().setTaskType(CeTaskTypes.PROJECT_PURGE).setStatus(CeQueueDto.Status.PENDING)));
+
+    verify_call_purge_method_of_the_purge_task(project);
+
+    verify(ceQueue, never()).submit(any(CeTaskSubmit.class));
+  }
+
+  @Test
+  public void submit_purge_task_if_the_previous_one_is_in_progress() {
+    Component project = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).build();
+    when(dbClient.ceQueueDao().selectByComponentUuid(any(DbSession.class), eq(PROJECT_UUID))).thenReturn(asList(
+      new CeQueueDto().setTaskType(CeTaskTypes.PROJECT_PURGE).setStatus(CeQueueDto.Status.IN_PROGRESS)));
+
+    verify_call_purge_method_of_the_purge_task(project);
+
+    verify(ceQueue).submit(any(CeTaskSubmit.class));
+  }
+
   @DataProvider
   public static Object[][] nonRootProjectComponentTypes() {
     return dataproviderFromComponentTypeValues(new Predicate<Component.Type>() {
@@ -129,7 +178,7 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
 
     underTest.execute();
 
-    verifyNoMoreInteractions(projectCleaner);
+    verifyNoMoreInteractions(projectCleaner, ceQueue);
   }
 
   private void verify_call_purge_method_of_the_purge_task(Component project) {
@@ -140,7 +189,7 @@ public class PurgeDatastoresStepTest extends BaseStepTest {
     underTest.execute();
 
     ArgumentCaptor<IdUuidPair> argumentCaptor = ArgumentCaptor.forClass(IdUuidPair.class);
-    verify(projectCleaner).purge(any(DbSession.class), argumentCaptor.capture(), any(Configuration.class), anyList());
+    verify(projectCleaner).purgeDisabledComponents(any(DbSession.class), argumentCaptor.capture(), any(Configuration.class), anyList());
     assertThat(argumentCaptor.getValue().getId()).isEqualTo(PROJECT_ID);
     assertThat(argumentCaptor.getValue().getUuid()).isEqualTo(PROJECT_UUID);
   }
@@ -37,6 +37,9 @@ import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.AbstractLanguage;
 import org.sonar.api.resources.Language;
 import org.sonar.core.util.UtcDateUtils;
+import org.sonar.db.component.BranchType;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
+import org.sonar.server.computation.task.projectanalysis.analysis.Branch;
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
@@ -65,6 +68,8 @@ import static org.sonar.api.utils.DateUtils.parseDateTime;
 public class QualityProfileEventsStepTest {
   @Rule
   public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+  @Rule
+  public AnalysisMetadataHolderRule analysisMetadataHolder = new AnalysisMetadataHolderRule();
 
   private static final String QP_NAME_1 = "qp_1";
   private static final String QP_NAME_2 = "qp_2";
@@ -80,7 +85,8 @@ public class QualityProfileEventsStepTest {
 
   private Metric qualityProfileMetric = mock(Metric.class);
 
-  private QualityProfileEventsStep underTest = new QualityProfileEventsStep(treeRootHolder, metricRepository, measureRepository, languageRepository, eventRepository);
+  private QualityProfileEventsStep underTest = new QualityProfileEventsStep(treeRootHolder, metricRepository, measureRepository, languageRepository, eventRepository,
+    analysisMetadataHolder);
 
   @Before
   public void setUp() {
@@ -88,6 +94,17 @@ public class QualityProfileEventsStepTest {
     treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid("uuid").setKey("key").build());
   }
 
+  @Test
+  public void no_event_on_short_living_branch() {
+    Branch branch = mock(Branch.class);
+    when(branch.getType()).thenReturn(BranchType.SHORT);
+    analysisMetadataHolder.setBranch(branch);
+
+    underTest.execute();
+
+    verifyNoMoreInteractions(measureRepository, eventRepository);
+  }
+
   @Test
   public void no_event_if_no_base_measure() {
     when(measureRepository.getBaseMeasure(treeRootHolder.getRoot(), qualityProfileMetric)).thenReturn(Optional.absent());
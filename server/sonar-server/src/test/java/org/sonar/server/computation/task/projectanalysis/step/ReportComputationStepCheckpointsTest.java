@@ -0,0 +1,158 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
+import org.sonar.ce.queue.CeTask;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.DbClient;
+import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.server.computation.task.container.TaskContainer;
+import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.filesystem.TaskWorkingDirectory;
+import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
+import org.sonar.server.computation.task.projectanalysis.measure.Measure;
+import org.sonar.server.computation.task.projectanalysis.measure.MeasureRepositoryImpl;
+import org.sonar.server.computation.task.projectanalysis.metric.Metric;
+import org.sonar.server.computation.task.projectanalysis.metric.MetricImpl;
+import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
+import org.sonar.server.computation.task.projectanalysis.metric.ReportMetricValidator;
+import org.sonar.server.computation.task.projectanalysis.period.PeriodHolder;
+import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.platform.ServerFileSystem;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReportComputationStepCheckpointsTest {
+
+  private static final Metric METRIC = new MetricImpl(1, "ncloc", "ncloc", Metric.MetricType.INT);
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+
+  private ServerFileSystem fs = mock(ServerFileSystem.class);
+  private CeTask ceTask = new CeTask.Builder().setOrganizationUuid("org1").setType(CeTaskTypes.REPORT).setUuid("TASK_1").build();
+  private MetricRepository metricRepository = mock(MetricRepository.class);
+  private Component project = ReportComponent.builder(Component.Type.PROJECT, 1).build();
+  private MeasureRepositoryImpl measureRepository = newMeasureRepository();
+  private IssueCache issueCache;
+  private ReportComputationStepCheckpoints underTest;
+
+  @Before
+  public void setUp() throws Exception {
+    when(fs.getDataDir()).thenReturn(temp.newFolder());
+    when(metricRepository.getByKey(METRIC.getKey())).thenReturn(METRIC);
+    treeRootHolder.setRoot(project);
+    issueCache = new IssueCache(temp.newFile(), System2.INSTANCE);
+    underTest = new ReportComputationStepCheckpoints(new TaskWorkingDirectory(fs, ceTask), treeRootHolder, measureRepository, issueCache);
+  }
+
+  @Test
+  public void resumable_steps_are_in_order_of_execution() {
+    List<Class<? extends ComputationStep>> steps = new ReportComputationSteps(mock(TaskContainer.class)).orderedStepClasses();
+
+    assertThat(steps.stream().filter(ReportComputationStepCheckpoints.RESUMABLE_STEPS::contains).collect(Collectors.toList()))
+      .isEqualTo(ReportComputationStepCheckpoints.RESUMABLE_STEPS);
+  }
+
+  @Test
+  public void nothing_is_restored_when_task_is_executed_for_the_first_time() {
+    assertThat(underTest.restore(mock(SizeMeasuresStep.class))).isFalse();
+    assertThat(underTest.restore(newComputeMeasureVariationsStep())).isFalse();
+    assertThat(underTest.restore(mock(ExtractReportStep.class))).isFalse();
+  }
+
+  @Test
+  public void restarted_task_skips_resumable_steps_completed_by_previous_execution_and_restores_their_results() throws Exception {
+    measureRepository.add(project, METRIC, Measure.newMeasureBuilder().create(10));
+    underTest.checkpoint(mock(SizeMeasuresStep.class));
+    issueCache.newAppender().append(new DefaultIssue().setKey("ISSUE_1")).close();
+    underTest.checkpoint(mock(ExecuteVisitorsStep.class));
+    // computation of variations is interrupted
+    underTest.checkpoint(mock(PersistIssuesStep.class));
+
+    MeasureRepositoryImpl restartedMeasureRepository = newMeasureRepository();
+    IssueCache restartedIssueCache = new IssueCache(temp.newFile(), System2.INSTANCE);
+    ReportComputationStepCheckpoints restarted = new ReportComputationStepCheckpoints(new TaskWorkingDirectory(fs, ceTask), treeRootHolder,
+      restartedMeasureRepository, restartedIssueCache);
+
+    assertThat(restarted.restore(mock(ExtractReportStep.class))).isFalse();
+    assertThat(restarted.restore(mock(SizeMeasuresStep.class))).isTrue();
+    assertThat(restarted.restore(mock(ComplexityMeasuresStep.class))).isTrue();
+    assertThat(restartedMeasureRepository.getRawMeasure(project, METRIC).isPresent()).isFalse();
+    assertThat(restarted.restore(mock(LoadMeasureComputersStep.class))).isFalse();
+    assertThat(restarted.restore(mock(ExecuteVisitorsStep.class))).isTrue();
+    assertThat(restartedMeasureRepository.getRawMeasure(project, METRIC).get().getIntValue()).isEqualTo(10);
+    try (CloseableIterator<DefaultIssue> issues = restartedIssueCache.traverse()) {
+      assertThat(issues).extracting(DefaultIssue::key).containsExactly("ISSUE_1");
+    }
+    assertThat(restarted.restore(newComputeMeasureVariationsStep())).isFalse();
+    assertThat(restarted.restore(mock(PersistIssuesStep.class))).isFalse();
+  }
+
+  @Test
+  public void checkpoint_of_previous_step_is_deleted() {
+    TaskWorkingDirectory workingDirectory = new TaskWorkingDirectory(fs, ceTask);
+    underTest.checkpoint(mock(ComplexityMeasuresStep.class));
+    assertThat(workingDirectory.hasCheckpoint("step-ComplexityMeasuresStep")).isTrue();
+
+    underTest.checkpoint(mock(ExecuteVisitorsStep.class));
+
+    assertThat(workingDirectory.hasCheckpoint("step-ComplexityMeasuresStep")).isFalse();
+    assertThat(workingDirectory.hasCheckpoint("step-ExecuteVisitorsStep")).isTrue();
+    assertThat(new File(workingDirectory.getDir("step-ExecuteVisitorsStep"), "measures.dat")).isFile();
+    assertThat(new File(workingDirectory.getDir("step-ExecuteVisitorsStep"), "issues.dat")).isFile();
+  }
+
+  @Test
+  public void checkpoints_of_all_previous_steps_are_deleted_when_steps_are_skipped() {
+    TaskWorkingDirectory workingDirectory = new TaskWorkingDirectory(fs, ceTask);
+    underTest.checkpoint(mock(CommentMeasuresStep.class));
+
+    // CustomMeasuresCopyStep is skipped on short-living branches
+    underTest.checkpoint(mock(DuplicationMeasuresStep.class));
+
+    assertThat(workingDirectory.hasCheckpoint("step-CommentMeasuresStep")).isFalse();
+    assertThat(workingDirectory.hasCheckpoint("step-DuplicationMeasuresStep")).isTrue();
+  }
+
+  private ComputeMeasureVariationsStep newComputeMeasureVariationsStep() {
+    return new ComputeMeasureVariationsStep(mock(DbClient.class), treeRootHolder, mock(PeriodHolder.class), metricRepository, measureRepository);
+  }
+
+  private MeasureRepositoryImpl newMeasureRepository() {
+    return new MeasureRepositoryImpl(mock(DbClient.class), mock(BatchReportReader.class), metricRepository, mock(ReportMetricValidator.class));
+  }
+}
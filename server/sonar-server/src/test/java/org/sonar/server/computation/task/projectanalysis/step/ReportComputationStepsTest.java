@@ -20,19 +20,28 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.collect.Lists;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.core.platform.ContainerPopulator;
+import org.sonar.db.component.BranchType;
 import org.sonar.server.computation.task.container.TaskContainer;
 import org.sonar.server.computation.task.container.TaskContainerImpl;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
+import org.sonar.server.computation.task.projectanalysis.analysis.Branch;
+import org.sonar.server.computation.task.step.ComputationStep;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class ReportComputationStepsTest {
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  public AnalysisMetadataHolderRule analysisMetadataHolder = new AnalysisMetadataHolderRule();
 
   @Test
   public void instances_throws_ISE_if_container_does_not_have_any_step() {
@@ -69,4 +78,34 @@ public class ReportComputationStepsTest {
 
     Lists.newArrayList(new ReportComputationSteps(computeEngineContainer).instances());
   }
+
+  @Test
+  public void instances_skip_irrelevant_steps_on_short_living_branch() {
+    List<ComputationStep> steps = Lists.newArrayList(newReportComputationStepsOfAllSteps(BranchType.SHORT).instances());
+
+    assertThat(steps).hasSize(ReportComputationSteps.STEPS.size() - ReportComputationSteps.SKIPPED_ON_SHORT_LIVING_BRANCH.size());
+    assertThat(steps).noneMatch(step -> step instanceof CustomMeasuresCopyStep);
+    assertThat(steps).noneMatch(step -> step instanceof QualityGateEventsStep);
+    assertThat(steps).noneMatch(step -> step instanceof LoadCrossProjectDuplicationsRepositoryStep);
+  }
+
+  @Test
+  public void instances_include_all_steps_on_long_living_branch() {
+    List<ComputationStep> steps = Lists.newArrayList(newReportComputationStepsOfAllSteps(BranchType.LONG).instances());
+
+    assertThat(steps).hasSize(ReportComputationSteps.STEPS.size());
+  }
+
+  private ReportComputationSteps newReportComputationStepsOfAllSteps(BranchType branchType) {
+    Branch branch = mock(Branch.class);
+    when(branch.getType()).thenReturn(branchType);
+    analysisMetadataHolder.setBranch(branch);
+    ComponentContainer componentContainer = new ComponentContainer();
+    componentContainer.addSingleton(analysisMetadataHolder);
+    ReportComputationSteps.STEPS.forEach(stepClass -> componentContainer.addSingleton(mock(stepClass)));
+    TaskContainerImpl computeEngineContainer = new TaskContainerImpl(componentContainer, container -> {
+      // do nothing
+    });
+    return new ReportComputationSteps(computeEngineContainer);
+  }
 }
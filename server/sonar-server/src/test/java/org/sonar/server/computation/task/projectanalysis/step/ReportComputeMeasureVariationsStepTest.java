@@ -19,6 +19,8 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -144,6 +146,52 @@ public class ReportComputeMeasureVariationsStepTest {
     assertThat(measureRepository.getRawMeasure(directory, ISSUES_METRIC).get().getVariation()).isEqualTo(10d);
   }
 
+  @Test
+  public void set_variation_on_many_components_from_measures_of_period_analysis_only() {
+    SnapshotDto period1Snapshot = newAnalysis(project);
+    SnapshotDto otherSnapshot = newAnalysis(project).setLast(false);
+    dbClient.snapshotDao().insert(session, period1Snapshot, otherSnapshot);
+    dbClient.measureDao().insert(session, newMeasureDto(ISSUES_METRIC.getId(), PROJECT_UUID, period1Snapshot.getUuid(), 60d));
+    dbClient.measureDao().insert(session, newMeasureDto(ISSUES_METRIC.getId(), PROJECT_UUID, otherSnapshot.getUuid(), 1_000d));
+    List<Component> directories = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      ComponentDto directoryDto = ComponentTesting.newDirectory(project, "dir" + i);
+      dbClient.componentDao().insert(session, directoryDto);
+      if (i % 2 == 0) {
+        dbClient.measureDao().insert(session, newMeasureDto(ISSUES_METRIC.getId(), directoryDto.uuid(), period1Snapshot.getUuid(), i));
+        dbClient.measureDao().insert(session, newMeasureDto(DEBT_METRIC.getId(), directoryDto.uuid(), period1Snapshot.getUuid(), 10d * i));
+      }
+      directories.add(ReportComponent.builder(Component.Type.DIRECTORY, 10 + i).setUuid(directoryDto.uuid()).build());
+    }
+    ComponentDto fileDto = ComponentTesting.newFileDto(project, null);
+    dbClient.componentDao().insert(session, fileDto);
+    dbClient.measureDao().insert(session, newMeasureDto(ISSUES_METRIC.getId(), fileDto.uuid(), period1Snapshot.getUuid(), 5d));
+    session.commit();
+    periodsHolder.setPeriod(newPeriod(period1Snapshot));
+
+    Component file = ReportComponent.builder(Component.Type.FILE, 100).setUuid(fileDto.uuid()).build();
+    Component root = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).addChildren(directories.toArray(new Component[0])).addChildren(file).build();
+    treeRootHolder.setRoot(root);
+    addRawMeasure(root, ISSUES_METRIC, newMeasureBuilder().create(80, null));
+    addRawMeasure(file, ISSUES_METRIC, newMeasureBuilder().create(8, null));
+    for (Component directory : directories) {
+      addRawMeasure(directory, ISSUES_METRIC, newMeasureBuilder().create(20, null));
+      addRawMeasure(directory, DEBT_METRIC, newMeasureBuilder().create(100L, null));
+    }
+
+    underTest.execute();
+
+    assertThat(measureRepository.getRawMeasure(root, ISSUES_METRIC).get().getVariation()).isEqualTo(20d);
+    assertThat(measureRepository.getRawMeasure(file, ISSUES_METRIC).get().hasVariation()).isFalse();
+    for (int i = 0; i < 10; i++) {
+      Component directory = directories.get(i);
+      double pastIssues = i % 2 == 0 ? i : 0d;
+      double pastDebt = i % 2 == 0 ? (10d * i) : 0d;
+      assertThat(measureRepository.getRawMeasure(directory, ISSUES_METRIC).get().getVariation()).isEqualTo(20d - pastIssues);
+      assertThat(measureRepository.getRawMeasure(directory, DEBT_METRIC).get().getVariation()).isEqualTo(100d - pastDebt);
+    }
+  }
+
   @Test
   public void set_zero_variation_when_no_change() {
     // Project
@@ -48,6 +48,7 @@ import org.sonar.server.computation.task.projectanalysis.component.MutableDbIdsR
 import org.sonar.server.computation.task.projectanalysis.component.MutableDisabledComponentsHolder;
 import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.issue.ChangedIssueKeysHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 import static org.apache.commons.lang.StringUtils.isEmpty;
@@ -90,6 +91,7 @@ public class ReportPersistComponentsStepTest extends BaseStepTest {
   private MutableDisabledComponentsHolder disabledComponentsHolder = mock(MutableDisabledComponentsHolder.class, RETURNS_DEEP_STUBS);
   private PersistComponentsStep underTest;
   private BranchPersister branchPersister;
+  private ChangedIssueKeysHolder changedIssueKeysHolder = new ChangedIssueKeysHolder();
 
   @Before
   public void setup() throws Exception {
@@ -98,7 +100,8 @@ public class ReportPersistComponentsStepTest extends BaseStepTest {
 
     db.organizations().insertForUuid(ORGANIZATION_UUID);
     branchPersister = mock(BranchPersister.class);
-    underTest = new PersistComponentsStep(dbClient, treeRootHolder, dbIdsRepository, system2, disabledComponentsHolder, analysisMetadataHolder, branchPersister);
+    underTest = new PersistComponentsStep(dbClient, treeRootHolder, dbIdsRepository, system2, disabledComponentsHolder, analysisMetadataHolder, branchPersister,
+      changedIssueKeysHolder);
   }
 
   @Override
@@ -597,6 +600,7 @@ public class ReportPersistComponentsStepTest extends BaseStepTest {
     underTest.execute();
 
     assertThat(dbClient.componentDao().selectByKey(db.getSession(), MODULE_KEY).get().path()).isEqualTo("path");
+    assertThat(changedIssueKeysHolder.getMovedComponentUuids()).containsOnly("BCDE");
 
     // commit the functional transaction
     dbClient.componentDao().applyBChangesForRootComponentUuid(db.getSession(), project.uuid());
@@ -642,6 +646,9 @@ public class ReportPersistComponentsStepTest extends BaseStepTest {
 
     underTest.execute();
 
+    // issues of moved components must be indexed again
+    assertThat(changedIssueKeysHolder.getMovedComponentUuids()).contains("BCDE", "CDEF", "DEFG");
+
     // commit the functional transaction
     dbClient.componentDao().applyBChangesForRootComponentUuid(db.getSession(), project.uuid());
     db.commit();
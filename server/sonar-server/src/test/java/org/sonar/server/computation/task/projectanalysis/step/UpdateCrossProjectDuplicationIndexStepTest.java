@@ -0,0 +1,70 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.step;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.db.duplication.IndexedDuplicationUnitDto;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolderRule;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationBlocksHolder;
+import org.sonar.server.computation.task.projectanalysis.duplication.CrossProjectDuplicationIndex;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class UpdateCrossProjectDuplicationIndexStepTest {
+
+  private static final String ANALYSIS_UUID = "analysis uuid";
+  private static final Component PROJECT = ReportComponent.builder(Component.Type.PROJECT, 1).setUuid("project uuid").build();
+
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule().setRoot(PROJECT);
+  @Rule
+  public AnalysisMetadataHolderRule analysisMetadataHolder = new AnalysisMetadataHolderRule().setUuid(ANALYSIS_UUID);
+
+  private CrossProjectDuplicationBlocksHolder blocksHolder = new CrossProjectDuplicationBlocksHolder();
+  private CrossProjectDuplicationIndex index = mock(CrossProjectDuplicationIndex.class);
+
+  private UpdateCrossProjectDuplicationIndexStep underTest = new UpdateCrossProjectDuplicationIndexStep(treeRootHolder, analysisMetadataHolder,
+    blocksHolder, index);
+
+  @Test
+  public void replace_blocks_of_project_in_index() {
+    List<IndexedDuplicationUnitDto> blocks = singletonList(new IndexedDuplicationUnitDto().setHash("a8998353e96320ec"));
+    blocksHolder.setBlocks("project uuid", blocks);
+
+    underTest.execute();
+
+    verify(index).replace("project uuid", ANALYSIS_UUID, blocks);
+  }
+
+  @Test
+  public void remove_blocks_of_project_from_index_if_no_blocks_have_been_persisted() {
+    underTest.execute();
+
+    verify(index).replace("project uuid", ANALYSIS_UUID, emptyList());
+  }
+}
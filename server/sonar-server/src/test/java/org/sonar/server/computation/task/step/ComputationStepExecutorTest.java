@@ -30,11 +30,15 @@ import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.server.computation.task.ChangeLogLevel;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.fail;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -115,6 +119,62 @@ public class ComputationStepExecutorTest {
     }
   }
 
+  @Test
+  public void execute_records_duration_and_items_of_each_ComputationStep() {
+    ComputationStepStatistics statistics = new ComputationStepStatistics();
+    ComputationStepHistograms histograms = new ComputationStepHistograms();
+    doAnswer(invocation -> statistics.add("inserts", 12).add("updates", 3)).when(computationStep1).execute();
+
+    try (ChangeLogLevel executor = new ChangeLogLevel(ComputationStepExecutor.class, LoggerLevel.DEBUG)) {
+      new ComputationStepExecutor(mockComputationSteps(computationStep1, computationStep2), listener, statistics, histograms)
+        .execute();
+    }
+
+    assertThat(statistics.getSteps()).extracting(ComputationStepStatistics.StepStatistics::getStep).containsExactly("step1", "step2");
+    assertThat(statistics.getSteps().get(0).getItems()).containsOnly(entry("inserts", 12L), entry("updates", 3L));
+    assertThat(statistics.getSteps().get(1).getItems()).isEmpty();
+    assertThat(histograms.getSummaries()).extracting(ComputationStepHistograms.Summary::getStep, ComputationStepHistograms.Summary::getCount)
+      .containsExactly(tuple("step1", 1L), tuple("step2", 1L));
+    assertThat(logTester.logs(LoggerLevel.DEBUG).get(0)).startsWith("step1 | time=").endsWith(" | inserts=12 | updates=3");
+  }
+
+  @Test
+  public void execute_skips_ComputationSteps_restored_from_checkpoints_and_checkpoints_the_other_ones() {
+    ComputationStepCheckpoints checkpoints = mock(ComputationStepCheckpoints.class);
+    when(checkpoints.restore(computationStep1)).thenReturn(true);
+
+    new ComputationStepExecutor(mockComputationSteps(computationStep1, computationStep2), listener, null, null, checkpoints)
+      .execute();
+
+    InOrder inOrder = inOrder(checkpoints, computationStep1, computationStep2);
+    inOrder.verify(checkpoints).restore(computationStep1);
+    inOrder.verify(checkpoints).restore(computationStep2);
+    inOrder.verify(computationStep2).execute();
+    inOrder.verify(checkpoints).checkpoint(computationStep2);
+    inOrder.verifyNoMoreInteractions();
+    verify(computationStep1, never()).execute();
+    verify(checkpoints, never()).checkpoint(computationStep1);
+    assertThat(logTester.logs(LoggerLevel.INFO)).containsOnly("step1 | restored from checkpoint");
+    verify(listener).finished(true);
+  }
+
+  @Test
+  public void execute_does_not_checkpoint_failed_ComputationStep() {
+    ComputationStepCheckpoints checkpoints = mock(ComputationStepCheckpoints.class);
+    RuntimeException toBeThrown = new RuntimeException("simulating failing execute Step method");
+    doThrow(toBeThrown).when(computationStep2).execute();
+
+    try {
+      new ComputationStepExecutor(mockComputationSteps(computationStep1, computationStep2), listener, null, null, checkpoints)
+        .execute();
+      fail("exception toBeThrown should have been raised");
+    } catch (RuntimeException e) {
+      assertThat(e).isSameAs(toBeThrown);
+      verify(checkpoints).checkpoint(computationStep1);
+      verify(checkpoints, never()).checkpoint(computationStep2);
+    }
+  }
+
   @Test
   public void execute_calls_listener_finished_method_with_all_step_runs() {
     new ComputationStepExecutor(mockComputationSteps(computationStep1, computationStep2), listener)
@@ -0,0 +1,88 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.Test;
+import org.sonar.server.computation.task.step.ComputationStepHistograms.Summary;
+import org.sonar.server.computation.task.step.ComputationStepStatistics.StepStatistics;
+
+import static java.util.Collections.emptyMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.sonar.server.computation.task.step.ComputationStepHistograms.RESERVOIR_SIZE;
+
+public class ComputationStepHistogramsTest {
+
+  private ComputationStepHistograms underTest = new ComputationStepHistograms();
+
+  @Test
+  public void no_summaries_by_default() {
+    assertThat(underTest.getSummaries()).isEmpty();
+  }
+
+  @Test
+  public void compute_percentiles_of_durations() {
+    for (int i = 1; i <= 100; i++) {
+      underTest.add(new StepStatistics("step1", i, emptyMap()));
+    }
+    underTest.add(new StepStatistics("step2", 7, emptyMap()));
+
+    assertThat(underTest.getSummaries()).hasSize(2);
+    Summary summary = underTest.getSummaries().get(0);
+    assertThat(summary.getStep()).isEqualTo("step1");
+    assertThat(summary.getCount()).isEqualTo(100);
+    assertThat(summary.getTotalDurationMs()).isEqualTo(5_050);
+    assertThat(summary.getP50DurationMs()).isEqualTo(50);
+    assertThat(summary.getP95DurationMs()).isEqualTo(95);
+    assertThat(summary.getP99DurationMs()).isEqualTo(99);
+
+    summary = underTest.getSummaries().get(1);
+    assertThat(summary.getStep()).isEqualTo("step2");
+    assertThat(summary.getCount()).isEqualTo(1);
+    assertThat(summary.getP50DurationMs()).isEqualTo(7);
+    assertThat(summary.getP99DurationMs()).isEqualTo(7);
+  }
+
+  @Test
+  public void compute_percentiles_on_last_executions_only() {
+    for (int i = 0; i < RESERVOIR_SIZE; i++) {
+      underTest.add(new StepStatistics("step", 1_000, emptyMap()));
+    }
+    for (int i = 0; i < RESERVOIR_SIZE; i++) {
+      underTest.add(new StepStatistics("step", 10, emptyMap()));
+    }
+
+    Summary summary = underTest.getSummaries().get(0);
+    assertThat(summary.getCount()).isEqualTo(2 * RESERVOIR_SIZE);
+    assertThat(summary.getTotalDurationMs()).isEqualTo(1_010L * RESERVOIR_SIZE);
+    assertThat(summary.getP99DurationMs()).isEqualTo(10);
+  }
+
+  @Test
+  public void sum_items_of_executions() {
+    underTest.add(new StepStatistics("step", 10, ImmutableMap.of("inserts", 5L)));
+    underTest.add(new StepStatistics("step", 10, ImmutableMap.of("inserts", 2L, "updates", 3L)));
+
+    Summary summary = underTest.getSummaries().get(0);
+    assertThat(summary.getItems()).containsOnly(entry("inserts", 7L), entry("updates", 3L));
+    assertThat(summary.toString()).isEqualTo("step | count=2 | p50=10ms | p95=10ms | p99=10ms | total=20ms | inserts=7 | updates=3");
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.step;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class ComputationStepStatisticsTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private ComputationStepStatistics underTest = new ComputationStepStatistics();
+
+  @Test
+  public void items_are_added_to_the_current_step() {
+    underTest.add("inserts", 2).add("inserts", 3).add("updates", 1);
+    underTest.stepFinished("step1", 20);
+    underTest.stepFinished("step2", 30);
+
+    assertThat(underTest.getSteps()).hasSize(2);
+    assertThat(underTest.getSteps().get(0).getStep()).isEqualTo("step1");
+    assertThat(underTest.getSteps().get(0).getDurationMs()).isEqualTo(20);
+    assertThat(underTest.getSteps().get(0).getItems()).containsOnly(entry("inserts", 5L), entry("updates", 1L));
+    assertThat(underTest.getSteps().get(1).getStep()).isEqualTo("step2");
+    assertThat(underTest.getSteps().get(1).getItems()).isEmpty();
+    assertThat(underTest.getCurrentStepItems()).isEmpty();
+  }
+
+  @Test
+  public void fail_if_count_is_negative() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Count of inserts can't be negative: -1");
+
+    underTest.add("inserts", -1);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.action.ActionFuture;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.rest.RestStatus;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.internal.TestSystem2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.sonar.server.es.BulkPipeline.INITIAL_BULK_SIZE;
+import static org.sonar.server.es.BulkPipeline.INITIAL_CONCURRENT_REQUESTS;
+import static org.sonar.server.es.BulkPipeline.MAX_BULK_SIZE;
+import static org.sonar.server.es.BulkPipeline.MAX_CONCURRENT_REQUESTS;
+import static org.sonar.server.es.BulkPipeline.MIN_BULK_SIZE;
+import static org.sonar.server.es.BulkPipeline.SLOW_RESPONSE_MS;
+import static org.sonar.server.es.FakeIndexDefinition.INDEX;
+import static org.sonar.server.es.FakeIndexDefinition.INDEX_TYPE_FAKE;
+
+public class BulkPipelineTest {
+
+  @Rule
+  public EsTester esTester = new EsTester(new FakeIndexDefinition());
+
+  private TestSystem2 system2 = new TestSystem2().setNow(1_000L);
+  private BulkPipeline underTest = new BulkPipeline(system2);
+
+  @Test
+  public void execute_bulk_request() {
+    BulkRequest request = new BulkRequest()
+      .add(newIndexRequest("foo"))
+      .add(newIndexRequest("bar"));
+
+    BulkResponse response = underTest.execute(esTester.client().nativeClient(), request);
+
+    assertThat(response.hasFailures()).isFalse();
+    assertThat(response.getItems()).hasSize(2);
+    esTester.client().prepareRefresh(INDEX).get();
+    assertThat(esTester.getIds(INDEX_TYPE_FAKE)).containsOnly("foo", "bar");
+  }
+
+  @Test
+  public void retry_rejected_items() {
+    BulkRequest request = new BulkRequest()
+      .add(newIndexRequest("foo"))
+      .add(newIndexRequest("bar"));
+    BulkItemResponse fooSuccess = newItem(0, false);
+    BulkItemResponse barRejected = newItem(1, true);
+    BulkItemResponse barSuccess = newItem(0, false);
+    Client client = mock(Client.class);
+    ActionFuture<BulkResponse> firstResponse = newFuture(fooSuccess, barRejected);
+    ActionFuture<BulkResponse> secondResponse = newFuture(barSuccess);
+    when(client.bulk(any(BulkRequest.class))).thenReturn(firstResponse, secondResponse);
+
+    BulkResponse response = underTest.execute(client, request);
+
+    verify(client, times(2)).bulk(any(BulkRequest.class));
+    assertThat(response.getItems()).containsExactly(fooSuccess, barSuccess);
+    // rejection decreased the bulk size and the concurrency
+    assertThat(underTest.getBulkSize()).isEqualTo(INITIAL_BULK_SIZE / 2);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(INITIAL_CONCURRENT_REQUESTS / 2);
+  }
+
+  @Test
+  public void fast_full_requests_increase_bulk_size_and_concurrency() {
+    underTest.release(INITIAL_BULK_SIZE, 10L, false);
+
+    assertThat(underTest.getBulkSize()).isEqualTo(INITIAL_BULK_SIZE + MIN_BULK_SIZE);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(INITIAL_CONCURRENT_REQUESTS + 1);
+  }
+
+  @Test
+  public void fast_small_requests_do_not_change_bulk_size_and_concurrency() {
+    underTest.release(100L, 10L, false);
+
+    assertThat(underTest.getBulkSize()).isEqualTo(INITIAL_BULK_SIZE);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(INITIAL_CONCURRENT_REQUESTS);
+  }
+
+  @Test
+  public void slow_requests_decrease_bulk_size_and_concurrency() {
+    underTest.release(INITIAL_BULK_SIZE, SLOW_RESPONSE_MS, false);
+
+    assertThat(underTest.getBulkSize()).isEqualTo(INITIAL_BULK_SIZE - MIN_BULK_SIZE);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(INITIAL_CONCURRENT_REQUESTS - 1);
+  }
+
+  @Test
+  public void bulk_size_and_concurrency_are_bounded() {
+    for (int i = 0; i < 100; i++) {
+      underTest.release(MAX_BULK_SIZE, 10L, false);
+    }
+    assertThat(underTest.getBulkSize()).isEqualTo(MAX_BULK_SIZE);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(MAX_CONCURRENT_REQUESTS);
+
+    for (int i = 0; i < 100; i++) {
+      underTest.release(MAX_BULK_SIZE, 10L, true);
+    }
+    assertThat(underTest.getBulkSize()).isEqualTo(MIN_BULK_SIZE);
+    assertThat(underTest.getConcurrentRequests()).isEqualTo(1);
+  }
+
+  private static BulkItemResponse newItem(int itemId, boolean rejected) {
+    BulkItemResponse item = mock(BulkItemResponse.class);
+    when(item.getItemId()).thenReturn(itemId);
+    when(item.isFailed()).thenReturn(rejected);
+    if (rejected) {
+      BulkItemResponse.Failure failure = mock(BulkItemResponse.Failure.class);
+      when(failure.getStatus()).thenReturn(RestStatus.TOO_MANY_REQUESTS);
+      when(item.getFailure()).thenReturn(failure);
+    }
+    return item;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ActionFuture<BulkResponse> newFuture(BulkItemResponse... items) {
+    ActionFuture<BulkResponse> future = mock(ActionFuture.class);
+    when(future.actionGet()).thenReturn(new BulkResponse(items, 10L));
+    return future;
+  }
+
+  private static IndexRequest newIndexRequest(String id) {
+    return new IndexRequest(INDEX, INDEX_TYPE_FAKE.getType(), id)
+      .source(ImmutableMap.of(FakeIndexDefinition.INT_FIELD, 42));
+  }
+}
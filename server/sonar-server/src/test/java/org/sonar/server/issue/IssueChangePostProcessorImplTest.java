@@ -0,0 +1,218 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.issue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.organization.OrganizationTesting;
+import org.sonar.server.measure.live.LiveMeasureComputer;
+import org.sonar.server.qualitygate.changeevent.QGChangeEvent;
+import org.sonar.server.qualitygate.changeevent.QGChangeEventListeners;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollection;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+public class IssueChangePostProcessorImplTest {
+
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private DbClient dbClient = mock(DbClient.class);
+  private DbSession dbSession = mock(DbSession.class);
+  private LiveMeasureComputer liveMeasureComputer = mock(LiveMeasureComputer.class);
+  private QGChangeEventListeners qualityGateListeners = mock(QGChangeEventListeners.class);
+  private RecordingExecutorService executor = new RecordingExecutorService();
+  private IssueChangePostProcessorImpl underTest = new IssueChangePostProcessorImpl(dbClient, liveMeasureComputer, qualityGateListeners, executor);
+
+  private ComponentDto project = ComponentTesting.newPrivateProjectDto(OrganizationTesting.newOrganizationDto());
+  private ComponentDto file1 = ComponentTesting.newFileDto(project);
+  private ComponentDto file2 = ComponentTesting.newFileDto(project);
+  private ComponentDto otherProject = ComponentTesting.newPrivateProjectDto(OrganizationTesting.newOrganizationDto());
+  private ComponentDto otherFile = ComponentTesting.newFileDto(otherProject);
+
+  @Test
+  public void refresh_is_executed_asynchronously_in_its_own_session() {
+    when(dbClient.openSession(false)).thenReturn(dbSession);
+    DefaultIssue issue = newIssue(file1);
+    List<QGChangeEvent> events = singletonList(mock(QGChangeEvent.class));
+    when(liveMeasureComputer.refresh(eq(dbSession), anyCollection(), anyCollection())).thenReturn(events);
+
+    underTest.process(mock(DbSession.class), singletonList(issue), singletonList(file1));
+
+    verifyZeroInteractions(liveMeasureComputer, qualityGateListeners);
+    executor.runAll();
+
+    verify(liveMeasureComputer).refresh(dbSession, asList(file1), asList(issue));
+    verify(qualityGateListeners).broadcastOnIssueChange(asList(issue), events);
+    verify(dbSession).close();
+  }
+
+  @Test
+  public void changes_of_same_project_are_coalesced_until_refresh_starts() {
+    when(dbClient.openSession(false)).thenReturn(dbSession);
+    DefaultIssue issue1 = newIssue(file1);
+    DefaultIssue issue2 = newIssue(file2);
+    DefaultIssue issue3 = newIssue(file1);
+
+    underTest.process(dbSession, singletonList(issue1), singletonList(file1));
+    underTest.process(dbSession, asList(issue2, issue3), asList(file2, file1));
+
+    assertThat(executor.tasks).hasSize(1);
+    executor.runAll();
+
+    verify(liveMeasureComputer).refresh(dbSession, asList(file1, file2), asList(issue1, issue2, issue3));
+  }
+
+  @Test
+  public void projects_are_refreshed_independently() {
+    when(dbClient.openSession(false)).thenReturn(dbSession);
+    DefaultIssue issue = newIssue(file1);
+    DefaultIssue otherIssue = newIssue(otherFile);
+
+    underTest.process(dbSession, asList(issue, otherIssue), asList(file1, otherFile));
+
+    assertThat(executor.tasks).hasSize(2);
+    executor.runAll();
+
+    verify(liveMeasureComputer).refresh(dbSession, asList(file1), asList(issue));
+    verify(liveMeasureComputer).refresh(dbSession, asList(otherFile), asList(otherIssue));
+  }
+
+  @Test
+  public void changes_received_during_refresh_are_refreshed_by_the_same_task_after_it() {
+    when(dbClient.openSession(false)).thenReturn(dbSession);
+    DefaultIssue issue1 = newIssue(file1);
+    DefaultIssue issue2 = newIssue(file2);
+    List<Collection<ComponentDto>> refreshedComponents = new ArrayList<>();
+    when(liveMeasureComputer.refresh(eq(dbSession), anyCollection(), anyCollection())).then(invocation -> {
+      Collection<ComponentDto> components = (Collection<ComponentDto>) invocation.getArguments()[1];
+      refreshedComponents.add(new ArrayList<>(components));
+      if (refreshedComponents.size() == 1) {
+        underTest.process(dbSession, singletonList(issue2), singletonList(file2));
+      }
+      return new ArrayList<>();
+    });
+
+    underTest.process(dbSession, singletonList(issue1), singletonList(file1));
+    executor.runNext();
+
+    assertThat(refreshedComponents).containsExactly(asList(file1), asList(file2));
+    assertThat(executor.tasks).isEmpty();
+
+    // project is not pending anymore
+    underTest.process(dbSession, singletonList(issue1), singletonList(file1));
+    assertThat(executor.tasks).hasSize(1);
+  }
+
+  @Test
+  public void failure_of_refresh_is_logged_and_does_not_prevent_next_refreshes() {
+    when(dbClient.openSession(false)).thenReturn(dbSession);
+    when(liveMeasureComputer.refresh(eq(dbSession), anyCollection(), anyCollection()))
+      .thenThrow(new IllegalStateException("BOOM"))
+      .thenReturn(new ArrayList<>());
+
+    underTest.process(dbSession, singletonList(newIssue(file1)), singletonList(file1));
+    executor.runAll();
+    underTest.process(dbSession, singletonList(newIssue(file1)), singletonList(file1));
+    executor.runAll();
+
+    assertThat(logTester.logs(LoggerLevel.ERROR)).containsOnly("Fail to refresh live measures of project " + project.uuid());
+    verify(liveMeasureComputer, times(2)).refresh(eq(dbSession), anyCollection(), anyCollection());
+    verify(qualityGateListeners).broadcastOnIssueChange(any(List.class), any(Collection.class));
+  }
+
+  @Test
+  public void stop_logs_the_projects_which_are_not_refreshed() {
+    underTest.process(dbSession, singletonList(newIssue(file1)), singletonList(file1));
+
+    underTest.stop();
+
+    assertThat(logTester.logs(LoggerLevel.WARN)).containsOnly("Live measures of 1 projects are not refreshed. They will be refreshed by the next analysis.");
+  }
+
+  private static DefaultIssue newIssue(ComponentDto file) {
+    return new DefaultIssue().setComponentUuid(file.uuid()).setProjectUuid(file.projectUuid());
+  }
+
+  private static class RecordingExecutorService extends AbstractExecutorService {
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runNext() {
+      tasks.remove(0).run();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        runNext();
+      }
+    }
+
+    @Override
+    public void shutdown() {
+      // nothing to do
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return new ArrayList<>(tasks);
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+  }
+}
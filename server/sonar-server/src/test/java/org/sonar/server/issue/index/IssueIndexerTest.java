@@ -182,6 +182,103 @@ public class IssueIndexerTest {
       .containsExactlyInAnyOrder(issue.getKey(), "orphan");
   }
 
+  @Test
+  public void indexOnAnalysis_indexes_only_the_given_issues_of_project() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject(organization);
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    IssueDto issue1 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file).setAssignee("marius"));
+    underTest.indexOnAnalysis(project.uuid());
+    db.executeUpdateSql("update issues set assignee=? where kee=?", "simon", issue1.getKey());
+    IssueDto issue2 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+
+    underTest.indexOnAnalysis(project.uuid(), asList(issue2.getKey()), emptyList());
+
+    assertThatIndexHasOnly(issue1, issue2);
+    assertThat(getIndexedIssue(issue1.getKey()).assignee()).isEqualTo("marius");
+  }
+
+  @Test
+  public void indexOnAnalysis_deletes_the_given_issues_which_do_not_exist_in_db() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject(organization);
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    IssueDto issue = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+    underTest.indexOnAnalysis(project.uuid());
+    addIssueToIndex(project.uuid(), "I1");
+
+    underTest.indexOnAnalysis(project.uuid(), asList("I1"), emptyList());
+
+    assertThatIndexHasOnly(issue.getKey());
+  }
+
+  @Test
+  public void indexOnAnalysis_deletes_the_given_issues_of_branch_which_do_not_exist_in_db() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertMainBranch(organization);
+    ComponentDto branch = db.components().insertProjectBranch(project);
+    ComponentDto file = db.components().insertComponent(newFileDto(branch));
+    IssueDto issue = db.issues().insertIssue(IssueTesting.newIssue(rule, branch, file));
+    underTest.indexOnAnalysis(branch.uuid());
+    es.putDocuments(INDEX_TYPE_ISSUE, newDoc("I1", file));
+
+    underTest.indexOnAnalysis(branch.uuid(), asList("I1"), emptyList());
+
+    assertThatIndexHasOnly(issue.getKey());
+  }
+
+  @Test
+  public void indexOnAnalysis_indexes_the_issues_of_the_given_components() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject(organization);
+    ComponentDto file1 = db.components().insertComponent(newFileDto(project).setPath("src/Foo.java"));
+    ComponentDto file2 = db.components().insertComponent(newFileDto(project).setPath("src/Bar.java"));
+    IssueDto issue1 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file1));
+    IssueDto issue2 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file2));
+    underTest.indexOnAnalysis(project.uuid());
+    db.executeUpdateSql("update projects set path=? where uuid=?", "src/moved/Foo.java", file1.uuid());
+    db.executeUpdateSql("update projects set path=? where uuid=?", "src/moved/Bar.java", file2.uuid());
+
+    underTest.indexOnAnalysis(project.uuid(), emptyList(), asList(file1.uuid()));
+
+    assertThat(getIndexedIssue(issue1.getKey()).filePath()).isEqualTo("src/moved/Foo.java");
+    assertThat(getIndexedIssue(issue1.getKey()).directoryPath()).isEqualTo("src/moved");
+    assertThat(getIndexedIssue(issue2.getKey()).filePath()).isEqualTo("src/Bar.java");
+  }
+
+  @Test
+  public void indexOnAnalysis_indexes_all_the_issues_of_project_if_index_does_not_contain_any_of_them() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject(organization);
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    IssueDto issue1 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+    IssueDto issue2 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+    ComponentDto otherProject = db.components().insertPrivateProject(organization);
+    addIssueToIndex(otherProject.uuid(), "I1");
+
+    underTest.indexOnAnalysis(project.uuid(), asList(issue1.getKey()), emptyList());
+
+    assertThatIndexHasOnly(issue1.getKey(), issue2.getKey(), "I1");
+  }
+
+  @Test
+  public void indexOnAnalysis_indexes_all_the_issues_of_project_if_index_is_partially_outdated() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject(organization);
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    IssueDto issue1 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+    underTest.indexOnAnalysis(project.uuid());
+    // orphan in the project
+    addIssueToIndex(project.uuid(), "orphan");
+    // issues missing from index
+    IssueDto issue2 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+    IssueDto issue3 = db.issues().insertIssue(IssueTesting.newIssue(rule, project, file));
+
+    underTest.indexOnAnalysis(project.uuid(), emptyList(), emptyList());
+
+    assertThatIndexHasOnly(issue1, issue2, issue3);
+  }
+
   /**
    * Indexing recovery is handled by Compute Engine, without using
    * the table es_queue
@@ -481,7 +578,14 @@ public class IssueIndexerTest {
 
   private void addIssueToIndex(String projectUuid, String issueKey) {
     es.putDocuments(INDEX_TYPE_ISSUE,
-      newDoc().setKey(issueKey).setProjectUuid(projectUuid));
+      newDoc().setKey(issueKey).setProjectUuid(projectUuid).setBranchUuid(projectUuid));
+  }
+
+  private IssueDoc getIndexedIssue(String issueKey) {
+    return es.getDocuments(INDEX_TYPE_ISSUE, IssueDoc.class).stream()
+      .filter(doc -> doc.key().equals(issueKey))
+      .findFirst()
+      .orElseThrow(() -> new IllegalStateException("Issue is not indexed: " + issueKey));
   }
 
   private void assertThatIndexHasSize(long expectedSize) {
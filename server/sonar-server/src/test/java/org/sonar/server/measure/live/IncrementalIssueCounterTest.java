@@ -0,0 +1,182 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.live;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.measures.CoreMetrics;
+import org.sonar.api.measures.Metric;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.component.ComponentTesting;
+import org.sonar.db.issue.IssueGroupDto;
+import org.sonar.db.measure.LiveMeasureDto;
+import org.sonar.db.metric.MetricDto;
+import org.sonar.server.computation.task.projectanalysis.qualitymodel.Rating;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.db.metric.MetricTesting.newMetricDto;
+import static org.sonar.db.organization.OrganizationTesting.newOrganizationDto;
+
+public class IncrementalIssueCounterTest {
+
+  private static final ComponentDto PROJECT = ComponentTesting.newPublicProjectDto(newOrganizationDto());
+
+  private List<MetricDto> metrics = new ArrayList<>();
+  private List<LiveMeasureDto> measures = new ArrayList<>();
+
+  @Test
+  public void values_are_measures_before_changes_plus_changes() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    addMeasure(CoreMetrics.RELIABILITY_RATING, Rating.C.getIndex(), Rating.C.getIndex());
+
+    IssueCounter underTest = create(true,
+      // an unresolved bug is resolved as won't fix
+      newGroup(RuleType.BUG, Severity.MINOR, null, Issue.STATUS_OPEN, -5.0, -1L, true),
+      newGroup(RuleType.BUG, Severity.MINOR, Issue.RESOLUTION_WONT_FIX, Issue.STATUS_RESOLVED, 5.0, 1L, true)).get();
+
+    assertThat(underTest.countUnresolvedByType(RuleType.BUG, false)).isEqualTo(9L);
+    assertThat(underTest.countUnresolvedByType(RuleType.BUG, true)).isEqualTo(2L);
+    assertThat(underTest.countUnresolvedByType(RuleType.CODE_SMELL, false)).isEqualTo(10L);
+    assertThat(underTest.countUnresolvedBySeverity(Severity.MINOR, false)).isEqualTo(9L);
+    assertThat(underTest.countUnresolvedBySeverity(Severity.MINOR, true)).isEqualTo(2L);
+    assertThat(underTest.countUnresolved(false)).isEqualTo(9L);
+    assertThat(underTest.countUnresolved(true)).isEqualTo(2L);
+    assertThat(underTest.countByResolution(Issue.RESOLUTION_WONT_FIX, false)).isEqualTo(11L);
+    assertThat(underTest.countByStatus(Issue.STATUS_OPEN, false)).isEqualTo(9L);
+    assertThat(underTest.sumEffortOfUnresolved(RuleType.BUG, false)).isEqualTo(5.0);
+    assertThat(underTest.sumEffortOfUnresolved(RuleType.BUG, true)).isEqualTo(-2.0);
+    assertThat(underTest.getHighestSeverityOfUnresolved(RuleType.BUG, false)).hasValue(Severity.MAJOR);
+  }
+
+  @Test
+  public void counter_is_not_created_if_a_measure_is_missing() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    measures.removeIf(m -> m.getMetricId() == metricOf(CoreMetrics.BLOCKER_VIOLATIONS).getId());
+
+    assertThat(create(true)).isEmpty();
+  }
+
+  @Test
+  public void counter_is_not_created_if_a_metric_is_not_loaded() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    MetricDto metric = metricOf(CoreMetrics.OPEN_ISSUES);
+    metrics.remove(metric);
+    measures.removeIf(m -> m.getMetricId() == metric.getId());
+
+    assertThat(create(true)).isEmpty();
+  }
+
+  @Test
+  public void leak_values_are_not_required_if_leak_period_is_not_defined() {
+    addMeasuresOfAllMetrics(10.0, null);
+
+    assertThat(create(true)).isEmpty();
+    assertThat(create(false)).isPresent();
+  }
+
+  @Test
+  public void highest_severity_is_raised_by_added_issues() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    addMeasure(CoreMetrics.SECURITY_RATING, Rating.B.getIndex(), Rating.A.getIndex());
+
+    IssueCounter underTest = create(true,
+      newGroup(RuleType.VULNERABILITY, Severity.MINOR, null, Issue.STATUS_OPEN, 0.0, -1L, false),
+      newGroup(RuleType.VULNERABILITY, Severity.CRITICAL, null, Issue.STATUS_OPEN, 0.0, 1L, false)).get();
+
+    assertThat(underTest.getHighestSeverityOfUnresolved(RuleType.VULNERABILITY, false)).hasValue(Severity.CRITICAL);
+    // issue is not in leak period
+    assertThat(underTest.getHighestSeverityOfUnresolved(RuleType.VULNERABILITY, true)).hasValue(Severity.INFO);
+  }
+
+  @Test
+  public void highest_severity_is_unchanged_if_issues_of_lower_severity_are_removed() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    addMeasure(CoreMetrics.RELIABILITY_RATING, Rating.D.getIndex(), Rating.D.getIndex());
+
+    IssueCounter underTest = create(true, newGroup(RuleType.BUG, Severity.MAJOR, null, Issue.STATUS_OPEN, 0.0, -1L, true)).get();
+
+    assertThat(underTest.getHighestSeverityOfUnresolved(RuleType.BUG, false)).hasValue(Severity.CRITICAL);
+    assertThat(underTest.getHighestSeverityOfUnresolved(RuleType.BUG, true)).hasValue(Severity.CRITICAL);
+  }
+
+  @Test
+  public void counter_is_not_created_if_an_issue_of_highest_severity_is_removed() {
+    addMeasuresOfAllMetrics(10.0, 3.0);
+    addMeasure(CoreMetrics.RELIABILITY_RATING, Rating.D.getIndex(), Rating.A.getIndex());
+
+    assertThat(create(true, newGroup(RuleType.BUG, Severity.CRITICAL, null, Issue.STATUS_OPEN, 0.0, -1L, false))).isEmpty();
+    // the change of severity of an issue keeps the highest severity
+    assertThat(create(true,
+      newGroup(RuleType.BUG, Severity.CRITICAL, null, Issue.STATUS_OPEN, 0.0, -1L, false),
+      newGroup(RuleType.BUG, Severity.BLOCKER, null, Issue.STATUS_OPEN, 0.0, 1L, false))).isPresent();
+  }
+
+  private Optional<IssueCounter> create(boolean withLeak, IssueGroupDto... changes) {
+    MeasureMatrix matrix = new MeasureMatrix(asList(PROJECT), metrics, measures);
+    return IncrementalIssueCounter.create(matrix, PROJECT, asList(changes), withLeak);
+  }
+
+  private void addMeasuresOfAllMetrics(double value, @Nullable Double leakValue) {
+    AtomicInteger ids = new AtomicInteger(1);
+    new IssueMetricFormulaFactoryImpl().getFormulaMetrics().forEach(metric -> {
+      MetricDto metricDto = newMetricDto().setId(ids.getAndIncrement()).setKey(metric.getKey());
+      metrics.add(metricDto);
+      if (metric.getType() == Metric.ValueType.RATING) {
+        // rating A, i.e. no unresolved issues with severity higher than INFO
+        measures.add(newMeasure(metricDto, Rating.A.getIndex(), leakValue == null ? null : (double) Rating.A.getIndex()));
+      } else {
+        measures.add(newMeasure(metricDto, value, leakValue));
+      }
+    });
+  }
+
+  private void addMeasure(Metric metric, double value, double leakValue) {
+    MetricDto metricDto = metricOf(metric);
+    measures.removeIf(m -> m.getMetricId() == metricDto.getId());
+    measures.add(newMeasure(metricDto, value, leakValue));
+  }
+
+  private MetricDto metricOf(Metric metric) {
+    return metrics.stream().filter(m -> m.getKey().equals(metric.getKey())).findFirst().get();
+  }
+
+  private static LiveMeasureDto newMeasure(MetricDto metric, double value, @Nullable Double leakValue) {
+    return new LiveMeasureDto().setMetricId(metric.getId()).setComponentUuid(PROJECT.uuid()).setValue(value).setVariation(leakValue);
+  }
+
+  private static IssueGroupDto newGroup(RuleType type, String severity, @Nullable String resolution, String status, double effort, long count, boolean inLeak) {
+    return new IssueGroupDto()
+      .setRuleType(type.getDbConstant())
+      .setSeverity(severity)
+      .setResolution(resolution)
+      .setStatus(status)
+      .setEffort(effort)
+      .setCount(count)
+      .setInLeak(inLeak);
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure.live;
+
+import java.util.Date;
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.db.issue.IssueGroupDto;
+import org.sonar.server.issue.IssueFieldsSetter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class IssueGroupChangesTest {
+
+  private static final long LEAK_PERIOD_BEGINNING_DATE = 1_000L;
+
+  private IssueChangeContext context = IssueChangeContext.createUser(new Date(), "emmerik");
+  private IssueFieldsSetter fieldsSetter = new IssueFieldsSetter();
+
+  @Test
+  public void unchanged_issue_has_no_groups() {
+    DefaultIssue issue = newIssue();
+
+    assertThat(IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE).get()).isEmpty();
+  }
+
+  @Test
+  public void previous_state_is_counted_negatively_and_new_state_positively() {
+    DefaultIssue issue = newIssue();
+    fieldsSetter.setType(issue, RuleType.CODE_SMELL, context);
+    fieldsSetter.setSeverity(issue, Severity.MINOR, context);
+    fieldsSetter.setResolution(issue, Issue.RESOLUTION_WONT_FIX, context);
+    fieldsSetter.setStatus(issue, Issue.STATUS_RESOLVED, context);
+
+    List<IssueGroupDto> groups = IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE).get();
+
+    assertThat(groups)
+      .extracting(IssueGroupDto::getRuleType, IssueGroupDto::getSeverity, IssueGroupDto::getResolution, IssueGroupDto::getStatus,
+        IssueGroupDto::getEffort, IssueGroupDto::getCount, IssueGroupDto::isInLeak)
+      .containsExactly(
+        tuple(RuleType.BUG.getDbConstant(), Severity.MAJOR, null, Issue.STATUS_OPEN, -10.0, -1L, true),
+        tuple(RuleType.CODE_SMELL.getDbConstant(), Severity.MINOR, Issue.RESOLUTION_WONT_FIX, Issue.STATUS_RESOLVED, 10.0, 1L, true));
+  }
+
+  @Test
+  public void previous_effort_is_counted_negatively() {
+    DefaultIssue issue = newIssue();
+    fieldsSetter.setEffort(issue, Duration.create(25L), context);
+
+    List<IssueGroupDto> groups = IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE).get();
+
+    assertThat(groups).extracting(IssueGroupDto::getEffort, IssueGroupDto::getCount).containsExactly(tuple(-10.0, -1L), tuple(25.0, 1L));
+  }
+
+  @Test
+  public void issue_created_before_leak_period_is_not_in_leak() {
+    DefaultIssue issue = newIssue().setCreationDate(new Date(LEAK_PERIOD_BEGINNING_DATE - 1));
+    fieldsSetter.setSeverity(issue, Severity.MINOR, context);
+
+    List<IssueGroupDto> groups = IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE).get();
+
+    assertThat(groups).extracting(IssueGroupDto::isInLeak).containsExactly(false, false);
+  }
+
+  @Test
+  public void closed_issues_are_not_counted() {
+    DefaultIssue issue = newIssue();
+    fieldsSetter.setResolution(issue, Issue.RESOLUTION_FIXED, context);
+    fieldsSetter.setStatus(issue, Issue.STATUS_CLOSED, context);
+
+    List<IssueGroupDto> groups = IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE).get();
+
+    assertThat(groups).extracting(IssueGroupDto::getStatus, IssueGroupDto::getCount).containsExactly(tuple(Issue.STATUS_OPEN, -1L));
+  }
+
+  @Test
+  public void previous_state_is_unknown_if_issue_is_new() {
+    DefaultIssue issue = newIssue().setNew(true);
+    fieldsSetter.setSeverity(issue, Severity.MINOR, context);
+
+    assertThat(IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE)).isEmpty();
+  }
+
+  @Test
+  public void previous_state_is_unknown_if_issue_is_moved_to_another_component() {
+    DefaultIssue issue = newIssue();
+    fieldsSetter.setIssueMoved(issue, "other-file-uuid", context);
+
+    assertThat(IssueGroupChanges.of(issue, LEAK_PERIOD_BEGINNING_DATE)).isEmpty();
+  }
+
+  private static DefaultIssue newIssue() {
+    return new DefaultIssue()
+      .setKey("ISSUE_1")
+      .setType(RuleType.BUG)
+      .setSeverity(Severity.MAJOR)
+      .setStatus(Issue.STATUS_OPEN)
+      .setEffort(Duration.create(10L))
+      .setCreationDate(new Date(LEAK_PERIOD_BEGINNING_DATE + 1));
+  }
+}
@@ -24,10 +24,12 @@ import com.tngtech.java.junit.dataprovider.DataProviderRunner;
 import com.tngtech.java.junit.dataprovider.UseDataProvider;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
+import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -35,10 +37,15 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.sonar.api.config.PropertyDefinitions;
 import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.issue.Issue;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.measures.Metric;
 import org.sonar.api.resources.Qualifiers;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
 import org.sonar.core.config.CorePropertyDefinitions;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.IssueChangeContext;
 import org.sonar.db.DbSession;
 import org.sonar.db.DbTester;
 import org.sonar.db.component.BranchDto;
@@ -47,9 +54,11 @@ import org.sonar.db.component.ComponentTesting;
 import org.sonar.db.measure.LiveMeasureDto;
 import org.sonar.db.metric.MetricDto;
 import org.sonar.db.organization.OrganizationDto;
+import org.sonar.db.rule.RuleDefinitionDto;
 import org.sonar.server.computation.task.projectanalysis.qualitymodel.Rating;
 import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.es.TestProjectIndexers;
+import org.sonar.server.issue.IssueFieldsSetter;
 import org.sonar.server.qualitygate.EvaluatedQualityGate;
 import org.sonar.server.qualitygate.QualityGate;
 import org.sonar.server.qualitygate.changeevent.QGChangeEvent;
@@ -59,6 +68,7 @@ import org.sonar.server.settings.TestProjectConfigurationLoader;
 import static java.util.Arrays.asList;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singleton;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -143,6 +153,60 @@ public class LiveMeasureComputerImplTest {
     assertThatIntMeasureHasValue(file2, 42.0);
   }
 
+  @Test
+  public void issues_are_counted_on_their_component_and_its_ancestors() {
+    markProjectAsAnalyzed(project);
+    RuleDefinitionDto rule = db.rules().insert();
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setType(RuleType.BUG));
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setType(RuleType.BUG));
+    db.issues().insert(rule, project, file2, i -> i.setStatus("OPEN").setResolution(null).setType(RuleType.BUG));
+    db.issues().insert(rule, project, project, i -> i.setStatus("OPEN").setResolution(null).setType(RuleType.BUG));
+
+    run(file1, newUnresolvedIssuesFormula());
+
+    assertThatIntMeasureHasValue(file1, 2.0);
+    assertThatIntMeasureHasValue(dir, 3.0);
+    assertThatIntMeasureHasValue(project, 4.0);
+  }
+
+  @Test
+  public void issues_are_counted_from_measures_and_changes_when_changed_issues_are_known() {
+    markProjectAsAnalyzed(project);
+    Collection<Metric> counterMetrics = new IssueMetricFormulaFactoryImpl().getFormulaMetrics();
+    counterMetrics.forEach(metric -> {
+      MetricDto metricDto = db.measures().insertMetric(m -> m.setKey(metric.getKey()).setValueType(metric.getType().name()));
+      // values of last analysis, file1 has no measures
+      double value = metric.getType() == Metric.ValueType.RATING ? Rating.A.getIndex() : 5.0;
+      db.measures().insertLiveMeasure(project, metricDto, m -> m.setValue(value).setVariation(value));
+      db.measures().insertLiveMeasure(dir, metricDto, m -> m.setValue(value).setVariation(value));
+    });
+    RuleDefinitionDto rule = db.rules().insert();
+    db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null).setType(RuleType.BUG));
+    // the resolved issue is not loaded from database
+    DefaultIssue resolvedIssue = new DefaultIssue()
+      .setKey("RESOLVED")
+      .setComponentUuid(file1.uuid())
+      .setProjectUuid(project.uuid())
+      .setType(RuleType.BUG)
+      .setSeverity(Severity.MAJOR)
+      .setStatus(Issue.STATUS_OPEN)
+      .setCreationDate(new Date(1_000L));
+    IssueChangeContext changeContext = IssueChangeContext.createUser(new Date(), "emmerik");
+    new IssueFieldsSetter().setResolution(resolvedIssue, Issue.RESOLUTION_FIXED, changeContext);
+    new IssueFieldsSetter().setStatus(resolvedIssue, Issue.STATUS_RESOLVED, changeContext);
+    Metric metric = new Metric.Builder(intMetric.getKey(), intMetric.getShortName(), Metric.ValueType.valueOf(intMetric.getValueType())).create();
+    IssueMetricFormula formula = new IssueMetricFormula(metric, false, (ctx, issues) -> ctx.setValue((double) issues.countUnresolved(false)), counterMetrics);
+
+    List<QGChangeEvent> result = run(singleton(file1), singletonList(resolvedIssue), formula);
+
+    // counted from database
+    assertThatIntMeasureHasValue(file1, 1.0);
+    // counted from measures
+    assertThatIntMeasureHasValue(dir, 4.0);
+    assertThatIntMeasureHasValue(project, 4.0);
+    assertThatProjectChanged(result, project);
+  }
+
   @Test
   public void variation_is_refreshed_when_int_value_is_changed() {
     markProjectAsAnalyzed(project);
@@ -364,6 +428,10 @@ public class LiveMeasureComputerImplTest {
   }
 
   private List<QGChangeEvent> run(Collection<ComponentDto> components, IssueMetricFormula... formulas) {
+    return run(components, null, formulas);
+  }
+
+  private List<QGChangeEvent> run(Collection<ComponentDto> components, @Nullable List<DefaultIssue> changedIssues, IssueMetricFormula... formulas) {
     IssueMetricFormulaFactory formulaFactory = new TestIssueMetricFormulaFactory(asList(formulas));
 
     when(qGateComputer.loadQualityGate(any(DbSession.class), any(OrganizationDto.class), any(ComponentDto.class), any(BranchDto.class)))
@@ -376,7 +444,10 @@ public class LiveMeasureComputerImplTest {
 
     LiveMeasureComputerImpl underTest = new LiveMeasureComputerImpl(db.getDbClient(), formulaFactory, qGateComputer, configurationLoader, projectIndexer);
 
-    return underTest.refresh(db.getSession(), components);
+    if (changedIssues == null) {
+      return underTest.refresh(db.getSession(), components);
+    }
+    return underTest.refresh(db.getSession(), components, changedIssues);
   }
 
   private void markProjectAsAnalyzed(ComponentDto p) {
@@ -428,6 +499,13 @@ public class LiveMeasureComputerImplTest {
     });
   }
 
+  private IssueMetricFormula newUnresolvedIssuesFormula() {
+    Metric metric = new Metric.Builder(intMetric.getKey(), intMetric.getShortName(), Metric.ValueType.valueOf(intMetric.getValueType())).create();
+    return new IssueMetricFormula(metric, false, (ctx, issues) -> {
+      ctx.setValue((double) issues.countUnresolved(false));
+    });
+  }
+
   private IssueMetricFormula newIntConstantFormula(double constant) {
     Metric metric = new Metric.Builder(intMetric.getKey(), intMetric.getShortName(), Metric.ValueType.valueOf(intMetric.getValueType())).create();
     return new IssueMetricFormula(metric, false, (ctx, issues) -> {
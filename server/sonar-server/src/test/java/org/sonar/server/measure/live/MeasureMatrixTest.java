@@ -69,6 +69,14 @@ public class MeasureMatrixTest {
     underTest.getMetric(METRIC_2.getId());
   }
 
+  @Test
+  public void hasMetric() {
+    MeasureMatrix underTest = new MeasureMatrix(asList(PROJECT, FILE), asList(METRIC_1), new ArrayList<>());
+
+    assertThat(underTest.hasMetric(METRIC_1.getKey())).isTrue();
+    assertThat(underTest.hasMetric(METRIC_2.getKey())).isFalse();
+  }
+
   @Test
   public void getValue_returns_empty_if_measure_is_absent() {
     MetricDto metric = newMetricDto();
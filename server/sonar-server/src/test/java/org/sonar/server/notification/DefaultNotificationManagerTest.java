@@ -23,6 +23,7 @@ import com.google.common.collect.Multimap;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.apache.commons.lang.RandomStringUtils;
@@ -39,9 +40,11 @@ import org.sonar.db.notification.NotificationQueueDto;
 import org.sonar.db.permission.AuthorizationDao;
 import org.sonar.db.property.PropertiesDao;
 import org.sonar.db.property.Subscriber;
+import org.sonar.server.notification.DefaultNotificationManager.QueuedNotification;
 import org.sonar.server.notification.NotificationManager.SubscriberPermissionsOnProject;
 
 import static com.google.common.collect.Sets.newHashSet;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
@@ -50,6 +53,7 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
@@ -118,7 +122,7 @@ public class DefaultNotificationManagerTest {
     NotificationQueueDto dto1 = mock(NotificationQueueDto.class);
     when(dto1.toNotification()).thenThrow(new InvalidClassException("Pouet"));
     List<NotificationQueueDto> dtos = Arrays.asList(dto1);
-    when(notificationQueueDao.selectOldest(1)).thenReturn(dtos);
+    when(notificationQueueDao.selectOldest(1)).thenReturn(dtos).thenReturn(Collections.emptyList());
 
     underTest = spy(underTest);
     assertThat(underTest.getFromQueue()).isNull();
@@ -127,6 +131,51 @@ public class DefaultNotificationManagerTest {
     verify(underTest, times(1)).logDeserializationIssue();
   }
 
+  @Test
+  public void getFromQueue_returns_a_batch_of_notifications_without_deleting_them() {
+    List<NotificationQueueDto> dtos = Arrays.asList(
+      NotificationQueueDto.toNotificationQueueDto(new Notification("test1")),
+      NotificationQueueDto.toNotificationQueueDto(new Notification("test2")));
+    when(notificationQueueDao.selectOldest(10)).thenReturn(dtos);
+
+    List<QueuedNotification> notifications = underTest.getFromQueue(10);
+
+    assertThat(notifications).extracting(QueuedNotification::getNotification).extracting(Notification::getType).containsExactly("test1", "test2");
+    verify(notificationQueueDao, never()).delete(any());
+  }
+
+  @Test
+  public void removeFromQueue_deletes_notifications() {
+    List<NotificationQueueDto> dtos = Arrays.asList(
+      NotificationQueueDto.toNotificationQueueDto(new Notification("test1")),
+      NotificationQueueDto.toNotificationQueueDto(new Notification("test2")));
+    when(notificationQueueDao.selectOldest(10)).thenReturn(dtos);
+    List<QueuedNotification> notifications = underTest.getFromQueue(10);
+
+    underTest.removeFromQueue(notifications.subList(1, 2));
+
+    verify(notificationQueueDao).delete(singletonList(dtos.get(1)));
+  }
+
+  @Test
+  public void getFromQueue_deletes_and_skips_batches_of_notifications_which_can_not_be_deserialized() throws Exception {
+    NotificationQueueDto dto1 = mock(NotificationQueueDto.class);
+    when(dto1.toNotification()).thenThrow(new InvalidClassException("Pouet"));
+    NotificationQueueDto dto2 = NotificationQueueDto.toNotificationQueueDto(new Notification("test2"));
+    when(notificationQueueDao.selectOldest(1)).thenReturn(singletonList(dto1)).thenReturn(singletonList(dto2));
+
+    assertThat(underTest.getFromQueue(1)).extracting(QueuedNotification::getNotification).extracting(Notification::getType).containsExactly("test2");
+    verify(notificationQueueDao).delete(singletonList(dto1));
+  }
+
+  @Test
+  public void getFromQueue_returns_empty_list_when_queue_is_empty() {
+    when(notificationQueueDao.selectOldest(10)).thenReturn(Collections.emptyList());
+
+    assertThat(underTest.getFromQueue(10)).isEmpty();
+    verify(notificationQueueDao, never()).delete(any());
+  }
+
   @Test
   public void shouldFindNoRecipient() {
     assertThat(underTest.findSubscribedRecipientsForDispatcher(dispatcher, "uuid_45", new SubscriberPermissionsOnProject(UserRole.USER)).asMap().entrySet())
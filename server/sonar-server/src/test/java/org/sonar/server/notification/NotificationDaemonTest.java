@@ -30,13 +30,19 @@ import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.db.DbClient;
+import org.sonar.db.notification.NotificationQueueDto;
 import org.sonar.db.property.PropertiesDao;
+import org.sonar.server.notification.DefaultNotificationManager.QueuedNotification;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -51,6 +57,7 @@ public class NotificationDaemonTest {
 
   private DefaultNotificationManager manager = mock(DefaultNotificationManager.class);
   private Notification notification = mock(Notification.class);
+  private QueuedNotification queuedNotification = new QueuedNotification(new NotificationQueueDto(), notification);
   private NotificationChannel emailChannel = mock(NotificationChannel.class);
   private NotificationChannel gtalkChannel = mock(NotificationChannel.class);
   private NotificationDispatcher commentOnIssueAssignedToMe = mock(NotificationDispatcher.class);
@@ -69,7 +76,7 @@ public class NotificationDaemonTest {
     when(commentOnIssueCreatedByMe.getType()).thenReturn("issue-changes");
     when(qualityGateChange.getKey()).thenReturn("QGateChange");
     when(qualityGateChange.getType()).thenReturn("qgate-changes");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(singletonList(queuedNotification)).thenReturn(emptyList());
 
     MapSettings settings = new MapSettings(new PropertyDefinitions(NotificationDaemon.class)).setProperty("sonar.notifications.delay", 1L);
 
@@ -94,6 +101,7 @@ public class NotificationDaemonTest {
 
     underTest.start();
     verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    verify(manager, timeout(2000)).removeFromQueue(singletonList(queuedNotification));
     underTest.stop();
 
     verify(gtalkChannel, never()).deliver(notification, ASSIGNEE_SIMON);
@@ -175,7 +183,7 @@ public class NotificationDaemonTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks();
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(singletonList(queuedNotification)).thenReturn(emptyList());
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnIssueCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -186,6 +194,18 @@ public class NotificationDaemonTest {
     verify(gtalkChannel, never()).deliver(notification, ASSIGNEE_SIMON);
   }
 
+  @Test
+  public void notification_is_removed_from_queue_even_if_its_delivery_fails() {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    doThrow(new IllegalStateException("Boom")).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    underTest.start();
+    // failures of channels are logged by NotificationService, the notification is not delivered again
+    verify(manager, timeout(2000)).removeFromQueue(singletonList(queuedNotification));
+    underTest.stop();
+  }
+
   @Test
   public void shouldNotAddNullAsUser() {
     setUpMocks();
@@ -217,7 +237,7 @@ public class NotificationDaemonTest {
   public void shouldLogEvery10Minutes() {
     setUpMocks();
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    when(manager.getFromQueue(anyInt())).thenReturn(singletonList(queuedNotification)).thenReturn(singletonList(queuedNotification)).thenReturn(emptyList());
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     underTest = spy(underTest);
     // Emulate processing of each notification take 10 min to have a log each time
@@ -0,0 +1,153 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notification;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.notifications.Notification;
+import org.sonar.api.notifications.NotificationChannel;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class NotificationDeliveryPoolTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private NotificationChannel channel = mock(NotificationChannel.class);
+  private NotificationDeliveryPool underTest = new NotificationDeliveryPool(4);
+
+  @After
+  public void tearDown() throws InterruptedException {
+    underTest.stop(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void fail_if_number_of_threads_is_not_positive() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Number of delivery threads per channel must be strictly positive, got 0");
+
+    new NotificationDeliveryPool(0);
+  }
+
+  @Test
+  public void awaitDeliveries_waits_for_all_submitted_deliveries() throws InterruptedException {
+    Notification notification = new Notification("foo");
+
+    underTest.submit(notification, "user1", channel);
+    underTest.submit(notification, "user2", channel);
+    underTest.awaitDeliveries();
+
+    verify(channel).deliver(notification, "user1");
+    verify(channel).deliver(notification, "user2");
+  }
+
+  @Test
+  public void deliveries_to_a_user_are_executed_in_submission_order() throws InterruptedException {
+    List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    doAnswer(invocation -> {
+      Notification notification = (Notification) invocation.getArguments()[0];
+      String username = (String) invocation.getArguments()[1];
+      if (username.equals("user1")) {
+        delivered.add(notification.getType());
+      }
+      return true;
+    }).when(channel).deliver(any(Notification.class), any(String.class));
+
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      Notification notification = new Notification("n" + i);
+      expected.add(notification.getType());
+      underTest.submit(notification, "user1", channel);
+      underTest.submit(notification, "user" + (i + 2), channel);
+    }
+    underTest.awaitDeliveries();
+
+    assertThat(delivered).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void failure_of_a_delivery_does_not_prevent_others() throws InterruptedException {
+    Notification notification1 = new Notification("foo");
+    Notification notification2 = new Notification("bar");
+    doThrow(new IllegalStateException("Boom")).when(channel).deliver(notification1, "user1");
+
+    underTest.submit(notification1, "user1", channel);
+    underTest.submit(notification2, "user1", channel);
+    underTest.awaitDeliveries();
+
+    verify(channel).deliver(notification2, "user1");
+  }
+
+  @Test
+  public void awaitDeliveries_waits_for_all_deliveries_and_logs_each_unexpected_failure() throws InterruptedException {
+    Notification notification1 = new Notification("foo");
+    Notification notification2 = new Notification("bar");
+    doThrow(new Error("Boom1")).when(channel).deliver(notification1, "user1");
+    doThrow(new Error("Boom2")).when(channel).deliver(notification1, "user2");
+
+    underTest.submit(notification1, "user1", channel);
+    underTest.submit(notification1, "user2", channel);
+    underTest.submit(notification2, "user3", channel);
+
+    assertThat(underTest.awaitDeliveries()).isEmpty();
+    verify(channel).deliver(notification2, "user3");
+    assertThat(logTester.logs(LoggerLevel.ERROR)).containsOnly(
+      "Failed to deliver notification " + notification1 + " to user1",
+      "Failed to deliver notification " + notification1 + " to user2");
+  }
+
+  @Test
+  public void stop_cancels_deliveries_which_are_not_started() throws InterruptedException {
+    CountDownLatch blocked = new CountDownLatch(1);
+    Notification notification1 = new Notification("foo");
+    Notification notification2 = new Notification("bar");
+    doAnswer(invocation -> {
+      blocked.await();
+      return true;
+    }).when(channel).deliver(notification1, "user1");
+
+    underTest.submit(notification1, "user1", channel);
+    underTest.submit(notification2, "user1", channel);
+    underTest.stop(100, TimeUnit.MILLISECONDS);
+    underTest.submit(notification1, "user2", channel);
+
+    assertThat(underTest.awaitDeliveries()).containsOnly(notification2, notification1);
+    verify(channel, never()).deliver(notification2, "user1");
+    verify(channel, never()).deliver(notification1, "user2");
+  }
+}
@@ -25,6 +25,7 @@ import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
 
+import java.io.File;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
@@ -52,6 +53,26 @@ public class DiskCacheTest {
     }
   }
 
+  @Test
+  public void copy_objects_to_another_cache() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    cache.newAppender()
+      .append("foo")
+      .append("bar")
+      .close();
+    File copy = new File(temp.newFolder(), "copy");
+    cache.copyTo(copy);
+
+    DiskCache<String> otherCache = new DiskCache<>(temp.newFile(), System2.INSTANCE);
+    otherCache.newAppender().append("baz").close();
+    otherCache.copyFrom(copy);
+    otherCache.newAppender().append("qux").close();
+
+    try (CloseableIterator<String> traverse = otherCache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "qux");
+    }
+  }
+
   @Test
   public void fail_if_file_is_not_writable() throws Exception {
     try {
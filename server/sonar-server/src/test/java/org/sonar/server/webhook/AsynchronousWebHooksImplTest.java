@@ -19,32 +19,26 @@
  */
 package org.sonar.server.webhook;
 
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Collection;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.sonar.api.config.internal.MapSettings;
-import org.sonar.server.async.AsyncExecution;
 
-import static java.util.Objects.requireNonNull;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 
 public class AsynchronousWebHooksImplTest {
-  private static final long NOW = 1_500_000_000_000L;
   private static final String PROJECT_UUID = "P1_UUID";
 
   private final MapSettings settings = new MapSettings();
-  private final TestWebhookCaller caller = new TestWebhookCaller();
-  private final WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
   private final WebhookPayload mock = mock(WebhookPayload.class);
-  private final RecordingAsyncExecution asyncExecution = new RecordingAsyncExecution();
 
-  private final WebHooksImpl underTest = new WebHooksImpl(caller, deliveryStorage, asyncExecution);
+  private final WebhookDeliveryQueue deliveryQueue = mock(WebhookDeliveryQueue.class);
+
+  private final WebHooksImpl underTest = new WebHooksImpl(deliveryQueue);
 
   @Test
   public void send_global_webhooks() {
@@ -53,33 +47,19 @@ public class AsynchronousWebHooksImplTest {
     settings.setProperty("sonar.webhooks.global.1.url", "http://url1");
     settings.setProperty("sonar.webhooks.global.2.name", "Second");
     settings.setProperty("sonar.webhooks.global.2.url", "http://url2");
-    caller.enqueueSuccess(NOW, 200, 1_234);
-    caller.enqueueFailure(NOW, new IOException("Fail to connect"));
 
     underTest.sendProjectAnalysisUpdate(settings.asConfig(), new WebHooks.Analysis(PROJECT_UUID, "1", "#1"), () -> mock);
 
-    assertThat(caller.countSent()).isZero();
-    verifyZeroInteractions(deliveryStorage);
-
-    asyncExecution.executeRecorded();
-
-    assertThat(caller.countSent()).isEqualTo(2);
-    verify(deliveryStorage, times(2)).persist(any(WebhookDelivery.class));
-    verify(deliveryStorage).purge(PROJECT_UUID);
+    ArgumentCaptor<Collection<Webhook>> webhooks = ArgumentCaptor.forClass(Collection.class);
+    verify(deliveryQueue).enqueue(webhooks.capture(), same(mock));
+    assertThat(webhooks.getValue()).extracting(Webhook::getUrl).containsExactly("http://url1", "http://url2");
+    assertThat(webhooks.getValue()).extracting(Webhook::getComponentUuid).containsOnly(PROJECT_UUID);
   }
 
-  private static class RecordingAsyncExecution implements AsyncExecution {
-    private final List<Runnable> runnableList = new ArrayList<>();
-
-    @Override
-    public void addToQueue(Runnable r) {
-      runnableList.add(requireNonNull(r));
-    }
+  @Test
+  public void do_not_enqueue_if_no_webhooks() {
+    underTest.sendProjectAnalysisUpdate(settings.asConfig(), new WebHooks.Analysis(PROJECT_UUID, "1", "#1"), () -> mock);
 
-    public void executeRecorded() {
-      ArrayList<Runnable> runnables = new ArrayList<>(runnableList);
-      runnableList.clear();
-      runnables.forEach(Runnable::run);
-    }
+    verifyZeroInteractions(deliveryQueue);
   }
 }
@@ -19,15 +19,19 @@
  */
 package org.sonar.server.webhook;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
-import org.sonar.server.async.AsyncExecution;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
@@ -43,13 +47,16 @@ public class SynchronousWebHooksImplTest {
 
   @Rule
   public LogTester logTester = new LogTester();
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
 
   private final MapSettings settings = new MapSettings();
   private final TestWebhookCaller caller = new TestWebhookCaller();
   private final WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
   private final WebhookPayload mock = mock(WebhookPayload.class);
-  private final AsyncExecution synchronousAsyncExecution = Runnable::run;
-  private final WebHooksImpl underTest = new WebHooksImpl(caller, deliveryStorage, synchronousAsyncExecution);
+  private final WebhookDeliveryQueue deliveryQueue = new WebhookDeliveryQueue(db.getDbClient(), caller, deliveryStorage, System2.INSTANCE,
+    MoreExecutors.newDirectExecutorService(), mock(ScheduledExecutorService.class), 1, 1);
+  private final WebHooksImpl underTest = new WebHooksImpl(deliveryQueue);
 
   @Test
   public void isEnabled_returns_false_if_no_webHoolds() {
@@ -130,8 +137,9 @@ public class SynchronousWebHooksImplTest {
     assertThat(caller.countSent()).isEqualTo(2);
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Failed to send webhook 'Second' | url=http://url2 | message=Fail to connect");
-    verify(deliveryStorage, times(2)).persist(any(WebhookDelivery.class));
-    verify(deliveryStorage).purge(PROJECT_UUID);
+    verify(deliveryStorage, times(2)).persist(any(DbSession.class), any(WebhookDelivery.class));
+    verify(deliveryStorage, times(2)).purge(PROJECT_UUID);
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
   }
 
   @Test
@@ -145,7 +153,7 @@ public class SynchronousWebHooksImplTest {
 
     assertThat(caller.countSent()).isEqualTo(1);
     assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
-    verify(deliveryStorage).persist(any(WebhookDelivery.class));
+    verify(deliveryStorage).persist(any(DbSession.class), any(WebhookDelivery.class));
     verify(deliveryStorage).purge(PROJECT_UUID);
   }
 
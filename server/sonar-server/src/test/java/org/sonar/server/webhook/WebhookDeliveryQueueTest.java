@@ -0,0 +1,377 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.webhook;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.utils.internal.TestSystem2;
+import org.sonar.api.utils.log.LogTester;
+import org.sonar.api.utils.log.LoggerLevel;
+import org.sonar.db.DbClient;
+import org.sonar.db.DbSession;
+import org.sonar.db.DbTester;
+import org.sonar.db.webhook.WebhookQueueDto;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.sonar.server.webhook.WebhookDeliveryQueue.CLAIM_TIMEOUT_MS;
+import static org.sonar.server.webhook.WebhookDeliveryQueue.MAX_PENDING_DELIVERIES;
+import static org.sonar.server.webhook.WebhookDeliveryQueue.MAX_WAITING_DELIVERIES_PER_ENDPOINT;
+
+public class WebhookDeliveryQueueTest {
+
+  private static final long NOW = 1_500_000_000_000L;
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+  @Rule
+  public LogTester logTester = new LogTester();
+
+  private TestSystem2 system = new TestSystem2().setNow(NOW);
+
+  @Rule
+  public DbTester db = DbTester.create(system);
+
+  private DbClient dbClient = db.getDbClient();
+  private DbSession dbSession = db.getSession();
+  private TestWebhookCaller caller = new TestWebhookCaller();
+  private WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
+  private WebhookPayload payload = new WebhookPayload("P1", "{}");
+  private RecordingExecutorService deliveryExecutor = new RecordingExecutorService();
+  private ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+  private WebhookDeliveryQueue underTest = new WebhookDeliveryQueue(dbClient, caller, deliveryStorage, system, deliveryExecutor, scheduler, 2, 3);
+
+  @Test
+  public void fail_if_max_attempts_is_not_positive() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Max attempts must be strictly positive");
+
+    new WebhookDeliveryQueue(dbClient, caller, deliveryStorage, system, deliveryExecutor, scheduler, 2, 0);
+  }
+
+  @Test
+  public void enqueue_stores_then_delivers_webhook_asynchronously() {
+    caller.enqueueSuccess(NOW, 200, 1_234);
+
+    underTest.enqueue(newWebhook("http://url1"), payload);
+
+    assertThat(caller.countSent()).isZero();
+    assertThat(underTest.getPendingCount()).isEqualTo(1);
+    assertThat(db.countRowsOfTable("webhook_queue")).isEqualTo(1);
+    // claimed by the queue
+    assertThat(selectUnclaimed()).isEmpty();
+
+    system.setNow(NOW + 2_000L);
+    deliveryExecutor.runAll();
+
+    assertThat(caller.countSent()).isEqualTo(1);
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Sent webhook 'First' | url=http://url1 | time=1234ms | status=200");
+    verify(deliveryStorage).persist(any(DbSession.class), any(WebhookDelivery.class));
+    verify(deliveryStorage).purge("P1_UUID");
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
+    assertThat(underTest.getPendingCount()).isZero();
+    assertThat(underTest.getSuccessCount()).isEqualTo(1);
+    assertThat(underTest.getFailureCount()).isZero();
+    assertThat(underTest.getAverageLatencyInMs()).isEqualTo(2_000L);
+    assertThat(underTest.getMaxLatencyInMs()).isEqualTo(2_000L);
+  }
+
+  @Test
+  public void network_errors_are_retried_with_exponential_backoff() {
+    caller.enqueueFailure(NOW, new IOException("Fail to connect"));
+    caller.enqueueSuccess(NOW, 503, 10);
+    caller.enqueueSuccess(NOW, 200, 10);
+
+    underTest.enqueue(newWebhook("http://url1"), payload);
+    deliveryExecutor.runAll();
+    runScheduledRetry(1_000L);
+    deliveryExecutor.runAll();
+    runScheduledRetry(2_000L);
+    deliveryExecutor.runAll();
+
+    assertThat(caller.countSent()).isEqualTo(3);
+    ArgumentCaptor<WebhookDelivery> persisted = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage).persist(any(DbSession.class), persisted.capture());
+    assertThat(persisted.getValue().isSuccess()).isTrue();
+    assertThat(underTest.getRetryCount()).isEqualTo(2);
+    assertThat(underTest.getSuccessCount()).isEqualTo(1);
+    assertThat(underTest.getPendingCount()).isZero();
+  }
+
+  @Test
+  public void failure_is_persisted_when_max_attempts_is_reached() {
+    underTest = new WebhookDeliveryQueue(dbClient, caller, deliveryStorage, system, deliveryExecutor, scheduler, 2, 1);
+    caller.enqueueFailure(NOW, new IOException("Fail to connect"));
+
+    underTest.enqueue(newWebhook("http://url1"), payload);
+    deliveryExecutor.runAll();
+
+    verifyZeroInteractions(scheduler);
+    assertThat(logTester.logs(LoggerLevel.DEBUG)).contains("Failed to send webhook 'First' | url=http://url1 | message=Fail to connect");
+    verify(deliveryStorage).persist(any(DbSession.class), any(WebhookDelivery.class));
+    assertThat(underTest.getFailureCount()).isEqualTo(1);
+    assertThat(underTest.getPendingCount()).isZero();
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
+  }
+
+  @Test
+  public void client_errors_are_not_retried() {
+    caller.enqueueSuccess(NOW, 404, 10);
+
+    underTest.enqueue(newWebhook("http://url1"), payload);
+    deliveryExecutor.runAll();
+
+    verifyZeroInteractions(scheduler);
+    verify(deliveryStorage).persist(any(DbSession.class), any(WebhookDelivery.class));
+    assertThat(underTest.getFailureCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void unexpected_error_is_persisted_as_failure() {
+    // no response is configured, the caller fails
+    underTest.enqueue(newWebhook("http://url1"), payload);
+    deliveryExecutor.runAll();
+
+    ArgumentCaptor<WebhookDelivery> persisted = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage).persist(any(DbSession.class), persisted.capture());
+    assertThat(persisted.getValue().getErrorMessage()).contains("Queue is empty");
+    assertThat(logTester.logs(LoggerLevel.ERROR)).contains("Failed to deliver webhook 'First'");
+    assertThat(underTest.getPendingCount()).isZero();
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
+  }
+
+  @Test
+  public void concurrent_deliveries_to_the_same_endpoint_are_limited() {
+    caller.enqueueSuccess(NOW, 200, 10).enqueueSuccess(NOW, 200, 10).enqueueSuccess(NOW, 200, 10).enqueueSuccess(NOW, 200, 10);
+
+    underTest.enqueue(newWebhook("http://host1/a"), payload);
+    underTest.enqueue(newWebhook("http://host1/b"), payload);
+    underTest.enqueue(newWebhook("http://host1/c"), payload);
+    underTest.enqueue(newWebhook("http://host2/a"), payload);
+
+    // third delivery to host1 waits for one of the two first ones
+    assertThat(deliveryExecutor.tasks).hasSize(3);
+
+    deliveryExecutor.runNext();
+    assertThat(deliveryExecutor.tasks).hasSize(3);
+
+    deliveryExecutor.runAll();
+    assertThat(caller.countSent()).isEqualTo(4);
+    assertThat(underTest.getPendingCount()).isZero();
+  }
+
+  @Test
+  public void deliveries_waiting_for_the_same_endpoint_are_limited() {
+    int admitted = 2 + MAX_WAITING_DELIVERIES_PER_ENDPOINT;
+    IntStream.range(0, admitted + 3).forEach(i -> {
+      caller.enqueueSuccess(NOW, 200, 10);
+      underTest.enqueue(newWebhook("http://host1/" + i), payload);
+    });
+
+    assertThat(underTest.getPendingCount()).isEqualTo(admitted);
+    assertThat(deliveryExecutor.tasks).hasSize(2);
+    assertThat(db.countRowsOfTable("webhook_queue")).isEqualTo(admitted + 3);
+
+    deliveryExecutor.runAll();
+    assertThat(caller.countSent()).isEqualTo(admitted);
+    // deliveries kept in database are loaded as soon as there is room for them
+    ArgumentCaptor<Runnable> poll = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler).execute(poll.capture());
+    poll.getValue().run();
+    deliveryExecutor.runAll();
+
+    assertThat(caller.countSent()).isEqualTo(admitted + 3);
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
+  }
+
+  @Test
+  public void pending_deliveries_are_limited() {
+    IntStream.range(0, MAX_PENDING_DELIVERIES + 1).forEach(i -> underTest.enqueue(newWebhook("http://host" + i), payload));
+
+    assertThat(underTest.getPendingCount()).isEqualTo(MAX_PENDING_DELIVERIES);
+    assertThat(deliveryExecutor.tasks).hasSize(MAX_PENDING_DELIVERIES);
+    assertThat(selectUnclaimed()).hasSize(1);
+  }
+
+  @Test
+  public void poll_resumes_unclaimed_deliveries() {
+    caller.enqueueSuccess(NOW, 200, 10);
+    WebhookQueueDto dto = insertInQueue("http://url1");
+
+    underTest.poll();
+
+    assertThat(underTest.getPendingCount()).isEqualTo(1);
+    deliveryExecutor.runAll();
+    ArgumentCaptor<WebhookDelivery> persisted = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage).persist(any(DbSession.class), persisted.capture());
+    assertThat(persisted.getValue().getWebhook().getComponentUuid()).isEqualTo(dto.getComponentUuid());
+    assertThat(persisted.getValue().getWebhook().getUrl()).isEqualTo("http://url1");
+    assertThat(persisted.getValue().getPayload().getProjectKey()).isEqualTo("P1");
+    assertThat(persisted.getValue().getPayload().getJson()).isEqualTo("{}");
+    assertThat(db.countRowsOfTable("webhook_queue")).isZero();
+  }
+
+  @Test
+  public void poll_does_not_resume_deliveries_claimed_by_another_process() {
+    WebhookQueueDto dto = insertInQueue("http://url1");
+    dbClient.webhookQueueDao().claim(dbSession, dto.getUuid(), NOW);
+    dbSession.commit();
+
+    underTest.poll();
+
+    assertThat(underTest.getPendingCount()).isZero();
+    assertThat(deliveryExecutor.tasks).isEmpty();
+
+    // the other process crashed
+    system.setNow(NOW + CLAIM_TIMEOUT_MS + 1);
+    underTest.poll();
+
+    assertThat(underTest.getPendingCount()).isEqualTo(1);
+    assertThat(deliveryExecutor.tasks).hasSize(1);
+  }
+
+  @Test
+  public void poll_refreshes_claims_of_pending_deliveries() {
+    underTest.enqueue(newWebhook("http://url1"), payload);
+
+    system.setNow(NOW + CLAIM_TIMEOUT_MS + 1);
+    underTest.poll();
+
+    assertThat(underTest.getPendingCount()).isEqualTo(1);
+    assertThat(deliveryExecutor.tasks).hasSize(1);
+    assertThat(selectUnclaimed()).isEmpty();
+  }
+
+  @Test
+  public void pending_deliveries_are_released_when_queue_is_stopped() {
+    underTest.enqueue(asList(newWebhook("http://url1"), newWebhook("http://url2")), payload);
+
+    underTest.stop();
+
+    verifyZeroInteractions(deliveryStorage);
+    assertThat(underTest.getPendingCount()).isZero();
+    assertThat(selectUnclaimed()).hasSize(2);
+    assertThat(logTester.logs(LoggerLevel.INFO)).contains("2 webhook deliveries are not completed, they will be resumed at next startup");
+
+    // tasks which are still running once the queue is stopped do not persist anything
+    caller.enqueueSuccess(NOW, 200, 10);
+    deliveryExecutor.runNext();
+    verifyZeroInteractions(deliveryStorage);
+    assertThat(selectUnclaimed()).hasSize(2);
+  }
+
+  @Test
+  public void delivery_waiting_for_retry_is_released_when_queue_is_stopped() {
+    caller.enqueueSuccess(NOW, 503, 10);
+    underTest.enqueue(newWebhook("http://url1"), payload);
+    deliveryExecutor.runAll();
+
+    underTest.stop();
+
+    verifyZeroInteractions(deliveryStorage);
+    assertThat(selectUnclaimed()).hasSize(1);
+  }
+
+  private List<WebhookQueueDto> selectUnclaimed() {
+    return dbClient.webhookQueueDao().selectUnclaimed(dbSession, system.now() - CLAIM_TIMEOUT_MS, 1_000);
+  }
+
+  private WebhookQueueDto insertInQueue(String url) {
+    WebhookQueueDto dto = dbClient.webhookQueueDao().insert(dbSession, new WebhookQueueDto()
+      .setComponentUuid("P1_UUID")
+      .setCeTaskUuid("CE_TASK_UUID")
+      .setAnalysisUuid("ANALYSIS_UUID")
+      .setName("First")
+      .setUrl(url)
+      .setProjectKey("P1")
+      .setPayload("{}"));
+    dbSession.commit();
+    return dto;
+  }
+
+  private void runScheduledRetry(long expectedDelayMs) {
+    ArgumentCaptor<Runnable> retry = ArgumentCaptor.forClass(Runnable.class);
+    verify(scheduler, times(1)).schedule(retry.capture(), eq(expectedDelayMs), eq(TimeUnit.MILLISECONDS));
+    retry.getValue().run();
+  }
+
+  private static Webhook newWebhook(String url) {
+    return new Webhook("P1_UUID", "CE_TASK_UUID", "ANALYSIS_UUID", "First", url);
+  }
+
+  private static class RecordingExecutorService extends AbstractExecutorService {
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    @Override
+    public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    void runNext() {
+      tasks.remove(0).run();
+    }
+
+    void runAll() {
+      while (!tasks.isEmpty()) {
+        runNext();
+      }
+    }
+
+    @Override
+    public void shutdown() {
+      // nothing to do
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return new ArrayList<>(tasks);
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return true;
+    }
+  }
+}
@@ -19,9 +19,13 @@
  */
 package org.sonar.core.issue.tracking;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
 import javax.annotation.Nonnull;
@@ -39,22 +43,24 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
       return;
     }
 
-    Multimap<SearchKey, BASE> baseSearch = ArrayListMultimap.create();
+    Map<SearchKey, List<BASE>> basesByKey = new HashMap<>();
     for (BASE base : tracking.getUnmatchedBases()) {
-      baseSearch.put(searchKeyFactory.apply(base), base);
+      basesByKey.computeIfAbsent(searchKeyFactory.apply(base), k -> new ArrayList<>(1)).add(base);
     }
 
+    // candidates are sorted only once per key, the best remaining one being always the first one
+    Comparator<BASE> bestFirst = comparing(this::statusRank).reversed().thenComparing(comparing(Trackable::getCreationDate));
+    Map<SearchKey, Deque<BASE>> baseSearch = new HashMap<>(basesByKey.size());
+    basesByKey.forEach((key, bases) -> {
+      bases.sort(bestFirst);
+      baseSearch.put(key, new ArrayDeque<>(bases));
+    });
+
     for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = searchKeyFactory.apply(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      bases.stream()
-        .sorted(comparing(this::statusRank).reversed()
-          .thenComparing(comparing(Trackable::getCreationDate)))
-        .findFirst()
-        .ifPresent(match -> {
-          tracking.match(raw, match);
-          baseSearch.remove(rawKey, match);
-        });
+      Deque<BASE> bases = baseSearch.get(searchKeyFactory.apply(raw));
+      if (bases != null && !bases.isEmpty()) {
+        tracking.match(raw, bases.poll());
+      }
     }
   }
 
@@ -76,11 +82,13 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
     private final RuleKey ruleKey;
     private final String lineHash;
     private final Integer line;
+    private final int hashCode;
 
     protected LineAndLineHashKey(Trackable trackable) {
       this.ruleKey = trackable.getRuleKey();
       this.line = trackable.getLine();
       this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+      this.hashCode = Objects.hash(ruleKey, lineHash, line != null ? line : 0);
     }
 
     @Override
@@ -97,7 +105,7 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
 
     @Override
     public int hashCode() {
-      return Objects.hash(ruleKey, lineHash, line != null ? line : 0);
+      return hashCode;
     }
   }
 
@@ -105,11 +113,13 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
     private final RuleKey ruleKey;
     private final String message;
     private final String lineHash;
+    private final int hashCode;
 
     LineHashAndMessageKey(Trackable trackable) {
       this.ruleKey = trackable.getRuleKey();
       this.message = trackable.getMessage();
       this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+      this.hashCode = Objects.hash(ruleKey, message, lineHash);
     }
 
     @Override
@@ -126,7 +136,7 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
 
     @Override
     public int hashCode() {
-      return Objects.hash(ruleKey, message, lineHash);
+      return hashCode;
     }
   }
 
@@ -134,11 +144,13 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
     private final RuleKey ruleKey;
     private final String message;
     private final Integer line;
+    private final int hashCode;
 
     LineAndMessageKey(Trackable trackable) {
       this.ruleKey = trackable.getRuleKey();
       this.message = trackable.getMessage();
       this.line = trackable.getLine();
+      this.hashCode = Objects.hash(ruleKey, message, line != null ? line : 0);
     }
 
     @Override
@@ -155,17 +167,19 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
 
     @Override
     public int hashCode() {
-      return Objects.hash(ruleKey, message, line != null ? line : 0);
+      return hashCode;
     }
   }
 
   protected static class LineHashKey implements SearchKey {
     private final RuleKey ruleKey;
     private final String lineHash;
+    private final int hashCode;
 
     LineHashKey(Trackable trackable) {
       this.ruleKey = trackable.getRuleKey();
       this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+      this.hashCode = Objects.hash(ruleKey, lineHash);
     }
 
     @Override
@@ -181,7 +195,7 @@ public class AbstractTracker<RAW extends Trackable, BASE extends Trackable> {
 
     @Override
     public int hashCode() {
-      return Objects.hash(ruleKey, lineHash);
+      return hashCode;
     }
   }
 
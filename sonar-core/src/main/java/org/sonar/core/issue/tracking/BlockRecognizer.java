@@ -20,17 +20,23 @@
 package org.sonar.core.issue.tracking;
 
 import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import org.sonar.api.rule.RuleKey;
 
 class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
 
+  private static final int MAX_LINE_PAIRS = 250_000;
+
   /**
    * If base source code is available, then detect code moves through block hashes.
    * Only the issues associated to a line can be matched here.
@@ -75,20 +81,34 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
       }
     }
 
-    // Check if remaining number of lines exceeds threshold. It avoids processing too many combinations.
-    if (basesByLine.keySet().size() * rawsByLine.keySet().size() >= 250_000) {
+    // Only the lines with the same hash can be the start of a block. Lines are kept in the order of issues, so that
+    // pairs of same weight are processed in a deterministic order.
+    LineHashSequence baseLineHashes = baseInput.getLineHashSequence();
+    LineHashSequence rawLineHashes = rawInput.getLineHashSequence();
+    Map<String, List<Integer>> rawLinesByHash = new HashMap<>();
+    for (Integer rawLine : rawsByLine.keySet()) {
+      rawLinesByHash.computeIfAbsent(rawLineHashes.getHashForLine(rawLine), h -> new ArrayList<>()).add(rawLine);
+    }
+
+    // Check if number of possible pairs exceeds threshold. It avoids processing too many combinations.
+    long possibleLinePairsCount = 0;
+    for (Integer baseLine : basesByLine.keySet()) {
+      possibleLinePairsCount += rawLinesByHash.getOrDefault(baseLineHashes.getHashForLine(baseLine), Collections.emptyList()).size();
+    }
+    if (possibleLinePairsCount >= MAX_LINE_PAIRS) {
       return;
     }
 
-    List<LinePair> possibleLinePairs = Lists.newArrayList();
+    List<LinePair> possibleLinePairs = new ArrayList<>((int) possibleLinePairsCount);
     for (Integer baseLine : basesByLine.keySet()) {
-      for (Integer rawLine : rawsByLine.keySet()) {
-        int weight = lengthOfMaximalBlock(baseInput.getLineHashSequence(), baseLine, rawInput.getLineHashSequence(), rawLine);
-        if (weight > 0) {
-          possibleLinePairs.add(new LinePair(baseLine, rawLine, weight));
-        }
+      for (Integer rawLine : rawLinesByHash.getOrDefault(baseLineHashes.getHashForLine(baseLine), Collections.emptyList())) {
+        possibleLinePairs.add(new LinePair(baseLine, rawLine));
       }
     }
+    MaximalBlocks maximalBlocks = new MaximalBlocks(baseLineHashes, rawLineHashes);
+    for (LinePair linePair : possibleLinePairs) {
+      linePair.weight = maximalBlocks.lengthOfMaximalBlock(linePair.baseLine, linePair.rawLine);
+    }
     Collections.sort(possibleLinePairs, LinePairComparator.INSTANCE);
     for (LinePair linePair : possibleLinePairs) {
       // High probability that baseLine has been moved to rawLine, so we can map all issues on baseLine to all issues on rawLine
@@ -124,12 +144,16 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
   }
 
   private void map(Collection<RAW> raws, Collection<BASE> bases, Tracking<RAW, BASE> result) {
+    Map<RuleKey, Deque<BASE>> unmatchedBasesByRule = new HashMap<>();
+    for (BASE base : bases) {
+      if (result.containsUnmatchedBase(base)) {
+        unmatchedBasesByRule.computeIfAbsent(base.getRuleKey(), r -> new ArrayDeque<>()).add(base);
+      }
+    }
     for (RAW raw : raws) {
-      for (BASE base : bases) {
-        if (result.containsUnmatchedBase(base) && base.getRuleKey().equals(raw.getRuleKey())) {
-          result.match(raw, base);
-          break;
-        }
+      Deque<BASE> unmatchedBases = unmatchedBasesByRule.get(raw.getRuleKey());
+      if (result.baseFor(raw) == null && unmatchedBases != null && !unmatchedBases.isEmpty()) {
+        result.match(raw, unmatchedBases.poll());
       }
     }
   }
@@ -145,15 +169,58 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
     return result;
   }
 
+  /**
+   * Lengths of the maximal blocks starting from pairs of lines with the same hash. The blocks already found are kept by
+   * diagonal (difference between raw and base lines) so that the lines of a block are compared only once, whatever the
+   * number of pairs of lines of this block.
+   */
+  private static class MaximalBlocks {
+    private final LineHashSequence baseHashes;
+    private final LineHashSequence rawHashes;
+    private final Map<Integer, TreeMap<Integer, Integer>> lastBaseLineByFirstBaseLineByDiagonal = new HashMap<>();
+
+    MaximalBlocks(LineHashSequence baseHashes, LineHashSequence rawHashes) {
+      this.baseHashes = baseHashes;
+      this.rawHashes = rawHashes;
+    }
+
+    /**
+     * Same as {@link BlockRecognizer#lengthOfMaximalBlock(LineHashSequence, int, LineHashSequence, int)}, the
+     * lines being expected to have the same hash.
+     */
+    int lengthOfMaximalBlock(int baseLine, int rawLine) {
+      TreeMap<Integer, Integer> blocks = lastBaseLineByFirstBaseLineByDiagonal.computeIfAbsent(rawLine - baseLine, d -> new TreeMap<>());
+      Map.Entry<Integer, Integer> block = blocks.floorEntry(baseLine);
+      if (block != null && block.getValue() >= baseLine) {
+        return block.getValue() - block.getKey() + 1;
+      }
+
+      int first = baseLine;
+      int offset = rawLine - baseLine;
+      while (first > 1 && first + offset > 1 && sameHash(first - 1, first - 1 + offset)) {
+        first--;
+      }
+      int last = baseLine;
+      while (last < baseHashes.length() && last + offset < rawHashes.length() && sameHash(last + 1, last + 1 + offset)) {
+        last++;
+      }
+      blocks.put(first, last);
+      return last - first + 1;
+    }
+
+    private boolean sameHash(int baseLine, int rawLine) {
+      return baseHashes.getHashForLine(baseLine).equals(rawHashes.getHashForLine(rawLine));
+    }
+  }
+
   private static class LinePair {
     int baseLine;
     int rawLine;
     int weight;
 
-    public LinePair(int baseLine, int rawLine, int weight) {
+    public LinePair(int baseLine, int rawLine) {
       this.baseLine = baseLine;
       this.rawLine = rawLine;
-      this.weight = weight;
     }
   }
 
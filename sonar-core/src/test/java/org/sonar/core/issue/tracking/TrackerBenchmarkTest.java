@@ -0,0 +1,348 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2018 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.issue.tracking;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import static java.util.Comparator.comparing;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares {@link Tracker} with the implementation based on a sort of candidates for each issue and on a comparison
+ * of all the pairs of lines when detecting code moves, on synthetic generated files. Matching rules are covered by
+ * {@link TrackerTest}. Run with the profile "benchmarks".
+ */
+public class TrackerBenchmarkTest {
+
+  private static final Logger LOGGER = Loggers.get(TrackerBenchmarkTest.class);
+  private static final RuleKey[] RULES = {RuleKey.of("java", "S1"), RuleKey.of("java", "S2"), RuleKey.of("java", "S3")};
+
+  @Test
+  public void same_matches_as_legacy_implementation() {
+    Random random = new Random(42);
+    for (int i = 0; i < 20; i++) {
+      SyntheticFile base = SyntheticFile.generate(random, 100 + random.nextInt(300), 5 + random.nextInt(50));
+      SyntheticFile raw = base.modify(random, 10);
+      base.createIssues(random, 100 + random.nextInt(400));
+      raw.copyIssues(random, base);
+
+      Tracking<FakeIssue, FakeIssue> tracking = new Tracker<FakeIssue, FakeIssue>().track(raw, base);
+      Tracking<FakeIssue, FakeIssue> legacyTracking = new LegacyTracker().track(raw, base);
+
+      assertThat(tracking.getMatchedRaws()).isEqualTo(legacyTracking.getMatchedRaws());
+    }
+  }
+
+  @Test
+  public void track_file_with_thousands_of_issues() {
+    Random random = new Random(42);
+    SyntheticFile base = SyntheticFile.generate(random, 20, 10);
+    SyntheticFile raw = base.modify(random, 1);
+    base.createIssues(random, 20_000);
+    raw.copyIssues(random, base);
+
+    long start = System.currentTimeMillis();
+    Tracking<FakeIssue, FakeIssue> tracking = new Tracker<FakeIssue, FakeIssue>().track(raw, base);
+    long duration = System.currentTimeMillis() - start;
+
+    start = System.currentTimeMillis();
+    Tracking<FakeIssue, FakeIssue> legacyTracking = new LegacyTracker().track(raw, base);
+    long legacyDuration = System.currentTimeMillis() - start;
+
+    LOGGER.info("Tracking of {} issues on {} lines: {} ms, {} ms with legacy implementation",
+      raw.issues.size(), raw.lineHashes.size(), duration, legacyDuration);
+    assertThat(tracking.getMatchedRaws().size()).isGreaterThanOrEqualTo(legacyTracking.getMatchedRaws().size());
+  }
+
+  private static class SyntheticFile implements Input<FakeIssue> {
+    private final List<String> lineHashes;
+    private final List<FakeIssue> issues = new ArrayList<>();
+    // line in this file -> line in the original file
+    private final Map<Integer, Integer> originalLines = new HashMap<>();
+
+    private SyntheticFile(List<String> lineHashes) {
+      this.lineHashes = lineHashes;
+    }
+
+    /**
+     * Generated code is very repetitive, hence a small number of distinct lines
+     */
+    static SyntheticFile generate(Random random, int lines, int distinctLines) {
+      List<String> hashes = new ArrayList<>(lines);
+      for (int i = 0; i < lines; i++) {
+        hashes.add("line" + random.nextInt(distinctLines));
+      }
+      return new SyntheticFile(hashes);
+    }
+
+    /**
+     * Copy of this file with blocks of new lines inserted, and some lines removed
+     */
+    SyntheticFile modify(Random random, int changes) {
+      List<String> hashes = new ArrayList<>(lineHashes.size());
+      SyntheticFile res = new SyntheticFile(hashes);
+      for (int line = 1; line <= lineHashes.size(); line++) {
+        if (random.nextInt(lineHashes.size()) < changes) {
+          for (int i = 0; i < 1 + random.nextInt(5); i++) {
+            hashes.add("new" + random.nextInt(1_000));
+          }
+        }
+        if (random.nextInt(lineHashes.size()) >= changes) {
+          hashes.add(lineHashes.get(line - 1));
+          res.originalLines.put(line, hashes.size());
+        }
+      }
+      return res;
+    }
+
+    /**
+     * One issue out of four is not on a line, like issues on file
+     */
+    void createIssues(Random random, int count) {
+      for (int i = 0; i < count; i++) {
+        Integer line = random.nextInt(4) == 0 ? null : (1 + random.nextInt(lineHashes.size()));
+        issues.add(createIssue(random, line, "message " + random.nextInt(5)));
+      }
+    }
+
+    /**
+     * Issues of the base file on the lines which still exist, with some changed messages, and some new issues
+     */
+    void copyIssues(Random random, SyntheticFile base) {
+      for (FakeIssue baseIssue : base.issues) {
+        boolean onLine = baseIssue.line != null;
+        Integer line = onLine ? originalLines.get(baseIssue.line) : null;
+        if ((line != null || !onLine) && random.nextInt(10) > 0) {
+          String message = random.nextInt(10) == 0 ? "changed message" : baseIssue.message;
+          issues.add(new FakeIssue(line, lineHashOf(line), baseIssue.ruleKey, message, Issue.STATUS_OPEN));
+        }
+      }
+      for (int i = 0; i < base.issues.size() / 20; i++) {
+        issues.add(createIssue(random, 1 + random.nextInt(lineHashes.size()), "new message"));
+      }
+    }
+
+    private FakeIssue createIssue(Random random, @Nullable Integer line, String message) {
+      String status = random.nextInt(10) == 0 ? Issue.STATUS_CONFIRMED : Issue.STATUS_OPEN;
+      return new FakeIssue(line, lineHashOf(line), RULES[random.nextInt(RULES.length)], message, status);
+    }
+
+    private String lineHashOf(@Nullable Integer line) {
+      return line == null ? "" : lineHashes.get(line - 1);
+    }
+
+    @Override
+    public LineHashSequence getLineHashSequence() {
+      return new LineHashSequence(lineHashes);
+    }
+
+    @Override
+    public BlockHashSequence getBlockHashSequence() {
+      return BlockHashSequence.create(getLineHashSequence());
+    }
+
+    @Override
+    public Collection<FakeIssue> getIssues() {
+      return issues;
+    }
+  }
+
+  private static class FakeIssue implements Trackable {
+    private static long creationDates = 0;
+
+    private final Integer line;
+    private final String lineHash;
+    private final RuleKey ruleKey;
+    private final String message;
+    private final String status;
+    private final Date creationDate = new Date(creationDates++);
+
+    FakeIssue(@Nullable Integer line, String lineHash, RuleKey ruleKey, String message, String status) {
+      this.line = line;
+      this.lineHash = lineHash;
+      this.ruleKey = ruleKey;
+      this.message = message;
+      this.status = status;
+    }
+
+    @Override
+    public Integer getLine() {
+      return line;
+    }
+
+    @Override
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public String getLineHash() {
+      return lineHash;
+    }
+
+    @Override
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+
+    @Override
+    public String getStatus() {
+      return status;
+    }
+
+    @Override
+    public Date getCreationDate() {
+      return creationDate;
+    }
+  }
+
+  /**
+   * Previous implementation of {@link Tracker} and {@link BlockRecognizer}
+   */
+  private static class LegacyTracker extends AbstractTracker<FakeIssue, FakeIssue> {
+
+    Tracking<FakeIssue, FakeIssue> track(Input<FakeIssue> rawInput, Input<FakeIssue> baseInput) {
+      Tracking<FakeIssue, FakeIssue> tracking = new Tracking<>(rawInput.getIssues(), baseInput.getIssues());
+      match(tracking, LineAndLineHashKey::new);
+      if (!tracking.isComplete()) {
+        detectCodeMoves(rawInput, baseInput, tracking);
+      }
+      match(tracking, LineHashAndMessageKey::new);
+      match(tracking, LineAndMessageKey::new);
+      match(tracking, LineHashKey::new);
+      return tracking;
+    }
+
+    @Override
+    protected void match(Tracking<FakeIssue, FakeIssue> tracking, Function<Trackable, SearchKey> searchKeyFactory) {
+      if (tracking.isComplete()) {
+        return;
+      }
+      Multimap<SearchKey, FakeIssue> baseSearch = ArrayListMultimap.create();
+      for (FakeIssue base : tracking.getUnmatchedBases()) {
+        baseSearch.put(searchKeyFactory.apply(base), base);
+      }
+      for (FakeIssue raw : tracking.getUnmatchedRaws()) {
+        SearchKey rawKey = searchKeyFactory.apply(raw);
+        baseSearch.get(rawKey).stream()
+          .sorted(comparing(LegacyTracker::statusRank).reversed().thenComparing(comparing(Trackable::getCreationDate)))
+          .findFirst()
+          .ifPresent(match -> {
+            tracking.match(raw, match);
+            baseSearch.remove(rawKey, match);
+          });
+      }
+    }
+
+    private static int statusRank(FakeIssue issue) {
+      switch (issue.getStatus()) {
+        case Issue.STATUS_RESOLVED:
+          return 2;
+        case Issue.STATUS_CONFIRMED:
+          return 1;
+        default:
+          return 0;
+      }
+    }
+
+    private static void detectCodeMoves(Input<FakeIssue> rawInput, Input<FakeIssue> baseInput, Tracking<FakeIssue, FakeIssue> tracking) {
+      BlockHashSequence rawHashSequence = rawInput.getBlockHashSequence();
+      BlockHashSequence baseHashSequence = baseInput.getBlockHashSequence();
+      Multimap<Integer, FakeIssue> rawsByLine = groupByLine(tracking.getUnmatchedRaws(), rawHashSequence);
+      Multimap<Integer, FakeIssue> basesByLine = groupByLine(tracking.getUnmatchedBases(), baseHashSequence);
+
+      Map<Integer, int[]> occurrencesByHash = new HashMap<>();
+      // occurrence: baseLine, baseCount, rawLine, rawCount
+      for (Integer line : basesByLine.keySet()) {
+        int[] occurrence = occurrencesByHash.computeIfAbsent(baseHashSequence.getBlockHashForLine(line), h -> new int[] {line, 0, 0, 0});
+        occurrence[1]++;
+      }
+      for (Integer line : rawsByLine.keySet()) {
+        int[] occurrence = occurrencesByHash.get(rawHashSequence.getBlockHashForLine(line));
+        if (occurrence != null) {
+          occurrence[2] = line;
+          occurrence[3]++;
+        }
+      }
+      for (int[] occurrence : occurrencesByHash.values()) {
+        if (occurrence[1] == 1 && occurrence[3] == 1) {
+          map(rawsByLine.get(occurrence[2]), basesByLine.get(occurrence[0]), tracking);
+          basesByLine.removeAll(occurrence[0]);
+          rawsByLine.removeAll(occurrence[2]);
+        }
+      }
+
+      if (basesByLine.keySet().size() * rawsByLine.keySet().size() >= 250_000) {
+        return;
+      }
+
+      List<int[]> possibleLinePairs = new ArrayList<>();
+      for (Integer baseLine : basesByLine.keySet()) {
+        for (Integer rawLine : rawsByLine.keySet()) {
+          int weight = BlockRecognizer.lengthOfMaximalBlock(baseInput.getLineHashSequence(), baseLine, rawInput.getLineHashSequence(), rawLine);
+          if (weight > 0) {
+            possibleLinePairs.add(new int[] {baseLine, rawLine, weight});
+          }
+        }
+      }
+      possibleLinePairs.sort(comparing((int[] pair) -> -pair[2]).thenComparing(pair -> Math.abs(pair[0] - pair[1])));
+      for (int[] linePair : possibleLinePairs) {
+        map(rawsByLine.get(linePair[1]), basesByLine.get(linePair[0]), tracking);
+      }
+    }
+
+    private static void map(Collection<FakeIssue> raws, Collection<FakeIssue> bases, Tracking<FakeIssue, FakeIssue> tracking) {
+      for (FakeIssue raw : raws) {
+        for (FakeIssue base : bases) {
+          if (tracking.containsUnmatchedBase(base) && base.getRuleKey().equals(raw.getRuleKey())) {
+            tracking.match(raw, base);
+            break;
+          }
+        }
+      }
+    }
+
+    private static Multimap<Integer, FakeIssue> groupByLine(Iterable<FakeIssue> issues, BlockHashSequence hashSequence) {
+      Multimap<Integer, FakeIssue> result = LinkedHashMultimap.create();
+      for (FakeIssue issue : issues) {
+        if (hashSequence.hasLine(issue.getLine())) {
+          result.put(issue.getLine(), issue);
+        }
+      }
+      return result;
+    }
+  }
+}
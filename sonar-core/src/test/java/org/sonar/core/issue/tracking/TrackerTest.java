@@ -432,6 +432,46 @@ public class TrackerTest {
     assertThat(tracking.baseFor(raw1)).isEqualTo(base1);
   }
 
+  @Test
+  public void match_resolved_then_confirmed_then_oldest_base_issues_first() {
+    FakeInput baseInput = new FakeInput("H1");
+    Issue openOld = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg", org.sonar.api.issue.Issue.STATUS_OPEN, new Date(1_000L));
+    Issue openNew = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg", org.sonar.api.issue.Issue.STATUS_OPEN, new Date(2_000L));
+    Issue confirmed = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg", org.sonar.api.issue.Issue.STATUS_CONFIRMED, new Date(3_000L));
+    Issue resolved = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg", org.sonar.api.issue.Issue.STATUS_RESOLVED, new Date(4_000L));
+
+    FakeInput rawInput = new FakeInput("H1");
+    Issue raw1 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw2 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw3 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw4 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw5 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.baseFor(raw1)).isSameAs(resolved);
+    assertThat(tracking.baseFor(raw2)).isSameAs(confirmed);
+    assertThat(tracking.baseFor(raw3)).isSameAs(openOld);
+    assertThat(tracking.baseFor(raw4)).isSameAs(openNew);
+    assertThat(tracking.baseFor(raw5)).isNull();
+  }
+
+  @Test
+  public void each_base_issue_is_matched_once_when_many_issues_have_the_same_search_key() {
+    FakeInput baseInput = new FakeInput("H1", "H2");
+    for (int i = 0; i < 1_000; i++) {
+      baseInput.createIssueOnLine(1 + i % 2, RULE_SYSTEM_PRINT, "msg", org.sonar.api.issue.Issue.STATUS_OPEN, new Date(i));
+    }
+    FakeInput rawInput = new FakeInput("H2", "H1");
+    for (int i = 0; i < 1_200; i++) {
+      rawInput.createIssueOnLine(1 + i % 2, RULE_SYSTEM_PRINT, "other msg");
+    }
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+    assertThat(tracking.getMatchedRaws()).hasSize(1_000);
+    assertThat(tracking.getMatchedRaws().values()).doesNotHaveDuplicates();
+    assertThat(tracking.getUnmatchedBases()).isEmpty();
+  }
+
   private static class Issue implements Trackable {
     private final RuleKey ruleKey;
     private final Integer line;
@@ -501,6 +541,12 @@ public class TrackerTest {
       return issue;
     }
 
+    Issue createIssueOnLine(int line, RuleKey ruleKey, String message, String status, Date creationDate) {
+      Issue issue = new Issue(line, lineHashes.get(line - 1), ruleKey, message, status, creationDate);
+      issues.add(issue);
+      return issue;
+    }
+
     /**
      * No line (line 0)
      */
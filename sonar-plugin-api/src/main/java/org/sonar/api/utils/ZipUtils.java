@@ -43,6 +43,7 @@ import org.apache.commons.io.IOUtils;
 public final class ZipUtils {
 
   private static final String ERROR_CREATING_DIRECTORY = "Error creating directory: ";
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
   private ZipUtils() {
     // only static methods
@@ -100,7 +101,7 @@ public final class ZipUtils {
   }
 
   private static void unzipEntry(ZipEntry entry, ZipInputStream zipStream, File toDir) throws IOException {
-    File to = new File(toDir, entry.getName());
+    File to = entryFile(entry, toDir);
     if (entry.isDirectory()) {
       throwExceptionIfDirectoryIsNotCreatable(to);
     } else {
@@ -110,6 +111,14 @@ public final class ZipUtils {
     }
   }
 
+  private static File entryFile(ZipEntry entry, File toDir) throws IOException {
+    File to = new File(toDir, entry.getName());
+    if (!to.toPath().toAbsolutePath().normalize().startsWith(toDir.toPath().toAbsolutePath().normalize())) {
+      throw new IOException("Unzipping an entry outside the target directory is not allowed: " + entry.getName());
+    }
+    return to;
+  }
+
   private static void throwExceptionIfDirectoryIsNotCreatable(File to) throws IOException {
     if (!to.exists() && !to.mkdirs()) {
       throw new IOException(ERROR_CREATING_DIRECTORY + to);
@@ -145,7 +154,7 @@ public final class ZipUtils {
       while (entries.hasMoreElements()) {
         ZipEntry entry = entries.nextElement();
         if (filter.test(entry)) {
-          File to = new File(toDir, entry.getName());
+          File to = entryFile(entry, toDir);
           if (entry.isDirectory()) {
             throwExceptionIfDirectoryIsNotCreatable(to);
           } else {
@@ -166,7 +175,7 @@ public final class ZipUtils {
     FileOutputStream fos = null;
     try {
       fos = new FileOutputStream(to);
-      IOUtils.copy(zipStream, fos);
+      IOUtils.copyLarge(zipStream, fos, new byte[COPY_BUFFER_SIZE]);
     } finally {
       IOUtils.closeQuietly(fos);
     }
@@ -177,7 +186,7 @@ public final class ZipUtils {
     InputStream input = null;
     try {
       input = zipFile.getInputStream(entry);
-      IOUtils.copy(input, fos);
+      IOUtils.copyLarge(input, fos, new byte[COPY_BUFFER_SIZE]);
     } finally {
       IOUtils.closeQuietly(input);
       IOUtils.closeQuietly(fos);
@@ -25,14 +25,19 @@ import org.apache.commons.io.FileUtils;
 import org.assertj.core.util.Files;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Iterator;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +45,8 @@ public class ZipUtilsTest {
 
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
 
   @Test
   public void zip_directory() throws IOException {
@@ -106,6 +113,22 @@ public class ZipUtilsTest {
     assertThat(toDir.listFiles()).containsOnly(new File(toDir, "foo.txt"));
   }
 
+  @Test
+  public void fail_to_unzip_stream_when_entry_is_outside_of_target_directory() throws IOException {
+    ByteArrayOutputStream zip = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(zip)) {
+      out.putNextEntry(new ZipEntry("../outside.txt"));
+      out.write("foo".getBytes(StandardCharsets.UTF_8));
+      out.closeEntry();
+    }
+    File toDir = temp.newFolder();
+
+    expectedException.expect(IOException.class);
+    expectedException.expectMessage("Unzipping an entry outside the target directory is not allowed: ../outside.txt");
+
+    ZipUtils.unzip(new ByteArrayInputStream(zip.toByteArray()), toDir);
+  }
+
   private URL urlToZip() {
     return getClass().getResource("/org/sonar/api/utils/ZipUtilsTest/shouldUnzipFile.zip");
   }